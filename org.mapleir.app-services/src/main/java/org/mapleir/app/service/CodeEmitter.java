@@ -0,0 +1,29 @@
+package org.mapleir.app.service;
+
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Supplies the code of methods as they are written out, so that it can be
+ * streamed straight into the class writer rather than first being built up
+ * in the instruction list of the method.
+ */
+public interface CodeEmitter {
+
+	/**
+	 * @param m the method
+	 * @return whether the code of the method is supplied by this emitter, if
+	 *         not it is taken from the instruction list of the method
+	 */
+	boolean handles(MethodNode m);
+
+	/**
+	 * Writes the instructions and exception handlers of the method. This is
+	 * called between {@link MethodVisitor#visitCode()} and
+	 * {@link MethodVisitor#visitMaxs(int, int)}, the maximums are computed by
+	 * the writer.
+	 * @param m the method
+	 * @param mv the visitor to write to
+	 */
+	void emit(MethodNode m, MethodVisitor mv);
+}
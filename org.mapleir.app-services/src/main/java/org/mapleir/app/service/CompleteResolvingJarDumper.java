@@ -1,7 +1,13 @@
 package org.mapleir.app.service;
 
 import org.mapleir.asm.ClassHelper;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
 import org.topdank.byteengineer.commons.data.JarContents;
@@ -14,6 +20,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
@@ -27,6 +35,7 @@ public class CompleteResolvingJarDumper implements JarDumper {
 
 	private final JarContents<?> contents;
 	private final ApplicationClassSource source;
+	private CodeEmitter emitter;
 	/**
 	 * Creates a new JarDumper.
 	 *
@@ -37,6 +46,18 @@ public class CompleteResolvingJarDumper implements JarDumper {
 		this.source = source;
 	}
 
+	/**
+	 * Sets the emitter which writes the code of the methods it handles
+	 * directly into the class writer. The instruction lists of those methods
+	 * are ignored.
+	 *
+	 * @param emitter The emitter, or null to write every method from its
+	 *        instruction list.
+	 */
+	public void setCodeEmitter(CodeEmitter emitter) {
+		this.emitter = emitter;
+	}
+
 	/**
 	 * Dumps the jars contents.
 	 *
@@ -75,6 +96,13 @@ public class CompleteResolvingJarDumper implements JarDumper {
 	public int dumpClass(JarOutputStream out, String name, ClassNode cn) throws IOException {
 		JarEntry entry = new JarEntry(cn.getName() + ".class");
 		out.putNextEntry(entry);
+
+		byte[] original = contents != null ? contents.getOriginalBytes(cn) : null;
+		if (original != null && !isModified(cn)) {
+			out.write(original);
+			return 1;
+		}
+
 		ClassTree tree = source.getClassTree();
 		
 		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
@@ -155,7 +183,12 @@ public class CompleteResolvingJarDumper implements JarDumper {
 		}
 
 		try {
-			cn.node.accept(writer); // must use custom writer which overrides getCommonSuperclass
+			// must use custom writer which overrides getCommonSuperclass
+			if (emitter == null) {
+				cn.node.accept(writer);
+			} else {
+				cn.node.accept(new EmittingClassVisitor(writer, cn));
+			}
 			out.write(writer.toByteArray());
 		} catch (Exception e) {
 			System.err.println("Failed to write " + cn.getName());
@@ -164,6 +197,96 @@ public class CompleteResolvingJarDumper implements JarDumper {
 		return 1;
 	}
 
+	private boolean isModified(ClassNode cn) {
+		if (cn.isDirty())
+			return true;
+		if (emitter != null) {
+			for (MethodNode m : cn.getMethods()) {
+				if (emitter.handles(m))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private class EmittingClassVisitor extends ClassVisitor {
+		private final Map<String, MethodNode> methods;
+
+		EmittingClassVisitor(ClassVisitor cv, ClassNode cn) {
+			super(Opcodes.ASM7, cv);
+			methods = new HashMap<>();
+			for (MethodNode m : cn.getMethods()) {
+				methods.put(m.getName() + m.getDesc(), m);
+			}
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+			MethodNode m = methods.get(name + descriptor);
+			if (m == null || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0 || !emitter.handles(m)) {
+				return mv;
+			}
+			return new EmittingMethodVisitor(mv, m);
+		}
+	}
+
+	// Passes on everything but the code of the method, which is replaced by
+	// whatever the emitter produces.
+	private class EmittingMethodVisitor extends MethodVisitor {
+		private final MethodVisitor target;
+		private final MethodNode m;
+
+		EmittingMethodVisitor(MethodVisitor target, MethodNode m) {
+			super(Opcodes.ASM7);
+			this.target = target;
+			this.m = m;
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			target.visitParameter(name, access);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			return target.visitAnnotationDefault();
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return target.visitAnnotation(descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return target.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+			target.visitAnnotableParameterCount(parameterCount, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			return target.visitParameterAnnotation(parameter, descriptor, visible);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			target.visitAttribute(attribute);
+		}
+
+		@Override
+		public void visitEnd() {
+			target.visitCode();
+			emitter.emit(m, target);
+			target.visitMaxs(0, 0);
+			target.visitEnd();
+		}
+	}
+
 	/**
 	 * Writes a resource to the Jar.
 	 *
@@ -0,0 +1,154 @@
+package org.mapleir.app.service;
+
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+/**
+ * Groups the virtual methods of a {@link ClassTree} into the chains returned
+ * by {@link InvocationResolver#getHierarchyMethodChain}, i.e. the non-static
+ * methods with the same name and descriptor in classes that are connected by
+ * inheritance other than through {@code java/lang/Object}.
+ *
+ * The classes are partitioned once with a union-find over the inheritance
+ * edges, after which the chain of any method is a single map lookup. The
+ * index is a snapshot of the tree and of the method names and descriptors
+ * when it was built, so it has to be rebuilt after classes or methods are
+ * renamed or their descriptors change. Once built it is only read, so it
+ * can be queried from several threads.
+ */
+public class MethodChainIndex {
+	private final ClassTree tree;
+	private final ClassNode rootNode;
+	// class -> name + desc -> chain, shared by the classes of a component
+	private final Map<ClassNode, Map<String, Set<MethodNode>>> chains = new HashMap<>();
+	// the chains of the methods of the root, which every component contains
+	private final Map<String, Set<MethodNode>> rootChains = new HashMap<>();
+
+	public MethodChainIndex(ClassTree tree) {
+		this.tree = tree;
+		rootNode = tree.getRootNode();
+
+		Map<ClassNode, ClassNode> parents = new HashMap<>();
+		for(ClassNode cn : tree.vertices()) {
+			if(cn == rootNode) {
+				continue;
+			}
+			find(parents, cn);
+			for(ClassNode sup : tree.iterateParents(cn)) {
+				if(sup != rootNode) {
+					union(parents, cn, sup);
+				}
+			}
+		}
+
+		addMethods(rootNode, rootChains);
+		Map<ClassNode, Map<String, Set<MethodNode>>> components = new HashMap<>();
+		for(ClassNode cn : parents.keySet()) {
+			Map<String, Set<MethodNode>> component = components.computeIfAbsent(find(parents, cn), k -> new HashMap<>());
+			addMethods(cn, component);
+			chains.put(cn, component);
+		}
+		/* the root is a branch of every class. */
+		for(Map<String, Set<MethodNode>> component : components.values()) {
+			for(Map.Entry<String, Set<MethodNode>> e : component.entrySet()) {
+				Set<MethodNode> rootChain = rootChains.get(e.getKey());
+				if(rootChain != null) {
+					e.getValue().addAll(rootChain);
+				}
+				e.setValue(Collections.unmodifiableSet(e.getValue()));
+			}
+		}
+		for(Map.Entry<String, Set<MethodNode>> e : rootChains.entrySet()) {
+			e.setValue(Collections.unmodifiableSet(e.getValue()));
+		}
+	}
+
+	/**
+	 * @param m a method
+	 * @return the methods which must be linked with the given one, for a
+	 * virtual method, including the method itself
+	 */
+	public Set<MethodNode> getChain(MethodNode m) {
+		return getChain(m.owner, m.getName(), m.getDesc());
+	}
+
+	/**
+	 * @return the non-static methods called name with the exact descriptor
+	 * in the classes connected to the given class, as
+	 * {@link InvocationResolver#getHierarchyMethodChain} with exact types.
+	 */
+	public Set<MethodNode> getChain(ClassNode cn, String name, String desc) {
+		if(cn == null) {
+			return Collections.emptySet();
+		}
+		String key = name + desc;
+		if(cn == rootNode) {
+			return rootChains.getOrDefault(key, Collections.emptySet());
+		}
+		Map<String, Set<MethodNode>> component = chains.get(cn);
+		if(component == null) {
+			return computeChain(cn, name, desc);
+		}
+		Set<MethodNode> chain = component.get(key);
+		if(chain != null) {
+			return chain;
+		}
+		return rootChains.getOrDefault(key, Collections.emptySet());
+	}
+
+	/* runtime classes are added to the tree as they are loaded. such a class
+	 * has no application subclasses, so its chain is its own methods and the
+	 * chains of its parents. */
+	private Set<MethodNode> computeChain(ClassNode cn, String name, String desc) {
+		Set<MethodNode> chain = new HashSet<>();
+		for(MethodNode m : cn.getMethods()) {
+			if(!Modifier.isStatic(m.node.access) && m.getName().equals(name) && m.getDesc().equals(desc)) {
+				chain.add(m);
+			}
+		}
+		if(tree.containsVertex(cn)) {
+			for(ClassNode sup : tree.iterateParents(cn)) {
+				chain.addAll(getChain(sup, name, desc));
+			}
+		}
+		return chain;
+	}
+
+	private static void addMethods(ClassNode cn, Map<String, Set<MethodNode>> component) {
+		for(MethodNode m : cn.getMethods()) {
+			if(!Modifier.isStatic(m.node.access)) {
+				component.computeIfAbsent(m.getName() + m.getDesc(), k -> new HashSet<>()).add(m);
+			}
+		}
+	}
+
+	private static ClassNode find(Map<ClassNode, ClassNode> parents, ClassNode cn) {
+		ClassNode p = parents.get(cn);
+		if(p == null) {
+			parents.put(cn, cn);
+			return cn;
+		}
+		/* path splitting */
+		while(p != cn) {
+			ClassNode gp = parents.get(p);
+			parents.put(cn, gp);
+			cn = p;
+			p = gp;
+		}
+		return cn;
+	}
+
+	private static void union(Map<ClassNode, ClassNode> parents, ClassNode a, ClassNode b) {
+		ClassNode ra = find(parents, a), rb = find(parents, b);
+		if(ra != rb) {
+			parents.put(ra, rb);
+		}
+	}
+}
@@ -18,13 +18,15 @@ public class Exporter {
 	private static final File DOT_EXECUTABLE = new File("dot/dot.exe");
 
 	private final String src;
+	private final DotGraph graph;
 	
-	private Exporter(String src) {
+	private Exporter(String src, DotGraph graph) {
 		this.src = src;
+		this.graph = graph;
 	}
 	
 	public static Exporter fromString(String src) {
-		return new Exporter(src);
+		return new Exporter(src, null);
 	}
 	
 	public static Exporter fromFile(File src) throws IOException {
@@ -34,7 +36,8 @@ public class Exporter {
 	}
 	
 	public static Exporter fromGraph(DotGraph graph) {
-		return fromString(new Serialiser(graph).serialise());
+		// serialised straight into the dot file on export
+		return new Exporter(null, graph);
 	}
 	
 	public void export(File file) throws IOException {
@@ -42,7 +45,11 @@ public class Exporter {
 		File dotFile = new File(tempDirPath.toString(), "graphsrc.dot");
 		try (BufferedWriter bw = new BufferedWriter(
 				new OutputStreamWriter(new FileOutputStream(dotFile), StandardCharsets.UTF_8))) {
-			bw.write(src);
+			if (graph != null) {
+				new Serialiser(graph).serialise(bw);
+			} else {
+				bw.write(src);
+			}
 		}
 		
 		String[] args;
@@ -1,19 +1,35 @@
 package org.mapleir.dot4j.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import org.mapleir.dot4j.attr.Attributed;
 import org.mapleir.dot4j.attr.builtin.Label;
 
+/**
+ * Writes a {@link DotGraph} out in the dot language. The output is either
+ * returned as a string or streamed to a {@link Writer}, in which case only a
+ * small buffer is held at a time.
+ */
 public class Serialiser {
 
+	private static final int FLUSH_THRESHOLD = 8192;
+
 	private final DotGraph graph;
 	private final StringBuilder str;
+	private Appendable out;
 	
 	public Serialiser(DotGraph graph) {
 		this.graph = graph;
@@ -21,9 +37,40 @@ public class Serialiser {
 	}
 	
 	public String serialise() {
+		str.setLength(0);
+		out = null;
 		graph(graph, true);
 		return str.toString();
 	}
+
+	public void serialise(Writer out) throws IOException {
+		str.setLength(0);
+		this.out = out;
+		try {
+			graph(graph, true);
+			writeOut();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			this.out = null;
+			str.setLength(0);
+		}
+	}
+
+	private void checkFlush() {
+		if (out != null && str.length() >= FLUSH_THRESHOLD) {
+			writeOut();
+		}
+	}
+
+	private void writeOut() {
+		try {
+			out.append(str);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		str.setLength(0);
+	}
 	
     private void graph(DotGraph graph, boolean toplevel) {
         graphInit(graph, toplevel);
@@ -31,13 +78,17 @@ public class Serialiser {
 
         List<Node> nodes = new ArrayList<>();
         List<DotGraph> graphs = new ArrayList<>();
-        Collection<Connected> linkables = linkedNodes(graph.nodes);
-        linkables.addAll(linkedNodes(graph.subgraphs));
+        // position of each node name in nodes, so that nodes sharing a name
+        // are merged without scanning the list
+        Map<Label, Integer> nodeIndex = new HashMap<>();
+        Set<Connected> linkables = new LinkedHashSet<>();
+        linkedNodes(graph.nodes, linkables);
+        linkedNodes(graph.subgraphs, linkables);
         for (Connected linkable : linkables) {
             if (linkable instanceof Node) {
                 Node node = (Node) linkable;
-                int i = indexOfName(nodes, node.name);
-                if (i < 0) {
+                Integer i = nodeIndex.putIfAbsent(node.name, nodes.size());
+                if (i == null) {
                     nodes.add(node);
                 } else {
                     nodes.set(i, node.copy().merge(nodes.get(i)));
@@ -76,15 +127,6 @@ public class Serialiser {
         str.append("{\n");
     }
 
-    private int indexOfName(List<Node> nodes, Label name) {
-        for (int i = 0; i < nodes.size(); i++) {
-            if (nodes.get(i).name.equals(name)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     private void attributes(String name, Attributed<?> attributed) {
         if (!attributed.isEmpty()) {
             str.append(name);
@@ -93,28 +135,34 @@ public class Serialiser {
         }
     }
 
-    private Collection<Connected> linkedNodes(Collection<? extends Connected> nodes) {
-        Set<Connected> visited = new LinkedHashSet<>();
+    private void linkedNodes(Collection<? extends Connected> nodes, Set<Connected> visited) {
+        // preorder walk with an explicit stack as long chains of blocks would
+        // otherwise overflow the call stack
+        Deque<Connected> stack = new ArrayDeque<>();
+        List<Connected> succs = new ArrayList<>();
         for (Connected node : nodes) {
-            linkedNodes(node, visited);
-        }
-        return visited;
-    }
-
-    private void linkedNodes(Connected linkable, Set<Connected> visited) {
-        if (!visited.contains(linkable)) {
-            visited.add(linkable);
-            for (Edge link : linkable.getEdges()) {
-            	Target target = link.getTarget();
-                if (target instanceof Node) {
-                    linkedNodes((Node) target, visited);
-                } else if (target instanceof PortNode) {
-                    linkedNodes(((PortNode) target).node, visited);
-                } else if (target instanceof DotGraph) {
-                    linkedNodes((DotGraph) target, visited);
-                } else {
-                    throw new IllegalStateException("unexpected link to " + link.getTarget() + " of " + link.getTarget().getClass());
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Connected linkable = stack.pop();
+                if (!visited.add(linkable)) {
+                    continue;
+                }
+                for (Edge link : linkable.getEdges()) {
+                    Target target = link.getTarget();
+                    if (target instanceof Node) {
+                        succs.add((Node) target);
+                    } else if (target instanceof PortNode) {
+                        succs.add(((PortNode) target).node);
+                    } else if (target instanceof DotGraph) {
+                        succs.add((DotGraph) target);
+                    } else {
+                        throw new IllegalStateException("unexpected link to " + link.getTarget() + " of " + link.getTarget().getClass());
+                    }
                 }
+                for (int i = succs.size() - 1; i >= 0; i--) {
+                    stack.push(succs.get(i));
+                }
+                succs.clear();
             }
         }
     }
@@ -124,28 +172,34 @@ public class Serialiser {
             if (!node.attributes.isEmpty() || (graph.nodes.contains(node) && node.getEdges().isEmpty())) {
                 node(node);
                 str.append('\n');
+                checkFlush();
             }
         }
     }
 
     private void graphs(List<DotGraph> graphs, List<Node> nodes) {
+        if (graphs.isEmpty()) {
+            return;
+        }
+        Set<Target> linked = new HashSet<>();
+        linkedGraphs(nodes, linked);
+        linkedGraphs(graphs, linked);
         for (DotGraph graph : graphs) {
-            if (graph.getEdges().isEmpty() && !isLinked(graph, nodes) && !isLinked(graph, graphs)) {
+            if (graph.getEdges().isEmpty() && !linked.contains(graph)) {
                 graph(graph, false);
                 str.append('\n');
             }
         }
     }
 
-    private boolean isLinked(DotGraph graph, List<? extends Connected> linkables) {
+    private void linkedGraphs(List<? extends Connected> linkables, Set<Target> linked) {
         for (Connected linkable : linkables) {
             for (Edge link : linkable.getEdges()) {
-                if (link.getTarget().equals(graph)) {
-                    return true;
+                if (link.getTarget() instanceof DotGraph) {
+                    linked.add(link.getTarget());
                 }
             }
         }
-        return false;
     }
 
     private void edges(List<? extends Connected> linkables) {
@@ -156,6 +210,7 @@ public class Serialiser {
                 linkTarget(link.getTarget());
                 attrs(link.getAttrs());
                 str.append('\n');
+                checkFlush();
             }
         }
     }
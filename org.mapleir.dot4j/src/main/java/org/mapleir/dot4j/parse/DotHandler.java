@@ -0,0 +1,61 @@
+package org.mapleir.dot4j.parse;
+
+import java.util.Map;
+
+/**
+ * Receives the statements of a dot file as they are parsed, see
+ * {@link Parser#parse(java.io.Reader, String, DotHandler)}. Nothing is kept
+ * by the parser between events, so arbitrarily large graphs can be read.
+ *
+ * <p>Ids and attribute values are passed unquoted, except that HTML strings
+ * keep their enclosing angle brackets. Attribute maps are only valid for the
+ * duration of the call. All methods do nothing by default.
+ */
+public interface DotHandler {
+
+    enum Scope {
+        GRAPH, NODE, EDGE
+    }
+
+    /**
+     * @param name the graph name, or null if it has none
+     */
+    default void startGraph(boolean strict, boolean directed, String name) {
+    }
+
+    default void endGraph() {
+    }
+
+    /**
+     * @param name the subgraph name, or null for an anonymous subgraph
+     */
+    default void startSubgraph(String name) {
+    }
+
+    default void endSubgraph() {
+    }
+
+    /**
+     * An attribute statement (<code>graph [..]</code>, <code>node [..]</code>,
+     * <code>edge [..]</code>) or a <code>key = value</code> graph attribute, in
+     * the current graph or subgraph.
+     */
+    default void attributes(Scope scope, Map<String, String> attrs) {
+    }
+
+    /**
+     * A node statement. Nodes that are only mentioned in edges are not
+     * reported separately.
+     */
+    default void node(String id, Map<String, String> attrs) {
+    }
+
+    /**
+     * One edge of an edge statement. Chains (<code>a -> b -> c</code>) are
+     * reported as one event per pair and edges to or from a subgraph as one
+     * event per node of the subgraph. Ports are given as the
+     * <code>tailport</code> and <code>headport</code> attributes.
+     */
+    default void edge(String from, String to, Map<String, String> attrs) {
+    }
+}
@@ -0,0 +1,257 @@
+package org.mapleir.dot4j.parse;
+
+import static org.mapleir.dot4j.parse.Token.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mapleir.dot4j.model.Compass;
+import org.mapleir.dot4j.parse.DotHandler.Scope;
+
+/**
+ * The grammar of {@link Parser}, reporting statements to a {@link DotHandler}
+ * instead of building a model.
+ */
+final class EventParser {
+    private final Lexer lexer;
+    private final DotHandler handler;
+    private final Map<String, String> attrs = new LinkedHashMap<>();
+    // ids of the nodes in each open subgraph, for edges to whole subgraphs
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+    private Token token;
+    private boolean directed;
+
+    EventParser(Lexer lexer, DotHandler handler) throws IOException {
+        this.lexer = lexer;
+        this.handler = handler;
+        nextToken();
+    }
+
+    void parse() throws IOException {
+        boolean strict = false;
+        if (token.type == STRICT) {
+            strict = true;
+            nextToken();
+        }
+        if (token.type == DIGRAPH) {
+            directed = true;
+        } else if (token.type != GRAPH) {
+            fail("'graph' or 'digraph' expected");
+        }
+        nextToken();
+        String name = null;
+        if (token.type == ID) {
+            name = id(token);
+            nextToken();
+        }
+        handler.startGraph(strict, directed, name);
+        statementList();
+        assertToken(EOF);
+        handler.endGraph();
+    }
+
+    private static String id(Token token) {
+        return token.subtype == SUB_HTML ? "<" + token.value + ">" : token.value;
+    }
+
+    private void statementList() throws IOException {
+        assertToken(BRACE_OPEN);
+        while (statement()) {
+            if (token.type == SEMICOLON) {
+                nextToken();
+            }
+        }
+        assertToken(BRACE_CLOSE);
+    }
+
+    private boolean statement() throws IOException {
+        final Token base = token;
+        switch (base.type) {
+            case ID:
+                nextToken();
+                if (token.type == EQUAL) {
+                    attrs.clear();
+                    attrs.put(base.value, id(nextToken(ID)));
+                    nextToken();
+                    handler.attributes(Scope.GRAPH, attrs);
+                } else {
+                    final Endpoint node = nodeId(base);
+                    if (token.type == MINUS_MINUS || token.type == ARROW) {
+                        edgeStatement(node);
+                    } else {
+                        attributeList();
+                        handler.node(node.ids.get(0), attrs);
+                    }
+                }
+                return true;
+            case SUBGRAPH:
+            case BRACE_OPEN:
+                final Endpoint sub = subgraph();
+                if (token.type == MINUS_MINUS || token.type == ARROW) {
+                    edgeStatement(sub);
+                }
+                return true;
+            case GRAPH:
+            case NODE:
+            case EDGE:
+                nextToken();
+                checkToken(BRACKET_OPEN);
+                attributeList();
+                handler.attributes(base.type == GRAPH ? Scope.GRAPH : base.type == NODE ? Scope.NODE : Scope.EDGE, attrs);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Endpoint subgraph() throws IOException {
+        String name = null;
+        if (token.type == SUBGRAPH) {
+            nextToken();
+            if (token.type == ID) {
+                name = id(token);
+                nextToken();
+            }
+        }
+        handler.startSubgraph(name);
+        scopes.push(new LinkedHashSet<>());
+        statementList();
+        final Set<String> members = scopes.pop();
+        handler.endSubgraph();
+        // the nodes of a subgraph are also nodes of the enclosing subgraph
+        if (!scopes.isEmpty()) {
+            scopes.peek().addAll(members);
+        }
+        return new Endpoint(new ArrayList<>(members), null);
+    }
+
+    private void edgeStatement(Endpoint source) throws IOException {
+        final List<Endpoint> points = new ArrayList<>();
+        points.add(source);
+        do {
+            if (directed && token.type == MINUS_MINUS) {
+                fail("-- used in digraph. Use -> instead.");
+            }
+            if (!directed && token.type == ARROW) {
+                fail("-> used in graph. Use -- instead.");
+            }
+            nextToken();
+            if (token.type == ID) {
+                final Token id = token;
+                nextToken();
+                points.add(nodeId(id));
+            } else if (token.type == SUBGRAPH || token.type == BRACE_OPEN) {
+                points.add(subgraph());
+            }
+        } while (token.type == MINUS_MINUS || token.type == ARROW);
+        attributeList();
+        for (int i = 0; i < points.size() - 1; i++) {
+            final Endpoint from = points.get(i), to = points.get(i + 1);
+            Map<String, String> edgeAttrs = attrs;
+            if (from.port != null || to.port != null) {
+                edgeAttrs = new LinkedHashMap<>(attrs);
+                if (from.port != null) {
+                    edgeAttrs.put("tailport", from.port);
+                }
+                if (to.port != null) {
+                    edgeAttrs.put("headport", to.port);
+                }
+            }
+            for (String f : from.ids) {
+                for (String t : to.ids) {
+                    handler.edge(f, t, edgeAttrs);
+                }
+            }
+        }
+    }
+
+    private Endpoint nodeId(Token base) throws IOException {
+        final String id = id(base);
+        if (!scopes.isEmpty()) {
+            scopes.peek().add(id);
+        }
+        String port = null;
+        if (token.type == COLON) {
+            final String second = nextToken(ID).value;
+            nextToken();
+            if (token.type == COLON) {
+                final String compass = nextToken(ID).value;
+                checkCompass(compass);
+                port = second + ":" + compass;
+                nextToken();
+            } else {
+                port = second;
+            }
+        }
+        return new Endpoint(Collections.singletonList(id), port);
+    }
+
+    private void checkCompass(String name) {
+        if (!Compass.of(name).isPresent()) {
+            fail("Invalid compass value '" + name + "'");
+        }
+    }
+
+    /**
+     * Reads the attribute lists, if any, into {@link #attrs}.
+     */
+    private void attributeList() throws IOException {
+        attrs.clear();
+        while (token.type == BRACKET_OPEN) {
+            nextToken();
+            while (token.type == ID) {
+                final String key = token.value;
+                nextToken(EQUAL);
+                attrs.put(key, id(nextToken(ID)));
+                nextToken();
+                if (token.type == SEMICOLON || token.type == COMMA) {
+                    nextToken();
+                }
+            }
+            assertToken(BRACKET_CLOSE);
+        }
+    }
+
+    private Token nextToken() throws IOException {
+        return token = lexer.token();
+    }
+
+    private Token nextToken(int type) throws IOException {
+        nextToken();
+        checkToken(type);
+        return token;
+    }
+
+    private Token assertToken(int type) throws IOException {
+        checkToken(type);
+        return nextToken();
+    }
+
+    private void checkToken(int type) {
+        if (token.type != type) {
+            fail("'" + Token.desc(type) + "' expected");
+        }
+    }
+
+    private void fail(String msg) {
+        throw new ParserException(lexer.pos, msg);
+    }
+
+    private static final class Endpoint {
+        final List<String> ids;
+        final String port;
+
+        Endpoint(List<String> ids, String port) {
+            this.ids = ids;
+            this.port = port;
+        }
+    }
+}
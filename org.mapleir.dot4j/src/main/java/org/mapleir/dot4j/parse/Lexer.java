@@ -3,218 +3,343 @@ package org.mapleir.dot4j.parse;
 import static org.mapleir.dot4j.parse.Token.*;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.util.HashMap;
-import java.util.Map;
 
+/**
+ * Splits dot source into {@link Token}s. The input is read in blocks into a
+ * char window rather than a char at a time, punctuation tokens are shared
+ * constants and identifiers, numerals and short quoted strings are interned,
+ * so a graph that mentions the same names over and over allocates a token for
+ * each name only once.
+ */
 class Lexer {
-    private static final Map<String, Integer> KEYWORDS = new HashMap<>();
+    private static final int EOF_CH = -1;
+    private static final int BUFFER_SIZE = 8192;
+    // longer quoted strings are usually labels, which rarely repeat
+    private static final int MAX_INTERNED_QUOTED = 64;
 
-    static {
-        KEYWORDS.put("strict", Token.STRICT);
-        KEYWORDS.put("graph", Token.GRAPH);
-        KEYWORDS.put("digraph", Token.DIGRAPH);
-        KEYWORDS.put("node", Token.NODE);
-        KEYWORDS.put("edge", Token.EDGE);
-        KEYWORDS.put("subgraph", Token.SUBGRAPH);
-    }
+    private static final Token
+            T_EOF = new Token(EOF, (char) EOF_CH),
+            T_SEMICOLON = new Token(SEMICOLON, ';'),
+            T_COMMA = new Token(COMMA, ','),
+            T_BRACE_OPEN = new Token(BRACE_OPEN, '{'),
+            T_BRACE_CLOSE = new Token(BRACE_CLOSE, '}'),
+            T_EQUAL = new Token(EQUAL, '='),
+            T_BRACKET_OPEN = new Token(BRACKET_OPEN, '['),
+            T_BRACKET_CLOSE = new Token(BRACKET_CLOSE, ']'),
+            T_COLON = new Token(COLON, ':'),
+            T_MINUS_MINUS = new Token(MINUS_MINUS, "--"),
+            T_ARROW = new Token(ARROW, "->");
+
+    private static final String[] KEYWORDS = {"strict", "graph", "digraph", "node", "edge", "subgraph"};
+    private static final int[] KEYWORD_TYPES = {STRICT, GRAPH, DIGRAPH, NODE, EDGE, SUBGRAPH};
 
-    private static final char CH_EOF = (char) -1;
-    private final PushbackReader in;
-    private char ch;
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int bufPos, bufLen;
+    private boolean lineStart = true;
     Position pos;
 
-    public Lexer(Reader in, String name) throws IOException {
-        this.in = new PushbackReader(in);
+    // text of the token being read
+    private char[] text = new char[64];
+    private int textLen;
+
+    // open addressed table of interned tokens, keyed by subtype and text
+    private Token[] table = new Token[256];
+    private int[] hashes = new int[256];
+    private int tableSize;
+
+    public Lexer(Reader in, String name) {
+        this.in = in;
         pos = new Position(name);
-        readChar();
     }
 
     public Token token() throws IOException {
-        final Token sym = symbol();
-        if (sym != null) {
-            readChar();
-            return sym;
-        }
-        return numeralOrIdent();
-    }
-
-    private Token symbol() throws IOException {
+        skipBlanks();
+        final int ch = peek();
         switch (ch) {
-            case CH_EOF:
-                return new Token(EOF, ch);
+            case EOF_CH:
+                return T_EOF;
             case ';':
-                return new Token(SEMICOLON, ch);
+                return symbol(T_SEMICOLON);
             case ',':
-                return new Token(COMMA, ch);
+                return symbol(T_COMMA);
             case '{':
-                return new Token(BRACE_OPEN, ch);
+                return symbol(T_BRACE_OPEN);
             case '}':
-                return new Token(BRACE_CLOSE, ch);
+                return symbol(T_BRACE_CLOSE);
             case '=':
-                return new Token(EQUAL, ch);
+                return symbol(T_EQUAL);
             case '[':
-                return new Token(BRACKET_OPEN, ch);
+                return symbol(T_BRACKET_OPEN);
             case ']':
-                return new Token(BRACKET_CLOSE, ch);
+                return symbol(T_BRACKET_CLOSE);
             case ':':
-                return new Token(COLON, ch);
+                return symbol(T_COLON);
             case '-':
-                final char next = readRawChar();
+                final int next = peek(1);
                 if (next == '-') {
-                    return new Token(MINUS_MINUS, "--");
+                    read();
+                    return symbol(T_MINUS_MINUS);
                 }
                 if (next == '>') {
-                    return new Token(ARROW, "->");
+                    read();
+                    return symbol(T_ARROW);
                 }
-                unread('-', next);
-                return null;
+                return numeral();
+            case '.':
+                return numeral();
+            case '"':
+                return quotedIdent();
+            case '<':
+                return htmlIdent();
             default:
-                return null;
+                if (isDigit(ch)) {
+                    return numeral();
+                }
+                if (isIdentStart(ch)) {
+                    return simpleIdent();
+                }
+                throw new ParserException(pos, "Found unexpected character '" + (char) ch + "'");
         }
     }
 
-    private Token numeralOrIdent() throws IOException {
-        if (ch == '-' || ch == '.' || (ch >= '0' && ch <= '9')) {
-            return numeral();
-        }
-        return ident();
+    private Token symbol(Token token) throws IOException {
+        read();
+        return token;
     }
 
     private Token numeral() throws IOException {
-        final StringBuilder s = new StringBuilder();
+        textLen = 0;
         do {
-            s.append(ch);
-            readRawChar();
-        } while (ch == '.' || (ch >= '0' && ch <= '9'));
-        sync();
-        return new Token(ID, SUB_NUMERAL, s.toString());
+            append(read());
+        } while (peek() == '.' || isDigit(peek()));
+        return intern(SUB_NUMERAL);
     }
 
-    private Token ident() throws IOException {
-        if (ch == '"') {
-            return quotedIdent();
+    private Token simpleIdent() throws IOException {
+        textLen = 0;
+        do {
+            append(read());
+        } while (isIdentStart(peek()) || isDigit(peek()));
+        return intern(SUB_SIMPLE);
+    }
+
+    private Token quotedIdent() throws IOException {
+        textLen = 0;
+        read();
+        int ch;
+        while ((ch = read()) != '"' && ch != EOF_CH) {
+            if (ch == '\\') {
+                final int next = peek();
+                if (next == '"') {
+                    append(read());
+                    continue;
+                }
+                if (next == '\n') {
+                    // line continuation
+                    read();
+                    continue;
+                }
+            }
+            append(ch);
         }
-        if (ch == '<') {
-            return htmlIdent();
+        if (textLen <= MAX_INTERNED_QUOTED) {
+            return intern(SUB_QUOTED);
         }
-        if (isIdentStart()) {
-            return simpleIdent();
+        return new Token(ID, SUB_QUOTED, new String(text, 0, textLen));
+    }
+
+    private Token htmlIdent() throws IOException {
+        textLen = 0;
+        read();
+        int level = 1;
+        int ch;
+        while ((ch = read()) != EOF_CH) {
+            if (ch == '<') {
+                level++;
+            } else if (ch == '>' && --level == 0) {
+                break;
+            }
+            append(ch);
         }
-        throw new ParserException(pos, "Found unexpected character '" + ch + "'");
+        return new Token(ID, SUB_HTML, new String(text, 0, textLen));
     }
 
-    private boolean isIdentStart() {
+    private static boolean isIdentStart(int ch) {
         return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= 128 && ch <= 255) || ch == '_';
     }
 
-    private Token quotedIdent() throws IOException {
-        final StringBuilder s = new StringBuilder();
-        readRawChar();
-        while (ch != '"' && ch != CH_EOF) {
-            s.append(ch);
-            readRawChar();
-            if (ch == '"' && s.charAt(s.length() - 1) == '\\') {
-                s.replace(s.length() - 1, s.length(), "\"");
-                readRawChar();
-            }
-            if (ch == '\n' && s.charAt(s.length() - 1) == '\\') {
-                s.delete(s.length() - 1, s.length());
-                readRawChar();
+    private static boolean isDigit(int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Skips whitespace, comments and, at the start of a line, preprocessor
+     * output lines (<code># ...</code>).
+     */
+    private void skipBlanks() throws IOException {
+        for (;;) {
+            final int ch = peek();
+            if (ch == EOF_CH) {
+                return;
+            } else if (ch <= ' ') {
+                read();
+            } else if (ch == '#' && lineStart) {
+                skipLine();
+            } else if (ch == '/' && peek(1) == '/') {
+                skipLine();
+            } else if (ch == '/' && peek(1) == '*') {
+                read();
+                read();
+                int c;
+                while ((c = read()) != EOF_CH) {
+                    if (c == '*' && peek() == '/') {
+                        read();
+                        break;
+                    }
+                }
+            } else {
+                return;
             }
         }
-        readChar();
-        return new Token(ID, SUB_QUOTED, s.toString());
     }
 
-    private Token htmlIdent() throws IOException {
-        final StringBuilder s = new StringBuilder();
-        int level = 1;
-        readRawChar();
-        level = htmlLevel(level, ch);
-        while ((ch != '>' || level > 0) && ch != CH_EOF) {
-            s.append(ch);
-            readRawChar();
-            level = htmlLevel(level, ch);
+    private void skipLine() throws IOException {
+        int ch;
+        do {
+            ch = read();
+        } while (ch != '\n' && ch != EOF_CH);
+    }
+
+    private void append(int ch) {
+        if (textLen == text.length) {
+            final char[] newText = new char[text.length * 2];
+            System.arraycopy(text, 0, newText, 0, textLen);
+            text = newText;
         }
-        readChar();
-        return new Token(ID, SUB_HTML, s.toString());
+        text[textLen++] = (char) ch;
     }
 
-    private int htmlLevel(int level, char ch) {
-        if (ch == '<') {
-            return level + 1;
+    private Token intern(int subtype) {
+        int hash = subtype;
+        for (int i = 0; i < textLen; i++) {
+            hash = 31 * hash + text[i];
         }
-        if (ch == '>') {
-            return level - 1;
+        final int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        Token t;
+        while ((t = table[slot]) != null) {
+            if (hashes[slot] == hash && textEquals(t.value) && subtypeOf(t) == subtype) {
+                return t;
+            }
+            slot = (slot + 1) & mask;
+        }
+        final String value = new String(text, 0, textLen);
+        t = subtype == SUB_SIMPLE ? keywordOrIdent(value) : new Token(ID, subtype, value);
+        table[slot] = t;
+        hashes[slot] = hash;
+        if (++tableSize * 2 > table.length) {
+            rehash();
         }
-        return level;
+        return t;
     }
 
-    private Token simpleIdent() throws IOException {
-        final StringBuilder s = new StringBuilder();
-        do {
-            s.append(ch);
-            readRawChar();
-        } while ((isIdentStart() || (ch >= '0' && ch <= '9')) && ch != CH_EOF);
-        sync();
-        final Integer key = KEYWORDS.get(s.toString().toLowerCase());
-        return key == null ? new Token(ID, SUB_SIMPLE, s.toString()) : new Token(key, s.toString());
+    private static int subtypeOf(Token t) {
+        // keywords are lexed as simple identifiers
+        return t.type == ID ? t.subtype : SUB_SIMPLE;
     }
 
-    private void sync() throws IOException {
-        if (ch <= ' ') {
-            readChar();
+    private static Token keywordOrIdent(String value) {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (KEYWORDS[i].equalsIgnoreCase(value)) {
+                return new Token(KEYWORD_TYPES[i], value);
+            }
         }
+        return new Token(ID, SUB_SIMPLE, value);
     }
 
-    private char readChar() throws IOException {
-        do {
-            readRawChar();
-            if (ch == '/') {
-                readComment();
-            } else if (ch == '\n') {
-                pos.newLine();
-                final char next = readRawChar();
-                if (next == '#') {
-                    do {
-                        readRawChar();
-                    } while (ch != '\n' && ch != CH_EOF);
-                } else {
-                    unread('\n', next);
+    private boolean textEquals(String value) {
+        if (value.length() != textLen) {
+            return false;
+        }
+        for (int i = 0; i < textLen; i++) {
+            if (value.charAt(i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        final Token[] oldTable = table;
+        final int[] oldHashes = hashes;
+        table = new Token[oldTable.length * 2];
+        hashes = new int[table.length];
+        final int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
                 }
+                table[slot] = oldTable[i];
+                hashes[slot] = oldHashes[i];
             }
-        } while (ch <= ' ' && ch != CH_EOF);
-        return ch;
+        }
     }
 
-    private void readComment() throws IOException {
-        final char next = readRawChar();
-        if (next == '/') {
-            do {
-                readRawChar();
-            } while (ch != '\n' && ch != CH_EOF);
-        } else if (next == '*') {
-            do {
-                do {
-                    readRawChar();
-                } while (ch != '*' && ch != CH_EOF);
-                readRawChar();
-            } while (ch != '/' && ch != CH_EOF);
-            readRawChar();
-        } else {
-            unread('/', next);
+    private int peek() throws IOException {
+        if (bufPos == bufLen && !fill()) {
+            return EOF_CH;
+        }
+        return buf[bufPos];
+    }
+
+    private int peek(int ahead) throws IOException {
+        if (bufPos + ahead >= bufLen && !fill()) {
+            return EOF_CH;
         }
+        return bufPos + ahead < bufLen ? buf[bufPos + ahead] : EOF_CH;
     }
 
-    private char readRawChar() throws IOException {
-        pos.newChar();
-        return ch = (char) in.read();
+    private int read() throws IOException {
+        final int ch = peek();
+        if (ch == EOF_CH) {
+            return ch;
+        }
+        bufPos++;
+        if (ch == '\n') {
+            pos.newLine();
+            lineStart = true;
+        } else {
+            pos.newChar();
+            if (ch > ' ') {
+                lineStart = false;
+            }
+        }
+        return ch;
     }
 
-    private void unread(char before, char next) throws IOException {
-        ch = before;
-        in.unread(next);
+    /**
+     * Moves the unread chars to the start of the window and reads more after
+     * them.
+     * @return whether any chars were read
+     */
+    private boolean fill() throws IOException {
+        final int remaining = bufLen - bufPos;
+        System.arraycopy(buf, bufPos, buf, 0, remaining);
+        bufPos = 0;
+        bufLen = remaining;
+        final int n = in.read(buf, remaining, buf.length - remaining);
+        if (n <= 0) {
+            return false;
+        }
+        bufLen += n;
+        return true;
     }
 }
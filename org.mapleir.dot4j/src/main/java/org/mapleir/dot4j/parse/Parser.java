@@ -40,6 +40,20 @@ public final class Parser {
         return new Parser(new Lexer(dot, name)).parse();
     }
 
+    /**
+     * Parses without building a model, passing each statement to the handler
+     * as it is read.
+     */
+    public static void parse(File file, DotHandler handler) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            parse(in, file.getName(), handler);
+        }
+    }
+
+    public static void parse(Reader dot, String name, DotHandler handler) throws IOException {
+        new EventParser(new Lexer(dot, name), handler).parse();
+    }
+
     private Parser(Lexer lexer) throws IOException {
         this.lexer = lexer;
         nextToken();
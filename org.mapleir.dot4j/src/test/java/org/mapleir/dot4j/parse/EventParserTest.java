@@ -0,0 +1,110 @@
+package org.mapleir.dot4j.parse;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class EventParserTest extends TestCase {
+
+    private static final class Recorder implements DotHandler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void startGraph(boolean strict, boolean directed, String name) {
+            events.add("graph " + strict + " " + directed + " " + name);
+        }
+
+        @Override
+        public void endGraph() {
+            events.add("end");
+        }
+
+        @Override
+        public void startSubgraph(String name) {
+            events.add("subgraph " + name);
+        }
+
+        @Override
+        public void endSubgraph() {
+            events.add("end subgraph");
+        }
+
+        @Override
+        public void attributes(Scope scope, Map<String, String> attrs) {
+            events.add(scope + " " + attrs);
+        }
+
+        @Override
+        public void node(String id, Map<String, String> attrs) {
+            events.add("node " + id + " " + attrs);
+        }
+
+        @Override
+        public void edge(String from, String to, Map<String, String> attrs) {
+            events.add(from + " -> " + to + " " + attrs);
+        }
+    }
+
+    private static List<String> parse(String dot) throws IOException {
+        final Recorder recorder = new Recorder();
+        Parser.parse(new StringReader(dot), "test", recorder);
+        return recorder.events;
+    }
+
+    public void testSubgraphEdges() throws IOException {
+        final List<String> events = parse("digraph g { a:p1 -> { b c } -> d:p2:n [color=red]; }");
+        assertEquals(Arrays.asList(
+                "graph false true g",
+                "subgraph null",
+                "node b {}",
+                "node c {}",
+                "end subgraph",
+                "a -> b {color=red, tailport=p1}",
+                "a -> c {color=red, tailport=p1}",
+                "b -> d {color=red, headport=p2:n}",
+                "c -> d {color=red, headport=p2:n}",
+                "end"), events);
+    }
+
+    public void testNestedSubgraph() throws IOException {
+        final List<String> events = parse("strict graph { subgraph s { x subgraph { y [shape=box] } } -- z:w }");
+        assertEquals(Arrays.asList(
+                "graph true false null",
+                "subgraph s",
+                "node x {}",
+                "subgraph null",
+                "node y {shape=box}",
+                "end subgraph",
+                "end subgraph",
+                "x -> z {headport=w}",
+                "y -> z {headport=w}",
+                "end"), events);
+    }
+
+    public void testStatements() throws IOException {
+        final List<String> events = parse("digraph { rankdir=LR; node [shape=box, label=<<b>x</b>>] a -> b -> c edge [style=dashed] }");
+        assertEquals(Arrays.asList(
+                "graph false true null",
+                "GRAPH {rankdir=LR}",
+                "NODE {shape=box, label=<<b>x</b>>}",
+                "a -> b {}",
+                "b -> c {}",
+                "EDGE {style=dashed}",
+                "end"), events);
+    }
+
+    public void testErrors() throws IOException {
+        for (String dot : new String[] { "digraph { a -- b }", "graph { a -> b }", "graph { a:p:up -- b }", "tree { }", "graph { a " }) {
+            try {
+                parse(dot);
+                fail(dot);
+            } catch (ParserException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.mapleir.dot4j.parse;
+
+import static org.mapleir.dot4j.parse.Token.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LexerTest extends TestCase {
+
+    private static List<Token> tokens(Reader in) throws IOException {
+        final Lexer lexer = new Lexer(in, "test");
+        final List<Token> tokens = new ArrayList<>();
+        Token t;
+        while ((t = lexer.token()).type != EOF) {
+            tokens.add(t);
+        }
+        return tokens;
+    }
+
+    private static List<Token> tokens(String s) throws IOException {
+        return tokens(new StringReader(s));
+    }
+
+    private static Token token(String s) throws IOException {
+        final List<Token> tokens = tokens(s);
+        assertEquals(tokens.toString(), 1, tokens.size());
+        return tokens.get(0);
+    }
+
+    private static String spaces(int n) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    public void testQuoted() throws IOException {
+        Token t = token("\"say \\\"hi\\\"\"");
+        assertEquals(ID, t.type);
+        assertEquals(SUB_QUOTED, t.subtype);
+        assertEquals("say \"hi\"", t.value);
+
+        // a backslash before a newline continues the line
+        assertEquals("abcd", token("\"ab\\\ncd\"").value);
+        // other escapes are kept as they are
+        assertEquals("a\\nb\\t", token("\"a\\nb\\t\"").value);
+        assertEquals("a\nb", token("\"a\nb\"").value);
+        assertEquals("", token("\"\"").value);
+    }
+
+    public void testHtml() throws IOException {
+        final Token t = token("<<b>bold</b> <i><u>x</u></i>>");
+        assertEquals(ID, t.type);
+        assertEquals(SUB_HTML, t.subtype);
+        assertEquals("<b>bold</b> <i><u>x</u></i>", t.value);
+
+        final List<Token> tokens = tokens("a=<x<y/>>;b");
+        assertEquals(5, tokens.size());
+        assertEquals("x<y/>", tokens.get(2).value);
+        assertEquals(SEMICOLON, tokens.get(3).type);
+    }
+
+    public void testPreprocessorLines() throws IOException {
+        assertEquals(tokens("a b"), tokens("#line 1 \"x.gv\"\n  # 2\na\n#b\nb"));
+        try {
+            tokens("a #b");
+            fail();
+        } catch (ParserException e) {
+        }
+        try {
+            tokens("a\n\"x\" # b");
+            fail();
+        } catch (ParserException e) {
+        }
+    }
+
+    public void testComments() throws IOException {
+        assertEquals(tokens("a b c d"), tokens("a // b -> c\nb /* c\n -> */ c/**/d // end"));
+        assertEquals(tokens("a -> b"), tokens("a /* unterminated */ -> b /* c"));
+        // not comments inside quoted strings
+        assertEquals("// x /* y */", token("\"// x /* y */\"").value);
+    }
+
+    public void testKeywords() throws IOException {
+        final List<Token> tokens = tokens("STRICT DiGraph Graph nOdE EDGE subGraph graphs _node");
+        final int[] types = { STRICT, DIGRAPH, GRAPH, NODE, EDGE, SUBGRAPH, ID, ID };
+        assertEquals(types.length, tokens.size());
+        for (int i = 0; i < types.length; i++) {
+            assertEquals(tokens.get(i).toString(), types[i], tokens.get(i).type);
+        }
+        assertEquals("DiGraph", tokens.get(1).value);
+        // quoted keywords are identifiers
+        assertEquals(ID, token("\"graph\"").type);
+    }
+
+    public void testSymbols() throws IOException {
+        final List<Token> tokens = tokens("a:n -> b -- -1.5 [x=.5];");
+        final int[] types = { ID, COLON, ID, ARROW, ID, MINUS_MINUS, ID, BRACKET_OPEN, ID, EQUAL, ID, BRACKET_CLOSE, SEMICOLON };
+        assertEquals(types.length, tokens.size());
+        for (int i = 0; i < types.length; i++) {
+            assertEquals(tokens.get(i).toString(), types[i], tokens.get(i).type);
+        }
+        assertEquals(SUB_NUMERAL, tokens.get(6).subtype);
+        assertEquals("-1.5", tokens.get(6).value);
+        assertEquals(".5", tokens.get(10).value);
+    }
+
+    public void testInterned() throws IOException {
+        final List<Token> tokens = tokens("abc \"abc\" abc \"abc\" 12 12");
+        assertSame(tokens.get(0), tokens.get(2));
+        assertSame(tokens.get(1), tokens.get(3));
+        assertSame(tokens.get(4), tokens.get(5));
+        assertNotSame(tokens.get(0), tokens.get(1));
+        assertEquals(SUB_SIMPLE, tokens.get(0).subtype);
+
+        // enough names to grow the table
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("n").append(i).append(' ');
+        }
+        final List<Token> many = tokens(sb.toString() + sb);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("n" + i, many.get(i).value);
+            assertSame(many.get(i), many.get(i + 1000));
+        }
+    }
+
+    public void testBufferBoundary() throws IOException {
+        // tokens which start in the first block read and end in the next one
+        for (int offset = 8185; offset < 8193; offset++) {
+            final String pad = spaces(offset);
+            assertEquals("identifier", token(pad + "identifier").value);
+            assertEquals("a \"b\" c", token(pad + "\"a \\\"b\\\" c\"").value);
+            assertEquals("x<y>z", token(pad + "<x<y>z>").value);
+            assertEquals(tokens("a -> b"), tokens(pad + "a->b"));
+            assertEquals(tokens("a b"), tokens(pad + "a/* x */b"));
+            assertEquals(tokens("a b"), tokens(pad + "a//x\nb"));
+        }
+
+        // a token longer than the block
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        final String label = sb.toString();
+        assertEquals(label, token("\"" + label + "\"").value);
+        assertEquals(label, token(label).value);
+    }
+
+    public void testShortReads() throws IOException {
+        final String dot = "digraph \"g\" {\n  a:n -> b [label=\"x\\\"y\"];\n  // c\n  <<b>h</b>> -- c\n}\n";
+        // a reader which returns a single char at a time
+        final Reader slow = new StringReader(dot) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(tokens(dot), tokens(slow));
+    }
+
+    public void testPosition() throws IOException {
+        final Lexer lexer = new Lexer(new StringReader("a\n/* x\n y */ b\n  c"), "test");
+        lexer.token();
+        lexer.token();
+        assertEquals("test:3:8", lexer.pos.toString());
+        lexer.token();
+        assertEquals("test:4:4", lexer.pos.toString());
+        try {
+            tokens("\n  a ?");
+            fail();
+        } catch (ParserException e) {
+            assertEquals("test:2:5", e.getPosition().toString());
+        }
+    }
+}
@@ -8,54 +8,106 @@ import java.util.*;
 
 /**
  * THIS IS NOT IMMUTABLE SO DON'T OVERRIDE HASHCODE/EQUALS!!!!
+ * 
+ * The nodes are kept in code order alongside a count of each node, so that
+ * membership queries don't have to scan the range. The graphs which have
+ * indexed the range are told when a node first joins or last leaves the range
+ * and when its handler changes, so that they can keep their range indices
+ * up to date.
  * @param <N>
  */
 public class ExceptionRange<N extends FastGraphVertex> {
 
 	private final List<N> nodes;
+	private final Map<N, Integer> counts;
 	private final Set<Type> types;
 	private N handler;
+	// see FlowGraph#getProtectingRanges
+	private final List<FlowGraph<N, ?>> graphs;
 	
 	public ExceptionRange() {
 		nodes = new ArrayList<>();
+		counts = new HashMap<>();
 		types = new HashSet<>();
+		graphs = new ArrayList<>(1);
 	}
 
 	public void setHandler(N b) {
-	
+		N old = handler;
 		handler = b;
+		if (old != b) {
+			for (FlowGraph<N, ?> g : graphs)
+				g.rangeHandlerChanged(this, old, b);
+		}
 	}
 	
 	public N getHandler() {
 		return handler;
 	}
 
+	void attach(FlowGraph<N, ?> g) {
+		graphs.add(g);
+	}
+
+	void detach(FlowGraph<N, ?> g) {
+		graphs.remove(g);
+	}
+
+	/**
+	 * @return the distinct nodes of the range, in no particular order
+	 */
+	Set<N> getNodeSet() {
+		return counts.keySet();
+	}
+
 	public boolean containsVertex(N b) {
-		return nodes.contains(b);
+		return counts.containsKey(b);
+	}
+	
+	private void added(N b) {
+		if (counts.merge(b, 1, Integer::sum) == 1) {
+			for (FlowGraph<N, ?> g : graphs)
+				g.rangeNodeAdded(this, b);
+		}
+	}
+	
+	private void addedAll(Collection<N> col) {
+		for (N b : col)
+			added(b);
 	}
 	
 	public void addVertex(N b) {
 		nodes.add(b);
+		added(b);
 	}
 	
 	public void addVertexAfter(N b, N s) {
-		nodes.add(nodes.indexOf(b), s);
+		nodes.add(nodes.indexOf(b) + 1, s);
+		added(s);
 	}
 	
 	public void addVertexBefore(N b, N s) {
 		nodes.add(nodes.indexOf(b), s);
+		added(s);
 	}
 	
 	public void addVertices(Collection<N> col) {
 		nodes.addAll(col);
+		addedAll(col);
 	}
 	
 	public void addVertices(N pos, Collection<N> col) {
 		nodes.addAll(nodes.indexOf(pos), col);
+		addedAll(col);
 	}
 	
 	public void removeVertex(N b) {
-		nodes.remove(b);
+		if (nodes.remove(b)) {
+			if (counts.computeIfPresent(b, (k, c) -> c == 1 ? null : c - 1) == null) {
+				for (FlowGraph<N, ?> g : graphs)
+					g.rangeNodeRemoved(this, b);
+			}
+		}
 	}
 	
 	public Set<Type> getTypes() {
@@ -76,17 +128,22 @@ public class ExceptionRange<N extends FastGraphVertex> {
 	}
 
 	public void clearNodes() {
+		for (FlowGraph<N, ?> g : graphs) {
+			for (N b : counts.keySet())
+				g.rangeNodeRemoved(this, b);
+		}
 		nodes.clear();
+		counts.clear();
 	}
 
 	public void reset() {
-		nodes.clear();
+		clearNodes();
 		types.clear();
-		handler = null;
+		setHandler(null);
 	}
 
 	public boolean isCircular() {
-		return nodes.contains(handler);
+		return handler != null && counts.containsKey(handler);
 	}
 
 	@Override
@@ -13,7 +13,10 @@ import java.util.*;
 
 public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>> extends FastDirectedGraph<N, E> implements ValueCreator<GenericBitSet<N>> {
 	
-	protected final List<ExceptionRange<N>> ranges;
+	/* the ranges in the order they were added, each with its position in
+	 * that order, which orders the ranges in the range index. */
+	private final Map<ExceptionRange<N>, Long> ranges;
+	private long rangeCounter;
 	protected final Set<N> entries;
 	
 	protected final BitSetIndexer<N> indexer;
@@ -21,7 +24,7 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	protected final BitSet indexedSet;
 	
 	public FlowGraph() {
-		ranges = new ArrayList<>();
+		ranges = new LinkedHashMap<>();
 		entries = new HashSet<>();
 
 		indexer = new FastGraphVertexBitSetIndexer();
@@ -32,7 +35,8 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	public FlowGraph(FlowGraph<N, E> g) {
 		super(g);
 		
-		ranges = new ArrayList<>(g.ranges);
+		ranges = new LinkedHashMap<>(g.ranges);
+		rangeCounter = g.rangeCounter;
 		entries = new HashSet<>(g.entries);
 
 		indexer = g.indexer;
@@ -56,17 +60,118 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	}
 	
 	public void addRange(ExceptionRange<N> range) {
-		if(!ranges.contains(range)) {
-			ranges.add(range);
+		if (!ranges.containsKey(range)) {
+			ranges.put(range, rangeCounter++);
+			if (protectingIndex != null) {
+				range.attach(this);
+				for (N n : range.getNodeSet())
+					index(protectingIndex, n, range);
+				if (range.getHandler() != null)
+					index(handlerIndex, range.getHandler(), range);
+			}
 		}
 	}
 	
 	public void removeRange(ExceptionRange<N> range) {
-		ranges.remove(range);
+		if (ranges.containsKey(range)) {
+			if (protectingIndex != null) {
+				for (N n : range.getNodeSet())
+					unindex(protectingIndex, n, range);
+				if (range.getHandler() != null)
+					unindex(handlerIndex, range.getHandler(), range);
+				range.detach(this);
+			}
+			ranges.remove(range);
+		}
 	}
 	
 	public List<ExceptionRange<N>> getRanges() {
-		return new ArrayList<>(ranges);
+		return new ArrayList<>(ranges.keySet());
+	}
+
+	public boolean hasRanges() {
+		return !ranges.isEmpty();
+	}
+
+	/* Index from each node to the ranges that cover it and from each handler
+	 * to the ranges it handles, in range order. It's built when it's first
+	 * needed and then kept up to date as ranges are added and removed and as
+	 * the ranges tell the graph that their nodes or handlers have changed, so
+	 * editing a range in place never rebuilds it. A graph only registers with
+	 * its ranges once it has an index to keep up to date, so that a copy which
+	 * never asks for its ranges (see DominanceLivenessAnalyser#reduce) isn't
+	 * kept alive by the ranges it shares with the original. */
+	private Map<N, List<ExceptionRange<N>>> protectingIndex;
+	private Map<N, List<ExceptionRange<N>>> handlerIndex;
+
+	private void buildRangeIndex() {
+		if (protectingIndex != null)
+			return;
+
+		protectingIndex = new HashMap<>();
+		handlerIndex = new HashMap<>();
+		for (ExceptionRange<N> er : ranges.keySet()) {
+			er.attach(this);
+			for (N n : er.getNodeSet())
+				protectingIndex.computeIfAbsent(n, k -> new ArrayList<>()).add(er);
+			if (er.getHandler() != null)
+				handlerIndex.computeIfAbsent(er.getHandler(), k -> new ArrayList<>()).add(er);
+		}
+	}
+
+	// inserts the range into the list of the node, keeping it in range order
+	private void index(Map<N, List<ExceptionRange<N>>> index, N n, ExceptionRange<N> er) {
+		List<ExceptionRange<N>> list = index.computeIfAbsent(n, k -> new ArrayList<>());
+		long pos = ranges.get(er);
+		int i = list.size();
+		while (i > 0 && ranges.get(list.get(i - 1)) > pos)
+			i--;
+		list.add(i, er);
+	}
+
+	private void unindex(Map<N, List<ExceptionRange<N>>> index, N n, ExceptionRange<N> er) {
+		List<ExceptionRange<N>> list = index.get(n);
+		if (list != null && list.remove(er) && list.isEmpty())
+			index.remove(n);
+	}
+
+	void rangeNodeAdded(ExceptionRange<N> er, N n) {
+		if (protectingIndex != null)
+			index(protectingIndex, n, er);
+	}
+
+	void rangeNodeRemoved(ExceptionRange<N> er, N n) {
+		if (protectingIndex != null)
+			unindex(protectingIndex, n, er);
+	}
+
+	void rangeHandlerChanged(ExceptionRange<N> er, N old, N handler) {
+		if (protectingIndex != null) {
+			if (old != null)
+				unindex(handlerIndex, old, er);
+			if (handler != null)
+				index(handlerIndex, handler, er);
+		}
+	}
+
+	/**
+	 * @param n a node
+	 * @return the ranges covering the node, in the order they were added
+	 */
+	public List<ExceptionRange<N>> getProtectingRanges(N n) {
+		buildRangeIndex();
+		List<ExceptionRange<N>> covering = protectingIndex.get(n);
+		return covering == null ? new ArrayList<>() : new ArrayList<>(covering);
+	}
+
+	/**
+	 * @param n a node
+	 * @return the ranges for which the node is the handler
+	 */
+	public List<ExceptionRange<N>> getHandledRanges(N n) {
+		buildRangeIndex();
+		List<ExceptionRange<N>> handled = handlerIndex.get(n);
+		return handled == null ? new ArrayList<>() : new ArrayList<>(handled);
 	}
 	
 	@Override
@@ -111,15 +216,12 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	
 	@Override
 	public void removeVertex(N v) {
-		ListIterator<ExceptionRange<N>> it = ranges.listIterator();
-		while(it.hasNext()) {
-			ExceptionRange<N> r = it.next();
-			if (r.containsVertex(v)) {
+		// the ranges patch the index as the node leaves them
+		for (ExceptionRange<N> r : getProtectingRanges(v)) {
+			while (r.containsVertex(v))
 				r.removeVertex(v);
-				if (r.getNodes().isEmpty()) {
-					it.remove();
-				}
-			}
+			if (r.getNodes().isEmpty())
+				removeRange(r);
 		}
 		
 		entries.remove(v);
@@ -1,5 +1,8 @@
 package org.mapleir.ir.algorithms;
 
+import org.apache.log4j.Logger;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.FlowEdges;
 import org.mapleir.ir.TypeUtils;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
@@ -11,12 +14,21 @@ import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
 import org.mapleir.ir.locals.Local;
 import org.mapleir.ir.locals.LocalsPool;
 import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.mapleir.stdlib.collections.bitset.GenericBitSet;
 import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.objectweb.asm.Type;
 
 import java.util.*;
 
+/**
+ * Assigns JVM local variable slots to the locals of a graph which has been
+ * taken out of SSA form. Parameters keep their slots and the remaining locals
+ * are packed into as few slots as possible by colouring their interference
+ * graph, built from the liveness computed by {@link SSABlockLivenessAnalyser}.
+ */
 public class LocalsReallocator {
+    private static final Logger LOGGER = Logger.getLogger(LocalsReallocator.class);
+
     public static int realloc(ControlFlowGraph cfg) {
         LocalsPool locals = cfg.getLocals();
         NullPermeableHashMap<Local, Set<Type>> types = new NullPermeableHashMap<>(HashSet::new);
@@ -95,41 +107,185 @@ public class LocalsReallocator {
 //			System.out.println(e.getKey() + "  ==  " + e.getValue());
 //		}
 
-        // lvars then svars, ordered of course,
-        List<Local> wl = new ArrayList<>(stypes.keySet());
-//		System.out.println("safe: " + safe);
-        wl.sort(new Comparator<Local>() {
-            @Override
-            public int compare(Local o1, Local o2) {
-                boolean s1 = safe.contains(o1);
-                boolean s2 = safe.contains(o2);
-
-                if (s1 && !s2) {
-                    return -1;
-                } else if (!s1 && s2) {
-                    return 1;
-                } else {
-                    return o1.compareTo(o2);
-                }
-            }
-        });
-//		System.out.println("wl: " + wl);
+        // the parameters keep their slots, everything else is packed in after them.
+        List<Local> params = new ArrayList<>();
+        List<Local> wl = new ArrayList<>();
+        for(Local l : stypes.keySet()) {
+            (safe.contains(l) ? params : wl).add(l);
+        }
+        Collections.sort(params);
 
-        Map<Local, Local> remap = new HashMap<>();
+        Map<Local, Integer> slots = new HashMap<>();
         int idx = min;
+        for(Local l : params) {
+            slots.put(l, idx);
+            idx += stypes.get(l).getSize();
+        }
+
+        int sequential = idx;
         for(Local l : wl) {
-            Type type = stypes.get(l);
-            Local newL = locals.get(idx, false);
+            sequential += stypes.get(l).getSize();
+        }
+
+        idx = colour(cfg, stypes, wl, slots, idx);
+
+        if(LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("%s.%s%s: %d slots, %d saved", cfg.getOwner(), cfg.getName(), cfg.getDesc(), idx, sequential - idx));
+        }
+
+        Map<Local, Local> remap = new HashMap<>();
+        for(Map.Entry<Local, Integer> e : slots.entrySet()) {
+            Local l = e.getKey();
+            Local newL = locals.get(e.getValue(), false);
             if(l != newL) {
                 remap.put(l, newL);
             }
-            idx += type.getSize();
         }
         remap(cfg, remap);
 
         return idx;
     }
 
+    /**
+     * Assigns slots to the given locals by greedily colouring their
+     * interference graph. A slot is only shared between locals of the same
+     * simple type, so wide locals only ever share both of their slots with
+     * other wide locals of the same type.
+     *
+     * @param cfg the graph
+     * @param stypes the types of the locals
+     * @param wl the locals to allocate
+     * @param slots the assigned slots, the locals already in the map keep
+     *        their slots and are never shared
+     * @param base the first free slot
+     * @return the number of slots used
+     */
+    private static int colour(ControlFlowGraph cfg, Map<Local, Type> stypes, List<Local> wl, Map<Local, Integer> slots, int base) {
+        NullPermeableHashMap<Local, GenericBitSet<Local>> graph = buildInterferenceGraph(cfg);
+
+        // smallest last ordering: repeatedly remove the local with the fewest
+        // remaining neighbours and colour in the reverse order of removal.
+        Map<Local, Integer> degrees = new HashMap<>();
+        TreeSet<Local> queue = new TreeSet<>((o1, o2) -> {
+            int c = Integer.compare(degrees.get(o1), degrees.get(o2));
+            return c != 0 ? c : o1.compareTo(o2);
+        });
+        Set<Local> remaining = new HashSet<>(wl);
+        for(Local l : wl) {
+            int degree = 0;
+            for(Local n : graph.getNonNull(l)) {
+                if(remaining.contains(n)) {
+                    degree++;
+                }
+            }
+            degrees.put(l, degree);
+        }
+        queue.addAll(wl);
+
+        LinkedList<Local> order = new LinkedList<>();
+        while(!queue.isEmpty()) {
+            Local l = queue.pollFirst();
+            remaining.remove(l);
+            order.addFirst(l);
+            for(Local n : graph.getNonNull(l)) {
+                if(remaining.contains(n)) {
+                    queue.remove(n);
+                    degrees.put(n, degrees.get(n) - 1);
+                    queue.add(n);
+                }
+            }
+        }
+
+        // the slots handed out so far for each simple type.
+        NullPermeableHashMap<Type, List<Integer>> classes = new NullPermeableHashMap<>(ArrayList::new);
+        int idx = base;
+        for(Local l : order) {
+            Type type = stypes.get(l);
+            Set<Integer> taken = new HashSet<>();
+            for(Local n : graph.getNonNull(l)) {
+                Integer s = slots.get(n);
+                if(s != null) {
+                    taken.add(s);
+                }
+            }
+
+            List<Integer> candidates = classes.getNonNull(TypeUtils.asSimpleType(type));
+            Integer slot = null;
+            for(Integer s : candidates) {
+                if(!taken.contains(s)) {
+                    slot = s;
+                    break;
+                }
+            }
+            if(slot == null) {
+                slot = idx;
+                candidates.add(slot);
+                idx += type.getSize();
+            }
+            slots.put(l, slot);
+        }
+        return idx;
+    }
+
+    private static NullPermeableHashMap<Local, GenericBitSet<Local>> buildInterferenceGraph(ControlFlowGraph cfg) {
+        LocalsPool locals = cfg.getLocals();
+        SSABlockLivenessAnalyser liveness = new SSABlockLivenessAnalyser(cfg);
+        liveness.compute();
+
+        NullPermeableHashMap<Local, GenericBitSet<Local>> graph = new NullPermeableHashMap<>(locals);
+
+        for(BasicBlock b : cfg.vertices()) {
+            // an exception may be thrown part way through the block, so
+            // whatever is live in the handlers is live throughout it.
+            GenericBitSet<Local> handlerLive = locals.createBitSet();
+            for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+                if(e.getType() == FlowEdges.TRYCATCH) {
+                    handlerLive.addAll(liveness.in(e.dst()));
+                }
+            }
+
+            GenericBitSet<Local> live = new GenericBitSet<>(liveness.out(b));
+            ListIterator<Stmt> it = b.listIterator(b.size());
+            while(it.hasPrevious()) {
+                Stmt stmt = it.previous();
+                live.addAll(handlerLive);
+
+                if(stmt.getOpcode() == Opcode.LOCAL_STORE) {
+                    CopyVarStmt copy = (CopyVarStmt) stmt;
+                    Local def = copy.getVariable().getLocal();
+                    // the source of a plain copy may share a slot with the
+                    // target as they hold the same value.
+                    Expr rhs = copy.getExpression();
+                    Local src = rhs.getOpcode() == Opcode.LOCAL_LOAD ? ((VarExpr) rhs).getLocal() : null;
+
+                    GenericBitSet<Local> adj = graph.getNonNull(def);
+                    for(Local l : live) {
+                        if(l != def && l != src) {
+                            adj.add(l);
+                            graph.getNonNull(l).add(def);
+                        }
+                    }
+                    live.remove(def);
+                }
+
+                for(Expr s : stmt.enumerateOnlyChildren()) {
+                    if(s.getOpcode() == Opcode.LOCAL_LOAD) {
+                        live.add(((VarExpr) s).getLocal());
+                    }
+                }
+            }
+            live.addAll(handlerLive);
+
+            // anything live on entry to the method is live at the same time.
+            if(cfg.getEntries().contains(b)) {
+                for(Local l : live) {
+                    graph.getNonNull(l).addAll(live.relativeComplement(l));
+                }
+            }
+        }
+        return graph;
+    }
+
     public static void remap(ControlFlowGraph cfg, Map<? extends Local, ? extends Local> remap) {
         for(BasicBlock b : cfg.vertices()) {
             for(Stmt stmt : b) {
@@ -1,9 +1,11 @@
 package org.mapleir.ir.algorithms;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import org.mapleir.flowgraph.edges.FlowEdge;
 import org.mapleir.flowgraph.edges.FlowEdges;
@@ -37,6 +39,8 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 	private final NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> in;
 
 	private final Queue<BasicBlock> queue;
+	// the blocks in the queue, as contains() on the queue is linear
+	private final Set<BasicBlock> queued;
 	private final LocalsPool locals;
 
 	private final ControlFlowGraph cfg;
@@ -52,6 +56,7 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 		in = new NullPermeableHashMap<>(locals);
 
 		queue = new LinkedList<>();
+		queued = new HashSet<>();
 
 		this.cfg = cfg;
 
@@ -59,7 +64,7 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 	}
 
 	private void enqueue(BasicBlock b) {
-		if (!queue.contains(b)) {
+		if (queued.add(b)) {
 			// System.out.println("Enqueue " + b);
 			queue.add(b);
 		}
@@ -152,6 +157,7 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 		// negative handling always goes after positive and any adds
 		while (!queue.isEmpty()) {
 			BasicBlock b = queue.remove();
+			queued.remove(b);
 			// System.out.println("\n\nProcessing " + b.getId());
 
 			GenericBitSet<Local> oldIn = new GenericBitSet<>(in.get(b));
@@ -31,10 +31,14 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 		this.cfg = cfg;
 		this.id = cfg.makeBlockId();
 		statements = new NotifiedList<>(
-				(s) -> s.setBlock(this),
+				(s) -> {
+					s.setBlock(this);
+					cfg.codeModified();
+				},
 				(s) -> {
 					if (s.getBlock() == this)
 						s.setBlock(null);
+					cfg.codeModified();
 				}
 		);
 	}
@@ -64,25 +68,39 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 	}
 
 	public void transfer(BasicBlock dst) {
-		Iterator<Stmt> it = statements.iterator();
-		while(it.hasNext()) {
-			Stmt s = it.next();
-			it.remove();
-			dst.add(s);
-			assert (s.getBlock() == dst);
-		}
+		transferUpto(dst, statements.size());
 	}
 
 	/**
 	 * Transfers statements up to index `to`, exclusively, to block `dst`.
 	 */
 	public void transferUpto(BasicBlock dst, int to) {
-		// FIXME: faster
-		for(int i=to - 1; i >= 0; i--) {
-			Stmt s = remove(0);
+		transferRange(dst, 0, to);
+	}
+
+	/**
+	 * Transfers statements from index `from` to the end of this block to block `dst`.
+	 */
+	public void transferFrom(BasicBlock dst, int from) {
+		transferRange(dst, from, statements.size());
+	}
+
+	// appends the statements in [from, to) to dst and then drops them from this
+	// block with one shift, rather than one per statement.
+	private void transferRange(BasicBlock dst, int from, int to) {
+		if (dst == this)
+			throw new IllegalArgumentException("Transfer to self");
+		if (from == to)
+			return;
+		dst.statements.ensureCapacity(dst.statements.size() + (to - from));
+		for (int i = from; i < to; i++) {
+			Stmt s = statements.get(i);
 			dst.add(s);
 			assert (s.getBlock() == dst);
 		}
+		// the removal callback leaves the statements alone as they now belong to dst
+		statements.removeRange(from, to);
+		renumber(from);
 	}
 
 	@Override
@@ -136,19 +154,67 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 				throw new IllegalStateException("Orphaned child " + stmt);
 	}
 
+	// Numbers the statements from index `from` to the end of the block. Every
+	// insertion or removal renumbers the statements it shifts, which costs no
+	// more than the shift itself, so the hints are kept exact and indexOf is
+	// constant time.
+	private void renumber(int from) {
+		for (int i = from; i < statements.size(); i++) {
+			Stmt s = statements.get(i);
+			if (s != null)
+				s.setIndexHint(i);
+		}
+	}
+
+	private boolean isAt(Stmt s, int index) {
+		return index >= 0 && index < statements.size() && statements.get(index) == s;
+	}
+
+	/**
+	 * Inserts a statement directly before another one in this block.
+	 * @param pos the statement to insert before
+	 * @param stmt the statement to insert
+	 */
+	public void insertBefore(Stmt pos, Stmt stmt) {
+		int index = indexOf(pos);
+		if (index == -1)
+			throw new IllegalArgumentException(pos + " not in " + this);
+		add(index, stmt);
+	}
+
+	/**
+	 * Inserts a statement directly after another one in this block.
+	 * @param pos the statement to insert after
+	 * @param stmt the statement to insert
+	 */
+	public void insertAfter(Stmt pos, Stmt stmt) {
+		int index = indexOf(pos);
+		if (index == -1)
+			throw new IllegalArgumentException(pos + " not in " + this);
+		add(index + 1, stmt);
+	}
+
 	// List functions
 	@Override
 	public boolean add(Stmt stmt) {
-		return statements.add(stmt);
+		boolean ret = statements.add(stmt);
+		if (stmt != null)
+			stmt.setIndexHint(statements.size() - 1);
+		return ret;
 	}
 
 	public void add(int index, Stmt stmt) {
 		statements.add(index, stmt);
+		renumber(index);
 	}
 
 	@Override
 	public boolean remove(Object o) {
-		return statements.remove(o);
+		int index = indexOf(o);
+		if (index == -1)
+			return false;
+		remove(index);
+		return true;
 	}
 
 	@Override
@@ -158,30 +224,41 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 
 	@Override
 	public boolean addAll(Collection<? extends Stmt> c) {
-		return statements.addAll(c);
+		int index = statements.size();
+		boolean ret = statements.addAll(c);
+		renumber(index);
+		return ret;
 	}
 
 	public boolean addAll(int index, Collection<? extends Stmt> c) {
-		return statements.addAll(index, c);
+		boolean ret = statements.addAll(index, c);
+		renumber(index);
+		return ret;
 	}
 
 	@Override
 	public boolean removeAll(Collection<?> c) {
-		return statements.removeAll(c);
+		boolean ret = statements.removeAll(c);
+		renumber(0);
+		return ret;
 	}
 
 	@Override
 	public boolean retainAll(Collection<?> c) {
-		return statements.retainAll(c);
+		boolean ret = statements.retainAll(c);
+		renumber(0);
+		return ret;
 	}
 
 	public Stmt remove(int index) {
-		return statements.remove(index);
+		Stmt s = statements.remove(index);
+		renumber(index);
+		return s;
 	}
 
 	@Override
 	public boolean contains(Object o) {
-		return statements.contains(o);
+		return indexOf(o) != -1;
 	}
 
 	@Override
@@ -189,7 +266,23 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 		return statements.isEmpty();
 	}
 
+	/**
+	 * Finds the index of a statement in this block. This is constant time, as
+	 * the block keeps the positions of its statements up to date, unless the
+	 * statements were moved through a list iterator, in which case the block
+	 * is renumbered once.
+	 */
 	public int indexOf(Object o) {
+		if (o instanceof Stmt) {
+			Stmt s = (Stmt) o;
+			if (s.getBlock() == this) {
+				if (isAt(s, s.getIndexHint()))
+					return s.getIndexHint();
+				renumber(0);
+				if (isAt(s, s.getIndexHint()))
+					return s.getIndexHint();
+			}
+		}
 		return statements.indexOf(o);
 	}
 
@@ -202,7 +295,10 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 	}
 
 	public Stmt set(int index, Stmt stmt) {
-		return statements.set(index, stmt);
+		Stmt old = statements.set(index, stmt);
+		if (stmt != null)
+			stmt.setIndexHint(index);
+		return old;
 	}
 
 	@Override
@@ -41,6 +41,9 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 	// used for assigning unique id's to basicblocks. ugly hack
 	// fyi, we start at one arbitrarily.
 	private int blockCounter = 1;
+	// bumped whenever a statement is added to or removed from a block, or an
+	// expression is rewritten, so that analyses can tell their results apart
+	private int codeModCount;
 
 	public ControlFlowGraph(LocalsPool locals, JavaDesc javaDesc) {
 		this.locals = locals;
@@ -57,6 +60,22 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 		return blockCounter++;
 	}
 
+	/**
+	 * @return a stamp that changes whenever the code in this graph changes.
+	 * Structural changes that leave the statements alone, i.e. to edges, are
+	 * not counted.
+	 */
+	public int getCodeModCount() {
+		return codeModCount;
+	}
+
+	/**
+	 * Called by blocks and code units of this graph when they are modified.
+	 */
+	public void codeModified() {
+		codeModCount++;
+	}
+
     public Stream<CodeUnit> allExprStream() {
    		return vertices().stream().flatMap(Collection::stream).map(Stmt::enumerateWithSelf).flatMap(Streams::stream);
    	}
@@ -135,9 +154,18 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 	@Override
 	public String toString() {
 		TabbedStringWriter sw = new TabbedStringWriter();
-		
+		toString(sw);
+		return sw.toString();
+	}
+
+	/**
+	 * Prints the ranges and blocks of the graph, the writer may stream the
+	 * text straight out to a file.
+	 * @param sw the writer
+	 */
+	public void toString(TabbedStringWriter sw) {
 		for(ExceptionRange<BasicBlock> r : getRanges()) {
-			sw.print(r.toString() + "\n");
+			sw.print(r.toString()).print('\n');
 		}
 		
 		int insn = 0;
@@ -145,7 +173,6 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 		for(BasicBlock b : verticesInOrder()) {
 			CFGUtils.blockToString(sw, this, b, insn);
 		}
-		return sw.toString();
 	}
 
 	public LocalsPool getLocals() {
@@ -389,16 +416,6 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 		return false;
 	}
 
-	public List<ExceptionRange<BasicBlock>> getProtectingRanges(BasicBlock b) {
-		List<ExceptionRange<BasicBlock>> ranges = new ArrayList<>();
-		for(ExceptionRange<BasicBlock> er : getRanges()) {
-			if(er.containsVertex(b)) {
-				ranges.add(er);
-			}
-		}
-		return ranges;
-	}
-	
 	@Override
 	public DotGraph makeDotGraph(IPropertyDictionary properties) {
 		return CFGExporterUtils.makeDotGraph(this, properties);
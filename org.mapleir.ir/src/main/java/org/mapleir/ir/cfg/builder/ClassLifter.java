@@ -0,0 +1,108 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Reads a class and hands the code of each of its methods to the consumer,
+ * to be lifted, as soon as the code of the method has been parsed, so that
+ * the code is never held as an ASM tree.
+ *
+ * The class that is read has the fields and methods of the class, but the
+ * methods have no instructions or exception ranges, as their code is only
+ * kept in the graphs lifted from it. The class can therefore only be
+ * written out again by emitting the code from the graphs. If the consumer
+ * throws, e.g. as the method has a jsr, the code is kept in the method as an
+ * ASM tree instead, so it can be written as it was read.
+ */
+public class ClassLifter extends ClassVisitor {
+
+	private static final Logger LOGGER = Logger.getLogger(ClassLifter.class);
+
+	private final ClassNode cn;
+	private final BiConsumer<MethodNode, CodeStream> consumer;
+
+	public ClassLifter(BiConsumer<MethodNode, CodeStream> consumer) {
+		this(new ClassNode(), consumer);
+	}
+
+	private ClassLifter(ClassNode cn, BiConsumer<MethodNode, CodeStream> consumer) {
+		super(Opcodes.ASM7, cn.node);
+		this.cn = cn;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * @return the class which has been read
+	 */
+	public ClassNode getClassNode() {
+		return cn;
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+		FieldVisitor fv = super.visitField(access, name, descriptor, signature, value);
+		cn.getFields().add(new FieldNode((org.objectweb.asm.tree.FieldNode) fv, cn));
+		return fv;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		org.objectweb.asm.tree.MethodNode mn = (org.objectweb.asm.tree.MethodNode) super.visitMethod(access, name, descriptor, signature, exceptions);
+		/* added to the list directly rather than by addMethod as the class
+		 * hasn't been changed. */
+		MethodNode m = new MethodNode(mn, cn);
+		cn.getMethods().add(m);
+		return new CodeStream(mn) {
+			@Override
+			public void visitEnd() {
+				super.visitEnd();
+				if(hasCode()) {
+					try {
+						consumer.accept(m, this);
+					} catch(RuntimeException e) {
+						/* e.g. jsr or malformed code, the rest of the class
+						 * is still lifted and the method keeps its code. */
+						LOGGER.warn(String.format("Couldn't lift %s, keeping its code: %s", m, e));
+						accept(mn);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Reads a class without its frames and debug information, like
+	 * {@link org.mapleir.asm.ClassHelper#create(byte[])}.
+	 *
+	 * @param bytes the class file
+	 * @param consumer given each method that has code and its code, which
+	 * can be lifted with {@link ControlFlowGraphBuilder#build(MethodNode, CodeStream)}
+	 * @return the class without the code of the methods that were lifted
+	 */
+	public static ClassNode read(byte[] bytes, BiConsumer<MethodNode, CodeStream> consumer) {
+		ClassLifter lifter = new ClassLifter(consumer);
+		new ClassReader(bytes).accept(lifter, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+		return lifter.getClassNode();
+	}
+
+	/**
+	 * Reads a class as {@link #read(byte[], BiConsumer)} and lifts each of
+	 * its methods.
+	 *
+	 * @param consumer given each method that has code and its graph
+	 */
+	public static ClassNode lift(byte[] bytes, BiConsumer<MethodNode, ControlFlowGraph> consumer) {
+		return read(bytes, (m, code) -> consumer.accept(m, ControlFlowGraphBuilder.build(m, code)));
+	}
+}
@@ -0,0 +1,415 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.tree.AbstractInsnNode.*;
+
+/**
+ * Records the code of a method from the events of a {@link MethodVisitor},
+ * such as a ClassReader produces while it parses a class, in a few flat
+ * arrays instead of an InsnList, so that the method can be lifted by a
+ * {@link StreamGenerationPass} without building the ASM tree of its code.
+ *
+ * Labels are only kept as the position of the instruction which follows
+ * them. When the code ends, a pre-pass over the recorded instructions marks
+ * the leaders: the entry, the targets of jumps and switches, the instructions
+ * after conditional jumps and the bounds and handlers of the exception
+ * ranges. Only these begin blocks when the code is lifted.
+ *
+ * Every event other than the code (annotations, parameters, attributes) is
+ * passed on to the given visitor.
+ */
+public class CodeStream extends MethodVisitor {
+
+	/* instruction i has opcode opcodes[i], is of the kind (as in
+	 * AbstractInsnNode) kinds[i] and has its operands in operands[i] (ints,
+	 * such as local indices and label ids) and args[i] (everything else). */
+	int size;
+	int[] opcodes;
+	byte[] kinds;
+	int[] operands;
+	Object[] args;
+
+	/* label id -> the position of the next instruction */
+	private int[] labelPositions;
+	private final Map<Label, Integer> labelIds;
+	final List<Handler> handlers;
+	private BitSet leaders;
+	private boolean hasCode;
+
+	public CodeStream() {
+		this(null);
+	}
+
+	public CodeStream(MethodVisitor mv) {
+		super(Opcodes.ASM7, mv);
+		opcodes = new int[32];
+		kinds = new byte[32];
+		operands = new int[32];
+		args = new Object[32];
+		labelPositions = new int[8];
+		labelIds = new IdentityHashMap<>();
+		handlers = new ArrayList<>();
+	}
+
+	/**
+	 * @return whether the method has code, i.e. it isn't abstract or native
+	 */
+	public boolean hasCode() {
+		return hasCode;
+	}
+
+	/**
+	 * @return the number of instructions in the code
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return whether a block starts at the instruction at the position,
+	 * which may be the end of the code
+	 */
+	public boolean isLeader(int position) {
+		if(leaders == null) {
+			throw new IllegalStateException("Code not ended");
+		}
+		return leaders.get(position);
+	}
+
+	int getPosition(int labelId) {
+		int pos = labelPositions[labelId];
+		if(pos == -1) {
+			throw new IllegalStateException("Label " + labelId + " not visited");
+		}
+		return pos;
+	}
+
+	private int getLabelId(Label label) {
+		Integer id = labelIds.get(label);
+		if(id == null) {
+			id = labelIds.size();
+			labelIds.put(label, id);
+			if(id == labelPositions.length) {
+				labelPositions = Arrays.copyOf(labelPositions, id * 2);
+			}
+			labelPositions[id] = -1;
+		}
+		return id;
+	}
+
+	private void add(int opcode, int kind, int operand, Object arg) {
+		if(size == opcodes.length) {
+			int len = size * 2;
+			opcodes = Arrays.copyOf(opcodes, len);
+			kinds = Arrays.copyOf(kinds, len);
+			operands = Arrays.copyOf(operands, len);
+			args = Arrays.copyOf(args, len);
+		}
+		opcodes[size] = opcode;
+		kinds[size] = (byte) kind;
+		operands[size] = operand;
+		args[size] = arg;
+		size++;
+	}
+
+	@Override
+	public void visitCode() {
+		hasCode = true;
+		super.visitCode();
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		add(opcode, INSN, 0, null);
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		add(opcode, INT_INSN, operand, null);
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		add(opcode, VAR_INSN, var, null);
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		add(opcode, TYPE_INSN, 0, type);
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+		add(opcode, FIELD_INSN, 0, new String[] { owner, name, descriptor });
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+		add(opcode, METHOD_INSN, isInterface ? 1 : 0, new String[] { owner, name, descriptor });
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+		add(Opcodes.INVOKEDYNAMIC, INVOKE_DYNAMIC_INSN, 0, new Object[] { name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments });
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		add(opcode, JUMP_INSN, getLabelId(label), null);
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		int id = getLabelId(label);
+		labelPositions[id] = size;
+	}
+
+	@Override
+	public void visitLdcInsn(Object value) {
+		add(Opcodes.LDC, LDC_INSN, 0, value);
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment) {
+		add(Opcodes.IINC, IINC_INSN, var, increment);
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+		int[] keys = new int[labels.length];
+		for(int i=0; i < keys.length; i++) {
+			keys[i] = min + i;
+		}
+		add(Opcodes.TABLESWITCH, TABLESWITCH_INSN, 0, new Switch(keys, getLabelIds(labels), getLabelId(dflt)));
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		add(Opcodes.LOOKUPSWITCH, LOOKUPSWITCH_INSN, 0, new Switch(keys.clone(), getLabelIds(labels), getLabelId(dflt)));
+	}
+
+	private int[] getLabelIds(Label[] labels) {
+		int[] ids = new int[labels.length];
+		for(int i=0; i < labels.length; i++) {
+			ids[i] = getLabelId(labels[i]);
+		}
+		return ids;
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+		add(Opcodes.MULTIANEWARRAY, MULTIANEWARRAY_INSN, numDimensions, descriptor);
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+		handlers.add(new Handler(getLabelId(start), getLabelId(end), getLabelId(handler), type));
+	}
+
+	/* frames, debug information and type annotations on the code aren't kept
+	 * by the IR, so they aren't recorded or passed on. */
+
+	@Override
+	public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+	}
+
+	@Override
+	public void visitLineNumber(int line, Label start) {
+	}
+
+	@Override
+	public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+	}
+
+	@Override
+	public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		return null;
+	}
+
+	@Override
+	public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		return null;
+	}
+
+	@Override
+	public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+		return null;
+	}
+
+	@Override
+	public void visitEnd() {
+		if(hasCode) {
+			findLeaders();
+		}
+		super.visitEnd();
+	}
+
+	/**
+	 * Replays the recorded instructions and exception handlers into the
+	 * visitor, e.g. to keep the code of a method that can't be lifted as an
+	 * ASM tree. Only the code is visited, not visitCode, visitMaxs or visitEnd.
+	 * @param mv the visitor to write to
+	 */
+	public void accept(MethodVisitor mv) {
+		Label[] labels = new Label[labelIds.size()];
+		/* the ids of the labels at each position. */
+		List<List<Integer>> at = new ArrayList<>(size + 1);
+		for(int i=0; i <= size; i++) {
+			at.add(null);
+		}
+		for(int id=0; id < labels.length; id++) {
+			labels[id] = new Label();
+			int pos = labelPositions[id];
+			if(pos != -1) {
+				if(at.get(pos) == null) {
+					at.set(pos, new ArrayList<>(1));
+				}
+				at.get(pos).add(id);
+			}
+		}
+
+		for(Handler h : handlers) {
+			mv.visitTryCatchBlock(labels[h.start], labels[h.end], labels[h.handler], h.type);
+		}
+		for(int i=0; i <= size; i++) {
+			if(at.get(i) != null) {
+				for(int id : at.get(i)) {
+					mv.visitLabel(labels[id]);
+				}
+			}
+			if(i == size) {
+				break;
+			}
+			int opcode = opcodes[i];
+			switch(kinds[i]) {
+				case INSN:
+					mv.visitInsn(opcode);
+					break;
+				case INT_INSN:
+					mv.visitIntInsn(opcode, operands[i]);
+					break;
+				case VAR_INSN:
+					mv.visitVarInsn(opcode, operands[i]);
+					break;
+				case TYPE_INSN:
+					mv.visitTypeInsn(opcode, (String) args[i]);
+					break;
+				case FIELD_INSN: {
+					String[] ref = (String[]) args[i];
+					mv.visitFieldInsn(opcode, ref[0], ref[1], ref[2]);
+					break;
+				}
+				case METHOD_INSN: {
+					String[] ref = (String[]) args[i];
+					mv.visitMethodInsn(opcode, ref[0], ref[1], ref[2], operands[i] != 0);
+					break;
+				}
+				case INVOKE_DYNAMIC_INSN: {
+					Object[] indy = (Object[]) args[i];
+					mv.visitInvokeDynamicInsn((String) indy[0], (String) indy[1], (Handle) indy[2], (Object[]) indy[3]);
+					break;
+				}
+				case JUMP_INSN:
+					mv.visitJumpInsn(opcode, labels[operands[i]]);
+					break;
+				case LDC_INSN:
+					mv.visitLdcInsn(args[i]);
+					break;
+				case IINC_INSN:
+					mv.visitIincInsn(operands[i], (Integer) args[i]);
+					break;
+				case TABLESWITCH_INSN: {
+					Switch sw = (Switch) args[i];
+					mv.visitTableSwitchInsn(sw.keys[0], sw.keys[sw.keys.length - 1], labels[sw.dflt], getLabels(labels, sw.labels));
+					break;
+				}
+				case LOOKUPSWITCH_INSN: {
+					Switch sw = (Switch) args[i];
+					mv.visitLookupSwitchInsn(labels[sw.dflt], sw.keys, getLabels(labels, sw.labels));
+					break;
+				}
+				case MULTIANEWARRAY_INSN:
+					mv.visitMultiANewArrayInsn((String) args[i], operands[i]);
+					break;
+				default:
+					throw new IllegalStateException("Unknown kind " + kinds[i] + " at " + i);
+			}
+		}
+	}
+
+	private static Label[] getLabels(Label[] labels, int[] ids) {
+		Label[] res = new Label[ids.length];
+		for(int i=0; i < ids.length; i++) {
+			res[i] = labels[ids[i]];
+		}
+		return res;
+	}
+
+	private void findLeaders() {
+		leaders = new BitSet(size + 1);
+		leaders.set(0);
+		for(int i=0; i < size; i++) {
+			switch(kinds[i]) {
+				case JUMP_INSN:
+					leaders.set(getPosition(operands[i]));
+					if(opcodes[i] != Opcodes.GOTO) {
+						leaders.set(i + 1);
+					}
+					break;
+				case TABLESWITCH_INSN:
+				case LOOKUPSWITCH_INSN: {
+					Switch sw = (Switch) args[i];
+					for(int target : sw.labels) {
+						leaders.set(getPosition(target));
+					}
+					leaders.set(getPosition(sw.dflt));
+					break;
+				}
+			}
+		}
+		for(Handler h : handlers) {
+			leaders.set(getPosition(h.start));
+			leaders.set(getPosition(h.end));
+			leaders.set(getPosition(h.handler));
+		}
+	}
+
+	static class Switch {
+		final int[] keys;
+		final int[] labels;
+		final int dflt;
+
+		Switch(int[] keys, int[] labels, int dflt) {
+			this.keys = keys;
+			this.labels = labels;
+			this.dflt = dflt;
+		}
+	}
+
+	static class Handler {
+		final int start;
+		final int end;
+		final int handler;
+		final String type;
+
+		Handler(int start, int end, int handler, String type) {
+			this.start = start;
+			this.end = end;
+			this.handler = handler;
+			this.type = type;
+		}
+	}
+}
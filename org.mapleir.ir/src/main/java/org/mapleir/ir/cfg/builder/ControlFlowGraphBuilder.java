@@ -28,14 +28,26 @@ public class ControlFlowGraphBuilder {
 	protected final NullPermeableHashMap<Local, Set<BasicBlock>> assigns;
 	protected BasicBlock head;
 	protected final boolean optimise;
+	protected CodeStream code;
+	private boolean generated;
+	private boolean ssa;
 
 	public ControlFlowGraphBuilder(MethodNode method) {
 		this(method, true);
 	}
 
 	public ControlFlowGraphBuilder(MethodNode method, boolean optimise) {
+		this(method, null, optimise);
+	}
+
+	/**
+	 * @param code the recorded code of the method, which is generated
+	 * instead of the instructions of the method if it isn't null
+	 */
+	public ControlFlowGraphBuilder(MethodNode method, CodeStream code, boolean optimise) {
 		this.optimise = optimise;
 		this.method = method;
+		this.code = code;
 		if(Modifier.isStatic(method.node.access)) {
 			graph = new ControlFlowGraph(new StaticMethodLocalsPool(), method.getJavaDesc());
 		} else {
@@ -55,25 +67,72 @@ public class ControlFlowGraphBuilder {
 		public abstract void run();
 	}
 	
-	protected BuilderPass[] resolvePasses() {
+	protected BuilderPass[] resolveCFGPasses() {
 		return new BuilderPass[] {
-				new GenerationPass(this),
+				code != null ? new StreamGenerationPass(this, code) : new GenerationPass(this),
 				new DeadBlocksPass(this),
 				new NaturalisationPass(this),
+		};
+	}
+	
+	protected BuilderPass[] resolveSSAPasses() {
+		return new BuilderPass[] {
 				new SSAGenPass(this, optimise),
 		};
 	}
 	
-	public ControlFlowGraph buildImpl() {
-		for(BuilderPass p : resolvePasses()) {
+	private void run(BuilderPass[] passes) {
+		for(BuilderPass p : passes) {
 			p.run();
 			// CFGUtils.easyDumpCFG(graph, "post-" + p.getClass().getSimpleName());
 		}
+	}
+	
+	/**
+	 * Generates the graph of the method without putting it into SSA form,
+	 * which is enough to find what the method refers to and is much cheaper.
+	 * The builder must be kept to finish the graph with {@link #buildSSA()},
+	 * and the definitions of the locals in the graph mustn't be changed
+	 * until then.
+	 */
+	public ControlFlowGraph buildCFG() {
+		if(!generated) {
+			run(resolveCFGPasses());
+			generated = true;
+			// only needed to generate the graph.
+			code = null;
+		}
+		return graph;
+	}
+	
+	/**
+	 * Puts the graph generated by {@link #buildCFG()} into SSA form,
+	 * generating it first if it hasn't been.
+	 */
+	public ControlFlowGraph buildSSA() {
+		buildCFG();
+		if(!ssa) {
+			run(resolveSSAPasses());
+			ssa = true;
+		}
 		return graph;
 	}
+	
+	public boolean isSSA() {
+		return ssa;
+	}
+	
+	public ControlFlowGraph buildImpl() {
+		return buildSSA();
+	}
 
 	public static ControlFlowGraph build(MethodNode method) {
 		ControlFlowGraphBuilder builder = new ControlFlowGraphBuilder(method);
 		return builder.buildImpl();
 	}
+
+	public static ControlFlowGraph build(MethodNode method, CodeStream code) {
+		ControlFlowGraphBuilder builder = new ControlFlowGraphBuilder(method, code, true);
+		return builder.buildImpl();
+	}
 }
@@ -127,13 +127,41 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 		return inputStacks.get(b);
 	}
 	
-	private void init() {
+	protected void init() {
+		labelFallthroughs();
 		entry(checkLabel());
 		
-		for(TryCatchBlockNode tc : builder.method.node.tryCatchBlocks) {
+		for(TryCatchBlockNode tc : getTryCatchBlocks()) {
 			handler(tc);
 		}
 	}
+	
+	protected List<TryCatchBlockNode> getTryCatchBlocks() {
+		return builder.method.node.tryCatchBlocks;
+	}
+	
+	/**
+	 * @return the position of the label in the code, by which the blocks
+	 * are ordered once they have all been generated
+	 */
+	protected int indexOf(LabelNode label) {
+		return insns.indexOf(label);
+	}
+
+	/* The block after a conditional jump needs a label to start at. These are
+	 * added in one pass before the blocks are generated, as each insertion
+	 * into the InsnList drops its index cache, which would otherwise be
+	 * rebuilt for every conditional jump in the method. */
+	private void labelFallthroughs() {
+		for(AbstractInsnNode ain = insns.getFirst(); ain != null; ain = ain.getNext()) {
+			if(ain.getType() == JUMP_INSN && ain.getOpcode() != GOTO && ain.getOpcode() != JSR) {
+				AbstractInsnNode next = ain.getNext();
+				if(next != null && !(next instanceof LabelNode)) {
+					insns.insert(ain, new LabelNode());
+				}
+			}
+		}
+	}
 
 	private LabelNode checkLabel() {
 		AbstractInsnNode first = insns.getFirst();
@@ -153,7 +181,11 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 		// make a synthetic entry block in case the first block is a jump target or something stupid like that
 		LabelNode l = new LabelNode();
 		insns.insertBefore(firstLabel, l);
-		BasicBlock entry = makeBlock(l);
+		makeEntry(l);
+	}
+	
+	protected void makeEntry(LabelNode label) {
+		BasicBlock entry = makeBlock(label);
 		entry.setFlag(BasicBlock.FLAG_NO_MERGE, true);
 		builder.graph.getEntries().add(entry);
 		setInputStack(entry, new ExpressionStack(16));
@@ -242,9 +274,26 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 		
 		preprocess(block);
 		
-		/* populate instructions. */
-		int codeIndex = insns.indexOf(label);
 		finished.set(block, true);
+		populate(block, label);
+		
+		// TODO: check if it should have an immediate.
+		BasicBlock im = block.cfg.getImmediate(block);
+		if (im != null/* && !queue.contains(im)*/) {
+			// System.out.println("Updating " + block.getId() + " -> " + im.getId());
+			// System.out.println("  Pre: " + currentStack);
+			update_target_stack(block, im, currentStack);
+			// System.out.println("  Pos: " + currentStack);
+		}
+	}
+	
+	/**
+	 * Generates the statements of the block starting at the label, up to
+	 * the next label or the first instruction which ends the block, and adds
+	 * the edges to its successors.
+	 */
+	protected void populate(BasicBlock block, LabelNode label) {
+		int codeIndex = insns.indexOf(label);
 		while(codeIndex < insns.size() - 1) {
 			AbstractInsnNode ain = insns.get(++codeIndex);
 			int type = ain.getType();
@@ -305,15 +354,6 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 				break;
 			}
 		}
-		
-		// TODO: check if it should have an immediate.
-		BasicBlock im = block.cfg.getImmediate(block);
-		if (im != null/* && !queue.contains(im)*/) {
-			// System.out.println("Updating " + block.getId() + " -> " + im.getId());
-			// System.out.println("  Pre: " + currentStack);
-			update_target_stack(block, im, currentStack);
-			// System.out.println("  Pos: " + currentStack);
-		}
 	}
 	
 	static boolean isExitOpcode(int opcode) {
@@ -340,25 +380,102 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 		// System.out.println("Executing " + Printer.OPCODES[opcode]);
 		// System.out.println(" PreStack: " + currentStack);
 		
-		List<GenerationVerifier.VerifierRule> possibleRules = null;
+		List<GenerationVerifier.VerifierRule> possibleRules = preverify(b, ain);
 		
-		if(GenerationVerifier.VERIFY) {
-			verifier.newContext(currentStack, ain, b);
-			possibleRules = verifier.find_verify_matches();
-		}
-		
-		switch (opcode) {
-			case -1: {
-				if (ain instanceof LabelNode)
-					throw new IllegalStateException("Block should not contain label.");
+		switch (ain.getType()) {
+			case INSN:
+				insn(opcode);
+				break;
+			case INT_INSN:
+				intInsn(opcode, ((IntInsnNode) ain).operand);
+				break;
+			case VAR_INSN:
+				varInsn(opcode, ((VarInsnNode) ain).var);
+				break;
+			case TYPE_INSN:
+				typeInsn(opcode, ((TypeInsnNode) ain).desc);
+				break;
+			case FIELD_INSN: {
+				FieldInsnNode fin = (FieldInsnNode) ain;
+				fieldInsn(opcode, fin.owner, fin.name, fin.desc);
 				break;
 			}
-			case BIPUSH:
-				_const((byte)((IntInsnNode) ain).operand, Type.BYTE_TYPE);
+			case METHOD_INSN: {
+				MethodInsnNode min = (MethodInsnNode) ain;
+				methodInsn(opcode, min.owner, min.name, min.desc);
 				break;
-			case SIPUSH:
-				_const((short)((IntInsnNode) ain).operand, Type.SHORT_TYPE);
+			}
+			case INVOKE_DYNAMIC_INSN: {
+				InvokeDynamicInsnNode dy = (InvokeDynamicInsnNode) ain;
+				_dynamic_call(dy.bsm, dy.bsmArgs, dy.desc, dy.name);
+				break;
+			}
+			case JUMP_INSN:
+				jumpInsn(opcode, resolveTarget(((JumpInsnNode) ain).label));
+				break;
+			case LDC_INSN:
+				ldcInsn(((LdcInsnNode) ain).cst);
+				break;
+			case IINC_INSN: {
+				IincInsnNode iinc = (IincInsnNode) ain;
+				_inc(iinc.var, iinc.incr);
+				break;
+			}
+			case TABLESWITCH_INSN: {
+				TableSwitchInsnNode tsin = (TableSwitchInsnNode) ain;
+				LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
+				for(int i=tsin.min; i <= tsin.max; i++) {
+					BasicBlock targ = resolveTarget(tsin.labels.get(i - tsin.min));
+					targets.put(i, targ);
+				}
+				_switch(targets, resolveTarget(tsin.dflt));
 				break;
+			}
+			case LOOKUPSWITCH_INSN: {
+				LookupSwitchInsnNode lsin = (LookupSwitchInsnNode) ain;
+				LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
+				for(int i=0; i < lsin.keys.size(); i++) {
+					int key = lsin.keys.get(i);
+					BasicBlock targ = resolveTarget(lsin.labels.get(i));
+					targets.put(key, targ);
+				}
+				_switch(targets, resolveTarget(lsin.dflt));
+				break;
+			}
+			case MULTIANEWARRAY_INSN: {
+				MultiANewArrayInsnNode in = (MultiANewArrayInsnNode) ain;
+				multiANewArrayInsn(in.desc, in.dims);
+				break;
+			}
+			case LABEL:
+				throw new IllegalStateException("Block should not contain label.");
+		}
+		
+		postverify(possibleRules);
+	}
+	
+	protected List<GenerationVerifier.VerifierRule> preverify(BasicBlock b, AbstractInsnNode ain) {
+		if(GenerationVerifier.VERIFY) {
+			verifier.newContext(currentStack, ain, b);
+			return verifier.find_verify_matches();
+		} else {
+			return null;
+		}
+	}
+	
+	protected void postverify(List<GenerationVerifier.VerifierRule> possibleRules) {
+		if(GenerationVerifier.VERIFY) {
+			if(possibleRules != null) {
+				verifier.confirm_rules(possibleRules);
+			}
+		}
+	}
+	
+	/* the instructions are dispatched by their operands so that code which
+	 * isn't held in an InsnList can be generated in the same way. */
+	
+	protected void insn(int opcode) {
+		switch (opcode) {
 			case ACONST_NULL:
 				_const(null, TypeUtils.OBJECT_TYPE);
 				break;
@@ -384,14 +501,6 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 			case DCONST_1:
 				_const((double) (opcode - DCONST_0), Type.DOUBLE_TYPE);
 				break;
-			case LDC:
-				Object cst = ((LdcInsnNode) ain).cst;
-				if(cst instanceof Number) {
-					_const(cst, ConstantExpr.computeType(cst));
-				} else {
-					_const(cst, TypeUtils.unboxType(cst));
-				}
-				break;
 			case LCMP:
 			case FCMPL:
 			case FCMPG:
@@ -400,37 +509,6 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 				_compare(ValueComparisonType.resolve(opcode));
 				break;
 			}
-			case NEWARRAY: {
-				save_stack(false);
-				_new_array(
-					new Expr[] { pop() }, 
-					TypeUtils.getPrimitiveArrayType(((IntInsnNode) ain).operand)
-				);
-				break;
-			}
-			case ANEWARRAY: {
-				save_stack(false);
-				String typeName = ((TypeInsnNode) ain).desc;
-				if (typeName.charAt(0) != '[')
-					typeName = "[L" + typeName + ";";
-				else
-					typeName = '[' + typeName;
-				_new_array(
-					new Expr[] { pop() },
-					Type.getType(typeName)
-				);
-				break;
-			}
-			case MULTIANEWARRAY: {
-				save_stack(false);
-				MultiANewArrayInsnNode in = (MultiANewArrayInsnNode) ain;
-				Expr[] bounds = new Expr[in.dims];
-				for (int i = in.dims - 1; i >= 0; i--) {
-					bounds[i] = pop();
-				}
-				_new_array(bounds, Type.getType(in.desc));
-				break;
-			}
 
 			case RETURN:
 				_return(Type.VOID_TYPE);
@@ -571,43 +649,36 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 			case I2S:
 				_cast(TypeUtils.getCastType(opcode));
 				break;
-			case CHECKCAST:
-				String typeName = ((TypeInsnNode)ain).desc;
-				if (typeName.charAt(0) != '[') // arrays aren't objects.
-					typeName = "L" + typeName + ";";
-				_cast(Type.getType(typeName));
-				break;
-			case INSTANCEOF:
-				typeName = ((TypeInsnNode)ain).desc;
-				if (typeName.charAt(0) != '[')
-					typeName = "L" + typeName + ";";
-				_instanceof(Type.getType(typeName));
-				break;
-			case NEW:
-				typeName = ((TypeInsnNode)ain).desc;
-				if (typeName.charAt(0) != '[')
-					typeName = "L" + typeName + ";";
-				_new(Type.getType(typeName));
+		}
+	}
+	
+	protected void intInsn(int opcode, int operand) {
+		switch (opcode) {
+			case BIPUSH:
+				_const((byte) operand, Type.BYTE_TYPE);
 				break;
-				
-			case INVOKEDYNAMIC:
-				InvokeDynamicInsnNode dy = (InvokeDynamicInsnNode) ain;
-				_dynamic_call(dy.bsm, dy.bsmArgs, dy.desc, dy.name);
+			case SIPUSH:
+				_const((short) operand, Type.SHORT_TYPE);
 				break;
-			case INVOKEVIRTUAL:
-			case INVOKESTATIC:
-			case INVOKESPECIAL:
-			case INVOKEINTERFACE:
-				MethodInsnNode min = (MethodInsnNode) ain;
-				_call(opcode, min.owner, min.name, min.desc);
+			case NEWARRAY: {
+				save_stack(false);
+				_new_array(
+					new Expr[] { pop() }, 
+					TypeUtils.getPrimitiveArrayType(operand)
+				);
 				break;
-				
+			}
+		}
+	}
+	
+	protected void varInsn(int opcode, int var) {
+		switch (opcode) {
 			case ILOAD:
 			case LLOAD:
 			case FLOAD:
 			case DLOAD:
 			case ALOAD:
-				_load(((VarInsnNode) ain).var, TypeUtils.getLoadType(opcode));
+				_load(var, TypeUtils.getLoadType(opcode));
 				break;
 				
 			case ISTORE:
@@ -615,55 +686,75 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 			case FSTORE:
 			case DSTORE:
 			case ASTORE:
-				_store(((VarInsnNode) ain).var, TypeUtils.getStoreType(opcode));
+				_store(var, TypeUtils.getStoreType(opcode));
 				break;
-				
-			case IINC:
-				IincInsnNode iinc = (IincInsnNode) ain;
-				_inc(iinc.var, iinc.incr);
+		}
+	}
+	
+	protected void typeInsn(int opcode, String typeName) {
+		switch (opcode) {
+			case ANEWARRAY: {
+				save_stack(false);
+				if (typeName.charAt(0) != '[')
+					typeName = "[L" + typeName + ";";
+				else
+					typeName = '[' + typeName;
+				_new_array(
+					new Expr[] { pop() },
+					Type.getType(typeName)
+				);
 				break;
-				
+			}
+			case CHECKCAST:
+				if (typeName.charAt(0) != '[') // arrays aren't objects.
+					typeName = "L" + typeName + ";";
+				_cast(Type.getType(typeName));
+				break;
+			case INSTANCEOF:
+				if (typeName.charAt(0) != '[')
+					typeName = "L" + typeName + ";";
+				_instanceof(Type.getType(typeName));
+				break;
+			case NEW:
+				if (typeName.charAt(0) != '[')
+					typeName = "L" + typeName + ";";
+				_new(Type.getType(typeName));
+				break;
+		}
+	}
+	
+	protected void fieldInsn(int opcode, String owner, String name, String desc) {
+		switch (opcode) {
 			case PUTFIELD:
-			case PUTSTATIC: {
-				FieldInsnNode fin = (FieldInsnNode) ain;
-				_store_field(opcode, fin.owner, fin.name, fin.desc);
+			case PUTSTATIC:
+				_store_field(opcode, owner, name, desc);
 				break;
-			}
 			case GETFIELD:
 			case GETSTATIC:
-				FieldInsnNode fin = (FieldInsnNode) ain;
-				_load_field(opcode, fin.owner, fin.name, fin.desc);
+				_load_field(opcode, owner, name, desc);
 				break;
-				
-			case TABLESWITCH: {
-				TableSwitchInsnNode tsin = (TableSwitchInsnNode) ain;
-				LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
-				for(int i=tsin.min; i <= tsin.max; i++) {
-					BasicBlock targ = resolveTarget(tsin.labels.get(i - tsin.min));
-					targets.put(i, targ);
-				}
-				_switch(targets, resolveTarget(tsin.dflt));
-				break;
-			}
-			
-			case LOOKUPSWITCH: {
-				LookupSwitchInsnNode lsin = (LookupSwitchInsnNode) ain;
-				LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
-				for(int i=0; i < lsin.keys.size(); i++) {
-					int key = lsin.keys.get(i);
-					BasicBlock targ = resolveTarget(lsin.labels.get(i));
-					targets.put(key, targ);
-				}
-				_switch(targets, resolveTarget(lsin.dflt));
+		}
+	}
+	
+	protected void methodInsn(int opcode, String owner, String name, String desc) {
+		switch (opcode) {
+			case INVOKEVIRTUAL:
+			case INVOKESTATIC:
+			case INVOKESPECIAL:
+			case INVOKEINTERFACE:
+				_call(opcode, owner, name, desc);
 				break;
-			}
-			
+		}
+	}
+	
+	protected void jumpInsn(int opcode, BasicBlock target) {
+		switch (opcode) {
 			case GOTO:
-				_jump_uncond(resolveTarget(((JumpInsnNode) ain).label));
+				_jump_uncond(target);
 				break;
 			case IFNULL:
 			case IFNONNULL:
-				_jump_null(resolveTarget(((JumpInsnNode) ain).label), opcode == IFNONNULL);
+				_jump_null(target, opcode == IFNONNULL);
 				break;
 				
 			case IF_ICMPEQ:
@@ -674,7 +765,7 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 			case IF_ICMPLE:
 			case IF_ACMPEQ:
 			case IF_ACMPNE:
-				_jump_cmp(resolveTarget(((JumpInsnNode) ain).label), ComparisonType.getType(opcode));
+				_jump_cmp(target, ComparisonType.getType(opcode));
 				break;
 				
 			case IFEQ:
@@ -683,15 +774,26 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 			case IFGE:
 			case IFGT:
 			case IFLE:
-				_jump_cmp0(resolveTarget(((JumpInsnNode) ain).label), ComparisonType.getType(opcode));
+				_jump_cmp0(target, ComparisonType.getType(opcode));
 				break;
 		}
-		
-		if(GenerationVerifier.VERIFY) {
-			if(possibleRules != null) {
-				verifier.confirm_rules(possibleRules);
-			}
+	}
+	
+	protected void ldcInsn(Object cst) {
+		if(cst instanceof Number) {
+			_const(cst, ConstantExpr.computeType(cst));
+		} else {
+			_const(cst, TypeUtils.unboxType(cst));
+		}
+	}
+	
+	protected void multiANewArrayInsn(String desc, int dims) {
+		save_stack(false);
+		Expr[] bounds = new Expr[dims];
+		for (int i = dims - 1; i >= 0; i--) {
+			bounds[i] = pop();
 		}
+		_new_array(bounds, Type.getType(desc));
 	}
 	
 	protected void _nop() {
@@ -1508,7 +1610,7 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 //		writer.removeAll().add(new ControlFlowGraphDecorator().setFlags(ControlFlowGraphDecorator.OPT_DEEP)).setName("test9999").export();
 		
 		Map<String, ExceptionRange<BasicBlock>> ranges = new HashMap<>();
-		for(TryCatchBlockNode tc : builder.method.node.tryCatchBlocks) {
+		for(TryCatchBlockNode tc : getTryCatchBlocks()) {
 			//System.out.printf("from %d to %d, handler:%d, type:%s.%n", insns.indexOf(tc.start), insns.indexOf(tc.end), insns.indexOf(tc.handler), tc.type);
 			//System.out.println(String.format("%s:%s:%s", blockLabels.get(tc.start), blockLabels.get(tc.end), blockLabels.get(tc.handler)));
 			if(tc.start == tc.end) {
@@ -1603,8 +1705,8 @@ public class GenerationPass extends ControlFlowGraphBuilder.BuilderPass {
 		// naturalize based on code order for ranges step
 		List<BasicBlock> order = new IndexedList<>(builder.graph.vertices()); // amortized O(1) indexOf, fastly!
 		order.sort((o1, o2) -> {
-			int i1 = insns.indexOf(labelMap.get(o1));
-			int i2 = insns.indexOf(labelMap.get(o2));
+			int i1 = indexOf(labelMap.get(o1));
+			int i2 = indexOf(labelMap.get(o2));
 			return Integer.compare(i1, i2);
 		});
 		builder.graph.relabel(order);
@@ -107,10 +107,8 @@ public class NaturalisationPass extends ControlFlowGraphBuilder.BuilderPass {
 			}
 
 			// update ranges to point to new handler head
-			for(ExceptionRange<BasicBlock> er : builder.graph.getRanges()) {
-				if (er.getHandler().equals(b)) {
-					er.setHandler(newHandlerHead);
-				}
+			for(ExceptionRange<BasicBlock> er : builder.graph.getHandledRanges(b)) {
+				er.setHandler(newHandlerHead);
 			}
 
 			// update handler edges
@@ -29,7 +29,6 @@ import org.mapleir.ir.locals.impl.VersionedLocal;
 import org.mapleir.ir.utils.CFGUtils;
 import org.mapleir.stdlib.collections.graph.algorithms.LT79Dom;
 import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
-import org.mapleir.stdlib.collections.list.IndexedList;
 import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.objectweb.asm.Type;
 
@@ -47,13 +46,12 @@ import java.util.Map.Entry;
 public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 	private final BasicLocal svar0;
 	private final Map<VersionedLocal, Type> types;
-	private final Map<Local, Integer> counters;
-	private final Map<Local, Stack<Integer>> stacks;
+	/* the versions of each unversioned local, indexed by slot(local) */
+	private Versions[] versions;
 	private final List<BasicBlock> order;
-	// TODO: use arrays.
-	private final Map<BasicBlock, Integer> insertion;
-	private final Map<BasicBlock, Integer> process;
-	private final Map<BasicBlock, Integer> preorder;
+	/* indexed by the numeric id of the block */
+	private int[] insertion;
+	private int[] process;
 	private final Set<BasicBlock> handlers;
 	
 	private final Map<VersionedLocal, LatestValue> latest;
@@ -79,14 +77,8 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		
 		types = new HashMap<>();
 		
-		counters = new HashMap<>();
-		stacks = new HashMap<>();
 		order = new ArrayList<>();
 		
-		insertion = new HashMap<>();
-		process = new HashMap<>();
-		
-		preorder = new HashMap<>();
 		handlers = new HashSet<>();
 		
 		latest = new HashMap<>();
@@ -107,15 +99,16 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		List<BasicBlock> order = new ArrayList<>(builder.graph.verticesInOrder());
 		NullPermeableHashMap<BasicBlock, Set<Local>> splits = new NullPermeableHashMap<>(HashSet::new);
 		
-		for(ExceptionRange<BasicBlock> er : builder.graph.getRanges()) {
-			BasicBlock h = er.getHandler();
-			handlers.add(h);
-			
-			Set<Local> ls = new HashSet<>(liveness.in(h));
-			for(BasicBlock b : er.getNodes()) {
-				splits.getNonNull(b).addAll(ls);
+		for(BasicBlock b : order) {
+			if(!builder.graph.getHandledRanges(b).isEmpty()) {
+				handlers.add(b);
+			}
+			for(ExceptionRange<BasicBlock> er : builder.graph.getProtectingRanges(b)) {
+				splits.getNonNull(b).addAll(liveness.in(er.getHandler()));
 			}
 		}
+		// the blocks split off the start of each block, in order
+		NullPermeableHashMap<BasicBlock, List<BasicBlock>> splitOff = new NullPermeableHashMap<>(ArrayList::new);
 		
 		for(Entry<BasicBlock, Set<Local>> e : splits.entrySet()) {
 			BasicBlock b = e.getKey();
@@ -134,7 +127,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 					VarExpr v = copy.getVariable();
 					if (ls.contains(v.getLocal())) {
 						BasicBlock n = splitBlock(b, i);
-						order.add(order.indexOf(b), n);
+						splitOff.getNonNull(b).add(n);
 						i = 0;
 						checkSplit = false;
 					}
@@ -154,16 +147,32 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 			}
 		}
 		
-		builder.graph.relabel(order);
-		List<BasicBlock> dfsPreorder = SimpleDfs.preorder(builder.graph, builder.head);
-		assert(dfsPreorder.size() == order.size());
-		
-		int po = 0;
-		for(BasicBlock b : dfsPreorder) {
-			insertion.put(b, 0);
-			process.put(b, 0);
-			preorder.put(b, po++);
+		List<BasicBlock> split = new ArrayList<>(order.size() + splitOff.size());
+		for(BasicBlock b : order) {
+			List<BasicBlock> before = splitOff.get(b);
+			if(before != null) {
+				split.addAll(before);
+			}
+			split.add(b);
+		}
+		builder.graph.relabel(split);
+		
+		int blocks = blockIdLimit();
+		insertion = new int[blocks];
+		process = new int[blocks];
+	}
+	
+	/* an upper bound of the numeric ids of the blocks in the graph */
+	private int blockIdLimit() {
+		int max = 0;
+		for(BasicBlock b : builder.graph.vertices()) {
+			max = Math.max(max, b.getNumericId());
 		}
+		return max + 1;
+	}
+	
+	private static int slot(int index, boolean isStack) {
+		return (index << 1) | (isStack ? 1 : 0);
 	}
 
 	private BasicBlock splitBlock(BasicBlock b, int to) {
@@ -195,7 +204,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 			
 			LinkedList<BasicBlock> queue = new LinkedList<>();
 			for(BasicBlock b : builder.assigns.get(l)) {
-				process.put(b, i);
+				process[b.getNumericId()] = i;
 				queue.add(b);
 			}
 			while(!queue.isEmpty()) {
@@ -212,7 +221,8 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		Local newl = builder.graph.getLocals().get(l.getIndex(), 0, l.isStack());
 		
 		for(BasicBlock x : doms.getIteratedDominanceFrontier(b)) {
-			if(insertion.get(x) < i) {
+			int id = x.getNumericId();
+			if(insertion[id] < i) {
 				// pruned SSA
 				if(liveness.in(x).contains(l)) {
 					/* Scenarios: (assuming live in)
@@ -284,9 +294,9 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 					}
 				}
 				
-				insertion.put(x, i);
-				if(process.get(x) < i) {
-					process.put(x, i);
+				insertion[id] = i;
+				if(process[id] < i) {
+					process[id] = i;
 					queue.add(x);
 				}
 			}
@@ -294,19 +304,28 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 	}
 	
 	private void rename() {
+		int slots = 0;
+		for(Local l : builder.locals) {
+			slots = Math.max(slots, slot(l.getIndex(), l.isStack()) + 1);
+		}
+		versions = new Versions[slots];
 		for(Local l : builder.locals) {
-			counters.put(l, 0);
-			stacks.put(l, new Stack<>());
+			versions[slot(l.getIndex(), l.isStack())] = new Versions();
 		}
 
-		List<BasicBlock> topoorder = new IndexedList<>(SimpleDfs.topoorder(builder.graph, builder.head));
-		Set<BasicBlock> vis = new HashSet<>();
+		int[] topoorder = new int[blockIdLimit()];
+		Arrays.fill(topoorder, -1);
+		int i = 0;
+		for(BasicBlock b : SimpleDfs.topoorder(builder.graph, builder.head)) {
+			topoorder[b.getNumericId()] = i++;
+		}
+		boolean[] vis = new boolean[topoorder.length];
 		search(builder.head, vis, topoorder);
 		
 		updatePhiArgTypes(vis);
 	}
 	
-	private void updatePhiArgTypes(Set<BasicBlock> vis) {
+	private void updatePhiArgTypes(boolean[] vis) {
 		// update types for phi args
 		for(BasicBlock b : order) {
 			for(Stmt s : b) {
@@ -318,7 +337,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 				
 				for(Entry<BasicBlock, Expr> e : cps.getExpression().getArguments().entrySet()) {
 					BasicBlock src = e.getKey();
-					if(vis.contains(src))
+					if(vis[src.getNumericId()])
 						continue;
 					
 					VarExpr v = (VarExpr) e.getValue();
@@ -331,32 +350,50 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		}
 	}
 	
-	private void search(BasicBlock b, Set<BasicBlock> vis, List<BasicBlock> order) {
-		if(vis.contains(b)) {
-			return;
+	/* A depth first search of the graph from the entry, which renames each
+	 * block when it's first reached and unstacks its definitions after all
+	 * of its successors have been searched. The path of the search is kept
+	 * on an explicit stack, as it can be as long as the method. */
+	private void search(BasicBlock entry, boolean[] vis, int[] order) {
+		Deque<BasicBlock> path = new ArrayDeque<>();
+		Deque<Iterator<FlowEdge<BasicBlock>>> succStack = new ArrayDeque<>();
+		enter(entry, vis, order, path, succStack);
+		
+		while(!path.isEmpty()) {
+			Iterator<FlowEdge<BasicBlock>> it = succStack.peek();
+			if(it.hasNext()) {
+				BasicBlock succ = it.next().dst();
+				if(!vis[succ.getNumericId()]) {
+					enter(succ, vis, order, path, succStack);
+				}
+			} else {
+				succStack.pop();
+				BasicBlock b = path.pop();
+				
+				unstackDefs(b);
+				
+				if(optimise) {
+					optimisePhis(b);
+				}
+			}
 		}
-		vis.add(b);
+	}
+	
+	private void enter(BasicBlock b, boolean[] vis, int[] order, Deque<BasicBlock> path, Deque<Iterator<FlowEdge<BasicBlock>>> succStack) {
+		vis[b.getNumericId()] = true;
 		
 		searchImpl(b);
 
 		List<FlowEdge<BasicBlock>> succs = new ArrayList<>(builder.graph.getEdges(b));
-		succs.sort(Comparator.comparing(o -> order.indexOf(o.dst())));
+		succs.sort(Comparator.comparingInt(o -> order[o.dst().getNumericId()]));
 		
 		for(FlowEdge<BasicBlock> succE : succs) {
 			BasicBlock succ = succE.dst();
 			fixPhiArgs(b, succ);
 		}
 		
-		for(FlowEdge<BasicBlock> succE : succs) {
-			BasicBlock succ = succE.dst();
-			search(succ, vis, order);
-		}
-		
-		unstackDefs(b);
-		
-		if(optimise) {
-			optimisePhis(b);
-		}
+		path.push(b);
+		succStack.push(succs.iterator());
 	}
 	
 	private void fixPhiArgs(BasicBlock b, BasicBlock succ) {
@@ -394,8 +431,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 			if (s.getOpcode() == Opcode.PHI_STORE || s.getOpcode() == Opcode.LOCAL_STORE) {
 				AbstractCopyStmt cvs = (AbstractCopyStmt) s;
 				Local l = cvs.getVariable().getLocal();
-				l = builder.graph.getLocals().get(l.getIndex(), l.isStack());
-				stacks.get(l).pop();
+				versions[slot(l.getIndex(), l.isStack())].pop();
 			}
 		}
 	}
@@ -458,10 +494,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		boolean isStack = oldLocal.isStack();
 		
 		LocalsPool handler = builder.graph.getLocals();
-		Local l = handler.get(index, isStack);
-		int subscript = counters.get(l);
-		stacks.get(l).push(subscript);
-		counters.put(l, subscript + 1);
+		int subscript = versions[slot(index, isStack)].push();
 		
 		VersionedLocal ssaL = handler.get(index, subscript, isStack);
 		
@@ -972,13 +1005,13 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 
 	private VersionedLocal latest(int index, boolean isStack) {
 		LocalsPool handler = builder.graph.getLocals();
-		Local l = handler.get(index, isStack);
-		Stack<Integer> stack = stacks.get(l);
+		int slot = slot(index, isStack);
+		Versions stack = slot < versions.length ? versions[slot] : null;
 		if(stack == null || stack.isEmpty()) {
 			System.err.println(builder.method.getOwner() + "#" + builder.method.getName());
 			System.err.println(builder.graph);
-			System.err.println(stacks);
-			throw new NullPointerException(l.toString());
+			System.err.println(Arrays.toString(versions));
+			throw new NullPointerException(handler.get(index, isStack).toString());
 		}
 		
 		return handler.get(index, stack.peek()/*subscript*/, isStack);
@@ -1397,4 +1430,41 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 			} while(i > 0);
 		}
 	}
+	
+	/* the subscripts of the definitions of a local that are live on the path
+	 * of the search, most recent on top, and the next subscript to use. */
+	private static class Versions {
+		private int[] stack = new int[4];
+		private int size;
+		private int counter;
+		
+		int push() {
+			if(size == stack.length) {
+				stack = Arrays.copyOf(stack, size * 2);
+			}
+			int subscript = counter++;
+			stack[size++] = subscript;
+			return subscript;
+		}
+		
+		void pop() {
+			if(size == 0) {
+				throw new IllegalStateException("no definition to pop");
+			}
+			size--;
+		}
+		
+		int peek() {
+			return stack[size - 1];
+		}
+		
+		boolean isEmpty() {
+			return size == 0;
+		}
+		
+		@Override
+		public String toString() {
+			return Arrays.toString(Arrays.copyOf(stack, size));
+		}
+	}
 }
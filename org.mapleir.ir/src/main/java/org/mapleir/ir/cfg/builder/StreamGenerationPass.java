@@ -0,0 +1,201 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.mapleir.flowgraph.edges.*;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.objectweb.asm.tree.AbstractInsnNode.*;
+
+/**
+ * Generates the graph of a method from a {@link CodeStream} rather than from
+ * the InsnList of the method, which may then be empty.
+ *
+ * A LabelNode stands for each leader of the code that is reached, so that the
+ * blocks are resolved, queued and ordered as in the {@link GenerationPass};
+ * only the walk over the instructions of a block is different.
+ */
+public class StreamGenerationPass extends GenerationPass {
+
+	private final CodeStream code;
+	// position -> label of the block starting there
+	private final LabelNode[] labels;
+	private final Map<LabelNode, Integer> positions;
+	private final List<TryCatchBlockNode> ranges;
+	private LabelNode entryLabel;
+
+	public StreamGenerationPass(ControlFlowGraphBuilder builder, CodeStream code) {
+		super(builder);
+		this.code = code;
+		labels = new LabelNode[code.size + 1];
+		positions = new HashMap<>();
+		ranges = new ArrayList<>();
+	}
+
+	private LabelNode getLabel(int position) {
+		LabelNode label = labels[position];
+		if(label == null) {
+			if(!code.isLeader(position)) {
+				throw new IllegalStateException("No block starts at " + position + " in " + builder.method);
+			}
+			label = new LabelNode();
+			labels[position] = label;
+			positions.put(label, position);
+		}
+		return label;
+	}
+
+	private BasicBlock resolveTarget(int labelId) {
+		return resolveTarget(getLabel(code.getPosition(labelId)));
+	}
+
+	@Override
+	protected void init() {
+		entryLabel = new LabelNode();
+		makeEntry(entryLabel);
+
+		for(CodeStream.Handler h : code.handlers) {
+			TryCatchBlockNode tc = new TryCatchBlockNode(getLabel(code.getPosition(h.start)),
+					getLabel(code.getPosition(h.end)), getLabel(code.getPosition(h.handler)), h.type);
+			ranges.add(tc);
+			handler(tc);
+		}
+	}
+
+	@Override
+	protected List<TryCatchBlockNode> getTryCatchBlocks() {
+		return ranges;
+	}
+
+	@Override
+	protected int indexOf(LabelNode label) {
+		if(label == entryLabel) {
+			return -1;
+		} else {
+			return positions.get(label);
+		}
+	}
+
+	@Override
+	protected void populate(BasicBlock block, LabelNode label) {
+		if(label == entryLabel) {
+			builder.graph.addEdge(new ImmediateEdge<>(block, resolveTarget(getLabel(0))));
+			return;
+		}
+
+		int start = positions.get(label);
+		for(int i=start; i <= code.size; i++) {
+			if(i != start && code.isLeader(i)) {
+				// split into new block
+				BasicBlock immediate = resolveTarget(getLabel(i));
+				builder.graph.addEdge(new ImmediateEdge<>(block, immediate));
+				break;
+			} else if(i == code.size) {
+				break;
+			}
+
+			int opcode = code.opcodes[i];
+			int kind = code.kinds[i];
+			process(block, i);
+
+			if(kind == JUMP_INSN) {
+				BasicBlock target = resolveTarget(code.operands[i]);
+
+				if(opcode == JSR) {
+					throw new UnsupportedOperationException("jsr " + builder.method);
+				} else if(opcode == GOTO) {
+					builder.graph.addEdge(new UnconditionalJumpEdge<>(block, target));
+				} else {
+					builder.graph.addEdge(new ConditionalJumpEdge<>(block, target, opcode));
+					// create immediate successor reference if it's not already done
+					BasicBlock immediate = resolveTarget(getLabel(i + 1));
+					builder.graph.addEdge(new ImmediateEdge<>(block, immediate));
+				}
+				break;
+			} else if(kind == LOOKUPSWITCH_INSN || kind == TABLESWITCH_INSN) {
+				CodeStream.Switch sw = (CodeStream.Switch) code.args[i];
+				for(int j=0; j < sw.keys.length; j++) {
+					BasicBlock target = resolveTarget(sw.labels[j]);
+					builder.graph.addEdge(new SwitchEdge<>(block, target, sw.keys[j]));
+				}
+
+				BasicBlock dflt = resolveTarget(sw.dflt);
+				builder.graph.addEdge(new DefaultSwitchEdge<>(block, dflt));
+				break;
+			} else if(isExitOpcode(opcode)) {
+				break;
+			}
+		}
+	}
+
+	private void process(BasicBlock b, int i) {
+		int opcode = code.opcodes[i];
+		int operand = code.operands[i];
+		Object arg = code.args[i];
+
+		List<GenerationVerifier.VerifierRule> possibleRules = preverify(b, GenerationVerifier.VERIFY ? new InsnNode(opcode) : null);
+
+		switch (code.kinds[i]) {
+			case INSN:
+				insn(opcode);
+				break;
+			case INT_INSN:
+				intInsn(opcode, operand);
+				break;
+			case VAR_INSN:
+				varInsn(opcode, operand);
+				break;
+			case TYPE_INSN:
+				typeInsn(opcode, (String) arg);
+				break;
+			case FIELD_INSN: {
+				String[] ref = (String[]) arg;
+				fieldInsn(opcode, ref[0], ref[1], ref[2]);
+				break;
+			}
+			case METHOD_INSN: {
+				String[] ref = (String[]) arg;
+				methodInsn(opcode, ref[0], ref[1], ref[2]);
+				break;
+			}
+			case INVOKE_DYNAMIC_INSN: {
+				Object[] dy = (Object[]) arg;
+				_dynamic_call((Handle) dy[2], (Object[]) dy[3], (String) dy[1], (String) dy[0]);
+				break;
+			}
+			case JUMP_INSN:
+				jumpInsn(opcode, resolveTarget(operand));
+				break;
+			case LDC_INSN:
+				ldcInsn(arg);
+				break;
+			case IINC_INSN:
+				_inc(operand, (Integer) arg);
+				break;
+			case TABLESWITCH_INSN:
+			case LOOKUPSWITCH_INSN: {
+				CodeStream.Switch sw = (CodeStream.Switch) arg;
+				LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
+				for(int j=0; j < sw.keys.length; j++) {
+					targets.put(sw.keys[j], resolveTarget(sw.labels[j]));
+				}
+				_switch(targets, resolveTarget(sw.dflt));
+				break;
+			}
+			case MULTIANEWARRAY_INSN:
+				multiANewArrayInsn((String) arg, operand);
+				break;
+		}
+
+		postverify(possibleRules);
+	}
+}
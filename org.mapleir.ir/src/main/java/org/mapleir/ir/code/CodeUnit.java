@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is the shared base between the {@link Stmt} and {@link Expr} classes,
@@ -36,13 +37,13 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	public static final int FLAG_STMT = 0x01;
 
 	/**
-	 * Global unit identifier counter.
+	 * Global unit identifier counter, shared by all threads.
 	 */
-	private static int G_ID_COUNTER = 1;
+	private static final AtomicInteger G_ID_COUNTER = new AtomicInteger(1);
 	/**
 	 * Unique global unit identifier.
 	 */
-	protected final int id = G_ID_COUNTER++;
+	protected final int id = G_ID_COUNTER.getAndIncrement();
 	/**
 	 * Opcode to encode the sort of instruction this unit is.
 	 */
@@ -59,6 +60,12 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	 */
 	private BasicBlock block;
 
+	/**
+	 * The cached value of {@link #structuralHash()} or 0 if it needs to be
+	 * (re)computed.
+	 */
+	private int structuralHash;
+
 	/**
 	 * The children of this unit.
 	 */
@@ -242,6 +249,10 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 			s.setParent(this);
 		}
 		onChildUpdated(index);
+		invalidateStructuralHash();
+		if(block != null) {
+			block.cfg.codeModified();
+		}
 		return prev;
 	}
 
@@ -329,6 +340,64 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 
 	public abstract boolean equivalent(CodeUnit s);
 
+	/**
+	 * Computes a hash of the structure of this unit, i.e. of its opcode,
+	 * operands and children, such that two units which are
+	 * {@link #equivalent(CodeUnit)} have the same structural hash. The value
+	 * only depends on the contents of the tree and not on the identity of the
+	 * nodes so it is the same across runs.<br>
+	 * The hash is computed bottom up and cached until this unit or one of its
+	 * children is changed.
+	 * 
+	 * @return The structural hash of this unit.
+	 */
+	public int structuralHash() {
+		int h = structuralHash;
+		if(h == 0) {
+			h = computeStructuralHash();
+			/* 0 marks an invalid hash. */
+			if(h == 0) {
+				h = 1;
+			}
+			structuralHash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Computes the structural hash of this unit from its opcode and the
+	 * structural hashes of its children. Subclasses mix in any operands that
+	 * are compared in {@link #equivalent(CodeUnit)}.
+	 * 
+	 * @return The uncached structural hash.
+	 */
+	protected int computeStructuralHash() {
+		int h = opcode;
+		for(Expr c : children) {
+			if(c != null) {
+				h = 31 * h + c.structuralHash();
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Clears the cached structural hash of this unit and of every unit above
+	 * it. Must be called by subclasses when an operand that contributes to
+	 * the hash is changed.
+	 */
+	protected void invalidateStructuralHash() {
+		/* if a unit doesn't have a hash, none of its parents do either. */
+		CodeUnit u = this;
+		while(u != null && u.structuralHash != 0) {
+			u.structuralHash = 0;
+			if((u.flags & FLAG_STMT) != 0) {
+				break;
+			}
+			u = ((Expr) u).parent;
+		}
+	}
+
 	public abstract CodeUnit copy();
 
 	private Stmt getRootParent0() {
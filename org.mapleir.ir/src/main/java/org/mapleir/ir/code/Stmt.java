@@ -4,6 +4,13 @@ import java.util.Set;
 
 public abstract class Stmt extends CodeUnit {
 
+	/**
+	 * The index of this statement in its block when it was last numbered.
+	 * This is only a hint for {@link org.mapleir.ir.cfg.BasicBlock#indexOf(Object)}
+	 * and is checked before it is used, so it may be stale.
+	 */
+	private int indexHint = -1;
+
 	public Stmt(int opcode) {
 		super(opcode);
 		
@@ -12,6 +19,14 @@ public abstract class Stmt extends CodeUnit {
 	
 	@Override
 	public abstract Stmt copy();
+
+	public int getIndexHint() {
+		return indexHint;
+	}
+
+	public void setIndexHint(int indexHint) {
+		this.indexHint = indexHint;
+	}
 	
 	public Iterable<CodeUnit> enumerateWithSelf() {
 //		Set<CodeUnit> set = new HashSet<>(_enumerate());
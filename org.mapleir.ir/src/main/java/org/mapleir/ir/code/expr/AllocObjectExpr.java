@@ -29,6 +29,7 @@ public class AllocObjectExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -56,6 +57,11 @@ public class AllocObjectExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		return s instanceof AllocObjectExpr && type.equals(((AllocObjectExpr) s).type);
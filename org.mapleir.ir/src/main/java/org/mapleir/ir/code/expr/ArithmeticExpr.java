@@ -131,6 +131,7 @@ public class ArithmeticExpr extends Expr {
 
 	public void setOperator(Operator operator) {
 		this.operator = operator;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -268,6 +269,11 @@ public class ArithmeticExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + operator.ordinal();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ArithmeticExpr) {
@@ -110,7 +110,7 @@ public class ArrayLoadExpr extends Expr {
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ArrayLoadExpr) {
 			ArrayLoadExpr load = (ArrayLoadExpr) s;
-			return arrayExpression.equals(load.arrayExpression) && indexExpression.equals(load.indexExpression);
+			return arrayExpression.equivalent(load.arrayExpression) && indexExpression.equivalent(load.indexExpression);
 		}
 		return false;
 	}
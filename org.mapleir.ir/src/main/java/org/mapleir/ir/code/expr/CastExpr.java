@@ -40,6 +40,7 @@ public class CastExpr extends Expr {
 
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -90,11 +91,16 @@ public class CastExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof CastExpr) {
 			CastExpr cast = (CastExpr) s;
-			return expression.equivalent(cast) && type.equals(cast.type);
+			return expression.equivalent(cast.expression) && type.equals(cast.type);
 		}
 		return false;
 	}
@@ -33,6 +33,7 @@ public class CaughtExceptionExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -60,6 +61,11 @@ public class CaughtExceptionExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s.getOpcode() == CATCH) {
@@ -70,6 +70,7 @@ public class ComparisonExpr extends Expr {
 
 	public void setType(ValueComparisonType type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -137,11 +138,16 @@ public class ComparisonExpr extends Expr {
 		return type;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.ordinal();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ComparisonExpr) {
 			ComparisonExpr comp = (ComparisonExpr) s;
-			return type == comp.type && left.equivalent(comp.left) && right.equals(comp.right);
+			return type == comp.type && left.equivalent(comp.left) && right.equivalent(comp.right);
 		}
 		return false;
 	}
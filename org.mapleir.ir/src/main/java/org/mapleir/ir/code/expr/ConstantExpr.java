@@ -14,6 +14,8 @@ public class ConstantExpr extends Expr {
 
 	private Object cst;
 	private Type type;
+	/* shared by a ConstantExprTable, may not be changed. */
+	boolean interned;
 		
 	public ConstantExpr(Object cst) {
 		this(cst, computeType(cst), true);
@@ -58,7 +60,11 @@ public class ConstantExpr extends Expr {
 	}
 	
 	public void setConstant(Object o) {
+		if(interned) {
+			throw new UnsupportedOperationException("interned: " + this);
+		}
 		cst = o;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -235,6 +241,11 @@ public class ConstantExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + (cst == null ? 0 : cst.hashCode());
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ConstantExpr) {
@@ -0,0 +1,82 @@
+package org.mapleir.ir.code.expr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.Type;
+
+/**
+ * An interning table for {@link ConstantExpr}s. Equal constants of the same
+ * type share a single canonical instance, so tables keyed on constants (e.g.
+ * for value numbering or finding repeated calls with the same arguments) can
+ * compare them by identity and only one copy of each value is kept.<br>
+ * The canonical instances are shared and so can't be changed and must not be
+ * written into a tree, use {@link ConstantExpr#copy()} to get one which can. The table is safe to share between threads.
+ */
+public class ConstantExprTable {
+
+	private final Map<Key, ConstantExpr> table;
+
+	public ConstantExprTable() {
+		table = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @param cst the constant value
+	 * @param type the type of the constant
+	 * @return the canonical expression for the value and type
+	 */
+	public ConstantExpr intern(Object cst, Type type) {
+		return table.computeIfAbsent(new Key(cst, type), k -> {
+			ConstantExpr e = new ConstantExpr(k.cst, k.type, false);
+			e.interned = true;
+			return e;
+		});
+	}
+
+	/**
+	 * @param e the expression, which is not modified
+	 * @return the canonical expression with the same value and type as e
+	 */
+	public ConstantExpr intern(ConstantExpr e) {
+		if(e.interned) {
+			return e;
+		}
+		return intern(e.getConstant(), e.getType());
+	}
+
+	public int size() {
+		return table.size();
+	}
+
+	public void clear() {
+		table.clear();
+	}
+
+	private static class Key {
+		final Object cst;
+		final Type type;
+
+		Key(Object cst, Type type) {
+			this.cst = cst;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return (cst == null ? k.cst == null : cst.equals(k.cst)) && type.equals(k.type);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (cst == null ? 0 : cst.hashCode()) + type.hashCode();
+		}
+	}
+}
@@ -44,6 +44,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -53,6 +54,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setName(String name) {
 		this.name = name;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -62,6 +64,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -121,6 +124,15 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + (isStatic ? 1 : 0);
+		h = 31 * h + owner.hashCode();
+		h = 31 * h + name.hashCode();
+		return 31 * h + desc.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof FieldLoadExpr) {
@@ -43,6 +43,7 @@ public class InstanceofExpr extends Expr {
 	
 	public void setCheckType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -83,6 +84,11 @@ public class InstanceofExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof InstanceofExpr) {
@@ -50,6 +50,7 @@ public class NewArrayExpr extends Expr {
 
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -105,6 +106,11 @@ public class NewArrayExpr extends Expr {
 		return false;
 	}
 	
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof NewArrayExpr) {
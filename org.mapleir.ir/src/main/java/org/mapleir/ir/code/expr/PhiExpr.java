@@ -105,6 +105,23 @@ public class PhiExpr extends Expr {
 		return false;
 	}
 
+	@Override
+	public int structuralHash() {
+		/* the arguments aren't children so changes to them can't be seen, don't cache. */
+		return computeStructuralHash();
+	}
+
+	@Override
+	protected int computeStructuralHash() {
+		/* unordered, like the comparison in equivalent. */
+		int h = 0;
+		for(Entry<BasicBlock, Expr> e : arguments.entrySet()) {
+			h += 31 * e.getKey().getNumericId() + e.getValue().structuralHash();
+		}
+		/* not the opcode, exception phis are equivalent to normal ones. */
+		return 31 * PHI + h;
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof PhiExpr) {
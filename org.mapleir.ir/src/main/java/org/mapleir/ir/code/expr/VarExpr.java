@@ -30,6 +30,7 @@ public class VarExpr extends Expr {
 	
 	public void setLocal(Local local) {
 		this.local = local;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -39,6 +40,7 @@ public class VarExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -69,6 +71,12 @@ public class VarExpr extends Expr {
 		return false;
 	}
 	
+	@Override
+	protected int computeStructuralHash() {
+		int h = 31 * super.computeStructuralHash() + local.hashCode();
+		return type == null ? h : 31 * h + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof VarExpr) {
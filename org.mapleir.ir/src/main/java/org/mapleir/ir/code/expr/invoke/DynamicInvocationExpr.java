@@ -11,6 +11,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.mapleir.asm.MethodNode;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -126,6 +127,14 @@ public class DynamicInvocationExpr extends InvocationExpr {
 		visitor.visitInvokeDynamicInsn(boundName, getBootstrapDesc(), bootstrapMethod, bootstrapArgs);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + boundName.hashCode();
+		h = 31 * h + bootstrapMethod.hashCode();
+		return 31 * h + Arrays.hashCode(bootstrapArgs);
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if (!super.equivalent(s))
@@ -38,6 +38,7 @@ public class InitialisedObjectExpr extends Invocation {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -47,6 +48,7 @@ public class InitialisedObjectExpr extends Invocation {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		invalidateStructuralHash();
 	}
 
 	public Expr[] getArgumentExpressions() {
@@ -124,6 +126,13 @@ public class InitialisedObjectExpr extends Invocation {
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + owner.hashCode();
+		return 31 * h + desc.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof InitialisedObjectExpr) {
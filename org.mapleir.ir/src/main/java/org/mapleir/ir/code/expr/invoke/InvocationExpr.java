@@ -39,6 +39,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setCallType(CallType callType) {
 		this.callType = callType;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -48,6 +49,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -57,6 +59,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setName(String name) {
 		this.name = name;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -66,6 +69,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		invalidateStructuralHash();
 	}
 
 	protected Expr[] copyArgs() {
@@ -165,6 +169,15 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 		return false;
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + callType.ordinal();
+		h = 31 * h + owner.hashCode();
+		h = 31 * h + name.hashCode();
+		return 31 * h + desc.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof InvocationExpr) {
@@ -56,6 +56,7 @@ public class ArrayStoreStmt extends Stmt {
 
 	public void setArrayType(ArrayType type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -117,6 +118,11 @@ public class ArrayStoreStmt extends Stmt {
 		return new ArrayStoreStmt(arrayExpression.copy(), indexExpression.copy(), valueExpression.copy(), type);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.ordinal();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if (s instanceof ArrayStoreStmt) {
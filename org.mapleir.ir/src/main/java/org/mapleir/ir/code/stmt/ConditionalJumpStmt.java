@@ -29,6 +29,17 @@ public class ConditionalJumpStmt extends Stmt {
 			return sign;
 		}
 
+		/**
+		 * @return the comparison which holds exactly when this one doesn't.
+		 *         Only valid for integer and reference operands, for floating
+		 *         point operands NaN makes both false.
+		 */
+		public ComparisonType negate() {
+			// the constants are in the same order as the jump opcodes,
+			// which pair each comparison with its negation.
+			return values()[ordinal() ^ 1];
+		}
+
 		public static ComparisonType getType(int opcode) {
 			switch (opcode) {
 				case Opcodes.IF_ACMPEQ:
@@ -92,6 +103,7 @@ public class ConditionalJumpStmt extends Stmt {
 
 	public void setTrueSuccessor(BasicBlock trueSuccessor) {
 		this.trueSuccessor = trueSuccessor;
+		invalidateStructuralHash();
 	}
 
 	public ComparisonType getComparisonType() {
@@ -100,6 +112,7 @@ public class ConditionalJumpStmt extends Stmt {
 
 	public void setType(ComparisonType type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -216,11 +229,18 @@ public class ConditionalJumpStmt extends Stmt {
 		return new ConditionalJumpStmt(left.copy(), right.copy(), trueSuccessor, type);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + type.ordinal();
+		return 31 * h + trueSuccessor.getNumericId();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ConditionalJumpStmt) {
 			ConditionalJumpStmt jump = (ConditionalJumpStmt) s;
-			return type == jump.type && left.equivalent(jump.left) && right.equals(jump.right) && trueSuccessor == jump.trueSuccessor;
+			return type == jump.type && left.equivalent(jump.left) && right.equivalent(jump.right) && trueSuccessor == jump.trueSuccessor;
 		}
 		return false;
 	}
@@ -68,6 +68,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		invalidateStructuralHash();
 	}
 
 	public String getName() {
@@ -76,6 +77,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setName(String name) {
 		this.name = name;
+		invalidateStructuralHash();
 	}
 
 	public String getDesc() {
@@ -84,6 +86,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -147,12 +150,28 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 		return new FieldStoreStmt(instanceExpression == null ? null : instanceExpression.copy(), valueExpression.copy(), owner, name, desc, isStatic);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		int h = super.computeStructuralHash();
+		h = 31 * h + (isStatic ? 1 : 0);
+		h = 31 * h + owner.hashCode();
+		h = 31 * h + name.hashCode();
+		return 31 * h + desc.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof FieldStoreStmt) {
 			FieldStoreStmt store = (FieldStoreStmt) s;
+			if(instanceExpression == null || store.instanceExpression == null) {
+				if(instanceExpression != store.instanceExpression) {
+					return false;
+				}
+			} else if(!instanceExpression.equivalent(store.instanceExpression)) {
+				return false;
+			}
 			return isStatic == store.isStatic && owner.equals(store.owner) && name.equals(store.name) && desc.equals(store.desc) &&
-					instanceExpression.equivalent(store.instanceExpression) && valueExpression.equivalent(store.valueExpression);
+					valueExpression.equivalent(store.valueExpression);
 		}
 		return false;
 	}
@@ -69,6 +69,11 @@ public class MonitorStmt extends Stmt {
 		return new MonitorStmt(expression.copy(), mode);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + mode.ordinal();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof MonitorStmt) {
@@ -31,6 +31,7 @@ public class ReturnStmt extends Stmt {
 
 	public void setType(Type type) {
 		this.type = type;
+		invalidateStructuralHash();
 	}
 
 	public Expr getExpression() {
@@ -86,11 +87,22 @@ public class ReturnStmt extends Stmt {
 		return new ReturnStmt(type, expression == null ? null : expression.copy());
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + type.hashCode();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof ReturnStmt) {
 			ReturnStmt ret = (ReturnStmt) s;
-			return type.equals(ret.type) && expression.equivalent(ret.expression);
+			if(!type.equals(ret.type)) {
+				return false;
+			}
+			if(expression == null || ret.expression == null) {
+				return expression == ret.expression;
+			}
+			return expression.equivalent(ret.expression);
 		}
 		return false;
 	}
@@ -169,6 +169,22 @@ public class SwitchStmt extends Stmt {
 		return new SwitchStmt(expression.copy(), new LinkedHashMap<>(targets), defaultTarget);
 	}
 
+	@Override
+	public int structuralHash() {
+		/* the targets map is mutable, don't cache. */
+		return computeStructuralHash();
+	}
+
+	@Override
+	protected int computeStructuralHash() {
+		int h = 0;
+		for(Entry<Integer, BasicBlock> e : targets.entrySet()) {
+			h += 31 * e.getKey() + e.getValue().getNumericId();
+		}
+		h = 31 * super.computeStructuralHash() + h;
+		return 31 * h + defaultTarget.getNumericId();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof SwitchStmt) {
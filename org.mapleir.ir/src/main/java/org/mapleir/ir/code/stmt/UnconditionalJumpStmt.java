@@ -23,6 +23,7 @@ public class UnconditionalJumpStmt extends Stmt {
 	
 	public void setTarget(BasicBlock b) {
 		target = b;
+		invalidateStructuralHash();
 	}
 
 	@Override
@@ -50,6 +51,11 @@ public class UnconditionalJumpStmt extends Stmt {
 		return new UnconditionalJumpStmt(target);
 	}
 
+	@Override
+	protected int computeStructuralHash() {
+		return 31 * super.computeStructuralHash() + target.getNumericId();
+	}
+
 	@Override
 	public boolean equivalent(CodeUnit s) {
 		if(s instanceof UnconditionalJumpStmt) {
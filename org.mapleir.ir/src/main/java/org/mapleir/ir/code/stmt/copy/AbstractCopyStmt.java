@@ -171,6 +171,18 @@ public abstract class AbstractCopyStmt extends Stmt {
 	@Override
 	public abstract AbstractCopyStmt copy();
 
+	@Override
+	public int structuralHash() {
+		/* the variable isn't a child so changes to it can't be seen, don't cache. */
+		return computeStructuralHash();
+	}
+
+	@Override
+	protected int computeStructuralHash() {
+		int h = 31 * opcode + expression.structuralHash();
+		return 31 * h + variable.structuralHash();
+	}
+
 	@Override
 	public abstract boolean equivalent(CodeUnit s);
 }
\ No newline at end of file
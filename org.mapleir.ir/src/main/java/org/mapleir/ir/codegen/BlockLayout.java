@@ -0,0 +1,20 @@
+package org.mapleir.ir.codegen;
+
+import java.util.List;
+
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+/**
+ * Decides the order in which the blocks of a graph are emitted by the
+ * {@link ControlFlowGraphDumper}. The order need not respect the immediate
+ * edges of the graph, the dumper inserts gotos (or inverts conditional jumps)
+ * where a block isn't followed by its immediate successor.
+ */
+public interface BlockLayout {
+	/**
+	 * @param cfg the graph, it must have exactly one entry
+	 * @return every block of the graph, each exactly once, entry first
+	 */
+	List<BasicBlock> layout(ControlFlowGraph cfg);
+}
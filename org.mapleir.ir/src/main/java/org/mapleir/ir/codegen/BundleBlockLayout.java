@@ -0,0 +1,196 @@
+package org.mapleir.ir.codegen;
+
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.ImmediateEdge;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.stdlib.collections.graph.*;
+import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
+import org.mapleir.stdlib.collections.graph.algorithms.TarjanSCC;
+
+import java.util.*;
+
+/**
+ * The default layout. Blocks joined by immediate edges are bundled together,
+ * bundles sharing an exception range are grouped so that the range stays
+ * contiguous and the groups are then ordered by recursively finding the
+ * strongly connected components of the graph between them.
+ */
+public class BundleBlockLayout implements BlockLayout {
+
+	@Override
+	public List<BasicBlock> layout(ControlFlowGraph cfg) {
+		if (cfg.getEntries().size() != 1)
+			throw new IllegalStateException("CFG doesn't have exactly 1 entry");
+		BasicBlock entry = cfg.getEntries().iterator().next();
+		
+		// Build bundle graph
+		Map<BasicBlock, BlockBundle> bundles = new HashMap<>();
+		Map<BlockBundle, List<BlockBundle>> bunches = new HashMap<>();
+		
+		// Build bundles
+		List<BasicBlock> topoorder = new SimpleDfs<>(cfg, entry, SimpleDfs.TOPO).getTopoOrder();
+		for (BasicBlock b : topoorder) {
+			if (bundles.containsKey(b)) // Already in a bundle
+				continue;
+			
+			if (b.cfg.getIncomingImmediateEdge(b) != null) // Look for heads of bundles only
+				continue;
+			
+			BlockBundle bundle = new BlockBundle();
+			while (b != null) {
+				bundle.add(b);
+				bundles.put(b, bundle);
+				b = b.cfg.getImmediate(b);
+			}
+			
+			List<BlockBundle> bunch = new ArrayList<>();
+			bunch.add(bundle);
+			bunches.put(bundle, bunch);
+		}
+		
+		// Group bundles by exception ranges
+		for (ExceptionRange<BasicBlock> range : cfg.getRanges()) {
+			BlockBundle prevBundle = null;
+			for (BasicBlock b : range.getNodes()) {
+				BlockBundle curBundle = bundles.get(b);
+				if (prevBundle == null) {
+					prevBundle = curBundle;
+					continue;
+				}
+				if (curBundle != prevBundle) {
+					List<BlockBundle> bunchA = bunches.get(prevBundle);
+					List<BlockBundle> bunchB = bunches.get(curBundle);
+					if (bunchA != bunchB) {
+						bunchA.addAll(bunchB);
+						for (BlockBundle bundle : bunchB) {
+							bunches.put(bundle, bunchA);
+						}
+					}
+					prevBundle = curBundle;
+				}
+			}
+		}
+		
+		// Rebuild bundles
+		bundles.clear();
+		for (Map.Entry<BlockBundle, List<BlockBundle>> e : bunches.entrySet()) {
+			BlockBundle bundle = e.getKey();
+			if (bundles.containsKey(bundle.getFirst()))
+				continue;
+			BlockBundle bunch = new BlockBundle();
+			e.getValue().forEach(bunch::addAll);
+			for (BasicBlock b : bunch)
+				bundles.put(b, bunch);
+		}
+		
+		// Connect bundle graph
+		BundleGraph bundleGraph = new BundleGraph();
+		BlockBundle entryBundle = bundles.get(entry);
+		bundleGraph.addVertex(entryBundle);
+		for (BasicBlock b : topoorder) {
+			for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				if (e instanceof ImmediateEdge)
+					continue;
+				BlockBundle src = bundles.get(b);
+				bundleGraph.addEdge(new FastGraphEdgeImpl<>(src, bundles.get(e.dst())));
+			}
+		}
+		
+		// Linearize & flatten
+		List<BasicBlock> order = new ArrayList<>();
+		Set<BlockBundle> bundlesSet = new HashSet<>(bundles.values()); // for efficiency
+		linearize(bundlesSet, bundleGraph, entryBundle).forEach(order::addAll);
+		return order;
+	}
+	
+	// Recursively apply Tarjan's SCC algorithm
+	private static List<BlockBundle> linearize(Collection<BlockBundle> bundles, BundleGraph fullGraph, BlockBundle entryBundle) {
+		BundleGraph subgraph = GraphUtils.inducedSubgraph(fullGraph, bundles, BundleGraph::new);
+
+		// Experimental: kill backedges
+		for (FastGraphEdge<BlockBundle> e : new HashSet<>(subgraph.getReverseEdges(entryBundle))) {
+			subgraph.removeEdge(e);
+		}
+		
+		// Find SCCs
+		TarjanSCC<BlockBundle> sccComputor = new TarjanSCC<>(subgraph);
+		sccComputor.search(entryBundle);
+		for(BlockBundle b : bundles) {
+			if(sccComputor.low(b) == -1) {
+				sccComputor.search(b);
+			}
+		}
+		
+		// Flatten
+		List<BlockBundle> order = new ArrayList<>();
+		List<List<BlockBundle>> components = sccComputor.getComponents();
+		if (components.size() == 1)
+			order.addAll(components.get(0));
+		else for (List<BlockBundle> scc : components) // Recurse
+			order.addAll(linearize(scc, subgraph, chooseEntry(subgraph, scc)));
+		return order;
+	}
+	
+	private static BlockBundle chooseEntry(BundleGraph graph, List<BlockBundle> scc) {
+		Set<BlockBundle> sccSet = new HashSet<>(scc);
+		Set<BlockBundle> candidates = new HashSet<>(scc);
+		candidates.removeIf(bundle -> { // No incoming edges from within the SCC.
+			for (FastGraphEdge<BlockBundle> e : graph.getReverseEdges(bundle)) {
+				if (sccSet.contains(e.src()))
+					return true;
+			}
+			return false;
+		});
+		if (candidates.isEmpty())
+			return scc.get(0);
+		return candidates.iterator().next();
+	}
+
+	private static class BundleGraph extends FastDirectedGraph<BlockBundle, FastGraphEdge<BlockBundle>> { }
+	@SuppressWarnings("serial")
+	private static class BlockBundle extends ArrayList<BasicBlock> implements FastGraphVertex {
+		private BasicBlock first = null;
+		
+		private BasicBlock getFirst() {
+			if (first == null)
+				first = get(0);
+			return first;
+		}
+		
+		@Override
+		public String getDisplayName() {
+			return getFirst().getDisplayName();
+		}
+		
+		@Override
+		public int getNumericId() {
+			return getFirst().getNumericId();
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			for (Iterator<BasicBlock> it = this.iterator(); it.hasNext(); ) {
+				BasicBlock b = it.next();
+				s.append(b.getDisplayName());
+				if (it.hasNext())
+					s.append("->");
+			}
+			return s.toString();
+		}
+		
+		@Override
+		public int hashCode() {
+			return getFirst().hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BlockBundle))
+				return false;
+			return ((BlockBundle) o).getFirst().equals(getFirst());
+		}
+	}
+}
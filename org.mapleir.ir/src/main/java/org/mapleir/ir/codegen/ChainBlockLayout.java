@@ -0,0 +1,215 @@
+package org.mapleir.ir.codegen;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.FlowEdges;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.stdlib.collections.graph.algorithms.LT79Dom;
+import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
+
+import java.util.*;
+
+/**
+ * A fall through maximising layout in the style of Pettis and Hansen.
+ *
+ * Every block starts out in a chain of its own. Edges are visited from the
+ * heaviest to the lightest and the chains at either end of an edge are joined
+ * whenever the source ends one chain and the destination starts another, so
+ * the heaviest edges become fall throughs. Chains are then placed starting
+ * from the entry, each time picking the chain with the most weight coming
+ * in from the chains already placed, which leaves rarely taken paths and
+ * exception handlers at the end of the method.
+ *
+ * Without a profile the weight of an edge is the estimated frequency of its
+ * source split evenly between its successors. Frequencies are propagated
+ * forwards from the entry and multiplied at each loop header, so the edges
+ * of deeply nested loops weigh the most.
+ */
+public class ChainBlockLayout implements BlockLayout {
+	private static final double LOOP_WEIGHT = 8;
+	private static final double MAX_FREQUENCY = 1e12;
+	private static final double HANDLER_PROBABILITY = 0.01;
+
+	private final EdgeProfile profile;
+
+	public ChainBlockLayout() {
+		this(null);
+	}
+
+	/**
+	 * @param profile edge counts to use instead of the estimates for the
+	 *        methods they cover, may be null
+	 */
+	public ChainBlockLayout(EdgeProfile profile) {
+		this.profile = profile;
+	}
+
+	@Override
+	public List<BasicBlock> layout(ControlFlowGraph cfg) {
+		if (cfg.getEntries().size() != 1)
+			throw new IllegalStateException("CFG doesn't have exactly 1 entry");
+		BasicBlock entry = cfg.getEntries().iterator().next();
+
+		List<BasicBlock> blocks = new SimpleDfs<>(cfg, entry, SimpleDfs.TOPO).getTopoOrder();
+		Map<BasicBlock, Integer> positions = new HashMap<>();
+		for (BasicBlock b : blocks)
+			positions.put(b, positions.size());
+
+		// Edges back to the header of a loop are never made into fall
+		// throughs, that would only trade the goto at the bottom of the
+		// loop for one into it.
+		LT79Dom<BasicBlock, FlowEdge<BasicBlock>> dom = new LT79Dom<>(cfg, entry, false);
+		Set<FlowEdge<BasicBlock>> backEdges = new HashSet<>();
+		for (BasicBlock b : blocks) {
+			for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				if (dominates(dom, e.dst(), b))
+					backEdges.add(e);
+			}
+		}
+
+		Map<FlowEdge<BasicBlock>, Double> weights = weigh(cfg, entry, blocks, positions, backEdges);
+		List<FlowEdge<BasicBlock>> edges = new ArrayList<>(weights.keySet());
+		edges.sort((e1, e2) -> {
+			int c = Double.compare(weights.get(e2), weights.get(e1));
+			if (c != 0)
+				return c;
+			// prefer keeping existing fall throughs
+			c = Boolean.compare(e2.getType() == FlowEdges.IMMEDIATE, e1.getType() == FlowEdges.IMMEDIATE);
+			if (c != 0)
+				return c;
+			c = Integer.compare(positions.get(e1.src()), positions.get(e2.src()));
+			return c != 0 ? c : Integer.compare(positions.get(e1.dst()), positions.get(e2.dst()));
+		});
+
+		// Build chains
+		Map<BasicBlock, List<BasicBlock>> chains = new HashMap<>();
+		for (BasicBlock b : blocks) {
+			List<BasicBlock> chain = new ArrayList<>();
+			chain.add(b);
+			chains.put(b, chain);
+		}
+		for (FlowEdge<BasicBlock> e : edges) {
+			BasicBlock src = e.src(), dst = e.dst();
+			List<BasicBlock> srcChain = chains.get(src), dstChain = chains.get(dst);
+			if (dst == entry || srcChain == dstChain || backEdges.contains(e))
+				continue;
+			if (srcChain.get(srcChain.size() - 1) != src || dstChain.get(0) != dst)
+				continue;
+			srcChain.addAll(dstChain);
+			for (BasicBlock b : dstChain)
+				chains.put(b, srcChain);
+		}
+
+		// Place chains
+		List<BasicBlock> order = new ArrayList<>();
+		Set<List<BasicBlock>> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<List<BasicBlock>, Double> scores = new IdentityHashMap<>();
+		PriorityQueue<Candidate> queue = new PriorityQueue<>();
+		int next = 0;
+
+		List<BasicBlock> chain = chains.get(entry);
+		while (chain != null) {
+			placed.add(chain);
+			order.addAll(chain);
+
+			for (BasicBlock b : chain) {
+				for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+					Double w = weights.get(e);
+					List<BasicBlock> succ = chains.get(e.dst());
+					if (w == null || placed.contains(succ))
+						continue;
+					double score = scores.merge(succ, w, Double::sum);
+					queue.add(new Candidate(succ, score, positions.get(succ.get(0))));
+				}
+			}
+
+			chain = null;
+			while (!queue.isEmpty()) {
+				Candidate c = queue.poll();
+				if (!placed.contains(c.chain)) {
+					chain = c.chain;
+					break;
+				}
+			}
+			// nothing hot left, fall back to the original order
+			while (chain == null && next < blocks.size()) {
+				List<BasicBlock> candidate = chains.get(blocks.get(next++));
+				if (!placed.contains(candidate))
+					chain = candidate;
+			}
+		}
+		return order;
+	}
+
+	private Map<FlowEdge<BasicBlock>, Double> weigh(ControlFlowGraph cfg, BasicBlock entry, List<BasicBlock> blocks,
+			Map<BasicBlock, Integer> positions, Set<FlowEdge<BasicBlock>> backEdges) {
+		Map<FlowEdge<BasicBlock>, Double> weights = new HashMap<>();
+
+		if (profile != null && profile.hasMethod(cfg)) {
+			for (BasicBlock b : blocks) {
+				for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+					if (e.getType() != FlowEdges.TRYCATCH)
+						weights.put(e, (double) profile.getCount(cfg, b, e.dst()));
+				}
+			}
+			return weights;
+		}
+
+		// Propagate frequencies forwards in topological order, scaling them
+		// up on entry to a loop.
+		Map<BasicBlock, Double> freqs = new HashMap<>();
+		freqs.put(entry, 1D);
+		for (BasicBlock b : blocks) {
+			int pos = positions.get(b);
+			boolean header = false;
+			for (FlowEdge<BasicBlock> e : cfg.getReverseEdges(b)) {
+				if (backEdges.contains(e))
+					header = true;
+			}
+			double freq = freqs.getOrDefault(b, 0D);
+			if (header)
+				freq = Math.min(freq * LOOP_WEIGHT, MAX_FREQUENCY);
+
+			List<FlowEdge<BasicBlock>> succs = new ArrayList<>();
+			for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				if (e.getType() != FlowEdges.TRYCATCH)
+					succs.add(e);
+			}
+			for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				double w = e.getType() == FlowEdges.TRYCATCH ? freq * HANDLER_PROBABILITY : freq / succs.size();
+				if (e.getType() != FlowEdges.TRYCATCH)
+					weights.put(e, w);
+				Integer dstPos = positions.get(e.dst());
+				if (dstPos != null && dstPos > pos)
+					freqs.merge(e.dst(), w, Double::sum);
+			}
+		}
+		return weights;
+	}
+
+	private static boolean dominates(LT79Dom<BasicBlock, FlowEdge<BasicBlock>> dom, BasicBlock a, BasicBlock b) {
+		for (BasicBlock n = b; n != null; n = dom.getImmediateDominator(n)) {
+			if (n == a)
+				return true;
+		}
+		return false;
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		final List<BasicBlock> chain;
+		final double score;
+		final int position;
+
+		Candidate(List<BasicBlock> chain, double score, int position) {
+			this.chain = chain;
+			this.score = score;
+			this.position = position;
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			int c = Double.compare(o.score, score);
+			return c != 0 ? c : Integer.compare(position, o.position);
+		}
+	}
+}
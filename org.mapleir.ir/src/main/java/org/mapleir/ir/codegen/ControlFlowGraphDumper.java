@@ -1,6 +1,7 @@
 package org.mapleir.ir.codegen;
 
 import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.flowgraph.edges.ConditionalJumpEdge;
 import org.mapleir.flowgraph.edges.FlowEdge;
 import org.mapleir.flowgraph.edges.FlowEdges;
 import org.mapleir.flowgraph.edges.ImmediateEdge;
@@ -9,31 +10,37 @@ import org.mapleir.ir.TypeUtils;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
 import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
 import org.mapleir.ir.code.stmt.UnconditionalJumpStmt;
-import org.mapleir.stdlib.collections.graph.*;
-import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
-import org.mapleir.stdlib.collections.graph.algorithms.TarjanSCC;
 import org.mapleir.stdlib.collections.list.IndexedList;
 import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.LabelNode;
 import org.mapleir.asm.MethodNode;
-import org.objectweb.asm.tree.TryCatchBlockNode;
 
 import java.util.*;
 
 public class ControlFlowGraphDumper implements BytecodeFrontend {
 	private final ControlFlowGraph cfg;
 	private final MethodNode m;
+	private final BlockLayout layout;
 
 	private IndexedList<BasicBlock> order;
 	private LabelNode terminalLabel; // synthetic last label for malformed ranges
 	private Map<BasicBlock, LabelNode> labels;
+	private Map<Label, Integer> positions; // order in which the labels were visited
+	private List<Label[]> ranges; // start, end and handler of the visited try/catch blocks
 
 	public ControlFlowGraphDumper(ControlFlowGraph cfg, MethodNode m) {
+		this(cfg, m, new BundleBlockLayout());
+	}
+
+	public ControlFlowGraphDumper(ControlFlowGraph cfg, MethodNode m, BlockLayout layout) {
 		this.cfg = cfg;
 		this.m = m;
+		this.layout = layout;
 	}
 	
 	public void dump() {
@@ -42,10 +49,32 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		m.node.tryCatchBlocks.clear();
 		m.node.visitCode();
 
+		emit(m.node);
+
+		m.node.visitEnd();
+	}
+
+	/**
+	 * Writes the code of the graph straight into the given visitor, leaving
+	 * the instruction list of the method untouched. Only the instructions and
+	 * exception handlers are visited, the caller is responsible for the
+	 * visitCode, visitMaxs and visitEnd calls around them.
+	 *
+	 * @param mv the visitor, usually obtained from a ClassWriter
+	 */
+	public void dump(MethodVisitor mv) {
+		emit(mv);
+	}
+
+	private void emit(MethodVisitor mv) {
+		m.markDirty();
+
 		labels = new HashMap<>();
 		for (BasicBlock b : cfg.vertices()) {
 			labels.put(b, new LabelNode());
 		}
+		positions = new HashMap<>();
+		ranges = new ArrayList<>();
 
 		// Linearize
 		linearize();
@@ -58,155 +87,49 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 
 		// Dump code
 		for (BasicBlock b : order) {
-			m.node.visitLabel(getLabel(b));
+			visitLabel(mv, getLabel(b));
 			for (Stmt stmt : b) {
-				stmt.toCode(m.node, this);
+				stmt.toCode(mv, this);
 			}
 		}
 		terminalLabel = new LabelNode();
-		m.node.visitLabel(terminalLabel.getLabel());
+		visitLabel(mv, terminalLabel.getLabel());
 
 		// Dump ranges
+		Map<ExceptionRange<BasicBlock>, List<int[]>> runs = findRuns();
 		for (ExceptionRange<BasicBlock> er : cfg.getRanges()) {
-			dumpRange(er);
+			dumpRange(mv, er, runs.get(er));
 		}
 		
 		// Sanity check
 		verifyRanges();
-		
-		m.node.visitEnd();
+	}
+
+	private void visitLabel(MethodVisitor mv, Label label) {
+		positions.put(label, positions.size());
+		mv.visitLabel(label);
+	}
+
+	private void visitTryCatchBlock(MethodVisitor mv, Label start, Label end, Label handler, String type) {
+		ranges.add(new Label[] { start, end, handler });
+		mv.visitTryCatchBlock(start, end, handler, type);
 	}
 	
 	private void linearize() {
 		if (cfg.getEntries().size() != 1)
 			throw new IllegalStateException("CFG doesn't have exactly 1 entry");
-		BasicBlock entry = cfg.getEntries().iterator().next();
-		
-		// Build bundle graph
-		Map<BasicBlock, BlockBundle> bundles = new HashMap<>();
-		Map<BlockBundle, List<BlockBundle>> bunches = new HashMap<>();
-		
-		// Build bundles
-		List<BasicBlock> topoorder = new SimpleDfs<>(cfg, entry, SimpleDfs.TOPO).getTopoOrder();
-		for (BasicBlock b : topoorder) {
-			if (bundles.containsKey(b)) // Already in a bundle
-				continue;
-			
-			if (b.cfg.getIncomingImmediateEdge(b) != null) // Look for heads of bundles only
-				continue;
-			
-			BlockBundle bundle = new BlockBundle();
-			while (b != null) {
-				bundle.add(b);
-				bundles.put(b, bundle);
-				b = b.cfg.getImmediate(b);
-			}
-			
-			List<BlockBundle> bunch = new ArrayList<>();
-			bunch.add(bundle);
-			bunches.put(bundle, bunch);
-		}
-		
-		// Group bundles by exception ranges
-		for (ExceptionRange<BasicBlock> range : cfg.getRanges()) {
-			BlockBundle prevBundle = null;
-			for (BasicBlock b : range.getNodes()) {
-				BlockBundle curBundle = bundles.get(b);
-				if (prevBundle == null) {
-					prevBundle = curBundle;
-					continue;
-				}
-				if (curBundle != prevBundle) {
-					List<BlockBundle> bunchA = bunches.get(prevBundle);
-					List<BlockBundle> bunchB = bunches.get(curBundle);
-					if (bunchA != bunchB) {
-						bunchA.addAll(bunchB);
-						for (BlockBundle bundle : bunchB) {
-							bunches.put(bundle, bunchA);
-						}
-					}
-					prevBundle = curBundle;
-				}
-			}
-		}
-		
-		// Rebuild bundles
-		bundles.clear();
-		for (Map.Entry<BlockBundle, List<BlockBundle>> e : bunches.entrySet()) {
-			BlockBundle bundle = e.getKey();
-			if (bundles.containsKey(bundle.getFirst()))
-				continue;
-			BlockBundle bunch = new BlockBundle();
-			e.getValue().forEach(bunch::addAll);
-			for (BasicBlock b : bunch)
-				bundles.put(b, bunch);
-		}
-		
-		// Connect bundle graph
-		BundleGraph bundleGraph = new BundleGraph();
-		BlockBundle entryBundle = bundles.get(entry);
-		bundleGraph.addVertex(entryBundle);
-		for (BasicBlock b : topoorder) {
-			for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
-				if (e instanceof ImmediateEdge)
-					continue;
-				BlockBundle src = bundles.get(b);
-				bundleGraph.addEdge(new FastGraphEdgeImpl<>(src, bundles.get(e.dst())));
-			}
-		}
-		
-		// Linearize & flatten
-		order = new IndexedList<>();
-		Set<BlockBundle> bundlesSet = new HashSet<>(bundles.values()); // for efficiency
-		ControlFlowGraphDumper.linearize(bundlesSet, bundleGraph, entryBundle).forEach(order::addAll);
-	}
-	
-	// Recursively apply Tarjan's SCC algorithm
-	private static List<BlockBundle> linearize(Collection<BlockBundle> bundles, BundleGraph fullGraph, BlockBundle entryBundle) {
-		BundleGraph subgraph = GraphUtils.inducedSubgraph(fullGraph, bundles, BundleGraph::new);
 
-		// Experimental: kill backedges
-		for (FastGraphEdge<BlockBundle> e : new HashSet<>(subgraph.getReverseEdges(entryBundle))) {
-			subgraph.removeEdge(e);
-		}
-		
-		// Find SCCs
-		TarjanSCC<BlockBundle> sccComputor = new TarjanSCC<>(subgraph);
-		sccComputor.search(entryBundle);
-		for(BlockBundle b : bundles) {
-			if(sccComputor.low(b) == -1) {
-				sccComputor.search(b);
-			}
-		}
-		
-		// Flatten
-		List<BlockBundle> order = new ArrayList<>();
-		List<List<BlockBundle>> components = sccComputor.getComponents();
-		if (components.size() == 1)
-			order.addAll(components.get(0));
-		else for (List<BlockBundle> scc : components) // Recurse
-			order.addAll(linearize(scc, subgraph, chooseEntry(subgraph, scc)));
-		return order;
-	}
-	
-	private static BlockBundle chooseEntry(BundleGraph graph, List<BlockBundle> scc) {
-		Set<BlockBundle> sccSet = new HashSet<>(scc);
-		Set<BlockBundle> candidates = new HashSet<>(scc);
-		candidates.removeIf(bundle -> { // No incoming edges from within the SCC.
-			for (FastGraphEdge<BlockBundle> e : graph.getReverseEdges(bundle)) {
-				if (sccSet.contains(e.src()))
-					return true;
-			}
-			return false;
-		});
-		if (candidates.isEmpty())
-			return scc.get(0);
-		return candidates.iterator().next();
+		order = new IndexedList<>();
+		order.addAll(layout.layout(cfg));
+		if (order.isEmpty() || order.get(0) != cfg.getEntries().iterator().next())
+			throw new IllegalStateException("Layout doesn't start with the entry: " + order + " " + m);
 	}
 
 	private void naturalise() {
 		for (int i = 0; i < order.size(); i++) {
 			BasicBlock b = order.get(i);
+			if (i + 1 < order.size())
+				invertConditional(b, order.get(i + 1));
 			for (FlowEdge<BasicBlock> e : new HashSet<>(cfg.getEdges(b))) {
 				BasicBlock dst = e.dst();
 				if (e instanceof ImmediateEdge && order.indexOf(dst) != i + 1) {
@@ -229,6 +152,44 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		}
 	}
 
+	// Flip a conditional jump whose target directly follows it so that the
+	// target becomes the fall through instead of needing a goto.
+	private void invertConditional(BasicBlock b, BasicBlock next) {
+		if (b.isEmpty() || !(b.get(b.size() - 1) instanceof ConditionalJumpStmt))
+			return;
+		ConditionalJumpStmt cond = (ConditionalJumpStmt) b.get(b.size() - 1);
+
+		ConditionalJumpEdge<BasicBlock> jump = null;
+		ImmediateEdge<BasicBlock> immediate = null;
+		for (FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+			if (e instanceof ConditionalJumpEdge)
+				jump = (ConditionalJumpEdge<BasicBlock>) e;
+			else if (e instanceof ImmediateEdge)
+				immediate = (ImmediateEdge<BasicBlock>) e;
+		}
+		if (jump == null || immediate == null || jump.dst() != next || immediate.dst() == next)
+			return;
+
+		Type opType = TypeUtils.resolveBinOpType(cond.getLeft().getType(), cond.getRight().getType());
+		if (opType == Type.FLOAT_TYPE || opType == Type.DOUBLE_TYPE)
+			return;
+
+		BasicBlock target = immediate.dst();
+		cond.setType(cond.getComparisonType().negate());
+		cond.setTrueSuccessor(target);
+		cfg.removeEdge(jump);
+		cfg.removeEdge(immediate);
+		cfg.addEdge(new ConditionalJumpEdge<>(b, target, negateJump(jump.opcode)));
+		cfg.addEdge(new ImmediateEdge<>(b, next));
+	}
+
+	private static int negateJump(int opcode) {
+		if (opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL)
+			return opcode ^ 1;
+		// IFEQ..IF_ACMPNE come in pairs starting at an odd opcode
+		return ((opcode + 1) ^ 1) - 1;
+	}
+
 	private void verifyOrdering() {
 		ListIterator<BasicBlock> it = order.listIterator();
 		while(it.hasNext()) {
@@ -251,7 +212,26 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		}
 	}
 
-	private void dumpRange(ExceptionRange<BasicBlock> er) {
+	// The runs of consecutive blocks in the order which each range covers, as
+	// [start, end) indices. They're found in one walk over the order through
+	// the range index of the graph rather than by sorting the nodes of each
+	// range.
+	private Map<ExceptionRange<BasicBlock>, List<int[]>> findRuns() {
+		Map<ExceptionRange<BasicBlock>, List<int[]>> runs = new HashMap<>();
+		for (int i = 0; i < order.size(); i++) {
+			for (ExceptionRange<BasicBlock> er : cfg.getProtectingRanges(order.get(i))) {
+				List<int[]> list = runs.computeIfAbsent(er, k -> new ArrayList<>());
+				int[] last = list.isEmpty() ? null : list.get(list.size() - 1);
+				if (last != null && last[1] == i)
+					last[1]++;
+				else
+					list.add(new int[] { i, i + 1 });
+			}
+		}
+		return runs;
+	}
+
+	private void dumpRange(MethodVisitor mv, ExceptionRange<BasicBlock> er, List<int[]> runs) {
 		// Determine exception type
 		Type type;
 		Set<Type> typeSet = er.getTypes();
@@ -262,71 +242,29 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 			type = typeSet.iterator().next();
 		}
 		
-		final Label handler = getLabel(er.getHandler());
-		List<BasicBlock> range = new ArrayList<>(er.getNodes());
-		range.sort(Comparator.comparing(order::indexOf));
-		
-		Label start;
-		int rangeIdx = -1, orderIdx;
-		do {
-			if (++rangeIdx == range.size()) {
-				System.err.println("[warn] range is absent: " + m);
-				return;
-			}
-			BasicBlock b = range.get(rangeIdx);
-			orderIdx = order.indexOf(b);
-			start = getLabel(b);
-		} while (orderIdx == -1);
+		if (runs == null) {
+			System.err.println("[warn] range is absent: " + m);
+			return;
+		}
 		
-		for (;;) {
-			// check for endpoints
-			if (orderIdx + 1 == order.size()) { // end of method
-				m.node.visitTryCatchBlock(start, terminalLabel.getLabel(), handler, type.getInternalName());
-				break;
-			} else if (rangeIdx + 1 == range.size()) { // end of range
-				Label end = getLabel(order.get(orderIdx + 1));
-				m.node.visitTryCatchBlock(start, end, handler, type.getInternalName());
-				break;
-			}
-			
-			// check for discontinuity
-			BasicBlock nextBlock = range.get(rangeIdx + 1);
-			int nextOrderIdx = order.indexOf(nextBlock);
-			if (nextOrderIdx - orderIdx > 1) { // blocks in-between, end the handler and begin anew
+		final Label handler = getLabel(er.getHandler());
+		for (int i = 0; i < runs.size(); i++) {
+			if (i > 0) // blocks in-between, end the handler and begin anew
 				System.err.println("[warn] Had to split up a range: " + m);
-				Label end = getLabel(order.get(orderIdx + 1));
-				m.node.visitTryCatchBlock(start, end, handler, type.getInternalName());
-				start = getLabel(nextBlock);
-			}
-
-			// next
-			rangeIdx++;
-			if (nextOrderIdx != -1)
-				orderIdx = nextOrderIdx;
+			int[] run = runs.get(i);
+			Label start = getLabel(order.get(run[0]));
+			Label end = run[1] == order.size() ? terminalLabel.getLabel() : getLabel(order.get(run[1]));
+			visitTryCatchBlock(mv, start, end, handler, type.getInternalName());
 		}
 	}
 	
 	private void verifyRanges() {
-		for (TryCatchBlockNode tc : m.node.tryCatchBlocks) {
-			int start = -1, end = -1, handler = -1;
-			for (int i = 0; i < m.node.instructions.size(); i++) {
-				AbstractInsnNode ain = m.node.instructions.get(i);
-				if (!(ain instanceof LabelNode))
-					continue;
-				Label l = ((LabelNode) ain).getLabel();
-				if (l == tc.start.getLabel())
-					start = i;
-				if (l == tc.end.getLabel()) {
-					if (start == -1)
-						throw new IllegalStateException("Try block end before start " + m);
-					end = i;
-				}
-				if (l == tc.handler.getLabel()) {
-					handler = i;
-				}
-			}
-			if (start == -1 || end == -1 || handler == -1)
+		for (Label[] range : ranges) {
+			Integer start = positions.get(range[0]), end = positions.get(range[1]), handler = positions.get(range[2]);
+			if (start == null || end == null || handler == null)
 				throw new IllegalStateException("Try/catch endpoints missing: " + start + " " + end + " " + handler + m);
+			if (end < start)
+				throw new IllegalStateException("Try block end before start " + m);
 		}
 	}
 
@@ -340,49 +278,4 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		return cfg;
 	}
 
-	private static class BundleGraph extends FastDirectedGraph<BlockBundle, FastGraphEdge<BlockBundle>> { }
-	@SuppressWarnings("serial")
-	private static class BlockBundle extends ArrayList<BasicBlock> implements FastGraphVertex {
-		private BasicBlock first = null;
-		
-		private BasicBlock getFirst() {
-			if (first == null)
-				first = get(0);
-			return first;
-		}
-		
-		@Override
-		public String getDisplayName() {
-			return getFirst().getDisplayName();
-		}
-		
-		@Override
-		public int getNumericId() {
-			return getFirst().getNumericId();
-		}
-		
-		@Override
-		public String toString() {
-			StringBuilder s = new StringBuilder();
-			for (Iterator<BasicBlock> it = this.iterator(); it.hasNext(); ) {
-				BasicBlock b = it.next();
-				s.append(b.getDisplayName());
-				if (it.hasNext())
-					s.append("->");
-			}
-			return s.toString();
-		}
-		
-		@Override
-		public int hashCode() {
-			return getFirst().hashCode();
-		}
-		
-		@Override
-		public boolean equals(Object o) {
-			if (!(o instanceof BlockBundle))
-				return false;
-			return ((BlockBundle) o).getFirst().equals(getFirst());
-		}
-	}
 }
@@ -0,0 +1,88 @@
+package org.mapleir.ir.codegen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+/**
+ * Execution counts of control flow edges, used by the {@link ChainBlockLayout}
+ * in place of its static estimates.
+ *
+ * The profile is a text file with one edge per line:
+ * <pre>
+ * owner.name(desc)ret source target count
+ * </pre>
+ * where the method is given by its owner's internal name, its name and
+ * descriptor and the blocks by their display names, as printed in the IR.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class EdgeProfile {
+
+	private final Map<String, Map<String, Long>> counts;
+
+	public EdgeProfile() {
+		counts = new HashMap<>();
+	}
+
+	public static EdgeProfile read(File file) throws IOException {
+		try (Reader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			return read(r);
+		}
+	}
+
+	public static EdgeProfile read(Reader r) throws IOException {
+		EdgeProfile profile = new EdgeProfile();
+		BufferedReader br = r instanceof BufferedReader ? (BufferedReader) r : new BufferedReader(r);
+		String line;
+		int lineNum = 0;
+		while ((line = br.readLine()) != null) {
+			lineNum++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			String[] parts = line.split("\\s+");
+			if (parts.length != 4)
+				throw new IOException("Malformed edge at line " + lineNum + ": " + line);
+			try {
+				profile.add(parts[0], parts[1], parts[2], Long.parseLong(parts[3]));
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed count at line " + lineNum + ": " + line);
+			}
+		}
+		return profile;
+	}
+
+	public void add(String method, String src, String dst, long count) {
+		counts.computeIfAbsent(method, k -> new HashMap<>()).merge(src + " " + dst, count, Long::sum);
+	}
+
+	public boolean hasMethod(ControlFlowGraph cfg) {
+		return counts.containsKey(getKey(cfg));
+	}
+
+	/**
+	 * @param cfg the graph of the method
+	 * @param src the source of the edge
+	 * @param dst the destination of the edge
+	 * @return the number of times the edge was taken, 0 if it isn't in the profile
+	 */
+	public long getCount(ControlFlowGraph cfg, BasicBlock src, BasicBlock dst) {
+		Map<String, Long> edges = counts.get(getKey(cfg));
+		if (edges == null)
+			return 0;
+		return edges.getOrDefault(src.getDisplayName() + " " + dst.getDisplayName(), 0L);
+	}
+
+	private static String getKey(ControlFlowGraph cfg) {
+		return cfg.getOwner() + "." + cfg.getName() + cfg.getDesc();
+	}
+}
@@ -118,6 +118,15 @@ public class CFGExporterUtils {
 			}
 		}
 		
+		// every char has to go through the escaping below
+		@Override
+		public TabbedStringWriter print(CharSequence str) {
+			for (int i = 0; i < str.length(); i++) {
+				print(str.charAt(i), true);
+			}
+			return this;
+		}
+		
 		@Override
 		public TabbedStringWriter print(char c, boolean indent) {
 			if(c == '\n') {
@@ -0,0 +1,1146 @@
+package org.mapleir.ir.utils;
+
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.flowgraph.edges.*;
+import org.mapleir.ir.TypeUtils.ArrayType;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.*;
+import org.mapleir.ir.code.expr.ComparisonExpr.ValueComparisonType;
+import org.mapleir.ir.code.expr.invoke.*;
+import org.mapleir.ir.code.expr.invoke.InvocationExpr.CallType;
+import org.mapleir.ir.code.stmt.*;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt.ComparisonType;
+import org.mapleir.ir.code.stmt.MonitorStmt.MonitorMode;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.ir.locals.LocalsPool;
+import org.mapleir.ir.locals.impl.StaticMethodLocalsPool;
+import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.mapleir.ir.locals.impl.VirtualMethodLocalsPool;
+import org.mapleir.stdlib.util.JavaDesc;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * Writes a {@link ControlFlowGraph} to a compact binary form and reads it back.
+ * The graph is stored completely: the blocks and their statements, the
+ * contents of the {@link LocalsPool}, the exception ranges and the edges.
+ * The def/use information of the pool is not stored but is rebuilt from the
+ * statements when the graph is read.
+ *
+ * <p> Layout (version 2):
+ * <pre>
+ *   u4       magic
+ *   varint   version
+ *   varint   string count, strings    (owners, names, descriptors, types, string constants)
+ *   str      owner, name, desc
+ *   u1       pool kind
+ *   varint   local count, locals      (index/flags, subscript + 1 or 0 for unversioned)
+ *   varint   block count, blocks      (id delta, flags)
+ *   varint   entry count, entries     (block refs)
+ *   varint   range count, ranges      (handler, types, nodes)
+ *   per block: varint stmt count, stmt trees
+ *   per block: varint edge count, edges
+ * </pre>
+ * All integers are unsigned LEB128 varints (signed values are zigzag encoded
+ * first), blocks and locals are referred to by their index in their tables
+ * and strings by their index in the string table. Each statement and
+ * expression node starts with a one byte tag made from its opcode, see
+ * {@link #tag(int)}; tag 0 stands for a missing (null) expression.
+ */
+public class CFGSerialiser implements Opcode {
+
+	public static final int MAGIC = 0x4D49520A;
+	public static final int VERSION = 2;
+
+	private static final int POOL_STATIC = 0, POOL_VIRTUAL = 1;
+
+	private static final int INVOKE_STATIC = 0, INVOKE_VIRTUAL = 1, INVOKE_DYNAMIC = 2;
+
+	private static final int CST_NULL = 0, CST_INT = 1, CST_LONG = 2, CST_FLOAT = 3, CST_DOUBLE = 4,
+			CST_STRING = 5, CST_TYPE = 6, CST_HANDLE = 7, CST_BYTE = 8, CST_SHORT = 9, CST_CHAR = 10,
+			CST_BOOLEAN = 11;
+
+	private static final int TAG_NULL = 0;
+
+	/**
+	 * Packs an opcode into a single byte tag: the opcode class in the high
+	 * nibble and the opcode within the class in the low nibble.
+	 * @param opcode the opcode
+	 * @return the tag, never {@code 0}
+	 */
+	static int tag(int opcode) {
+		return ((opcode >> 4) & 0xF0) | (opcode & 0xF);
+	}
+
+	static int untag(int tag) {
+		return ((tag & 0xF0) << 4) | (tag & 0xF);
+	}
+
+	public static byte[] write(ControlFlowGraph cfg) {
+		return new Writer(cfg).write();
+	}
+
+	public static void write(ControlFlowGraph cfg, OutputStream out) throws IOException {
+		out.write(write(cfg));
+	}
+
+	public static ControlFlowGraph read(byte[] bytes) throws IOException {
+		try {
+			return new Reader(bytes).read();
+		} catch(ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated graph", e);
+		}
+	}
+
+	public static ControlFlowGraph read(InputStream in) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while((n = in.read(buf)) != -1) {
+			bos.write(buf, 0, n);
+		}
+		return read(bos.toByteArray());
+	}
+
+	private static class ByteSink {
+		private byte[] buf;
+		private int size;
+
+		ByteSink(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		private void ensure(int n) {
+			if(size + n > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + n));
+			}
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			buf[size++] = (byte) b;
+		}
+
+		void writeBytes(byte[] b, int len) {
+			ensure(len);
+			System.arraycopy(b, 0, buf, size, len);
+			size += len;
+		}
+
+		void writeVarint(int v) {
+			ensure(5);
+			while((v & ~0x7F) != 0) {
+				buf[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[size++] = (byte) v;
+		}
+
+		void writeVarlong(long v) {
+			ensure(10);
+			while((v & ~0x7FL) != 0) {
+				buf[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[size++] = (byte) v;
+		}
+
+		void writeSigned(int v) {
+			writeVarint((v << 1) ^ (v >> 31));
+		}
+
+		void writeSignedLong(long v) {
+			writeVarlong((v << 1) ^ (v >> 63));
+		}
+
+		void writeInt(int v) {
+			ensure(4);
+			buf[size++] = (byte) (v >>> 24);
+			buf[size++] = (byte) (v >>> 16);
+			buf[size++] = (byte) (v >>> 8);
+			buf[size++] = (byte) v;
+		}
+
+		void writeLong(long v) {
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+
+		/* strings are kept as utf16 so that unpaired surrogates
+		 * (common in obfuscated constants) survive. */
+		void writeString(String s) {
+			int len = s.length();
+			boolean ascii = true;
+			for(int i=0; i < len; i++) {
+				if(s.charAt(i) >= 0x80) {
+					ascii = false;
+					break;
+				}
+			}
+			writeVarint((len << 1) | (ascii ? 0 : 1));
+			if(ascii) {
+				ensure(len);
+				for(int i=0; i < len; i++) {
+					buf[size++] = (byte) s.charAt(i);
+				}
+			} else {
+				for(int i=0; i < len; i++) {
+					writeVarint(s.charAt(i));
+				}
+			}
+		}
+	}
+
+	private static class Writer {
+		private final ControlFlowGraph cfg;
+		private final ByteSink out;
+		private final Map<String, Integer> strings;
+		private final Map<Local, Integer> localIndices;
+		private final Map<BasicBlock, Integer> blockIndices;
+		private final Map<ExceptionRange<BasicBlock>, Integer> rangeIndices;
+
+		Writer(ControlFlowGraph cfg) {
+			this.cfg = cfg;
+			out = new ByteSink(1024);
+			strings = new LinkedHashMap<>();
+			/* the basic and versioned locals don't have
+			 * symmetric equals so go by identity. */
+			localIndices = new IdentityHashMap<>();
+			blockIndices = new HashMap<>();
+			rangeIndices = new IdentityHashMap<>();
+		}
+
+		byte[] write() {
+			JavaDesc desc = cfg.getJavaDesc();
+			writeString(desc.owner);
+			writeString(desc.name);
+			writeString(desc.desc);
+
+			LocalsPool pool = cfg.getLocals();
+			if(pool instanceof StaticMethodLocalsPool) {
+				out.writeByte(POOL_STATIC);
+			} else if(pool instanceof VirtualMethodLocalsPool) {
+				out.writeByte(POOL_VIRTUAL);
+			} else {
+				throw new UnsupportedOperationException(pool.getClass().getName());
+			}
+
+			writeLocals(pool);
+
+			List<BasicBlock> blocks = new ArrayList<>(cfg.vertices());
+			blocks.sort(Comparator.comparingInt(BasicBlock::getNumericId));
+			out.writeVarint(blocks.size());
+			int lastId = 0;
+			for(BasicBlock b : blocks) {
+				blockIndices.put(b, blockIndices.size());
+				out.writeVarint(b.getNumericId() - lastId);
+				out.writeVarint(b.getFlags());
+				lastId = b.getNumericId();
+			}
+
+			out.writeVarint(cfg.getEntries().size());
+			for(BasicBlock b : cfg.getEntries()) {
+				writeBlock(b);
+			}
+
+			List<ExceptionRange<BasicBlock>> ranges = cfg.getRanges();
+			out.writeVarint(ranges.size());
+			for(ExceptionRange<BasicBlock> r : ranges) {
+				rangeIndices.put(r, rangeIndices.size());
+				writeBlock(r.getHandler());
+				Set<Type> types = r.getTypes();
+				out.writeVarint(types.size());
+				for(Type t : types) {
+					writeString(t.getDescriptor());
+				}
+				List<BasicBlock> nodes = r.getNodes();
+				out.writeVarint(nodes.size());
+				for(BasicBlock b : nodes) {
+					writeBlock(b);
+				}
+			}
+
+			for(BasicBlock b : blocks) {
+				out.writeVarint(b.size());
+				for(Stmt stmt : b) {
+					writeStmt(stmt);
+				}
+			}
+
+			for(BasicBlock b : blocks) {
+				Set<FlowEdge<BasicBlock>> edges = cfg.getEdges(b);
+				out.writeVarint(edges.size());
+				for(FlowEdge<BasicBlock> e : edges) {
+					writeEdge(e);
+				}
+			}
+
+			ByteSink file = new ByteSink(out.size + 64 + (strings.size() << 4));
+			file.writeInt(MAGIC);
+			file.writeVarint(VERSION);
+			file.writeVarint(strings.size());
+			for(String s : strings.keySet()) {
+				file.writeString(s);
+			}
+			file.writeBytes(out.buf, out.size);
+			return Arrays.copyOf(file.buf, file.size);
+		}
+
+		void writeString(String s) {
+			Integer i = strings.get(s);
+			if(i == null) {
+				i = strings.size();
+				strings.put(s, i);
+			}
+			out.writeVarint(i);
+		}
+
+		void writeLocals(LocalsPool pool) {
+			Set<Local> all = pool.getAll(l -> true);
+			out.writeVarint(all.size());
+			for(Local l : all) {
+				localIndices.put(l, localIndices.size());
+				out.writeVarint((l.getIndex() << 2) | (l.isStack() ? 2 : 0) | (l.isTempLocal() ? 1 : 0));
+				if(l instanceof VersionedLocal) {
+					out.writeVarint(((VersionedLocal) l).getSubscript() + 1);
+				} else {
+					out.writeVarint(0);
+				}
+			}
+		}
+
+		void writeLocal(Local l) {
+			Integer i = localIndices.get(l);
+			if(i == null) {
+				throw new IllegalStateException("Local " + l + " is not in the pool of " + cfg.getJavaDesc());
+			}
+			out.writeVarint(i);
+		}
+
+		void writeBlock(BasicBlock b) {
+			Integer i = blockIndices.get(b);
+			if(i == null) {
+				throw new IllegalStateException(b + " is not in the graph of " + cfg.getJavaDesc());
+			}
+			out.writeVarint(i);
+		}
+
+		/* 0 for null, otherwise string index + 1 */
+		void writeType(Type t) {
+			if(t == null) {
+				out.writeVarint(0);
+			} else {
+				String desc = t.getDescriptor();
+				Integer i = strings.get(desc);
+				if(i == null) {
+					i = strings.size();
+					strings.put(desc, i);
+				}
+				out.writeVarint(i + 1);
+			}
+		}
+
+		void writeExprs(Expr[] exprs) {
+			out.writeVarint(exprs.length);
+			for(Expr e : exprs) {
+				writeExpr(e);
+			}
+		}
+
+		void writeHandle(Handle h) {
+			out.writeByte((h.getTag() << 1) | (h.isInterface() ? 1 : 0));
+			writeString(h.getOwner());
+			writeString(h.getName());
+			writeString(h.getDesc());
+		}
+
+		void writeConstant(Object o) {
+			if(o == null) {
+				out.writeByte(CST_NULL);
+			} else if(o instanceof Integer) {
+				out.writeByte(CST_INT);
+				out.writeSigned((Integer) o);
+			} else if(o instanceof Long) {
+				out.writeByte(CST_LONG);
+				out.writeSignedLong((Long) o);
+			} else if(o instanceof Float) {
+				out.writeByte(CST_FLOAT);
+				out.writeInt(Float.floatToRawIntBits((Float) o));
+			} else if(o instanceof Double) {
+				out.writeByte(CST_DOUBLE);
+				out.writeLong(Double.doubleToRawLongBits((Double) o));
+			} else if(o instanceof String) {
+				out.writeByte(CST_STRING);
+				writeString((String) o);
+			} else if(o instanceof Type) {
+				out.writeByte(CST_TYPE);
+				writeString(((Type) o).getDescriptor());
+			} else if(o instanceof Handle) {
+				out.writeByte(CST_HANDLE);
+				writeHandle((Handle) o);
+			} else if(o instanceof Byte) {
+				out.writeByte(CST_BYTE);
+				out.writeSigned((Byte) o);
+			} else if(o instanceof Short) {
+				out.writeByte(CST_SHORT);
+				out.writeSigned((Short) o);
+			} else if(o instanceof Character) {
+				out.writeByte(CST_CHAR);
+				out.writeVarint((Character) o);
+			} else if(o instanceof Boolean) {
+				out.writeByte(CST_BOOLEAN);
+				out.writeByte((Boolean) o ? 1 : 0);
+			} else {
+				throw new UnsupportedOperationException(o + " (" + o.getClass().getName() + ")");
+			}
+		}
+
+		void writeEdge(FlowEdge<BasicBlock> e) {
+			int type = e.getType();
+			out.writeByte(type);
+			writeBlock(e.dst());
+			if(type == FlowEdges.COND) {
+				out.writeVarint(((ConditionalJumpEdge<BasicBlock>) e).opcode);
+			} else if(type == FlowEdges.SWITCH) {
+				out.writeSigned(((SwitchEdge<BasicBlock>) e).value);
+			} else if(type == FlowEdges.TRYCATCH) {
+				ExceptionRange<BasicBlock> r = ((TryCatchEdge<BasicBlock>) e).erange;
+				/* 0 for a rangeless edge, otherwise index + 1 */
+				out.writeVarint(r == null ? 0 : rangeIndices.get(r) + 1);
+			}
+		}
+
+		void writeStmt(Stmt stmt) {
+			int op = stmt.getOpcode();
+			out.writeByte(tag(op));
+			switch(op) {
+				case LOCAL_STORE:
+				case PHI_STORE: {
+					AbstractCopyStmt copy = (AbstractCopyStmt) stmt;
+					out.writeByte(copy.isSynthetic() ? 1 : 0);
+					writeVar(copy.getVariable());
+					if(!copy.isSynthetic()) {
+						writeExpr(copy.getExpression());
+					}
+					break;
+				}
+				case ARRAY_STORE: {
+					ArrayStoreStmt as = (ArrayStoreStmt) stmt;
+					out.writeByte(as.getArrayType().ordinal());
+					writeExpr(as.getArrayExpression());
+					writeExpr(as.getIndexExpression());
+					writeExpr(as.getValueExpression());
+					break;
+				}
+				case FIELD_STORE: {
+					FieldStoreStmt fs = (FieldStoreStmt) stmt;
+					out.writeByte(fs.isStatic() ? 1 : 0);
+					writeString(fs.getOwner());
+					writeString(fs.getName());
+					writeString(fs.getDesc());
+					writeExpr(fs.getInstanceExpression());
+					writeExpr(fs.getValueExpression());
+					break;
+				}
+				case POP:
+					writeExpr(((PopStmt) stmt).getExpression());
+					break;
+				case RETURN: {
+					ReturnStmt ret = (ReturnStmt) stmt;
+					writeType(ret.getType());
+					writeExpr(ret.getExpression());
+					break;
+				}
+				case COND_JUMP: {
+					ConditionalJumpStmt cond = (ConditionalJumpStmt) stmt;
+					out.writeByte(cond.getComparisonType().ordinal());
+					writeBlock(cond.getTrueSuccessor());
+					writeExpr(cond.getLeft());
+					writeExpr(cond.getRight());
+					break;
+				}
+				case UNCOND_JUMP:
+					writeBlock(((UnconditionalJumpStmt) stmt).getTarget());
+					break;
+				case SWITCH_JUMP: {
+					SwitchStmt sw = (SwitchStmt) stmt;
+					LinkedHashMap<Integer, BasicBlock> targets = sw.getTargets();
+					out.writeVarint(targets.size());
+					for(Entry<Integer, BasicBlock> e : targets.entrySet()) {
+						out.writeSigned(e.getKey());
+						writeBlock(e.getValue());
+					}
+					writeBlock(sw.getDefaultTarget());
+					writeExpr(sw.getExpression());
+					break;
+				}
+				case THROW:
+					writeExpr(((ThrowStmt) stmt).getExpression());
+					break;
+				case MONITOR: {
+					MonitorStmt mon = (MonitorStmt) stmt;
+					out.writeByte(mon.getMode().ordinal());
+					writeExpr(mon.getExpression());
+					break;
+				}
+				case NOP:
+					break;
+				default:
+					throw new UnsupportedOperationException(stmt + " (" + Opcode.opname(op) + ")");
+			}
+		}
+
+		void writeVar(VarExpr v) {
+			writeLocal(v.getLocal());
+			writeType(v.getType());
+		}
+
+		void writeExpr(Expr e) {
+			if(e == null) {
+				out.writeByte(TAG_NULL);
+				return;
+			}
+
+			int op = e.getOpcode();
+			out.writeByte(tag(op));
+			switch(op) {
+				case LOCAL_LOAD:
+					writeVar((VarExpr) e);
+					break;
+				case ARRAY_LOAD: {
+					ArrayLoadExpr al = (ArrayLoadExpr) e;
+					out.writeByte(al.getArrayType().ordinal());
+					writeExpr(al.getArrayExpression());
+					writeExpr(al.getIndexExpression());
+					break;
+				}
+				case FIELD_LOAD: {
+					FieldLoadExpr fl = (FieldLoadExpr) e;
+					out.writeByte(fl.isStatic() ? 1 : 0);
+					writeString(fl.getOwner());
+					writeString(fl.getName());
+					writeString(fl.getDesc());
+					writeExpr(fl.getInstanceExpression());
+					break;
+				}
+				case CONST_LOAD: {
+					ConstantExpr c = (ConstantExpr) e;
+					writeType(c.getType());
+					writeConstant(c.getConstant());
+					break;
+				}
+				case INVOKE:
+					writeInvoke((InvocationExpr) e);
+					break;
+				case ARITHMETIC: {
+					ArithmeticExpr ar = (ArithmeticExpr) e;
+					out.writeByte(ar.getOperator().ordinal());
+					writeExpr(ar.getLeft());
+					writeExpr(ar.getRight());
+					break;
+				}
+				case NEGATE:
+					writeExpr(((NegationExpr) e).getExpression());
+					break;
+				case ALLOC_OBJ:
+				case CATCH:
+					writeType(e.getType());
+					break;
+				case INIT_OBJ: {
+					InitialisedObjectExpr init = (InitialisedObjectExpr) e;
+					writeString(init.getOwner());
+					writeString(init.getDesc());
+					writeExprs(init.getArgumentExprs());
+					break;
+				}
+				case NEW_ARRAY: {
+					NewArrayExpr na = (NewArrayExpr) e;
+					writeType(na.getType());
+					writeExprs(na.getBounds());
+					break;
+				}
+				case ARRAY_LEN:
+					writeExpr(((ArrayLengthExpr) e).getExpression());
+					break;
+				case CAST: {
+					CastExpr cast = (CastExpr) e;
+					writeType(cast.getType());
+					writeExpr(cast.getExpression());
+					break;
+				}
+				case INSTANCEOF: {
+					InstanceofExpr inst = (InstanceofExpr) e;
+					writeType(inst.getCheckType());
+					writeExpr(inst.getExpression());
+					break;
+				}
+				case COMPARE: {
+					ComparisonExpr cmp = (ComparisonExpr) e;
+					out.writeByte(cmp.getComparisonType().ordinal());
+					writeExpr(cmp.getLeft());
+					writeExpr(cmp.getRight());
+					break;
+				}
+				case PHI:
+				case EPHI: {
+					PhiExpr phi = (PhiExpr) e;
+					writeType(phi.getType());
+					Map<BasicBlock, Expr> args = phi.getArguments();
+					out.writeVarint(args.size());
+					for(Entry<BasicBlock, Expr> a : args.entrySet()) {
+						writeBlock(a.getKey());
+						writeExpr(a.getValue());
+					}
+					break;
+				}
+				default:
+					throw new UnsupportedOperationException(e + " (" + Opcode.opname(op) + ")");
+			}
+		}
+
+		void writeInvoke(InvocationExpr invoke) {
+			if(invoke instanceof DynamicInvocationExpr) {
+				DynamicInvocationExpr dyn = (DynamicInvocationExpr) invoke;
+				out.writeByte(INVOKE_DYNAMIC);
+				writeHandle(dyn.getBootstrapMethod());
+				Object[] bsmArgs = dyn.getBootstrapArgs();
+				out.writeVarint(bsmArgs.length);
+				for(Object o : bsmArgs) {
+					writeConstant(o);
+				}
+				writeString(dyn.getBootstrapDesc());
+				writeString(dyn.getBoundName());
+			} else if(invoke instanceof StaticInvocationExpr) {
+				out.writeByte(INVOKE_STATIC);
+				writeString(invoke.getOwner());
+				writeString(invoke.getName());
+				writeString(invoke.getDesc());
+			} else if(invoke instanceof VirtualInvocationExpr) {
+				out.writeByte(INVOKE_VIRTUAL | (invoke.getCallType().ordinal() << 2));
+				writeString(invoke.getOwner());
+				writeString(invoke.getName());
+				writeString(invoke.getDesc());
+			} else {
+				throw new UnsupportedOperationException(invoke.getClass().getName());
+			}
+			writeExprs(invoke.getArgumentExprs());
+		}
+	}
+
+	private static class Reader {
+		private final byte[] buf;
+		private int pos;
+		private String[] strings;
+		private Type[] types;
+		private ControlFlowGraph cfg;
+		private Local[] locals;
+		private BasicBlock[] blocks;
+		private List<ExceptionRange<BasicBlock>> ranges;
+
+		Reader(byte[] buf) {
+			this.buf = buf;
+		}
+
+		int readByte() {
+			return buf[pos++] & 0xFF;
+		}
+
+		int readVarint() {
+			int b = buf[pos++];
+			if(b >= 0) {
+				return b;
+			}
+			int v = b & 0x7F;
+			for(int shift = 7; ; shift += 7) {
+				b = buf[pos++];
+				v |= (b & 0x7F) << shift;
+				if(b >= 0) {
+					return v;
+				}
+			}
+		}
+
+		long readVarlong() {
+			long v = 0;
+			for(int shift = 0; ; shift += 7) {
+				int b = buf[pos++];
+				v |= (long) (b & 0x7F) << shift;
+				if(b >= 0) {
+					return v;
+				}
+			}
+		}
+
+		int readSigned() {
+			int v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		long readSignedLong() {
+			long v = readVarlong();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int readInt() {
+			int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+			pos += 4;
+			return v;
+		}
+
+		long readLong() {
+			long hi = readInt() & 0xFFFFFFFFL;
+			return (hi << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		String readStringData() {
+			int header = readVarint();
+			int len = header >>> 1;
+			char[] cs = new char[len];
+			if((header & 1) == 0) {
+				for(int i=0; i < len; i++) {
+					cs[i] = (char) buf[pos++];
+				}
+			} else {
+				for(int i=0; i < len; i++) {
+					cs[i] = (char) readVarint();
+				}
+			}
+			return new String(cs);
+		}
+
+		String readString() {
+			return strings[readVarint()];
+		}
+
+		Type readType() {
+			int i = readVarint();
+			if(i == 0) {
+				return null;
+			}
+			i--;
+			Type t = types[i];
+			if(t == null) {
+				t = types[i] = Type.getType(strings[i]);
+			}
+			return t;
+		}
+
+		BasicBlock readBlock() {
+			return blocks[readVarint()];
+		}
+
+		ControlFlowGraph read() throws IOException {
+			int magic = readInt();
+			if(magic != MAGIC) {
+				throw new IOException("Bad magic: 0x" + Integer.toHexString(magic));
+			}
+			int version = readVarint();
+			if(version != VERSION) {
+				throw new IOException("Unsupported version: " + version);
+			}
+
+			int stringCount = readVarint();
+			strings = new String[stringCount];
+			types = new Type[stringCount];
+			for(int i=0; i < stringCount; i++) {
+				strings[i] = readStringData();
+			}
+
+			JavaDesc desc = new JavaDesc(readString(), readString(), readString(), JavaDesc.DescType.METHOD);
+			int poolType = readByte();
+			LocalsPool pool;
+			if(poolType == POOL_STATIC) {
+				pool = new StaticMethodLocalsPool();
+			} else if(poolType == POOL_VIRTUAL) {
+				pool = new VirtualMethodLocalsPool();
+			} else {
+				throw new IOException("Bad pool type: " + poolType);
+			}
+			cfg = new ControlFlowGraph(pool, desc);
+
+			readLocals(pool);
+
+			blocks = new BasicBlock[readVarint()];
+			/* blocks are written in id order, skip ids in the
+			 * block counter so that each block gets its old id
+			 * back and new blocks don't collide with them. */
+			int id = 0, nextId = 1;
+			for(int i=0; i < blocks.length; i++) {
+				id += readVarint();
+				for(; nextId < id; nextId++) {
+					cfg.makeBlockId();
+				}
+				BasicBlock b = new BasicBlock(cfg);
+				if(b.getNumericId() != id) {
+					throw new IOException("Bad block id: " + id);
+				}
+				nextId++;
+				b.setFlags(readVarint());
+				blocks[i] = b;
+				cfg.addVertex(b);
+			}
+
+			int entryCount = readVarint();
+			for(int i=0; i < entryCount; i++) {
+				cfg.getEntries().add(readBlock());
+			}
+
+			int rangeCount = readVarint();
+			ranges = new ArrayList<>(rangeCount);
+			for(int i=0; i < rangeCount; i++) {
+				ExceptionRange<BasicBlock> r = new ExceptionRange<>();
+				r.setHandler(readBlock());
+				int typeCount = readVarint();
+				for(int j=0; j < typeCount; j++) {
+					r.addType(Type.getType(readString()));
+				}
+				int nodeCount = readVarint();
+				for(int j=0; j < nodeCount; j++) {
+					r.addVertex(readBlock());
+				}
+				ranges.add(r);
+				cfg.addRange(r);
+			}
+
+			for(BasicBlock b : blocks) {
+				int stmtCount = readVarint();
+				for(int i=0; i < stmtCount; i++) {
+					b.add(readStmt());
+				}
+			}
+
+			for(BasicBlock b : blocks) {
+				int edgeCount = readVarint();
+				for(int i=0; i < edgeCount; i++) {
+					cfg.addEdge(readEdge(b));
+				}
+			}
+
+			if(pos != buf.length) {
+				throw new IOException((buf.length - pos) + " trailing bytes");
+			}
+
+			rebuildDefUse(pool);
+			return cfg;
+		}
+
+		void readLocals(LocalsPool pool) {
+			locals = new Local[readVarint()];
+			for(int i=0; i < locals.length; i++) {
+				int bits = readVarint();
+				int subscript = readVarint();
+				int index = bits >>> 2;
+				boolean stack = (bits & 2) != 0;
+				Local l;
+				if(subscript != 0) {
+					l = pool.get(index, subscript - 1, stack);
+				} else {
+					l = pool.get(index, stack);
+				}
+				if((bits & 1) != 0) {
+					l.setTempLocal(true);
+				}
+				locals[i] = l;
+			}
+		}
+
+		void rebuildDefUse(LocalsPool pool) {
+			for(BasicBlock b : blocks) {
+				for(Stmt stmt : b) {
+					int op = stmt.getOpcode();
+					if(op == LOCAL_STORE || op == PHI_STORE) {
+						Local l = ((AbstractCopyStmt) stmt).getVariable().getLocal();
+						if(l instanceof VersionedLocal) {
+							VersionedLocal vl = (VersionedLocal) l;
+							pool.defs.put(vl, (AbstractCopyStmt) stmt);
+							if(!pool.uses.containsKey(vl)) {
+								pool.uses.put(vl, new HashSet<>());
+							}
+						}
+					}
+
+					for(Expr e : stmt.enumerateOnlyChildren()) {
+						if(e.getOpcode() == LOCAL_LOAD) {
+							VarExpr v = (VarExpr) e;
+							if(v.getLocal() instanceof VersionedLocal) {
+								pool.uses.getNonNull((VersionedLocal) v.getLocal()).add(v);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		Expr[] readExprs() throws IOException {
+			Expr[] exprs = new Expr[readVarint()];
+			for(int i=0; i < exprs.length; i++) {
+				exprs[i] = readExpr();
+			}
+			return exprs;
+		}
+
+		Handle readHandle() {
+			int bits = readByte();
+			return new Handle(bits >>> 1, readString(), readString(), readString(), (bits & 1) != 0);
+		}
+
+		Object readConstant() throws IOException {
+			int tag = readByte();
+			switch(tag) {
+				case CST_NULL:
+					return null;
+				case CST_INT:
+					return readSigned();
+				case CST_LONG:
+					return readSignedLong();
+				case CST_FLOAT:
+					return Float.intBitsToFloat(readInt());
+				case CST_DOUBLE:
+					return Double.longBitsToDouble(readLong());
+				case CST_STRING:
+					return readString();
+				case CST_TYPE:
+					return Type.getType(readString());
+				case CST_HANDLE:
+					return readHandle();
+				case CST_BYTE:
+					return (byte) readSigned();
+				case CST_SHORT:
+					return (short) readSigned();
+				case CST_CHAR:
+					return (char) readVarint();
+				case CST_BOOLEAN:
+					return readByte() != 0;
+				default:
+					throw new IOException("Bad constant tag: " + tag);
+			}
+		}
+
+		FlowEdge<BasicBlock> readEdge(BasicBlock src) throws IOException {
+			int type = readByte();
+			BasicBlock dst = readBlock();
+			switch(type) {
+				case FlowEdges.IMMEDIATE:
+					return new ImmediateEdge<>(src, dst);
+				case FlowEdges.UNCOND:
+					return new UnconditionalJumpEdge<>(src, dst);
+				case FlowEdges.COND:
+					return new ConditionalJumpEdge<>(src, dst, readVarint());
+				case FlowEdges.TRYCATCH: {
+					int r = readVarint();
+					if(r == 0) {
+						return new TryCatchEdge<>(src, dst);
+					} else {
+						return new TryCatchEdge<>(src, ranges.get(r - 1));
+					}
+				}
+				case FlowEdges.SWITCH:
+					return new SwitchEdge<>(src, dst, readSigned());
+				case FlowEdges.DEFAULT_SWITCH:
+					return new DefaultSwitchEdge<>(src, dst);
+				case FlowEdges.DUMMY:
+					return new DummyEdge<>(src, dst);
+				default:
+					throw new IOException("Bad edge type: " + type);
+			}
+		}
+
+		VarExpr readVar() {
+			Local l = locals[readVarint()];
+			return new VarExpr(l, readType());
+		}
+
+		Stmt readStmt() throws IOException {
+			int tag = readByte();
+			switch(untag(tag)) {
+				case LOCAL_STORE: {
+					boolean synthetic = readByte() != 0;
+					VarExpr var = readVar();
+					return new CopyVarStmt(var, synthetic ? var : readExpr(), synthetic);
+				}
+				case PHI_STORE: {
+					boolean synthetic = readByte() != 0;
+					VarExpr var = readVar();
+					return new CopyPhiStmt(var, (PhiExpr) readExpr(), synthetic);
+				}
+				case ARRAY_STORE: {
+					ArrayType type = ArrayType.values()[readByte()];
+					Expr array = readExpr();
+					Expr index = readExpr();
+					return new ArrayStoreStmt(array, index, readExpr(), type);
+				}
+				case FIELD_STORE: {
+					boolean isStatic = readByte() != 0;
+					String owner = readString();
+					String name = readString();
+					String desc = readString();
+					Expr inst = readExpr();
+					return new FieldStoreStmt(inst, readExpr(), owner, name, desc, isStatic);
+				}
+				case POP:
+					return new PopStmt(readExpr());
+				case RETURN: {
+					Type type = readType();
+					return new ReturnStmt(type, readExpr());
+				}
+				case COND_JUMP: {
+					ComparisonType type = ComparisonType.values()[readByte()];
+					BasicBlock target = readBlock();
+					Expr left = readExpr();
+					return new ConditionalJumpStmt(left, readExpr(), target, type);
+				}
+				case UNCOND_JUMP:
+					return new UnconditionalJumpStmt(readBlock());
+				case SWITCH_JUMP: {
+					int count = readVarint();
+					LinkedHashMap<Integer, BasicBlock> targets = new LinkedHashMap<>();
+					for(int i=0; i < count; i++) {
+						int key = readSigned();
+						targets.put(key, readBlock());
+					}
+					BasicBlock dflt = readBlock();
+					return new SwitchStmt(readExpr(), targets, dflt);
+				}
+				case THROW:
+					return new ThrowStmt(readExpr());
+				case MONITOR: {
+					MonitorMode mode = MonitorMode.values()[readByte()];
+					return new MonitorStmt(readExpr(), mode);
+				}
+				case NOP:
+					return new NopStmt();
+				default:
+					throw new IOException("Bad statement tag: 0x" + Integer.toHexString(tag));
+			}
+		}
+
+		Expr readExpr() throws IOException {
+			int tag = readByte();
+			if(tag == TAG_NULL) {
+				return null;
+			}
+
+			switch(untag(tag)) {
+				case LOCAL_LOAD:
+					return readVar();
+				case ARRAY_LOAD: {
+					ArrayType type = ArrayType.values()[readByte()];
+					Expr array = readExpr();
+					return new ArrayLoadExpr(array, readExpr(), type);
+				}
+				case FIELD_LOAD: {
+					boolean isStatic = readByte() != 0;
+					String owner = readString();
+					String name = readString();
+					String desc = readString();
+					return new FieldLoadExpr(readExpr(), owner, name, desc, isStatic);
+				}
+				case CONST_LOAD: {
+					Type type = readType();
+					return new ConstantExpr(readConstant(), type, false);
+				}
+				case INVOKE:
+					return readInvoke();
+				case ARITHMETIC: {
+					ArithmeticExpr.Operator operator = ArithmeticExpr.Operator.values()[readByte()];
+					Expr left = readExpr();
+					return new ArithmeticExpr(readExpr(), left, operator);
+				}
+				case NEGATE:
+					return new NegationExpr(readExpr());
+				case ALLOC_OBJ:
+					return new AllocObjectExpr(readType());
+				case CATCH: {
+					CaughtExceptionExpr c = new CaughtExceptionExpr((String) null);
+					c.setType(readType());
+					return c;
+				}
+				case INIT_OBJ: {
+					String owner = readString();
+					String desc = readString();
+					return new InitialisedObjectExpr(owner, desc, readExprs());
+				}
+				case NEW_ARRAY: {
+					Type type = readType();
+					return new NewArrayExpr(readExprs(), type);
+				}
+				case ARRAY_LEN:
+					return new ArrayLengthExpr(readExpr());
+				case CAST: {
+					Type type = readType();
+					return new CastExpr(readExpr(), type);
+				}
+				case INSTANCEOF: {
+					Type type = readType();
+					return new InstanceofExpr(readExpr(), type);
+				}
+				case COMPARE: {
+					ValueComparisonType type = ValueComparisonType.values()[readByte()];
+					Expr left = readExpr();
+					return new ComparisonExpr(left, readExpr(), type);
+				}
+				case PHI:
+				case EPHI: {
+					Type type = readType();
+					int count = readVarint();
+					/* keep the original argument order. */
+					Map<BasicBlock, Expr> args = new LinkedHashMap<>();
+					for(int i=0; i < count; i++) {
+						BasicBlock b = readBlock();
+						args.put(b, readExpr());
+					}
+					PhiExpr phi = untag(tag) == PHI ? new PhiExpr(args) : new PhiExceptionExpr(args);
+					phi.setType(type);
+					return phi;
+				}
+				default:
+					throw new IOException("Bad expression tag: 0x" + Integer.toHexString(tag));
+			}
+		}
+
+		Expr readInvoke() throws IOException {
+			int bits = readByte();
+			switch(bits & 3) {
+				case INVOKE_DYNAMIC: {
+					Handle bsm = readHandle();
+					Object[] bsmArgs = new Object[readVarint()];
+					for(int i=0; i < bsmArgs.length; i++) {
+						bsmArgs[i] = readConstant();
+					}
+					String bsmDesc = readString();
+					String boundName = readString();
+					return new DynamicInvocationExpr(bsm, bsmArgs, bsmDesc, readExprs(), boundName);
+				}
+				case INVOKE_STATIC: {
+					String owner = readString();
+					String name = readString();
+					String desc = readString();
+					return new StaticInvocationExpr(readExprs(), owner, name, desc);
+				}
+				case INVOKE_VIRTUAL: {
+					CallType callType = CallType.values()[bits >>> 2];
+					String owner = readString();
+					String name = readString();
+					String desc = readString();
+					return new VirtualInvocationExpr(callType, readExprs(), owner, name, desc);
+				}
+				default:
+					throw new IOException("Bad invocation kind: " + bits);
+			}
+		}
+	}
+}
@@ -77,9 +77,8 @@ public class CFGUtils {
 		BasicBlock newBlock = splitBlockSimple(cfg, b, to);
 
 		// redo ranges
-		for(ExceptionRange<BasicBlock> er : cfg.getRanges()) {
-			if (er.containsVertex(b))
-				er.addVertexBefore(b, newBlock);
+		for(ExceptionRange<BasicBlock> er : cfg.getProtectingRanges(b)) {
+			er.addVertexBefore(b, newBlock);
 		}
 
 		// redirect b preds into newBlock and remove them.
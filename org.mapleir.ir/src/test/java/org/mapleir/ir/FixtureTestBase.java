@@ -0,0 +1,51 @@
+package org.mapleir.ir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+import junit.framework.TestCase;
+
+/**
+ * Base for the tests which lift the compiled code of a fixture class, usually
+ * one nested in the test itself.
+ */
+public abstract class FixtureTestBase extends TestCase {
+
+	protected static byte[] bytes(Class<?> c) throws IOException {
+		try(InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+			if(in == null) {
+				throw new IllegalArgumentException(c.getName());
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int read;
+			while((read = in.read(buf)) != -1) {
+				out.write(buf, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	protected static ClassNode load(Class<?> c) throws IOException {
+		return ClassHelper.create(bytes(c));
+	}
+
+	protected static MethodNode find(ClassNode cn, String name) {
+		for(MethodNode m : cn.getMethods()) {
+			if(m.getName().equals(name)) {
+				return m;
+			}
+		}
+		throw new IllegalArgumentException(cn.getName() + "." + name);
+	}
+
+	protected static long count(ControlFlowGraph cfg, int opcode) {
+		return cfg.allExprStream().filter(e -> e.getOpcode() == opcode).count();
+	}
+}
@@ -0,0 +1,109 @@
+package org.mapleir.ir.algorithms;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.FixtureTestBase;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+public class LocalsReallocatorTest extends FixtureTestBase {
+
+	public static class Fixture {
+		public static long sequence(int n, long l) {
+			int a = n * 3;
+			long b = l + a;
+			int c = (int) (b >> 2);
+			long d = b * c;
+			int e = (int) d ^ n;
+			double f = e / 2.0;
+			return (long) f + l;
+		}
+
+		public int branches(int n, String s) {
+			if(n > 0) {
+				int a = n + s.length();
+				String t = s + a;
+				return t.hashCode();
+			} else {
+				long b = n * 2L;
+				Object o = s.substring(1);
+				return (int) b + o.hashCode();
+			}
+		}
+
+		public int handler(int[] arr, int i) {
+			int x = i * 2;
+			try {
+				x = arr[i];
+				i = arr[x];
+			} catch(RuntimeException e) {
+				return x + i;
+			}
+			return x;
+		}
+	}
+
+	private static int paramSize(MethodNode m) {
+		int size = (m.node.access & org.objectweb.asm.Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+		for(Type t : Type.getArgumentTypes(m.getDesc())) {
+			size += t.getSize();
+		}
+		return size;
+	}
+
+	public void testPacked() throws Exception {
+		ClassNode cn = load(Fixture.class);
+
+		for(MethodNode m : cn.getMethods()) {
+			if(m.getName().equals("<init>")) {
+				continue;
+			}
+			ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+			BoissinotDestructor.leaveSSA(cfg);
+
+			int params = paramSize(m);
+			int slots = LocalsReallocator.realloc(cfg);
+			assertTrue(m.toString(), slots >= params);
+
+			for(BasicBlock b : cfg.vertices()) {
+				for(Stmt stmt : b) {
+					if(stmt.getOpcode() == Opcode.LOCAL_STORE) {
+						CopyVarStmt copy = (CopyVarStmt) stmt;
+						int index = copy.getVariable().getLocal().getIndex();
+						assertTrue(m + " " + copy, index < slots);
+						if(copy.isSynthetic()) {
+							/* parameters keep their slots. */
+							assertTrue(m + " " + copy, index < params);
+						}
+					}
+				}
+			}
+			if(m.getName().equals("sequence")) {
+				/* javac gives every variable in it a slot of its own. */
+				assertTrue(slots < m.node.maxLocals);
+			}
+
+			new ControlFlowGraphDumper(cfg, m).dump();
+		}
+
+		/* the rewritten code must still verify. */
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cn.node.accept(cw);
+		org.objectweb.asm.tree.ClassNode out = new org.objectweb.asm.tree.ClassNode();
+		new ClassReader(cw.toByteArray()).accept(out, 0);
+		for(org.objectweb.asm.tree.MethodNode mn : out.methods) {
+			new Analyzer<BasicValue>(new BasicVerifier()).analyze(out.name, mn);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.mapleir.ir.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mapleir.ir.code.FakeStmt;
+import org.mapleir.ir.code.Stmt;
+
+import junit.framework.TestCase;
+
+public class BasicBlockTest extends TestCase {
+
+	private ControlFlowGraph cfg;
+
+	@Override
+	protected void setUp() {
+		cfg = new ControlFlowGraph(null, null);
+	}
+
+	private List<Stmt> fill(BasicBlock b, int n) {
+		List<Stmt> stmts = new ArrayList<>();
+		for(int i=0; i < n; i++) {
+			Stmt s = new FakeStmt();
+			b.add(s);
+			stmts.add(s);
+		}
+		return stmts;
+	}
+
+	private static void assertIndices(BasicBlock b, List<Stmt> expected) {
+		assertEquals(expected.size(), b.size());
+		for(int i=0; i < expected.size(); i++) {
+			assertSame(expected.get(i), b.get(i));
+			assertEquals(i, b.indexOf(expected.get(i)));
+			assertSame(b, expected.get(i).getBlock());
+		}
+	}
+
+	public void testIndexOf() {
+		BasicBlock b = new BasicBlock(cfg);
+		List<Stmt> stmts = fill(b, 10);
+		assertIndices(b, stmts);
+
+		Stmt s = new FakeStmt();
+		b.add(3, s);
+		stmts.add(3, s);
+		assertIndices(b, stmts);
+
+		b.remove(stmts.remove(0));
+		assertIndices(b, stmts);
+
+		Stmt t = new FakeStmt();
+		b.insertAfter(s, t);
+		stmts.add(stmts.indexOf(s) + 1, t);
+		Stmt u = new FakeStmt();
+		b.insertBefore(s, u);
+		stmts.add(stmts.indexOf(s), u);
+		assertIndices(b, stmts);
+
+		Stmt other = new FakeStmt();
+		assertEquals(-1, b.indexOf(other));
+		assertFalse(b.contains(other));
+		new BasicBlock(cfg).add(other);
+		assertEquals(-1, b.indexOf(other));
+	}
+
+	public void testHints() {
+		BasicBlock b = new BasicBlock(cfg);
+		List<Stmt> stmts = fill(b, 10);
+		for(int i=0; i < 5; i++) {
+			Stmt s = new FakeStmt();
+			b.add(0, s);
+			stmts.add(0, s);
+		}
+		b.remove(4);
+		stmts.remove(4);
+		b.addAll(2, Arrays.asList(new FakeStmt(), new FakeStmt(), new FakeStmt()));
+		// every insertion and removal keeps the positions of the shifted statements
+		for(int i=0; i < b.size(); i++) {
+			assertEquals(i, b.get(i).getIndexHint());
+		}
+	}
+
+	public void testInsertBeforeLast() {
+		// like the destructors, which insert copies before the jump ending a block
+		BasicBlock b = new BasicBlock(cfg);
+		Stmt last = fill(b, 1).get(0);
+		for(int i=0; i < 200000; i++) {
+			b.insertBefore(last, new FakeStmt());
+			assertEquals(i + 1, b.indexOf(last));
+		}
+	}
+
+	public void testTransferUpto() {
+		BasicBlock b = new BasicBlock(cfg);
+		BasicBlock dst = new BasicBlock(cfg);
+		List<Stmt> stmts = fill(b, 10);
+		List<Stmt> dstStmts = fill(dst, 2);
+
+		b.transferUpto(dst, 4);
+		dstStmts.addAll(stmts.subList(0, 4));
+		assertIndices(dst, dstStmts);
+		assertIndices(b, stmts.subList(4, 10));
+	}
+
+	public void testTransferFrom() {
+		BasicBlock b = new BasicBlock(cfg);
+		BasicBlock dst = new BasicBlock(cfg);
+		List<Stmt> stmts = fill(b, 10);
+
+		b.transferFrom(dst, 7);
+		assertIndices(dst, stmts.subList(7, 10));
+		assertIndices(b, stmts.subList(0, 7));
+
+		b.transfer(dst);
+		assertTrue(b.isEmpty());
+		List<Stmt> all = new ArrayList<>(stmts.subList(7, 10));
+		all.addAll(stmts.subList(0, 7));
+		assertIndices(dst, all);
+	}
+
+	public void testLargeBlock() {
+		// a straight line block the size of a big obfuscated string table
+		BasicBlock b = new BasicBlock(cfg);
+		List<Stmt> stmts = fill(b, 200000);
+
+		BasicBlock prev = new BasicBlock(cfg);
+		b.transferUpto(prev, 100000);
+		for(int i=0; i < stmts.size(); i++) {
+			assertEquals(i % 100000, (i < 100000 ? prev : b).indexOf(stmts.get(i)));
+		}
+	}
+}
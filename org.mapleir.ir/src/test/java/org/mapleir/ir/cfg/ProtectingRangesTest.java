@@ -0,0 +1,154 @@
+package org.mapleir.ir.cfg;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.mapleir.flowgraph.ExceptionRange;
+
+import junit.framework.TestCase;
+
+public class ProtectingRangesTest extends TestCase {
+
+	private ControlFlowGraph cfg;
+	private BasicBlock[] blocks;
+
+	@Override
+	protected void setUp() {
+		cfg = new ControlFlowGraph(null, null);
+		blocks = new BasicBlock[6];
+		for(int i=0; i < blocks.length; i++) {
+			blocks[i] = new BasicBlock(cfg);
+			cfg.addVertex(blocks[i]);
+		}
+	}
+
+	private ExceptionRange<BasicBlock> range(BasicBlock handler, BasicBlock... nodes) {
+		ExceptionRange<BasicBlock> er = new ExceptionRange<>();
+		er.setHandler(handler);
+		er.addVertices(Arrays.asList(nodes));
+		cfg.addRange(er);
+		return er;
+	}
+
+	public void testLookup() {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0], blocks[1], blocks[2]);
+		ExceptionRange<BasicBlock> r2 = range(blocks[5], blocks[1], blocks[2], blocks[3]);
+		cfg.addRange(r1);
+		assertEquals(2, cfg.getRanges().size());
+
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[0]));
+		assertEquals(Arrays.asList(r1, r2), cfg.getProtectingRanges(blocks[1]));
+		assertEquals(Collections.singletonList(r2), cfg.getProtectingRanges(blocks[3]));
+		assertTrue(cfg.getProtectingRanges(blocks[4]).isEmpty());
+		assertEquals(Collections.singletonList(r1), cfg.getHandledRanges(blocks[4]));
+		assertTrue(r1.containsVertex(blocks[2]));
+		assertFalse(r1.containsVertex(blocks[3]));
+	}
+
+	public void testEditedInPlace() {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0], blocks[1]);
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[0]));
+
+		r1.removeVertex(blocks[0]);
+		r1.addVertexAfter(blocks[1], blocks[2]);
+		assertEquals(Arrays.asList(blocks[1], blocks[2]), r1.getNodes());
+		assertTrue(cfg.getProtectingRanges(blocks[0]).isEmpty());
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[2]));
+
+		r1.setHandler(blocks[5]);
+		assertTrue(cfg.getHandledRanges(blocks[4]).isEmpty());
+		assertEquals(Collections.singletonList(r1), cfg.getHandledRanges(blocks[5]));
+
+		cfg.removeRange(r1);
+		assertTrue(cfg.getProtectingRanges(blocks[1]).isEmpty());
+	}
+
+	public void testRemoveVertex() {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0]);
+		ExceptionRange<BasicBlock> r2 = range(blocks[5], blocks[0], blocks[1]);
+
+		cfg.removeVertex(blocks[0]);
+		assertEquals(Collections.singletonList(r2), cfg.getRanges());
+		assertTrue(cfg.getProtectingRanges(blocks[0]).isEmpty());
+		assertTrue(cfg.getHandledRanges(blocks[4]).isEmpty());
+		assertEquals(Collections.singletonList(r2), cfg.getProtectingRanges(blocks[1]));
+		assertFalse(r1.containsVertex(blocks[0]));
+	}
+
+	public void testPatchedInRangeOrder() {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0]);
+		ExceptionRange<BasicBlock> r2 = range(blocks[5], blocks[1]);
+		// builds the index
+		assertEquals(Collections.singletonList(r2), cfg.getProtectingRanges(blocks[1]));
+
+		// r1 joins a block r2 already covers and still comes first
+		r1.addVertex(blocks[1]);
+		assertEquals(Arrays.asList(r1, r2), cfg.getProtectingRanges(blocks[1]));
+		r1.addVertex(blocks[1]);
+		r1.removeVertex(blocks[1]);
+		// still covered once
+		assertEquals(Arrays.asList(r1, r2), cfg.getProtectingRanges(blocks[1]));
+
+		// a range added again goes to the end
+		cfg.removeRange(r1);
+		assertEquals(Collections.singletonList(r2), cfg.getProtectingRanges(blocks[1]));
+		assertTrue(cfg.getHandledRanges(blocks[4]).isEmpty());
+		cfg.addRange(r1);
+		assertEquals(Arrays.asList(r2, r1), cfg.getProtectingRanges(blocks[1]));
+		assertEquals(Collections.singletonList(r1), cfg.getHandledRanges(blocks[4]));
+
+		// a range edited while it isn't in the graph
+		cfg.removeRange(r2);
+		r2.addVertex(blocks[2]);
+		r2.setHandler(blocks[4]);
+		assertTrue(cfg.getProtectingRanges(blocks[2]).isEmpty());
+		cfg.addRange(r2);
+		assertEquals(Collections.singletonList(r2), cfg.getProtectingRanges(blocks[2]));
+		assertEquals(Arrays.asList(r1, r2), cfg.getHandledRanges(blocks[4]));
+
+		r2.reset();
+		assertTrue(cfg.getProtectingRanges(blocks[2]).isEmpty());
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[1]));
+		assertEquals(Collections.singletonList(r1), cfg.getHandledRanges(blocks[4]));
+	}
+
+	public void testCopy() {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0]);
+		ControlFlowGraph copy = new ControlFlowGraph(cfg);
+		assertEquals(Collections.singletonList(r1), copy.getProtectingRanges(blocks[0]));
+
+		// both graphs see the edit to the shared range
+		r1.addVertex(blocks[1]);
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[1]));
+		assertEquals(Collections.singletonList(r1), copy.getProtectingRanges(blocks[1]));
+	}
+
+	private static List<?> graphs(ExceptionRange<BasicBlock> er) throws Exception {
+		Field f = ExceptionRange.class.getDeclaredField("graphs");
+		f.setAccessible(true);
+		return (List<?>) f.get(er);
+	}
+
+	public void testCopyNotAttached() throws Exception {
+		ExceptionRange<BasicBlock> r1 = range(blocks[4], blocks[0]);
+		// not indexed yet
+		assertTrue(graphs(r1).isEmpty());
+		assertEquals(Collections.singletonList(r1), cfg.getProtectingRanges(blocks[0]));
+		assertEquals(Collections.singletonList(cfg), graphs(r1));
+
+		// a copy which never looks its ranges up isn't held by them
+		ControlFlowGraph copy = cfg.copy();
+		assertEquals(Collections.singletonList(cfg), graphs(r1));
+		assertEquals(Collections.singletonList(r1), copy.getRanges());
+
+		// until it builds its own index
+		assertEquals(Collections.singletonList(r1), copy.getProtectingRanges(blocks[0]));
+		assertEquals(Arrays.asList(cfg, copy), graphs(r1));
+		copy.removeRange(r1);
+		assertEquals(Collections.singletonList(cfg), graphs(r1));
+		cfg.removeRange(r1);
+		assertTrue(graphs(r1).isEmpty());
+	}
+}
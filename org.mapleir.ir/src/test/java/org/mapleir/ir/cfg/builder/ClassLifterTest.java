@@ -0,0 +1,123 @@
+package org.mapleir.ir.cfg.builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.FixtureTestBase;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.utils.SerialiserFixture;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+public class ClassLifterTest extends FixtureTestBase {
+
+	/* the shape of the graph, which doesn't depend on the order in which
+	 * the blocks and locals were numbered. */
+	private String shape(ControlFlowGraph cfg) {
+		int edges = 0;
+		List<String> stmts = new ArrayList<>();
+		for(BasicBlock b : cfg.vertices()) {
+			edges += cfg.getEdges(b).size();
+			for(Stmt stmt : b) {
+				stmts.add(stmt.getClass().getSimpleName());
+			}
+		}
+		Collections.sort(stmts);
+		return cfg.size() + " " + edges + " " + cfg.getRanges().size() + " " + stmts;
+	}
+
+	public void testSameAsTree() throws Exception {
+		byte[] bytes = bytes(SerialiserFixture.class);
+
+		Map<String, String> expected = new HashMap<>();
+		for(MethodNode m : ClassHelper.create(bytes).getMethods()) {
+			expected.put(m.getName() + m.getDesc(), shape(ControlFlowGraphBuilder.build(m)));
+		}
+
+		Map<String, String> lifted = new HashMap<>();
+		ClassNode cn = ClassLifter.lift(bytes, (m, cfg) -> {
+			assertEquals(0, m.node.instructions.size());
+			lifted.put(m.getName() + m.getDesc(), shape(cfg));
+		});
+		assertEquals(expected, lifted);
+		assertEquals(expected.size(), cn.getMethods().size());
+		assertEquals(cn.node.methods.size(), cn.getMethods().size());
+		assertEquals(cn.node.fields.size(), cn.getFields().size());
+		assertFalse(cn.isDirty());
+	}
+
+	private static List<Integer> opcodes(MethodNode m) {
+		List<Integer> opcodes = new ArrayList<>();
+		for(AbstractInsnNode ain : m.node.instructions.toArray()) {
+			if(ain.getOpcode() != -1) {
+				opcodes.add(ain.getOpcode());
+			}
+		}
+		return opcodes;
+	}
+
+	public void testFallback() throws Exception {
+		byte[] bytes = bytes(SerialiserFixture.class);
+		Map<String, MethodNode> tree = new HashMap<>();
+		for(MethodNode m : ClassHelper.create(bytes).getMethods()) {
+			tree.put(m.getName(), m);
+		}
+
+		List<String> failed = new ArrayList<>();
+		ClassNode cn = ClassLifter.lift(bytes, (m, cfg) -> {
+			if(m.getName().equals("switches") || m.getName().equals("exceptions")) {
+				failed.add(m.getName());
+				throw new UnsupportedOperationException("jsr " + m);
+			}
+		});
+		assertEquals(2, failed.size());
+		assertEquals(tree.size(), cn.getMethods().size());
+
+		for(MethodNode m : cn.getMethods()) {
+			MethodNode expected = tree.get(m.getName());
+			if(failed.contains(m.getName())) {
+				// the code as it was read, which lifts to the same graph
+				assertEquals(opcodes(expected), opcodes(m));
+				assertEquals(expected.node.tryCatchBlocks.size(), m.node.tryCatchBlocks.size());
+				assertEquals(expected.node.maxLocals, m.node.maxLocals);
+				assertEquals(shape(ControlFlowGraphBuilder.build(expected)), shape(ControlFlowGraphBuilder.build(m)));
+			} else {
+				assertEquals(0, m.node.instructions.size());
+			}
+		}
+	}
+
+	public void testLeaders() throws Exception {
+		CodeStream code = new CodeStream();
+		new ClassReader(bytes(SerialiserFixture.class)).accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return name.equals("switches") ? code : null;
+			}
+		}, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+
+		assertTrue(code.hasCode());
+		assertTrue(code.isLeader(0));
+		int leaders = 0;
+		for(int i=0; i <= code.size(); i++) {
+			if(code.isLeader(i)) {
+				leaders++;
+			}
+		}
+		/* the entry, the cases and the code after the switches, but not
+		 * every instruction. */
+		assertTrue(leaders > 2);
+		assertTrue(leaders < code.size());
+	}
+}
@@ -0,0 +1,62 @@
+package org.mapleir.ir.cfg.builder;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+
+import junit.framework.TestCase;
+
+public class ControlFlowGraphBuilderTest extends TestCase {
+
+	private ClassNode fixture() throws Exception {
+		try(InputStream in = getClass().getResourceAsStream("/org/mapleir/ir/utils/SerialiserFixture.class")) {
+			return ClassHelper.create(in);
+		}
+	}
+
+	private List<String> stmts(ControlFlowGraph cfg) {
+		List<String> stmts = new ArrayList<>();
+		for(BasicBlock b : cfg.vertices()) {
+			for(Stmt stmt : b) {
+				stmts.add(stmt.getClass().getSimpleName());
+			}
+		}
+		Collections.sort(stmts);
+		return stmts;
+	}
+
+	public void testTiers() throws Exception {
+		for(MethodNode m : fixture().getMethods()) {
+			ControlFlowGraphBuilder builder = new ControlFlowGraphBuilder(m);
+			ControlFlowGraph cfg = builder.buildCFG();
+			assertFalse(builder.isSSA());
+			for(Stmt stmt : cfg.stmts()) {
+				assertFalse(m.toString(), stmt instanceof CopyPhiStmt);
+			}
+			assertSame(cfg, builder.buildCFG());
+
+			assertSame(cfg, builder.buildSSA());
+			assertTrue(builder.isSSA());
+			assertEquals(m.toString(), stmts(ControlFlowGraphBuilder.build(m)), stmts(cfg));
+		}
+	}
+
+	public void testSSAOnly() throws Exception {
+		for(MethodNode m : fixture().getMethods()) {
+			ControlFlowGraphBuilder builder = new ControlFlowGraphBuilder(m);
+			ControlFlowGraph cfg = builder.buildSSA();
+			assertTrue(builder.isSSA());
+			assertSame(cfg, builder.buildCFG());
+			assertSame(cfg, builder.buildImpl());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.ReturnStmt;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import junit.framework.TestCase;
+
+public class SSAGenPassTest extends TestCase {
+
+	/* static int deep(int x) {
+	 *   if(x != 0) x++;
+	 *   if(x != 0) x++;
+	 *   ... (n times)
+	 *   return x;
+	 * }
+	 *
+	 * every if is two blocks and every join has a phi for x, so the depth
+	 * first search and the dominator tree are as deep as the method. the
+	 * InsnList isn't limited in size like the code of a class file. */
+	private MethodNode deep(int n) {
+		org.objectweb.asm.tree.MethodNode mn = new org.objectweb.asm.tree.MethodNode(Opcodes.ACC_STATIC, "deep", "(I)I", null, null);
+		InsnList insns = mn.instructions;
+		for(int i=0; i < n; i++) {
+			LabelNode join = new LabelNode();
+			insns.add(new VarInsnNode(Opcodes.ILOAD, 0));
+			insns.add(new JumpInsnNode(Opcodes.IFEQ, join));
+			insns.add(new IincInsnNode(0, 1));
+			insns.add(join);
+		}
+		insns.add(new VarInsnNode(Opcodes.ILOAD, 0));
+		insns.add(new InsnNode(Opcodes.IRETURN));
+
+		ClassNode cn = new ClassNode();
+		cn.version = Opcodes.V1_8;
+		cn.access = Opcodes.ACC_PUBLIC;
+		cn.name = "Deep";
+		cn.superName = "java/lang/Object";
+		cn.methods.add(mn);
+		return ClassHelper.create(cn).getMethods().get(0);
+	}
+
+	private void checkDeep(int n) {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(deep(n));
+		// the entry, two blocks for each if and the return
+		assertEquals(2 * n + 2, cfg.size());
+
+		int phis = 0;
+		VarExpr ret = null;
+		for(BasicBlock b : cfg.vertices()) {
+			for(Stmt stmt : b) {
+				if(stmt.getOpcode() == Opcode.PHI_STORE) {
+					phis++;
+					assertEquals(2, ((CopyPhiStmt) stmt).getExpression().getArgumentCount());
+				} else if(stmt.getOpcode() == Opcode.RETURN) {
+					ret = (VarExpr) ((ReturnStmt) stmt).getExpression();
+				}
+			}
+		}
+		assertEquals(n, phis);
+		// x0 is the parameter, then each if defines an increment and a phi
+		assertEquals(2 * n, ((VersionedLocal) ret.getLocal()).getSubscript());
+	}
+
+	public void testShallow() {
+		checkDeep(3);
+	}
+
+	/* 10000 blocks on a 256k stack, which only leaves room for a few
+	 * thousand frames, so anything recursing on the depth of the graph
+	 * overflows it. */
+	public void testDeep() throws Throwable {
+		Throwable[] failure = new Throwable[1];
+		Thread t = new Thread(null, () -> {
+			try {
+				checkDeep(4999);
+			} catch(Throwable e) {
+				failure[0] = e;
+			}
+		}, "deep", 256 * 1024);
+		t.start();
+		t.join();
+		if(failure[0] != null) {
+			throw failure[0];
+		}
+	}
+}
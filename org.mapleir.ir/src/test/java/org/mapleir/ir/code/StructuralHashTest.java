@@ -0,0 +1,112 @@
+package org.mapleir.ir.code;
+
+import java.io.InputStream;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.ArithmeticExpr.Operator;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.ConstantExprTable;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.PopStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.ir.locals.impl.BasicLocal;
+import org.objectweb.asm.Type;
+
+import junit.framework.TestCase;
+
+public class StructuralHashTest extends TestCase {
+
+	private final Local local = new BasicLocal(1);
+
+	/* (lvar1 + 5) * 3 */
+	private Expr tree(int c) {
+		Expr add = new ArithmeticExpr(new ConstantExpr(c), new VarExpr(local, Type.INT_TYPE), Operator.ADD);
+		return new ArithmeticExpr(new ConstantExpr(3), add, Operator.MUL);
+	}
+
+	public void testEquivalent() {
+		Expr e1 = tree(5), e2 = tree(5), e3 = tree(6);
+		assertTrue(e1.equivalent(e2));
+		assertEquals(e1.structuralHash(), e2.structuralHash());
+		assertFalse(e1.equivalent(e3));
+		assertFalse(e1.structuralHash() == e3.structuralHash());
+
+		Stmt s1 = new PopStmt(e1), s2 = new PopStmt(e2);
+		assertTrue(s1.equivalent(s2));
+		assertEquals(s1.structuralHash(), s2.structuralHash());
+	}
+
+	public void testInvalidatedByWrite() {
+		Stmt stmt = new PopStmt(tree(5));
+		int h = stmt.structuralHash();
+
+		ArithmeticExpr mul = (ArithmeticExpr) stmt.read(0);
+		ArithmeticExpr add = (ArithmeticExpr) mul.getLeft();
+		add.setRight(new ConstantExpr(6));
+		assertEquals(new PopStmt(tree(6)).structuralHash(), stmt.structuralHash());
+
+		add.setRight(new ConstantExpr(5));
+		assertEquals(h, stmt.structuralHash());
+	}
+
+	public void testInvalidatedBySetter() {
+		Stmt stmt = new PopStmt(tree(5));
+		int h = stmt.structuralHash();
+
+		ArithmeticExpr mul = (ArithmeticExpr) stmt.read(0);
+		ConstantExpr c = (ConstantExpr) ((ArithmeticExpr) mul.getLeft()).getRight();
+		c.setConstant(6);
+		assertEquals(new PopStmt(tree(6)).structuralHash(), stmt.structuralHash());
+
+		mul.setOperator(Operator.ADD);
+		assertFalse(h == stmt.structuralHash());
+		mul.setOperator(Operator.MUL);
+		c.setConstant(5);
+		assertEquals(h, stmt.structuralHash());
+	}
+
+	public void testCopies() throws Exception {
+		ClassNode cn;
+		try(InputStream in = getClass().getResourceAsStream("/org/mapleir/ir/utils/SerialiserFixture.class")) {
+			cn = ClassHelper.create(in);
+		}
+
+		int count = 0;
+		for(MethodNode m : cn.getMethods()) {
+			ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+			for(Stmt stmt : cfg.stmts()) {
+				CodeUnit copy = stmt.copy();
+				if(copy.equivalent(stmt)) {
+					assertEquals(stmt.toString(), stmt.structuralHash(), copy.structuralHash());
+					count++;
+				}
+			}
+		}
+		assertTrue(count > 0);
+	}
+
+	public void testInterning() {
+		ConstantExprTable table = new ConstantExprTable();
+		ConstantExpr c1 = table.intern(5, Type.INT_TYPE);
+		assertSame(c1, table.intern(new ConstantExpr(5, Type.INT_TYPE)));
+		assertSame(c1, table.intern(c1));
+		assertNotSame(c1, table.intern(5L, Type.LONG_TYPE));
+		assertSame(table.intern(null, Type.getType(Object.class)), table.intern(null, Type.getType(Object.class)));
+		assertEquals(3, table.size());
+
+		try {
+			c1.setConstant(6);
+			fail();
+		} catch(UnsupportedOperationException e) {
+		}
+
+		ConstantExpr copy = c1.copy();
+		copy.setConstant(6);
+		assertEquals(5, c1.getConstant());
+	}
+}
@@ -0,0 +1,136 @@
+package org.mapleir.ir.codegen;
+
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.List;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.FixtureTestBase;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+public class ChainBlockLayoutTest extends FixtureTestBase {
+
+	public static class Fixture {
+		public static int loops(int[][] arr) {
+			int sum = 0;
+			for(int i=0; i < arr.length; i++) {
+				for(int j=0; j < arr[i].length; j++) {
+					if(arr[i][j] > 0) {
+						sum += arr[i][j];
+					} else {
+						sum--;
+					}
+				}
+			}
+			return sum;
+		}
+
+		public static int handlers(String s, int i) {
+			int x = 0;
+			while(i-- > 0) {
+				try {
+					x += Integer.parseInt(s);
+				} catch(NumberFormatException e) {
+					x--;
+				}
+			}
+			return x;
+		}
+	}
+
+	private static ControlFlowGraph build(MethodNode m) {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+		BoissinotDestructor.leaveSSA(cfg);
+		LocalsReallocator.realloc(cfg);
+		return cfg;
+	}
+
+	private static int countGotos(MethodNode m) {
+		int count = 0;
+		for(AbstractInsnNode ain : m.node.instructions.toArray()) {
+			if(ain.getOpcode() == Opcodes.GOTO) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void testLayout() throws Exception {
+		for(MethodNode m : load(Fixture.class).getMethods()) {
+			if(m.getName().equals("<init>")) {
+				continue;
+			}
+			ControlFlowGraph cfg = build(m);
+			List<BasicBlock> order = new ChainBlockLayout().layout(cfg);
+			assertSame(cfg.getEntries().iterator().next(), order.get(0));
+			assertEquals(order.size(), new HashSet<>(order).size());
+			assertEquals(new HashSet<>(cfg.vertices()), new HashSet<>(order));
+		}
+	}
+
+	public void testFewerGotos() throws Exception {
+		ClassNode bundled = load(Fixture.class);
+		ClassNode chained = load(Fixture.class);
+
+		for(int i=0; i < bundled.getMethods().size(); i++) {
+			MethodNode m1 = bundled.getMethods().get(i);
+			MethodNode m2 = chained.getMethods().get(i);
+			new ControlFlowGraphDumper(build(m1), m1).dump();
+			new ControlFlowGraphDumper(build(m2), m2, new ChainBlockLayout()).dump();
+			assertTrue(m2.toString(), countGotos(m2) <= countGotos(m1));
+		}
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		chained.node.accept(cw);
+		org.objectweb.asm.tree.ClassNode out = new org.objectweb.asm.tree.ClassNode();
+		new ClassReader(cw.toByteArray()).accept(out, 0);
+		for(org.objectweb.asm.tree.MethodNode mn : out.methods) {
+			new Analyzer<BasicValue>(new BasicVerifier()).analyze(out.name, mn);
+		}
+	}
+
+	public void testProfile() throws Exception {
+		MethodNode m = null;
+		for(MethodNode mn : load(Fixture.class).getMethods()) {
+			if(mn.getName().equals("loops")) {
+				m = mn;
+			}
+		}
+		ControlFlowGraph cfg = build(m);
+		BasicBlock entry = cfg.getEntries().iterator().next();
+
+		/* make a conditional jump the hottest edge, it must become a fall
+		 * through in place of the immediate successor. */
+		FlowEdge<BasicBlock> hot = null;
+		for(BasicBlock b : cfg.vertices()) {
+			for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				if(hot == null && e.dst() != entry && e.getType() == FlowEdge.COND) {
+					hot = e;
+				}
+			}
+		}
+		assertNotNull(hot);
+
+		String key = cfg.getOwner() + "." + cfg.getName() + cfg.getDesc();
+		EdgeProfile profile = EdgeProfile.read(new StringReader("# test\n\n" + key + " "
+				+ hot.src().getDisplayName() + " " + hot.dst().getDisplayName() + " 1000\n"));
+		assertTrue(profile.hasMethod(cfg));
+		assertEquals(1000, profile.getCount(cfg, hot.src(), hot.dst()));
+
+		List<BasicBlock> order = new ChainBlockLayout(profile).layout(cfg);
+		assertEquals(order.indexOf(hot.src()) + 1, order.indexOf(hot.dst()));
+	}
+}
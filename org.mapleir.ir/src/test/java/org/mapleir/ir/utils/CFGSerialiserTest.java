@@ -0,0 +1,142 @@
+package org.mapleir.ir.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.FixtureTestBase;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.DefUseVerifier;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Stmt;
+
+public class CFGSerialiserTest extends FixtureTestBase {
+
+	private static List<ControlFlowGraph> liftFixture() throws IOException {
+		ClassNode cn = load(SerialiserFixture.class);
+		List<ControlFlowGraph> list = new ArrayList<>();
+		for(MethodNode m : cn.getMethods()) {
+			list.add(ControlFlowGraphBuilder.build(m));
+		}
+		return list;
+	}
+
+	public void testRoundTrip() throws IOException {
+		for(ControlFlowGraph cfg : liftFixture()) {
+			ControlFlowGraph read = CFGSerialiser.read(CFGSerialiser.write(cfg));
+			assertSameGraph(cfg, read);
+			DefUseVerifier.verify0(read);
+			read.verify();
+		}
+	}
+
+	public void testStable() throws IOException {
+		for(ControlFlowGraph cfg : liftFixture()) {
+			byte[] bytes = CFGSerialiser.write(cfg);
+			ControlFlowGraph read = CFGSerialiser.read(bytes);
+			assertSameGraph(cfg, CFGSerialiser.read(CFGSerialiser.write(read)));
+		}
+	}
+
+	public void testNewBlockIds() throws IOException {
+		for(ControlFlowGraph cfg : liftFixture()) {
+			ControlFlowGraph read = CFGSerialiser.read(CFGSerialiser.write(cfg));
+			BasicBlock b = new BasicBlock(read);
+			for(BasicBlock o : read.vertices()) {
+				assertTrue(b.getNumericId() > o.getNumericId());
+			}
+		}
+	}
+
+	public void testBadInput() throws IOException {
+		byte[] bytes = CFGSerialiser.write(liftFixture().get(0));
+
+		byte[] badMagic = bytes.clone();
+		badMagic[0] ^= 1;
+		try {
+			CFGSerialiser.read(badMagic);
+			fail("bad magic");
+		} catch(IOException e) {
+			// pass
+		}
+
+		try {
+			CFGSerialiser.read(Arrays.copyOf(bytes, bytes.length / 2));
+			fail("truncated");
+		} catch(IOException e) {
+			// pass
+		}
+	}
+
+	private static void assertSameGraph(ControlFlowGraph expected, ControlFlowGraph actual) {
+		assertEquals(expected.getJavaDesc(), actual.getJavaDesc());
+		assertEquals(expected.getLocals().getClass(), actual.getLocals().getClass());
+		assertEquals(expected.getLocals().defs.keySet(), actual.getLocals().defs.keySet());
+		assertEquals(expected.size(), actual.size());
+		assertEquals(ids(expected.getEntries()), ids(actual.getEntries()));
+
+		Map<Integer, BasicBlock> actualBlocks = new HashMap<>();
+		for(BasicBlock b : actual.vertices()) {
+			actualBlocks.put(b.getNumericId(), b);
+		}
+		for(BasicBlock b : expected.vertices()) {
+			BasicBlock o = actualBlocks.get(b.getNumericId());
+			assertNotNull(b.toString(), o);
+			assertEquals(b.getFlags(), o.getFlags());
+			assertEquals(b.size(), o.size());
+			for(int i=0; i < b.size(); i++) {
+				Stmt s1 = b.get(i), s2 = o.get(i);
+				assertEquals(s1.toString(), s2.toString());
+				assertEquals(shape(s1), shape(s2));
+			}
+			assertEquals(edges(expected, b), edges(actual, o));
+		}
+
+		List<ExceptionRange<BasicBlock>> r1 = expected.getRanges(), r2 = actual.getRanges();
+		assertEquals(r1.size(), r2.size());
+		for(int i=0; i < r1.size(); i++) {
+			assertEquals(r1.get(i).toString(), r2.get(i).toString());
+		}
+	}
+
+	/* locals are compared by identity in equivalent so it can't be used across graphs. */
+	private static List<String> shape(Stmt stmt) {
+		List<String> list = new ArrayList<>();
+		for(CodeUnit u : stmt.enumerateExecutionOrder()) {
+			list.add(u.getOpname() + (u instanceof Expr ? ":" + ((Expr) u).getType() : ""));
+		}
+		return list;
+	}
+
+	private static List<Integer> ids(Iterable<BasicBlock> blocks) {
+		List<Integer> list = new ArrayList<>();
+		for(BasicBlock b : blocks) {
+			list.add(b.getNumericId());
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	private static List<String> edges(ControlFlowGraph cfg, BasicBlock b) {
+		List<String> list = new ArrayList<>();
+		for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+			list.add(e.toString());
+		}
+		for(FlowEdge<BasicBlock> e : cfg.getReverseEdges(b)) {
+			list.add(e.toInverseString());
+		}
+		Collections.sort(list);
+		return list;
+	}
+}
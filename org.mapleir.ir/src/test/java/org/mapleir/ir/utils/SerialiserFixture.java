@@ -0,0 +1,92 @@
+package org.mapleir.ir.utils;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Methods covering most of the statement and expression kinds, lifted and
+ * round tripped by {@link CFGSerialiserTest}.
+ */
+public class SerialiserFixture {
+
+	private static long counter;
+	private int field;
+	private final Object lock = new Object();
+
+	public int loops(int[] arr) {
+		int sum = 0;
+		for(int i=0; i < arr.length; i++) {
+			if(arr[i] > 0) {
+				sum += arr[i];
+			} else {
+				sum -= arr[i] * 3;
+			}
+		}
+		return -sum;
+	}
+
+	public String switches(int i, String s) {
+		switch(i) {
+			case 0:
+				return "zero";
+			case 10:
+				return s + i;
+			case -100000:
+				return "\ud800 unpaired";
+			default:
+				break;
+		}
+		switch(i) {
+			case 1:
+			case 2:
+			case 3:
+				return String.valueOf((char) i);
+			default:
+				return null;
+		}
+	}
+
+	public static double constants(float f, long l) {
+		long x = l ^ 0x7FFFFFFFFFFFFFFFL;
+		double d = Double.NaN + f * 1.5f;
+		counter += x;
+		return d / Long.MIN_VALUE + (byte) -1 + (short) 300 + 'c';
+	}
+
+	public Object arrays(Object o) {
+		int[][] multi = new int[3][4];
+		Object[] objs = new Object[] {o, multi, SerialiserFixture.class};
+		if(o instanceof String) {
+			return ((String) o).length();
+		}
+		return objs.length + multi[1].length;
+	}
+
+	public int exceptions(String s) {
+		try {
+			return Integer.parseInt(s);
+		} catch(NumberFormatException e) {
+			field = -1;
+			throw new IllegalStateException(e);
+		} catch(RuntimeException | Error e) {
+			return 0;
+		} finally {
+			field++;
+		}
+	}
+
+	public void monitors() {
+		synchronized(lock) {
+			field = field * 2;
+		}
+	}
+
+	public IntSupplier lambdas(int a) {
+		Runnable r = this::monitors;
+		r.run();
+		return () -> a + field;
+	}
+
+	public boolean compares(long a, double b, float c) {
+		return a > 5L && b < 0.5d && c != 1f;
+	}
+}
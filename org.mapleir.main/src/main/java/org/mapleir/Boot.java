@@ -3,23 +3,26 @@ package org.mapleir;
 import org.apache.log4j.Logger;
 import org.mapleir.app.client.SimpleApplicationContext;
 import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.CodeEmitter;
 import org.mapleir.app.service.CompleteResolvingJarDumper;
 import org.mapleir.app.service.LibraryClassSource;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.context.BasicAnalysisContext;
 import org.mapleir.context.IRCache;
+import org.mapleir.context.IRCodeEmitter;
+import org.mapleir.context.LiftingASMFactory;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassGroup;
 import org.mapleir.deob.PassResult;
+import org.mapleir.deob.callgraph.CompactCallGraph;
+import org.mapleir.deob.callgraph.ParallelCallGraphBuilder;
 import org.mapleir.deob.dataflow.LiveDataFlowAnalysisImpl;
 import org.mapleir.deob.passes.rename.ClassRenamerPass;
 import org.mapleir.deob.util.RenamingHeuristic;
 import org.mapleir.ir.algorithms.BoissinotDestructor;
 import org.mapleir.ir.algorithms.LocalsReallocator;
 import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
-import org.mapleir.ir.codegen.ControlFlowGraphDumper;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
 import org.topdank.byteengineer.commons.data.JarInfo;
@@ -35,6 +38,10 @@ public class Boot {
 	private static final Logger LOGGER = Logger.getLogger(Boot.class);
 
 	public static boolean logging = false;
+	/* whether only the methods reachable from the entry points are lifted,
+	 * rather than every method of the application as the jar is read. Off
+	 * unless run with -Dmapleir.reachable=true. */
+	public static boolean reachableOnly = Boolean.getBoolean("mapleir.reachable");
 	private static long timer;
 	private static Deque<String> sections;
 
@@ -56,7 +63,17 @@ public class Boot {
 		File f = new File("res/salesforce.jar");
 
 		section("Preparing to run on " + f.getAbsolutePath());
-		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(f));
+		IRCache irFactory = new IRCache(true);
+		SingleJarDownloader<ClassNode> dl;
+		if(reachableOnly) {
+			// the code is kept as ASM trees until its method is reached, and
+			// the methods which never are are written out as they were read.
+			dl = new SingleJarDownloader<>(new JarInfo(f));
+		} else {
+			// the methods are lifted as the jar is read, so their code is never
+			// held as ASM trees.
+			dl = new SingleJarDownloader<>(new LiftingASMFactory(irFactory), new JarInfo(f));
+		}
 		dl.download();
 		String appName = f.getName().substring(0, f.getName().length() - 4);
 		ApplicationClassSource app = new ApplicationClassSource(appName, dl.getJarContents().getClassContents());
@@ -69,8 +86,6 @@ public class Boot {
 		app.addLibraries(rt(app, rtjar), rt(app, androidjar));
 		section("Initialising context.");
 
-
-		IRCache irFactory = new IRCache(ControlFlowGraphBuilder::build);
 		AnalysisContext cxt = new BasicAnalysisContext.BasicContextBuilder()
 				.setApplication(app)
 				.setInvocationResolver(new DefaultInvocationResolver(app))
@@ -80,18 +95,20 @@ public class Boot {
 				.build();
 
 		section("Expanding callgraph and generating cfgs.");
-		// IRCallTracer tracer = new IRCallTracer(cxt);
-		// for(MethodNode m : cxt.getApplicationContext().getEntryPoints()) {
-		// 	tracer.trace(m);
-		// }
-
-		for (ClassNode cn : cxt.getApplication().iterate()) {
-//			 if (!cn.getName().equals("android/support/v4/media/session/MediaSessionCompat$MediaSessionImplApi18"))
-//			 	continue;
-			for (MethodNode m : cn.getMethods()) {
-//				 if (!m.getName().equals("setRccState"))
+		if(reachableOnly) {
+			// only the methods reached from the entry points are lifted, a wave
+			// of newly reached methods at a time.
+			CompactCallGraph cg = new ParallelCallGraphBuilder(cxt).build(cxt.getApplicationContext().getEntryPoints());
+			LOGGER.info(String.format("%d methods reached from the entry points", cg.size()));
+		} else {
+			for (ClassNode cn : cxt.getApplication().iterate()) {
+//				 if (!cn.getName().equals("android/support/v4/media/session/MediaSessionCompat$MediaSessionImplApi18"))
 //				 	continue;
-				cxt.getIRCache().getFor(m);
+				for (MethodNode m : cn.getMethods()) {
+//					 if (!m.getName().equals("setRccState"))
+//					 	continue;
+					cxt.getIRCache().getFlowGraph(m);
+				}
 			}
 		}
 		section0("...generated " + cxt.getIRCache().size() + " cfgs in %fs.%n", "Preparing to transform.");
@@ -104,6 +121,9 @@ public class Boot {
 		run(cxt, masterGroup);
 		section0("...done transforming in %fs.%n", "Preparing to transform.");
 
+		// the graphs which no pass needed in SSA form are only built now.
+		irFactory.buildSSA();
+
 
 		for(Entry<MethodNode, ControlFlowGraph> e : cxt.getIRCache().entrySet()) {
 			MethodNode mn = e.getKey();
@@ -129,19 +149,17 @@ public class Boot {
 			 // CFGUtils.easyDumpCFG(cfg, "post-reaalloc");
 			// System.out.println(cfg);
 			cfg.verify();
-			 // System.out.println("Rewriting " + mn.getName());
-			(new ControlFlowGraphDumper(cfg, mn)).dump();
-			 // System.out.println(InsnListUtils.insnListToString(mn.instructions));
+			// the code is written straight from the cfg when the jar is dumped
 		}
 
 		section("Rewriting jar.");
-		dumpJar(app, dl, masterGroup, "out/rewritten.jar");
+		dumpJar(app, dl, masterGroup, new IRCodeEmitter(cxt.getIRCache(), true), "out/rewritten.jar");
 
 		section("Finished.");
 	}
 
-	private static void dumpJar(ApplicationClassSource app, SingleJarDownloader<ClassNode> dl, PassGroup masterGroup, String outputFile) throws IOException {
-		(new CompleteResolvingJarDumper(dl.getJarContents(), app) {
+	private static void dumpJar(ApplicationClassSource app, SingleJarDownloader<ClassNode> dl, PassGroup masterGroup, CodeEmitter emitter, String outputFile) throws IOException {
+		CompleteResolvingJarDumper dumper = new CompleteResolvingJarDumper(dl.getJarContents(), app) {
 			@Override
 			public int dumpResource(JarOutputStream out, String name, byte[] file) throws IOException {
 //				if(name.startsWith("META-INF")) {
@@ -184,7 +202,9 @@ public class Boot {
 				}
 				return super.dumpResource(out, name, file);
 			}
-		}).dump(new File(outputFile));
+		};
+		dumper.setCodeEmitter(emitter);
+		dumper.dump(new File(outputFile));
 	}
 
 	private static void run(AnalysisContext cxt, PassGroup group) {
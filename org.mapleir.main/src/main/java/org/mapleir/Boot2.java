@@ -15,7 +15,9 @@ import org.mapleir.deob.PassResult;
 import org.mapleir.deob.dataflow.LiveDataFlowAnalysisImpl;
 import org.mapleir.deob.passes.rename.ClassRenamerPass;
 import org.mapleir.deob.passes.rename.FieldRenamerPass;
+import org.mapleir.deob.passes.rename.MappingTable;
 import org.mapleir.deob.passes.rename.MethodRenamerPass;
+import org.mapleir.deob.passes.rename.RemappingPass;
 import org.mapleir.deob.util.RenamingHeuristic;
 import org.mapleir.ir.algorithms.BoissinotDestructor;
 import org.mapleir.ir.algorithms.LocalsReallocator;
@@ -181,11 +183,13 @@ public class Boot2 {
 	
 	private static IPass[] getTransformationPasses() {
 		RenamingHeuristic heuristic = RenamingHeuristic.NON_PRINTABLE;
+		MappingTable mappings = new MappingTable();
 		return new IPass[] {
 //				new ConcreteStaticInvocationPass(),
-				new ClassRenamerPass(heuristic),
-				new MethodRenamerPass(heuristic),
-				new FieldRenamerPass(),
+				new ClassRenamerPass(heuristic, mappings),
+				new MethodRenamerPass(heuristic, mappings),
+				new FieldRenamerPass(mappings),
+				new RemappingPass(mappings),
 				// new CallgraphPruningPass(),
 				
 				// new PassGroup("Interprocedural Optimisations")
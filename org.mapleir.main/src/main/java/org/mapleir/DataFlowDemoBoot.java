@@ -7,6 +7,7 @@ import org.mapleir.app.service.LibraryClassSource;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.context.BasicAnalysisContext;
 import org.mapleir.context.IRCache;
+import org.mapleir.context.IRCacheStore;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassGroup;
@@ -69,7 +70,13 @@ public class DataFlowDemoBoot {
 		section("Initialising context.");
 
 
-		IRCache irFactory = new IRCache(ControlFlowGraphBuilder::build);
+		IRCache irFactory;
+		String storeDir = System.getProperty("mapleir.ircache");
+		if(storeDir != null) {
+			irFactory = new IRCache(ControlFlowGraphBuilder::build, new IRCacheStore(new File(storeDir), "optimise=true", dl.getJarContents()));
+		} else {
+			irFactory = new IRCache(ControlFlowGraphBuilder::build);
+		}
 		AnalysisContext cxt = new BasicAnalysisContext.BasicContextBuilder()
 				.setApplication(app)
 				.setInvocationResolver(new DefaultInvocationResolver(app))
@@ -173,6 +180,7 @@ public class DataFlowDemoBoot {
 				// new ConstantExpressionReorderPass(),
 				// new FieldRSADecryptionPass(),
 				// new ConstantParameterPass(),
+//				new GlobalValueNumberingPass(),
 //				new ConstantExpressionEvaluatorPass(),
 // 				new DeadCodeEliminationPass()
 
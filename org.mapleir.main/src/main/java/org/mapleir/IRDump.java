@@ -0,0 +1,76 @@
+package org.mapleir;
+
+import java.io.File;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.IRCache;
+import org.mapleir.context.IRDumper;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+/**
+ * Lifts every method of a jar and dumps its IR for inspection or diffing.
+ *
+ * <pre>
+ * IRDump [--dot] [--no-text] [--threads n] input.jar out(dir|.zip)
+ * </pre>
+ */
+public class IRDump {
+	private static final Logger LOGGER = Logger.getLogger(IRDump.class);
+
+	public static void main(String[] args) throws Exception {
+		boolean text = true, dot = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File in = null, out = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--dot")) {
+				dot = true;
+			} else if (arg.equals("--no-text")) {
+				text = false;
+			} else if (arg.equals("--threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (in == null) {
+				in = new File(arg);
+			} else if (out == null) {
+				out = new File(arg);
+			} else {
+				usage();
+				return;
+			}
+		}
+		if (in == null || out == null || (!text && !dot)) {
+			usage();
+			return;
+		}
+
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(in));
+		dl.download();
+
+		IRCache cache = new IRCache(ControlFlowGraphBuilder::build);
+		int failed = 0;
+		for (ClassNode cn : dl.getJarContents().getClassContents()) {
+			for (MethodNode m : cn.getMethods()) {
+				if (m.node.instructions.size() == 0)
+					continue;
+				try {
+					cache.getFor(m);
+				} catch (RuntimeException e) {
+					LOGGER.warn("Failed to lift " + m, e);
+					failed++;
+				}
+			}
+		}
+		LOGGER.info(String.format("Lifted %d methods, %d failed", cache.size(), failed));
+
+		new IRDumper(cache).setText(text).setDot(dot).setThreads(threads).dump(out);
+	}
+
+	private static void usage() {
+		System.err.println("usage: IRDump [--dot] [--no-text] [--threads n] input.jar out(dir|.zip)");
+	}
+}
@@ -1,6 +1,7 @@
 package org.mapleir.context;
 
 import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.CodeStream;
 import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
 import org.mapleir.ir.code.CodeUnit;
 import org.mapleir.stdlib.collections.map.KeyedValueCreator;
@@ -8,22 +9,254 @@ import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.mapleir.stdlib.util.JavaDesc;
 import org.mapleir.asm.MethodNode;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
+/**
+ * The graphs of the methods which have been lifted.
+ *
+ * A tiered cache first only generates the graph of a method, without
+ * putting it into SSA form, when the graph is asked for with
+ * {@link #getFlowGraph(MethodNode)}, as is enough for finding calls and
+ * references. The graph is put into SSA form in place, so it stays the same
+ * object, once it's asked for with {@link #getFor(MethodNode)} or all of
+ * the graphs are with {@link #buildSSA()}. The cache holds the graphs of
+ * both tiers, but only {@link #getFlowGraph(MethodNode)} hands out a graph
+ * which may not be in SSA form: {@link #get(Object)} puts the graph of the
+ * method into SSA form and {@link #values()}, {@link #entrySet()} and
+ * {@link #forEach(BiConsumer)} put all of them into SSA form first.
+ *
+ * Like the map itself the cache isn't thread safe, the builders waiting to
+ * put their graphs into SSA form are kept in a plain map too. Only
+ * {@link #liftAll(Collection, ExecutorService)} builds graphs on other
+ * threads and it only changes the cache on the calling thread.
+ */
 public class IRCache extends NullPermeableHashMap<MethodNode, ControlFlowGraph> {
 	private static final long serialVersionUID = 1L;
 	
+	private final boolean tiered;
+	// whether the graphs are made by a creator given to the cache
+	private final boolean custom;
+	// the builders of the graphs which aren't in SSA form yet, only ever
+	// used on the thread which uses the cache
+	private final Map<MethodNode, ControlFlowGraphBuilder> pending;
+	
 	public IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator) {
-		super(creator);
+		this(creator, false, true);
 	}
 	
 	public IRCache() {
-		this(ControlFlowGraphBuilder::build);
+		this(false);
+	}
+	
+	/**
+	 * @param tiered whether graphs are only put into SSA form once they're
+	 * needed in that form
+	 */
+	public IRCache(boolean tiered) {
+		this(ControlFlowGraphBuilder::build, tiered, false);
+	}
+	
+	private IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator, boolean tiered, boolean custom) {
+		super(creator);
+		this.tiered = tiered;
+		this.custom = custom;
+		pending = new HashMap<>();
+	}
+	
+	/**
+	 * Creates a cache which first looks for a graph in the given store and
+	 * only builds (and then stores) it when the store doesn't have it.
+	 * @param creator the graph builder
+	 * @param store the persistent store
+	 */
+	public IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator, IRCacheStore store) {
+		this(m -> {
+			ControlFlowGraph cfg = store.load(m);
+			if(cfg == null) {
+				cfg = creator.create(m);
+				store.store(m, cfg);
+			}
+			return cfg;
+		});
+	}
+	
+	public boolean isTiered() {
+		return tiered;
 	}
 	
+	/**
+	 * @return the graph of the method in SSA form, which is built if it
+	 * hasn't been
+	 */
 	public ControlFlowGraph getFor(MethodNode m) {
-		return getNonNull(m);
+		ControlFlowGraph cfg = get(m);
+		return cfg != null ? cfg : getNonNull(m);
+	}
+	
+	/**
+	 * @return the graph of the method, which is only generated if it hasn't
+	 * been and the cache is tiered, so it may or may not be in SSA form
+	 */
+	public ControlFlowGraph getFlowGraph(MethodNode m) {
+		ControlFlowGraph cfg = super.get(m);
+		if(cfg != null) {
+			return cfg;
+		} else if(tiered) {
+			return put(m, new ControlFlowGraphBuilder(m));
+		} else {
+			return getNonNull(m);
+		}
+	}
+	
+	/**
+	 * Lifts the recorded code of a method, only generating its graph if the
+	 * cache is tiered.
+	 */
+	public ControlFlowGraph lift(MethodNode m, CodeStream code) {
+		return put(m, new ControlFlowGraphBuilder(m, code, true));
+	}
+	
+	/**
+	 * Lifts the methods which haven't been lifted, as
+	 * {@link #getFlowGraph(MethodNode)} would, on the executor. The graph of
+	 * each method is built independently of the others, so they are built
+	 * in parallel, but they're only put in the cache on the calling thread.
+	 * A cache which was given its own creator lifts them one by one on the
+	 * calling thread instead.
+	 */
+	public void liftAll(Collection<MethodNode> methods, ExecutorService executor) throws InterruptedException, ExecutionException {
+		if(custom) {
+			for(MethodNode m : methods) {
+				getFlowGraph(m);
+			}
+			return;
+		}
+		
+		Map<MethodNode, ControlFlowGraphBuilder> builders = new LinkedHashMap<>();
+		for(MethodNode m : methods) {
+			if(!containsKey(m) && !builders.containsKey(m)) {
+				builders.put(m, new ControlFlowGraphBuilder(m));
+			}
+		}
+		List<Future<ControlFlowGraph>> futures = new ArrayList<>(builders.size());
+		for(ControlFlowGraphBuilder builder : builders.values()) {
+			Callable<ControlFlowGraph> task = tiered ? builder::buildCFG : builder::buildSSA;
+			futures.add(executor.submit(task));
+		}
+		int i = 0;
+		for(Entry<MethodNode, ControlFlowGraphBuilder> e : builders.entrySet()) {
+			ControlFlowGraph cfg = futures.get(i++).get();
+			if(tiered) {
+				pending.put(e.getKey(), e.getValue());
+			}
+			super.put(e.getKey(), cfg);
+		}
+	}
+	
+	private ControlFlowGraph put(MethodNode m, ControlFlowGraphBuilder builder) {
+		ControlFlowGraph cfg;
+		if(tiered) {
+			cfg = builder.buildCFG();
+			pending.put(m, builder);
+		} else {
+			cfg = builder.buildSSA();
+			pending.remove(m);
+		}
+		super.put(m, cfg);
+		return cfg;
+	}
+	
+	/**
+	 * @return whether the graph of the method is in SSA form, or false if
+	 * the method hasn't been lifted
+	 */
+	public boolean isSSA(MethodNode m) {
+		return containsKey(m) && !pending.containsKey(m);
+	}
+	
+	/**
+	 * Puts every graph in the cache into SSA form.
+	 */
+	public void buildSSA() {
+		for(ControlFlowGraphBuilder builder : pending.values()) {
+			builder.buildSSA();
+		}
+		pending.clear();
+	}
+	
+	/**
+	 * @return the graph of the method in SSA form, or null if the method
+	 * hasn't been lifted
+	 */
+	@Override
+	public ControlFlowGraph get(Object m) {
+		ControlFlowGraphBuilder builder = pending.remove(m);
+		if(builder != null) {
+			return builder.buildSSA();
+		}
+		return super.get(m);
+	}
+	
+	@Override
+	public ControlFlowGraph getOrDefault(Object m, ControlFlowGraph defaultValue) {
+		return containsKey(m) ? get(m) : defaultValue;
+	}
+	
+	/**
+	 * @return the graphs, which are all put into SSA form first
+	 */
+	@Override
+	public Collection<ControlFlowGraph> values() {
+		buildSSA();
+		return super.values();
+	}
+	
+	/**
+	 * @return the methods and their graphs, which are all put into SSA form
+	 * first
+	 */
+	@Override
+	public Set<Entry<MethodNode, ControlFlowGraph>> entrySet() {
+		buildSSA();
+		return super.entrySet();
+	}
+	
+	@Override
+	public void forEach(BiConsumer<? super MethodNode, ? super ControlFlowGraph> action) {
+		buildSSA();
+		super.forEach(action);
+	}
+	
+	@Override
+	public ControlFlowGraph put(MethodNode m, ControlFlowGraph cfg) {
+		/* a graph put in from elsewhere replaces any which is waiting. */
+		pending.remove(m);
+		return super.put(m, cfg);
+	}
+	
+	@Override
+	public ControlFlowGraph remove(Object m) {
+		pending.remove(m);
+		return super.remove(m);
+	}
+	
+	@Override
+	public void clear() {
+		pending.clear();
+		super.clear();
 	}
 
 	public MethodNode findMethod(JavaDesc jd) {
@@ -34,6 +267,9 @@ public class IRCache extends NullPermeableHashMap<MethodNode, ControlFlowGraph>
 		return keySet();
 	}
 
+	/**
+	 * @return the units of every graph, which are all put into SSA form first
+	 */
 	public Stream<CodeUnit> allExprStream() {
 		return values().stream().flatMap(ControlFlowGraph::allExprStream);
 	}
@@ -0,0 +1,170 @@
+package org.mapleir.context;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.utils.CFGSerialiser;
+import org.topdank.byteengineer.commons.data.JarContents;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A directory backed store of lifted graphs for the {@link IRCache}.
+ *
+ * Graphs are stored one file per method under a directory named after a hash
+ * of the bytes of the owning class and the builder options, so a class which
+ * changes (or a change in the way the graphs are built) simply misses the
+ * store and is lifted again.
+ *
+ * The bytes hashed are those the class was read from, as kept by the
+ * {@link JarContents} it was loaded into, so the class doesn't have to be
+ * written out again to be hashed. Classes whose bytes weren't kept, or which
+ * have been changed since they were read, aren't stored.
+ */
+public class IRCacheStore {
+
+	private static final Logger LOGGER = Logger.getLogger(IRCacheStore.class);
+
+	private final File dir;
+	private final String options;
+	private final JarContents<?> contents;
+	private final Map<ClassNode, String> classKeys;
+	private final AtomicInteger hits, misses;
+
+	/**
+	 * @param dir the directory to keep the graphs in, created if needed
+	 * @param options a description of the builder configuration, graphs built
+	 *        with different options are kept separately
+	 * @param contents the jar the classes were read from, with their bytes
+	 */
+	public IRCacheStore(File dir, String options, JarContents<?> contents) {
+		this.dir = dir;
+		this.options = options;
+		this.contents = contents;
+		classKeys = new WeakHashMap<>();
+		hits = new AtomicInteger();
+		misses = new AtomicInteger();
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @param m the method
+	 * @return the stored graph for the method or null if there isn't a valid one
+	 */
+	public ControlFlowGraph load(MethodNode m) {
+		File f = getFile(m);
+		if(f == null || !f.exists()) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		try {
+			ControlFlowGraph cfg = CFGSerialiser.read(Files.readAllBytes(f.toPath()));
+			hits.incrementAndGet();
+			return cfg;
+		} catch(IOException | RuntimeException e) {
+			LOGGER.warn("Discarding stored graph for " + m + ": " + e);
+			f.delete();
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the graph of the method to the store. Failures are logged and
+	 * otherwise ignored as the graph can always be rebuilt.
+	 * @param m the method
+	 * @param cfg the graph of the method
+	 */
+	public void store(MethodNode m, ControlFlowGraph cfg) {
+		File f = getFile(m);
+		if(f == null) {
+			return;
+		}
+
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+		try {
+			f.getParentFile().mkdirs();
+			Files.write(tmp.toPath(), CFGSerialiser.write(cfg));
+			/* don't leave half written graphs lying around. */
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException | RuntimeException e) {
+			LOGGER.warn("Couldn't store graph for " + m + ": " + e);
+			tmp.delete();
+		}
+	}
+
+	private File getFile(MethodNode m) {
+		String classKey = getClassKey(m.owner);
+		if(classKey == null) {
+			return null;
+		}
+		return new File(new File(dir, classKey), hash(m.getName() + m.getDesc()) + ".ir");
+	}
+
+	private synchronized String getClassKey(ClassNode cn) {
+		/* the bytes it was read from no longer describe the class. */
+		if(cn.isDirty()) {
+			return null;
+		}
+		if(classKeys.containsKey(cn)) {
+			return classKeys.get(cn);
+		}
+
+		String key;
+		byte[] bytes = contents.getOriginalBytes(cn);
+		if(bytes != null) {
+			MessageDigest digest = newDigest();
+			digest.update(bytes);
+			digest.update(options.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) CFGSerialiser.VERSION);
+			key = toHex(digest.digest());
+		} else {
+			key = null;
+		}
+		classKeys.put(cn, key);
+		return key;
+	}
+
+	private static String hash(String s) {
+		return toHex(newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,52 @@
+package org.mapleir.context;
+
+import org.mapleir.app.service.CodeEmitter;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Writes the methods in an {@link IRCache} straight from their graphs into the
+ * class writer, so their code never has to be built up as an instruction list.
+ * The graphs must already be out of SSA form and have their locals
+ * allocated. Methods without a graph in the cache are written as they are.
+ */
+public class IRCodeEmitter implements CodeEmitter {
+
+	private final IRCache cache;
+	private final boolean release;
+
+	public IRCodeEmitter(IRCache cache) {
+		this(cache, false);
+	}
+
+	/**
+	 * @param cache the graphs to write
+	 * @param release whether to drop each graph from the cache, along with the
+	 *        old code of its method, once it has been written. This keeps
+	 *        the heap from holding the IR of the whole application until the
+	 *        jar is finished, but the methods can't be written again.
+	 */
+	public IRCodeEmitter(IRCache cache, boolean release) {
+		this.cache = cache;
+		this.release = release;
+	}
+
+	@Override
+	public boolean handles(MethodNode m) {
+		return cache.containsKey(m);
+	}
+
+	@Override
+	public void emit(MethodNode m, MethodVisitor mv) {
+		ControlFlowGraph cfg = cache.get(m);
+		new ControlFlowGraphDumper(cfg, m).dump(mv);
+
+		if (release) {
+			cache.remove(m);
+			m.node.instructions.clear();
+			m.node.tryCatchBlocks.clear();
+		}
+	}
+}
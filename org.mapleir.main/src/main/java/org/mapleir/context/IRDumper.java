@@ -0,0 +1,232 @@
+package org.mapleir.context;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.dot4j.model.Serialiser;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.utils.CFGExporterUtils;
+import org.mapleir.propertyframework.api.IPropertyDictionary;
+import org.mapleir.propertyframework.impl.BooleanProperty;
+import org.mapleir.propertyframework.util.PropertyHelper;
+import org.mapleir.stdlib.util.TabbedStringWriter;
+
+/**
+ * Dumps the IR of every method in an {@link IRCache} as text and/or dot
+ * graphs, either into a directory tree or into a single zip.
+ *
+ * <p>The output is sharded by package, one text file per class holding all of
+ * its methods (<code>pkg/Cls.ir</code>) and one dot file per method
+ * (<code>pkg/Cls/index_name.dot</code>, the index being the position of the
+ * method in its class). Classes are rendered in parallel but written out in
+ * name order, so dumps of the same code are identical and can be diffed
+ * directly.
+ */
+public class IRDumper {
+	private static final Logger LOGGER = Logger.getLogger(IRDumper.class);
+
+	private final Map<MethodNode, ControlFlowGraph> cache;
+	private boolean text = true;
+	private boolean dot = false;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	public IRDumper(Map<MethodNode, ControlFlowGraph> cache) {
+		this.cache = cache;
+	}
+
+	public IRDumper setText(boolean text) {
+		this.text = text;
+		return this;
+	}
+
+	public IRDumper setDot(boolean dot) {
+		this.dot = dot;
+		return this;
+	}
+
+	public IRDumper setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads: " + threads);
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Dumps into a zip if the file name ends in .zip, otherwise into a
+	 * directory.
+	 * @param out the zip or directory
+	 * @return the number of files written
+	 */
+	public int dump(File out) throws IOException {
+		if (out.getName().endsWith(".zip")) {
+			return dumpToZip(out);
+		} else {
+			return dumpToDirectory(out);
+		}
+	}
+
+	public int dumpToDirectory(File dir) throws IOException {
+		try (Sink sink = new DirectorySink(dir)) {
+			return dump(sink);
+		}
+	}
+
+	public int dumpToZip(File zip) throws IOException {
+		try (Sink sink = new ZipSink(zip)) {
+			return dump(sink);
+		}
+	}
+
+	private int dump(Sink sink) throws IOException {
+		/* the graphs are taken on this thread, as looking them up in a tiered
+		 * IRCache builds their SSA form. */
+		Map<MethodNode, ControlFlowGraph> graphs = new HashMap<>();
+		for (Map.Entry<MethodNode, ControlFlowGraph> e : cache.entrySet()) {
+			graphs.put(e.getKey(), e.getValue());
+		}
+
+		// group by class, in name order, with methods in declaration order
+		Map<String, ClassNode> classes = new TreeMap<>();
+		for (MethodNode m : graphs.keySet()) {
+			classes.put(m.getOwner(), m.owner);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// bound the number of rendered classes waiting to be written
+		int window = threads * 4;
+		Deque<Future<Map<String, byte[]>>> pending = new ArrayDeque<>();
+		int count = 0;
+		try {
+			for (ClassNode cn : classes.values()) {
+				pending.add(executor.submit(() -> render(cn, graphs)));
+				if (pending.size() >= window) {
+					count += write(sink, pending.poll());
+				}
+			}
+			while (!pending.isEmpty()) {
+				count += write(sink, pending.poll());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		LOGGER.info(String.format("Dumped IR of %d methods in %d classes to %d files", graphs.size(), classes.size(), count));
+		return count;
+	}
+
+	private static int write(Sink sink, Future<Map<String, byte[]>> future) throws IOException {
+		Map<String, byte[]> files;
+		try {
+			files = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		for (Map.Entry<String, byte[]> e : files.entrySet()) {
+			sink.write(e.getKey(), e.getValue());
+		}
+		return files.size();
+	}
+
+	private Map<String, byte[]> render(ClassNode cn, Map<MethodNode, ControlFlowGraph> graphs) {
+		List<MethodNode> methods = new ArrayList<>();
+		for (MethodNode m : cn.getMethods()) {
+			if (graphs.containsKey(m))
+				methods.add(m);
+		}
+		methods.sort(Comparator.comparingInt(cn.getMethods()::indexOf));
+
+		Map<String, byte[]> files = new LinkedHashMap<>();
+		if (text) {
+			TabbedStringWriter sw = new TabbedStringWriter();
+			for (MethodNode m : methods) {
+				sw.print(".method ").print(m.getName()).print(m.getDesc()).print(" {").tab().print('\n');
+				graphs.get(m).toString(sw);
+				sw.untab().print("\n}\n\n");
+			}
+			files.put(cn.getName() + ".ir", sw.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		if (dot) {
+			IPropertyDictionary dict = PropertyHelper.createDictionary();
+			dict.put(new BooleanProperty(CFGExporterUtils.OPT_EDGES, true));
+			dict.put(new BooleanProperty(CFGExporterUtils.OPT_STMTS, true));
+			for (MethodNode m : methods) {
+				String src = new Serialiser(CFGExporterUtils.makeDotGraph(graphs.get(m), dict)).serialise();
+				String name = cn.getName() + "/" + cn.getMethods().indexOf(m) + "_" + sanitise(m.getName()) + ".dot";
+				files.put(name, src.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return files;
+	}
+
+	private static String sanitise(String name) {
+		return name.replace('<', '_').replace('>', '_');
+	}
+
+	private interface Sink extends Closeable {
+		void write(String name, byte[] data) throws IOException;
+	}
+
+	private static class DirectorySink implements Sink {
+		private final File dir;
+
+		DirectorySink(File dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		public void write(String name, byte[] data) throws IOException {
+			File f = new File(dir, name);
+			f.getParentFile().mkdirs();
+			Files.write(f.toPath(), data);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static class ZipSink implements Sink {
+		private final ZipOutputStream zos;
+
+		ZipSink(File zip) throws IOException {
+			zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zip)));
+		}
+
+		@Override
+		public void write(String name, byte[] data) throws IOException {
+			zos.putNextEntry(new ZipEntry(name));
+			zos.write(data);
+			zos.closeEntry();
+		}
+
+		@Override
+		public void close() throws IOException {
+			zos.close();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.mapleir.context;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.ir.cfg.builder.ClassLifter;
+import org.topdank.byteengineer.commons.asm.ASMFactory;
+
+/**
+ * Creates classes by lifting their methods into an {@link IRCache} while
+ * they are read, rather than by reading them into ASM trees which are
+ * lifted later. If the cache is tiered the graphs are only generated, and
+ * put into SSA form when they're needed. The classes are left without the
+ * code of their lifted methods, so a jar loaded this way can only be written
+ * with an {@link IRCodeEmitter} for the same cache, set on the
+ * {@link org.mapleir.app.service.CompleteResolvingJarDumper}. Methods which
+ * can't be lifted keep their code, see {@link ClassLifter}.
+ *
+ * The factory therefore only creates classes: {@link #write(ClassNode)}
+ * throws, so it can't be given to anything which writes the classes back
+ * through their factory, such as a JarClassLoader.
+ */
+public class LiftingASMFactory implements ASMFactory<ClassNode> {
+
+	private final IRCache cache;
+
+	public LiftingASMFactory(IRCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public ClassNode create(byte[] bytes, String name) {
+		return ClassLifter.read(bytes, cache::lift);
+	}
+
+	/**
+	 * Unsupported, the graphs have to be taken out of SSA form and have their
+	 * locals allocated before they can be emitted, which is up to the
+	 * caller.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public byte[] write(ClassNode c) {
+		throw new UnsupportedOperationException("the code of " + c.getName() + " is only held in the IR, dump it with an IRCodeEmitter");
+	}
+}
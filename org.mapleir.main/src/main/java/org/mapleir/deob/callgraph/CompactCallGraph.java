@@ -0,0 +1,244 @@
+package org.mapleir.deob.callgraph;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.deob.callgraph.CallGraphEdge.FunctionOwnershipEdge;
+import org.mapleir.deob.callgraph.CallGraphEdge.SiteInvocationEdge;
+import org.mapleir.deob.callgraph.CallGraphNode.CallReceiverNode;
+import org.mapleir.deob.callgraph.CallGraphNode.CallSiteNode;
+import org.mapleir.ir.code.expr.invoke.Invocation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A call graph stored in compressed sparse row form: methods and call sites
+ * are numbered, and the sites of each method and the targets of each site are
+ * ranges of flat int arrays, rather than {@link CallGraphNode}s and edge sets.
+ *
+ * Methods are numbered from 0 in the order in which they were reached and the
+ * sites of method m are numbered from {@link #getSiteStart(int)
+ * getSiteStart(m)} up to {@link #getSiteEnd(int) getSiteEnd(m)}, in the order
+ * in which they occur in its graph. The callers of each method are only
+ * indexed when they're first asked for, and an equivalent
+ * {@link CallSiteSensitiveCallGraph} can be made with {@link #toGraph()}.
+ */
+public class CompactCallGraph {
+
+	private final MethodNode[] methods;
+	private final Map<MethodNode, Integer> ids;
+	/* sites of method m: siteStart[m] until siteStart[m + 1] */
+	private final int[] siteStart;
+	private final Invocation[] sites;
+	/* targets of site s: targets[targetStart[s]] until targets[targetStart[s + 1]] */
+	private final int[] targetStart;
+	private final int[] targets;
+
+	/* the reverse of the above, built on demand: the sites which call method
+	 * m are callers[callerStart[m]] until callers[callerStart[m + 1]] */
+	private int[] callerStart;
+	private int[] callers;
+	/* the method which contains each site, built with the callers */
+	private int[] siteOwners;
+
+	CompactCallGraph(MethodNode[] methods, Map<MethodNode, Integer> ids, int[] siteStart, Invocation[] sites, int[] targetStart, int[] targets) {
+		this.methods = methods;
+		this.ids = ids;
+		this.siteStart = siteStart;
+		this.sites = sites;
+		this.targetStart = targetStart;
+		this.targets = targets;
+	}
+
+	/**
+	 * @return the number of methods in the graph
+	 */
+	public int size() {
+		return methods.length;
+	}
+
+	/**
+	 * @return the number of call sites in the graph
+	 */
+	public int siteCount() {
+		return sites.length;
+	}
+
+	/**
+	 * @return the number of resolved (site, target) pairs in the graph
+	 */
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	public boolean containsMethod(MethodNode m) {
+		return ids.containsKey(m);
+	}
+
+	/**
+	 * @return the number of the method, or -1 if it isn't in the graph
+	 */
+	public int getId(MethodNode m) {
+		Integer id = ids.get(m);
+		return id == null ? -1 : id;
+	}
+
+	public MethodNode getMethod(int id) {
+		return methods[id];
+	}
+
+	public int getSiteStart(int method) {
+		return siteStart[method];
+	}
+
+	public int getSiteEnd(int method) {
+		return siteStart[method + 1];
+	}
+
+	public Invocation getSite(int site) {
+		return sites[site];
+	}
+
+	public int getTargetStart(int site) {
+		return targetStart[site];
+	}
+
+	public int getTargetEnd(int site) {
+		return targetStart[site + 1];
+	}
+
+	/**
+	 * @param i an index from {@link #getTargetStart(int)} up to {@link #getTargetEnd(int)}
+	 * @return the number of the method the site resolves to
+	 */
+	public int getTarget(int i) {
+		return targets[i];
+	}
+
+	/**
+	 * @return the number of the method which contains the site
+	 */
+	public int getSiteOwner(int site) {
+		indexCallers();
+		return siteOwners[site];
+	}
+
+	/**
+	 * @return the sites which may call the method
+	 */
+	public int[] getCallerSites(int method) {
+		indexCallers();
+		return Arrays.copyOfRange(callers, callerStart[method], callerStart[method + 1]);
+	}
+
+	/**
+	 * @return the call sites in the method, in the order they occur in its graph
+	 */
+	public List<Invocation> getCallSites(MethodNode m) {
+		int id = getId(m);
+		if(id == -1) {
+			throw new IllegalArgumentException(m + " is not in the graph");
+		}
+		int start = siteStart[id];
+		int end = siteStart[id + 1];
+		return new AbstractList<Invocation>() {
+			@Override
+			public Invocation get(int index) {
+				if(index < 0 || index >= end - start) {
+					throw new IndexOutOfBoundsException(Integer.toString(index));
+				}
+				return sites[start + index];
+			}
+
+			@Override
+			public int size() {
+				return end - start;
+			}
+		};
+	}
+
+	/**
+	 * @return the methods which may be called from the method
+	 */
+	public Set<MethodNode> getCallees(MethodNode m) {
+		int id = getId(m);
+		Set<MethodNode> set = new LinkedHashSet<>();
+		if(id != -1) {
+			for(int i=targetStart[siteStart[id]]; i < targetStart[siteStart[id + 1]]; i++) {
+				set.add(methods[targets[i]]);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @return the methods which may call the method
+	 */
+	public Set<MethodNode> getCallers(MethodNode m) {
+		int id = getId(m);
+		Set<MethodNode> set = new LinkedHashSet<>();
+		if(id != -1) {
+			indexCallers();
+			for(int i=callerStart[id]; i < callerStart[id + 1]; i++) {
+				set.add(methods[siteOwners[callers[i]]]);
+			}
+		}
+		return set;
+	}
+
+	private synchronized void indexCallers() {
+		if(callerStart != null) {
+			return;
+		}
+
+		int[] owners = new int[sites.length];
+		for(int m=0; m < methods.length; m++) {
+			Arrays.fill(owners, siteStart[m], siteStart[m + 1], m);
+		}
+
+		/* counting sort of the (site, target) pairs by target */
+		int[] start = new int[methods.length + 1];
+		for(int t : targets) {
+			start[t + 1]++;
+		}
+		for(int m=0; m < methods.length; m++) {
+			start[m + 1] += start[m];
+		}
+		int[] next = Arrays.copyOf(start, methods.length);
+		int[] reverse = new int[targets.length];
+		for(int s=0; s < sites.length; s++) {
+			for(int i=targetStart[s]; i < targetStart[s + 1]; i++) {
+				reverse[next[targets[i]]++] = s;
+			}
+		}
+
+		siteOwners = owners;
+		callers = reverse;
+		callerStart = start;
+	}
+
+	/**
+	 * Builds the object graph of the call graph, with a node for each method
+	 * and each call site, in the shape {@link SensitiveCallGraphBuilder} makes.
+	 */
+	public CallSiteSensitiveCallGraph toGraph() {
+		CallSiteSensitiveCallGraph graph = new CallSiteSensitiveCallGraph();
+		CallReceiverNode[] receivers = new CallReceiverNode[methods.length];
+		for(int m=0; m < methods.length; m++) {
+			receivers[m] = graph.addMethod(methods[m]);
+		}
+		for(int m=0; m < methods.length; m++) {
+			for(int s=siteStart[m]; s < siteStart[m + 1]; s++) {
+				CallSiteNode site = graph.addInvocation(methods[m], sites[s]);
+				graph.addEdge(new FunctionOwnershipEdge(receivers[m], site));
+				for(int i=targetStart[s]; i < targetStart[s + 1]; i++) {
+					graph.addEdge(new SiteInvocationEdge(site, receivers[targets[i]]));
+				}
+			}
+		}
+		return graph;
+	}
+}
@@ -0,0 +1,216 @@
+package org.mapleir.deob.callgraph;
+
+import org.apache.log4j.Logger;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.invoke.DynamicInvocationExpr;
+import org.mapleir.ir.code.expr.invoke.Invocation;
+import org.objectweb.asm.Handle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Builds the call graph of the methods reachable from a set of entries, like
+ * {@link SensitiveCallGraphBuilder}, as a {@link CompactCallGraph}.
+ *
+ * The methods are explored in rounds: the call sites of every method found
+ * in the previous round are collected and resolved in parallel, each method
+ * independently of the others, and the results are then merged in order on
+ * the calling thread, which numbers the new targets for the next round. The
+ * graph is therefore the same for any number of threads.
+ *
+ * Only the methods which are reached are lifted, so building the graph from
+ * the entry points of the application lifts its live code without lifting
+ * its dead code. The methods found in each round are lifted in parallel by
+ * {@link IRCache#liftAll(Collection, ExecutorService)}, which only changes
+ * the cache on the calling thread. The class sources aren't thread safe
+ * either, so the classes the sites refer to are loaded between the two
+ * parallel steps of each round. The invocation resolver must allow
+ * concurrent lookups once the classes are loaded, as the
+ * {@link org.mapleir.DefaultInvocationResolver} does.
+ */
+public class ParallelCallGraphBuilder {
+	private static final Logger LOGGER = Logger.getLogger(ParallelCallGraphBuilder.class);
+
+	private final AnalysisContext context;
+	private final int threads;
+
+	public ParallelCallGraphBuilder(AnalysisContext context) {
+		this(context, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelCallGraphBuilder(AnalysisContext context, int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("threads: " + threads);
+		}
+		this.context = context;
+		this.threads = threads;
+	}
+
+	public CompactCallGraph build(Collection<MethodNode> entries) throws InterruptedException, ExecutionException {
+		List<MethodNode> methods = new ArrayList<>();
+		Map<MethodNode, Integer> ids = new HashMap<>();
+		for(MethodNode m : entries) {
+			number(m, methods, ids);
+		}
+
+		int[] siteStart = new int[16];
+		List<Invocation> sites = new ArrayList<>();
+		int[] targetStart = new int[16];
+		int[] targets = new int[16];
+		int edges = 0;
+
+		int rounds = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			int done = 0;
+			while(done < methods.size()) {
+				List<MethodNode> round = new ArrayList<>(methods.subList(done, methods.size()));
+
+				List<ControlFlowGraph> cfgs = lift(round, executor);
+				List<List<Invocation>> found = invokeAll(executor, cfgs, ParallelCallGraphBuilder::collectSites);
+				load(found);
+				List<List<Set<MethodNode>>> resolved = invokeAll(executor, found, this::resolve);
+
+				for(int i=0; i < round.size(); i++) {
+					int m = done + i;
+					List<Invocation> mSites = found.get(i);
+					List<Set<MethodNode>> mTargets = resolved.get(i);
+
+					siteStart = ensureCapacity(siteStart, m + 2);
+					siteStart[m + 1] = siteStart[m] + mSites.size();
+					for(int j=0; j < mSites.size(); j++) {
+						int s = sites.size();
+						sites.add(mSites.get(j));
+						targetStart = ensureCapacity(targetStart, s + 2);
+						for(MethodNode target : mTargets.get(j)) {
+							targets = ensureCapacity(targets, edges + 1);
+							targets[edges++] = number(target, methods, ids);
+						}
+						targetStart[s + 1] = edges;
+					}
+				}
+
+				done += round.size();
+				rounds++;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		LOGGER.info(String.format("Call graph of %d methods, %d call sites and %d edges in %d rounds", methods.size(), sites.size(), edges, rounds));
+		return new CompactCallGraph(methods.toArray(new MethodNode[0]), ids,
+				Arrays.copyOf(siteStart, methods.size() + 1), sites.toArray(new Invocation[0]),
+				Arrays.copyOf(targetStart, sites.size() + 1), Arrays.copyOf(targets, edges));
+	}
+
+	private static int number(MethodNode m, List<MethodNode> methods, Map<MethodNode, Integer> ids) {
+		Integer id = ids.get(m);
+		if(id == null) {
+			id = methods.size();
+			ids.put(m, id);
+			methods.add(m);
+		}
+		return id;
+	}
+
+	private static int[] ensureCapacity(int[] arr, int size) {
+		if(size > arr.length) {
+			return Arrays.copyOf(arr, Math.max(size, arr.length * 2));
+		}
+		return arr;
+	}
+
+	/* only application methods are lifted; library methods are leaves. */
+	private List<ControlFlowGraph> lift(List<MethodNode> round, ExecutorService executor) throws InterruptedException, ExecutionException {
+		ApplicationClassSource app = context.getApplication();
+		IRCache cache = context.getIRCache();
+		List<MethodNode> lifted = new ArrayList<>();
+		for(MethodNode m : round) {
+			if(app.isApplicationClass(m.getOwner())) {
+				lifted.add(m);
+			}
+		}
+		cache.liftAll(lifted, executor);
+
+		List<ControlFlowGraph> cfgs = new ArrayList<>(round.size());
+		for(MethodNode m : round) {
+			cfgs.add(app.isApplicationClass(m.getOwner()) ? cache.getFlowGraph(m) : null);
+		}
+		return cfgs;
+	}
+
+	private static List<Invocation> collectSites(ControlFlowGraph cfg) {
+		List<Invocation> sites = new ArrayList<>();
+		if(cfg != null) {
+			for(Stmt stmt : cfg.stmts()) {
+				for(Expr e : stmt.enumerateOnlyChildren()) {
+					if(e instanceof Invocation) {
+						sites.add((Invocation) e);
+					}
+				}
+			}
+		}
+		return sites;
+	}
+
+	/* loads the classes (and with them their supertypes) which the sites
+	 * will be resolved against, so that the class sources are only read
+	 * while the sites are resolved. */
+	private void load(List<List<Invocation>> found) {
+		ApplicationClassSource app = context.getApplication();
+		Set<String> owners = new HashSet<>();
+		for(List<Invocation> sites : found) {
+			for(Invocation invoke : sites) {
+				owners.add(invoke.getOwner());
+				if(invoke instanceof DynamicInvocationExpr) {
+					for(Object arg : ((DynamicInvocationExpr) invoke).getBootstrapArgs()) {
+						if(arg instanceof Handle) {
+							owners.add(((Handle) arg).getOwner());
+						}
+					}
+				}
+			}
+		}
+		for(String owner : owners) {
+			app.findClassNode(owner);
+		}
+	}
+
+	private List<Set<MethodNode>> resolve(List<Invocation> sites) {
+		List<Set<MethodNode>> targets = new ArrayList<>(sites.size());
+		for(Invocation invoke : sites) {
+			targets.add(invoke.resolveTargets(context.getInvocationResolver()));
+		}
+		return targets;
+	}
+
+	private static <T, R> List<R> invokeAll(ExecutorService executor, List<T> inputs, Function<T, R> task) throws InterruptedException, ExecutionException {
+		List<Future<R>> futures = new ArrayList<>(inputs.size());
+		for(T input : inputs) {
+			futures.add(executor.submit(() -> task.apply(input)));
+		}
+		List<R> results = new ArrayList<>(futures.size());
+		for(Future<R> f : futures) {
+			results.add(f.get());
+		}
+		return results;
+	}
+}
@@ -1,6 +1,7 @@
 package org.mapleir.deob.callgraph;
 
 import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.IRCache;
 import org.mapleir.deob.callgraph.CallGraphEdge.FunctionOwnershipEdge;
 import org.mapleir.deob.callgraph.CallGraphEdge.SiteInvocationEdge;
 import org.mapleir.ir.cfg.ControlFlowGraph;
@@ -53,7 +54,8 @@ public class SensitiveCallGraphBuilder implements Worklist.Worker<MethodNode> {
 		/* this is not the same as getNode */
 		CallGraphNode.CallReceiverNode currentReceiverNode = createNode(n, false);
 
-		ControlFlowGraph cfg = context.getIRCache().get(n);
+		IRCache cache = context.getIRCache();
+		ControlFlowGraph cfg = cache.containsKey(n) ? cache.getFor(n) : null;
 
 		if (cfg == null) {
 			return;
@@ -26,7 +26,7 @@ public class IRCallTracer extends CallTracer {
 
 	@Override
 	protected void traceImpl(MethodNode m) {
-		ControlFlowGraph cfg = context.getIRCache().getFor(m);
+		ControlFlowGraph cfg = context.getIRCache().getFlowGraph(m);
 		if (cfg == null) {
 			throw new UnsupportedOperationException(
 					String.format("Cannot trace, no cfg for %s (%d)", m, m.node.instructions.size()));
@@ -0,0 +1,195 @@
+package org.mapleir.deob.interproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.expr.invoke.Invocation;
+import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * A compact, intraprocedural summary of a method for the constant parameter
+ * analysis: the local indices of its parameters, the current lattice value of
+ * each parameter and, for every call site in its body, where each actual
+ * argument comes from. Only constants are retained from the argument
+ * expressions, the trees themselves are not kept.
+ */
+public class MethodSummary implements Opcode {
+
+	/** The argument is not a constant or a parameter of the caller. */
+	public static final int SOURCE_UNKNOWN = -1;
+	/** The argument is a constant stored in {@link CallSite#constants}. */
+	public static final int SOURCE_CONSTANT = -2;
+
+	private final MethodNode method;
+	private final int[] paramLocals;
+	private final List<CallSite> callSites;
+	ParameterValue[] values;
+
+	private MethodSummary(MethodNode method, int[] paramLocals, List<CallSite> callSites) {
+		this.method = method;
+		this.paramLocals = paramLocals;
+		this.callSites = callSites;
+
+		values = new ParameterValue[paramLocals.length];
+		Arrays.fill(values, ParameterValue.BOTTOM);
+	}
+
+	public MethodNode getMethod() {
+		return method;
+	}
+
+	public int getParameterCount() {
+		return paramLocals.length;
+	}
+
+	public int getLocalIndex(int paramIndex) {
+		return paramLocals[paramIndex];
+	}
+
+	public ParameterValue getValue(int paramIndex) {
+		return values[paramIndex];
+	}
+
+	public ParameterValue[] getValues() {
+		return Arrays.copyOf(values, values.length);
+	}
+
+	public List<CallSite> getCallSites() {
+		return Collections.unmodifiableList(callSites);
+	}
+
+	public static class CallSite {
+		public final Invocation invoke;
+		/* for each parameter expr: either the index of the
+		 * callers parameter that is passed straight through
+		 * or one of the SOURCE_ constants. */
+		final int[] sources;
+		final Object[] constants;
+
+		CallSite(Invocation invoke, int[] sources, Object[] constants) {
+			this.invoke = invoke;
+			this.sources = sources;
+			this.constants = constants;
+		}
+
+		/**
+		 * Evaluates the value of an argument given the current state of the caller.
+		 * @param caller the summary of the method containing this call site
+		 * @param i the parameter index (excluding the receiver)
+		 * @return the lattice value of the argument
+		 */
+		public ParameterValue evaluate(MethodSummary caller, int i) {
+			int src = sources[i];
+			if(src == SOURCE_CONSTANT) {
+				return ParameterValue.of(constants[i]);
+			} else if(src == SOURCE_UNKNOWN) {
+				return ParameterValue.TOP;
+			} else {
+				return caller.values[src];
+			}
+		}
+
+		public int getArgumentCount() {
+			return sources.length;
+		}
+
+		public boolean passesParameters() {
+			for(int src : sources) {
+				if(src >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the summary of a single method. This only reads the given graph
+	 * and so may be run for many methods concurrently.
+	 * @param m the method
+	 * @param cfg the ssa form of the method
+	 * @return the summary, with every parameter value initialised to BOTTOM
+	 */
+	public static MethodSummary create(MethodNode m, ControlFlowGraph cfg) {
+		boolean isStatic = (m.node.access & Opcodes.ACC_STATIC) != 0;
+		int paramCount = Type.getArgumentTypes(m.getDesc()).length;
+		int[] idxs = new int[paramCount];
+
+		/* the synthetic parameter copies at the start
+		 * of the entry block give us the mapping from
+		 * parameter index to local. (see IPAnalysis) */
+		Map<Local, Integer> paramLocals = new HashMap<>();
+		BasicBlock entry = cfg.getEntries().iterator().next();
+		int paramIndex = 0;
+		for(Stmt stmt : entry) {
+			if(stmt.getOpcode() == LOCAL_STORE) {
+				CopyVarStmt cvs = (CopyVarStmt) stmt;
+				if(cvs.isSynthetic()) {
+					Local l = cvs.getVariable().getLocal();
+					if(!isStatic && l.getIndex() == 0) {
+						continue;
+					}
+					paramLocals.put(l, paramIndex);
+					idxs[paramIndex++] = l.getIndex();
+					continue;
+				}
+			}
+			break;
+		}
+
+		List<CallSite> sites = new ArrayList<>();
+		for(Stmt stmt : cfg.stmts()) {
+			for(Expr c : stmt.enumerateOnlyChildren()) {
+				if(c instanceof Invocation) {
+					sites.add(summariseCall((Invocation) c, paramLocals));
+				}
+			}
+		}
+
+		return new MethodSummary(m, idxs, sites);
+	}
+
+	private static CallSite summariseCall(Invocation invoke, Map<Local, Integer> paramLocals) {
+		Expr[] params = invoke.getParameterExprs();
+		int[] sources = new int[params.length];
+		Object[] constants = null;
+
+		for(int i=0; i < params.length; i++) {
+			Expr e = params[i];
+			if(e.getOpcode() == CONST_LOAD) {
+				if(constants == null) {
+					constants = new Object[params.length];
+				}
+				constants[i] = ((ConstantExpr) e).getConstant();
+				sources[i] = SOURCE_CONSTANT;
+			} else if(e.getOpcode() == LOCAL_LOAD) {
+				Integer p = paramLocals.get(((VarExpr) e).getLocal());
+				sources[i] = p != null ? p : SOURCE_UNKNOWN;
+			} else {
+				sources[i] = SOURCE_UNKNOWN;
+			}
+		}
+
+		return new CallSite(invoke, sources, constants);
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + Arrays.toString(values);
+	}
+}
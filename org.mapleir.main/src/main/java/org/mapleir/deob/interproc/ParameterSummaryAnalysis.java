@@ -0,0 +1,250 @@
+package org.mapleir.deob.interproc;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InvocationResolver;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.deob.interproc.MethodSummary.CallSite;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.expr.invoke.Invocation;
+import org.mapleir.asm.MethodNode;
+
+/**
+ * Summary based interprocedural constant parameter analysis.
+ *
+ * Every active method is first reduced to a {@link MethodSummary} in parallel.
+ * Call sites are then resolved once and the per parameter lattice values
+ * ({@link ParameterValue}) are propagated along the call edges with a worklist
+ * until a fixpoint is reached. A parameter which is passed straight through to
+ * another call takes on the value of the callers parameter.
+ *
+ * Methods which are never called from within the application (entry points,
+ * callbacks, reflective targets) and targets of invokedynamic call sites have
+ * all of their parameters set to TOP as their inputs can't be known.
+ */
+public class ParameterSummaryAnalysis {
+
+	private static final Logger LOGGER = Logger.getLogger(ParameterSummaryAnalysis.class);
+
+	public static final int DEFAULT_MAX_CONSTANTS = 8;
+
+	public static ParameterSummaryAnalysis create(AnalysisContext cxt) {
+		return create(cxt, Collections.emptySet(), DEFAULT_MAX_CONSTANTS);
+	}
+
+	/**
+	 * @param cxt the analysis context
+	 * @param entries methods which may additionally be called from outside
+	 *        of the application, e.g. overrides of library methods
+	 * @param maxConstants the size a set of constants may grow to before it is widened to TOP
+	 * @return the completed analysis
+	 */
+	public static ParameterSummaryAnalysis create(AnalysisContext cxt, Collection<MethodNode> entries, int maxConstants) {
+		ParameterSummaryAnalysis analysis = new ParameterSummaryAnalysis(cxt, maxConstants);
+		analysis.unknownInputs.addAll(entries);
+		analysis.summarise();
+		analysis.link();
+		analysis.propagate();
+		return analysis;
+	}
+
+	private final AnalysisContext cxt;
+	private final int maxConstants;
+
+	private final Map<MethodNode, MethodSummary> summaries;
+	private final Map<MethodNode, Set<Invocation>> callers;
+	private final Map<MethodNode, List<CallEdge>> incoming;
+	private final Map<MethodNode, Set<MethodNode>> outgoing;
+	private final Set<MethodNode> unknownInputs;
+	private final Map<MethodNode, Set<MethodNode>> siteCache;
+
+	public ParameterSummaryAnalysis(AnalysisContext cxt, int maxConstants) {
+		this.cxt = cxt;
+		this.maxConstants = maxConstants;
+
+		summaries = new HashMap<>();
+		callers = new HashMap<>();
+		incoming = new HashMap<>();
+		outgoing = new HashMap<>();
+		unknownInputs = new HashSet<>();
+		siteCache = new HashMap<>();
+	}
+
+	private void summarise() {
+		ApplicationClassSource app = cxt.getApplication();
+		IRCache irCache = cxt.getIRCache();
+
+		/* the summaries need the graphs in SSA form, which a tiered cache
+		 * only builds (on this thread) when they're asked for. */
+		Map<MethodNode, ControlFlowGraph> graphs = new HashMap<>();
+		for(MethodNode m : irCache.getActiveMethods()) {
+			if(!app.isLibraryClass(m.getOwner())) {
+				graphs.put(m, irCache.getFor(m));
+			}
+		}
+
+		/* each task only reads its own (already lifted)
+		 * graph so this is safe to do concurrently. */
+		summaries.putAll(graphs.entrySet().parallelStream()
+				.collect(Collectors.toMap(Map.Entry::getKey, e -> MethodSummary.create(e.getKey(), e.getValue()))));
+	}
+
+	private void link() {
+		InvocationResolver resolver = cxt.getInvocationResolver();
+
+		for(MethodSummary caller : summaries.values()) {
+			for(CallSite site : caller.getCallSites()) {
+				Invocation invoke = site.invoke;
+
+				for(MethodNode target : invoke.resolveTargets(resolver)) {
+					if(!summaries.containsKey(target)) {
+						/* library or unlifted method. */
+						continue;
+					}
+
+					callers.computeIfAbsent(target, k -> new HashSet<>()).add(invoke);
+
+					for(MethodNode callee : getSites(resolver, target)) {
+						if(!summaries.containsKey(callee)) {
+							continue;
+						}
+						if(invoke.isDynamic()) {
+							/* the bound arguments are not the
+							 * arguments of the eventual call. */
+							unknownInputs.add(callee);
+						} else {
+							incoming.computeIfAbsent(callee, k -> new ArrayList<>()).add(new CallEdge(caller, site));
+						}
+						outgoing.computeIfAbsent(caller.getMethod(), k -> new HashSet<>()).add(callee);
+					}
+				}
+			}
+		}
+
+		for(MethodNode m : summaries.keySet()) {
+			if(!incoming.containsKey(m)) {
+				unknownInputs.add(m);
+			}
+		}
+	}
+
+	private Set<MethodNode> getSites(InvocationResolver resolver, MethodNode target) {
+		if(Modifier.isStatic(target.node.access)) {
+			return Collections.singleton(target);
+		}
+
+		/* only chain callsites *can* have this input */
+		Set<MethodNode> sites = siteCache.get(target);
+		if(sites == null) {
+			sites = resolver.resolveVirtualCalls(target, true);
+			siteCache.put(target, sites);
+		}
+		return sites;
+	}
+
+	private void propagate() {
+		Set<MethodNode> worklist = new LinkedHashSet<>(summaries.keySet());
+		int rounds = 0;
+
+		while(!worklist.isEmpty()) {
+			MethodNode m = worklist.iterator().next();
+			worklist.remove(m);
+			rounds++;
+
+			if(update(summaries.get(m))) {
+				Set<MethodNode> succs = outgoing.get(m);
+				if(succs != null) {
+					worklist.addAll(succs);
+				}
+			}
+		}
+
+		LOGGER.debug(String.format("constant parameter fixpoint for %d methods after %d updates", summaries.size(), rounds));
+	}
+
+	private boolean update(MethodSummary s) {
+		int pCount = s.getParameterCount();
+		ParameterValue[] newValues = new ParameterValue[pCount];
+
+		if(unknownInputs.contains(s.getMethod())) {
+			for(int i=0; i < pCount; i++) {
+				newValues[i] = ParameterValue.TOP;
+			}
+		} else {
+			for(int i=0; i < pCount; i++) {
+				newValues[i] = ParameterValue.BOTTOM;
+			}
+
+			for(CallEdge e : incoming.get(s.getMethod())) {
+				CallSite site = e.site;
+				if(site.getArgumentCount() != pCount) {
+					throw new IllegalStateException(String.format("%s: %d args to %s", site.invoke, site.getArgumentCount(), s.getMethod()));
+				}
+				for(int i=0; i < pCount; i++) {
+					newValues[i] = newValues[i].join(site.evaluate(e.caller, i), maxConstants);
+				}
+			}
+		}
+
+		boolean changed = false;
+		for(int i=0; i < pCount; i++) {
+			if(!newValues[i].equals(s.values[i])) {
+				changed = true;
+			}
+		}
+		s.values = newValues;
+		return changed;
+	}
+
+	public Collection<MethodSummary> getSummaries() {
+		return summaries.values();
+	}
+
+	public MethodSummary getSummary(MethodNode m) {
+		return summaries.get(m);
+	}
+
+	public Set<Invocation> getCallsTo(MethodNode m) {
+		Set<Invocation> set = callers.get(m);
+		return set != null ? set : Collections.emptySet();
+	}
+
+	public int getLocalIndex(MethodNode m, int i) {
+		return summaries.get(m).getLocalIndex(i);
+	}
+
+	public int getParameterCount(MethodNode m) {
+		MethodSummary s = summaries.get(m);
+		if(s == null) {
+			throw new UnsupportedOperationException(m.toString());
+		}
+		return s.getParameterCount();
+	}
+
+	public ParameterValue getValue(MethodNode m, int i) {
+		return summaries.get(m).getValue(i);
+	}
+
+	private static class CallEdge {
+		final MethodSummary caller;
+		final CallSite site;
+
+		CallEdge(MethodSummary caller, CallSite site) {
+			this.caller = caller;
+			this.site = site;
+		}
+	}
+}
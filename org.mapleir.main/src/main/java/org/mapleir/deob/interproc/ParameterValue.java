@@ -0,0 +1,116 @@
+package org.mapleir.deob.interproc;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable element of the constant parameter lattice:
+ * <pre>
+ *           TOP           (any value)
+ *     {c1, ..., cn}       (one of a bounded set of constants)
+ *          BOTTOM         (no input observed yet)
+ * </pre>
+ * A value with exactly one constant is a true constant parameter.
+ */
+public final class ParameterValue {
+
+	public static final ParameterValue BOTTOM = new ParameterValue(Collections.emptySet());
+	public static final ParameterValue TOP = new ParameterValue(null);
+
+	/* null iff TOP */
+	private final Set<Object> constants;
+
+	private ParameterValue(Set<Object> constants) {
+		this.constants = constants;
+	}
+
+	public static ParameterValue of(Object cst) {
+		return new ParameterValue(Collections.singleton(cst));
+	}
+
+	public boolean isTop() {
+		return constants == null;
+	}
+
+	public boolean isBottom() {
+		return constants != null && constants.isEmpty();
+	}
+
+	public boolean isConstant() {
+		return constants != null && constants.size() == 1;
+	}
+
+	public Object getConstant() {
+		if(!isConstant()) {
+			throw new IllegalStateException(toString());
+		}
+		return constants.iterator().next();
+	}
+
+	public Set<Object> getConstants() {
+		if(isTop()) {
+			throw new IllegalStateException("top");
+		}
+		return Collections.unmodifiableSet(constants);
+	}
+
+	public int size() {
+		return isTop() ? Integer.MAX_VALUE : constants.size();
+	}
+
+	/**
+	 * Computes the least upper bound of this value and another.
+	 * @param other the value to merge with
+	 * @param maxConstants the largest constant set to keep before widening to TOP
+	 * @return the merged value, which is this object if the merge added nothing
+	 */
+	public ParameterValue join(ParameterValue other, int maxConstants) {
+		if(isTop() || other.isBottom()) {
+			return this;
+		} else if(other.isTop() || isBottom()) {
+			return other.constants != null && other.constants.size() > maxConstants ? TOP : other;
+		} else if(constants.containsAll(other.constants)) {
+			return this;
+		}
+
+		Set<Object> merged = new HashSet<>(constants);
+		merged.addAll(other.constants);
+		if(merged.size() > maxConstants) {
+			return TOP;
+		} else {
+			return new ParameterValue(merged);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
+		}
+		if(!(o instanceof ParameterValue)) {
+			return false;
+		}
+		ParameterValue other = (ParameterValue) o;
+		if(isTop() || other.isTop()) {
+			return false;
+		}
+		return constants.equals(other.constants);
+	}
+
+	@Override
+	public int hashCode() {
+		return isTop() ? -1 : constants.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		if(isTop()) {
+			return "TOP";
+		} else if(isBottom()) {
+			return "BOTTOM";
+		} else {
+			return constants.toString();
+		}
+	}
+}
@@ -10,24 +10,45 @@ import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
 import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
 import org.mapleir.ir.locals.Local;
 import org.mapleir.ir.locals.LocalsPool;
-import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.mapleir.stdlib.collections.taint.TaintableSet;
 import org.mapleir.stdlib.util.Pair;
 import org.objectweb.asm.Type;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import static org.mapleir.ir.code.Opcode.*;
 import static org.mapleir.ir.code.expr.ArithmeticExpr.Operator.*;
 
 public class ExpressionEvaluator {
+	public static final int DEFAULT_MAX_VALUES = 64;
+	
 	private final EvaluationFactory factory;
+	private final int maxValues;
+	
+	/* possible values of locals, per graph. only valid for one resolver
+	 * and until the code of the graph changes. */
+	private LocalValueResolver cachedResolver;
+	private final Map<ControlFlowGraph, ValueCache> valueCaches = new HashMap<>();
 	
 	public ExpressionEvaluator(EvaluationFactory factory) {
+		this(factory, DEFAULT_MAX_VALUES);
+	}
+	
+	/**
+	 * @param maxValues the most possible values a set may hold before it is
+	 * widened to unknown (tainted) by {@link #evalPossibleValues}.
+	 */
+	public ExpressionEvaluator(EvaluationFactory factory, int maxValues) {
+		if(maxValues < 1) {
+			throw new IllegalArgumentException("maxValues: " + maxValues);
+		}
 		this.factory = factory;
+		this.maxValues = maxValues;
 	}
 	
 	public ConstantExpr eval(LocalsPool pool, Expr e) {
@@ -125,11 +146,47 @@ public class ExpressionEvaluator {
 		return null;
 	}
 	
+	/**
+	 * Computes the set of constant values an expression may evaluate to. The
+	 * values of locals are memoised, so repeated queries against the same
+	 * resolver only evaluate each definition once until the code of its graph
+	 * is changed. Sets that would hold more than the configured maximum
+	 * number of values are widened to unknown.
+	 * 
+	 * @return the possible values, tainted if they could not all be
+	 * determined.
+	 */
 	public TaintableSet<ConstantExpr> evalPossibleValues(LocalValueResolver resolver, Expr e) {
-		return evalPossibleValues0(new NullPermeableHashMap<>(HashSet::new), resolver, e);
+		if(resolver != cachedResolver) {
+			valueCaches.clear();
+			cachedResolver = resolver;
+		}
+		/* local value sets are shared through the cache, so hand out a copy. */
+		return new TaintableSet<>(evalPossibleValues0(resolver, e));
+	}
+	
+	/**
+	 * Drops the memoised values of locals.
+	 */
+	public void clearCache() {
+		valueCaches.clear();
+		cachedResolver = null;
 	}
 	
-	private TaintableSet<ConstantExpr> evalPossibleValues0(NullPermeableHashMap<ControlFlowGraph, Set<Local>> visited, LocalValueResolver resolver, Expr e) {
+	private ValueCache getValueCache(ControlFlowGraph g) {
+		ValueCache cache = valueCaches.get(g);
+		if(cache == null || cache.modCount != g.getCodeModCount()) {
+			cache = new ValueCache(g.getCodeModCount());
+			valueCaches.put(g, cache);
+		}
+		return cache;
+	}
+	
+	private static TaintableSet<ConstantExpr> unknown() {
+		return new TaintableSet<>(true);
+	}
+	
+	private TaintableSet<ConstantExpr> evalPossibleValues0(LocalValueResolver resolver, Expr e) {
 		if(e.getOpcode() == CONST_LOAD) {
 			TaintableSet<ConstantExpr> set = new TaintableSet<>();
 			set.add((ConstantExpr) e);
@@ -150,10 +207,20 @@ public class ExpressionEvaluator {
 			Expr l = ae.getLeft();
 			Expr r = ae.getRight();
 			
-			TaintableSet<ConstantExpr> le = evalPossibleValues0(visited, resolver, l);
-			TaintableSet<ConstantExpr> re = evalPossibleValues0(visited, resolver, r);
+			TaintableSet<ConstantExpr> le = evalPossibleValues0(resolver, l);
+			if(le.isTainted()) {
+				return le;
+			}
+			TaintableSet<ConstantExpr> re = evalPossibleValues0(resolver, r);
+			if(re.isTainted()) {
+				return re;
+			}
+			/* don't enumerate products that would be widened anyway. */
+			if((long) le.size() * re.size() > maxValues) {
+				return unknown();
+			}
 			
-			TaintableSet<ConstantExpr> results = new TaintableSet<>(le.isTainted() | re.isTainted());
+			TaintableSet<ConstantExpr> results = new TaintableSet<>();
 			
 			for (Iterator<Pair<ConstantExpr, ConstantExpr>> it = le.product(re); it.hasNext(); ) {
 				Pair<ConstantExpr, ConstantExpr> lcrc = it.next();
@@ -166,8 +233,11 @@ public class ExpressionEvaluator {
 			return results;
 		} else if(e.getOpcode() == NEGATE) {
 			NegationExpr neg = (NegationExpr) e;
-			TaintableSet<ConstantExpr> inputs = evalPossibleValues0(visited, resolver, neg.getExpression());
-			TaintableSet<ConstantExpr> outputs = new TaintableSet<>(inputs.isTainted());
+			TaintableSet<ConstantExpr> inputs = evalPossibleValues0(resolver, neg.getExpression());
+			if(inputs.isTainted()) {
+				return inputs;
+			}
+			TaintableSet<ConstantExpr> outputs = new TaintableSet<>();
 			
 			for(ConstantExpr c : inputs) {
 				EvaluationFunctor<Number> b = factory.negate(c.getType());
@@ -180,32 +250,48 @@ public class ExpressionEvaluator {
 			Local l = v.getLocal();
 			
 			ControlFlowGraph g = e.getBlock().getGraph();
-			visited.getNonNull(g).add(l);
+			ValueCache cache = getValueCache(g);
 			
-			TaintableSet<Expr> defExprs = resolver.getValues(g, l);
-			TaintableSet<ConstantExpr> vals = new TaintableSet<>(defExprs.isTainted());
+			TaintableSet<ConstantExpr> vals = cache.values.get(l);
+			if(vals != null) {
+				return vals;
+			}
+			if(!cache.evaluating.add(l)) {
+				/* cyclic definition, can't be resolved without phis. */
+				return unknown();
+			}
 			
-			for(Expr defE : defExprs) {
-				if(defE.getOpcode() == LOCAL_LOAD) {
-					VarExpr v2 = (VarExpr) defE;
-					
-					Local l2 = v2.getLocal();
-					
-					if(visited.getNonNull(g).contains(l2)) {
-						continue;
+			try {
+				TaintableSet<Expr> defExprs = resolver.getValues(g, l);
+				vals = defExprs.isTainted() ? unknown() : new TaintableSet<>();
+				
+				for(Expr defE : defExprs) {
+					if(vals.isTainted()) {
+						break;
+					}
+					/* synthetic copies (lhs = lhs) and copy cycles. */
+					if(defE.getOpcode() == LOCAL_LOAD && cache.evaluating.contains(((VarExpr) defE).getLocal())) {
+						vals = unknown();
+						break;
+					}
+					vals.union(evalPossibleValues0(resolver, defE));
+					if(vals.size() > maxValues) {
+						vals = unknown();
 					}
-					visited.getNonNull(g).add(l2);
 				}
-				
-				TaintableSet<ConstantExpr> defConstVals = evalPossibleValues0(visited, resolver, defE);
-				vals.union(defConstVals);
+			} finally {
+				cache.evaluating.remove(l);
 			}
 			
+			cache.values.put(l, vals);
 			return vals;
 		} else if(e.getOpcode() == CAST) {
 			CastExpr cast = (CastExpr) e;
-			TaintableSet<ConstantExpr> inputs = evalPossibleValues0(visited, resolver, cast.getExpression());
-			TaintableSet<ConstantExpr> outputs = new TaintableSet<>(inputs.isTainted());
+			TaintableSet<ConstantExpr> inputs = evalPossibleValues0(resolver, cast.getExpression());
+			if(inputs.isTainted()) {
+				return inputs;
+			}
+			TaintableSet<ConstantExpr> outputs = new TaintableSet<>();
 			
 			for(ConstantExpr ce : inputs) {
 				// TODO: czech out::
@@ -262,7 +348,7 @@ public class ExpressionEvaluator {
 		}
 		
 		/* uncomputable value, i.e. non const. */
-		return new TaintableSet<>(true);
+		return unknown();
 	}
 	
 	public Boolean evaluatePrimitiveConditional(ConditionalJumpStmt cond, TaintableSet<ConstantExpr> leftSet, TaintableSet<ConstantExpr> rightSet) {
@@ -390,4 +476,14 @@ public class ExpressionEvaluator {
 		}
 		return e2;
 	}
+	
+	private static class ValueCache {
+		final int modCount;
+		final Map<Local, TaintableSet<ConstantExpr>> values = new HashMap<>();
+		final Set<Local> evaluating = new HashSet<>();
+		
+		ValueCache(int modCount) {
+			this.modCount = modCount;
+		}
+	}
 }
\ No newline at end of file
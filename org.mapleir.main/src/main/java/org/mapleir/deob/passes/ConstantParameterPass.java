@@ -2,6 +2,7 @@ package org.mapleir.deob.passes;
 
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -11,12 +12,14 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.mapleir.app.service.InvocationResolver;
+import org.mapleir.app.service.MethodChainIndex;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassResult;
-import org.mapleir.deob.interproc.IPAnalysis;
-import org.mapleir.deob.interproc.IPAnalysisVisitor;
+import org.mapleir.deob.interproc.MethodSummary;
+import org.mapleir.deob.interproc.ParameterSummaryAnalysis;
+import org.mapleir.deob.interproc.ParameterValue;
 import org.mapleir.deob.passes.rename.MethodRenamerPass;
 import org.mapleir.deob.util.RenamingUtil;
 import org.mapleir.ir.cfg.BasicBlock;
@@ -37,132 +40,22 @@ import org.mapleir.ir.utils.CFGUtils;
 import org.objectweb.asm.Type;
 import org.mapleir.asm.MethodNode;
 
-// TODO: Convert to use TaintableSet
 public class ConstantParameterPass implements IPass, Opcode {
 
 	@Override
 	public PassResult accept(PassContext pcxt) {
 		AnalysisContext cxt = pcxt.getAnalysis();
+		MethodChainIndex chains = new MethodChainIndex(cxt.getApplication().getClassTree());
 		Map<MethodNode, Set<MethodNode>> chainMap = new HashMap<>();
 		for(MethodNode mn : cxt.getIRCache().getActiveMethods()) {
-			makeUpChain(cxt, mn, chainMap);
+			makeUpChain(chains, mn, chainMap);
 		}
 		
 		InvocationResolver resolver = cxt.getInvocationResolver();
 		
-		Map<MethodNode, List<Set<Object>>> rawConstantParameters = new HashMap<>();
-		Map<MethodNode, boolean[]> chainedNonConstant = new HashMap<>();
-		Map<MethodNode, boolean[]> specificNonConstant = new HashMap<>();
-		
-		IPAnalysisVisitor vis = new IPAnalysisVisitor() {
-			@Override
-			public void postVisitMethod(IPAnalysis analysis, MethodNode m) {
-				int pCount = Type.getArgumentTypes(m.getDesc()).length;
-				
-				/* init map entries */
-				if(!chainedNonConstant.containsKey(m)) {
-					for(MethodNode assoc : chainMap.get(m)) {
-						boolean[] arr = new boolean[pCount];
-						chainedNonConstant.put(assoc, arr);
-					}
-					
-					for(MethodNode assoc : chainMap.get(m)) {
-						boolean[] arr = new boolean[pCount];
-						specificNonConstant.put(assoc, arr);
-					}
-				}
-				
-				if(Modifier.isStatic(m.node.access)) {
-					if(!rawConstantParameters.containsKey(m)) {
-						List<Set<Object>> l = new ArrayList<>(pCount);
-						rawConstantParameters.put(m, l);
-						
-						for(int i=0; i < pCount; i++) {
-							l.add(new HashSet<>());
-						}
-					}
-				} else {
-					// TODO: cache
-					for(MethodNode site : resolver.resolveVirtualCalls(m, true)) {
-						if(!rawConstantParameters.containsKey(site)) {
-							List<Set<Object>> l = new ArrayList<>(pCount);
-							rawConstantParameters.put(site, l);
-							
-							for(int i=0; i < pCount; i++) {
-								l.add(new HashSet<>());
-							}
-						}
-					}
-				}
-			}
-			
-			@Override
-			public void postProcessedInvocation(IPAnalysis analysis, MethodNode caller, MethodNode callee, Invocation call) {
-				Expr[] params = call.getParameterExprs();
-				
-				for(int i=0; i < params.length; i++) {
-					Expr e = params[i];
-					
-					if(e.getOpcode() == Opcode.CONST_LOAD) {
-						if(Modifier.isStatic(callee.node.access)) {
-							rawConstantParameters.get(callee).get(i).add(((ConstantExpr) e).getConstant());
-						} else {
-							/* only chain callsites *can* have this input */
-							for(MethodNode site : resolver.resolveVirtualCalls(callee, true)) {
-								rawConstantParameters.get(site).get(i).add(((ConstantExpr) e).getConstant());
-							}
-						}
-					} else {
-						// FIXME:
-						/* whole branch tainted */
-						for(MethodNode associated : chainMap.get(callee)) {
-							chainedNonConstant.get(associated)[i] = true;
-						}
-						
-						/* callsites tainted */
-						if(Modifier.isStatic(callee.node.access)) {
-							specificNonConstant.get(callee)[i] = true;
-						} else {
-							/* only chain callsites *can* have this input */
-							for(MethodNode site : resolver.resolveVirtualCalls(callee, true)) {
-								specificNonConstant.get(site)[i] = true;
-							}
-						}
-					}
-				}
-			}
-		};
-		
-		IPAnalysis constAnalysis = IPAnalysis.create(cxt, vis);
-		
-//		ApplicationClassSource app = cxt.getApplication();
-//		ClassTree structures = app.getStructures();
-		
-		/* remove all calls to library methods since we can't
-		 * handle them. */
-		/*Iterator<Entry<MethodNode, List<Set<Object>>>> it = rawConstantParameters.entrySet().iterator();
-		while(it.hasNext()) {
-			Entry<MethodNode, List<Set<Object>>> en = it.next();
-			
-			MethodNode m = en.getKey();
-
-			if(app.isLibraryClass(m.owner.getName())) {
-				it.remove();
-				continue;
-			}
-			
-			// TODO: MUST BE CONVERTED TO ACCOUNT FOR DIRECT SUPERS, NOT ALL
-			superFor: for(ClassNode cn : structures.getAllParents(m.owner)) {
-				if(app.isLibraryClass(cn.getName())) {
-					for(MethodNode m1 : cn.methods) {
-						if(resolver.areMethodsCongruent(m1, m, Modifier.isStatic(m.node.access))) {
-							it.remove();
-							break superFor;
-						}
-					}
-				}
-			}
-		}*/
+		/* per-parameter lattice values for every method, computed
+		 * from summarised call sites and propagated to a fixpoint. */
+		ParameterSummaryAnalysis constAnalysis = ParameterSummaryAnalysis.create(cxt, findExternalEntries(cxt, chainMap), ParameterSummaryAnalysis.DEFAULT_MAX_CONSTANTS);
 		
 		/* aggregate constant parameters indices with their chained
 		 * methods such that the map contains only constant parameter
@@ -175,11 +68,9 @@ public class ConstantParameterPass implements IPass, Opcode {
 		
 		Map<MethodNode, boolean[]> filteredConstantParameters = new HashMap<>();
 		
-		for(Entry<MethodNode, List<Set<Object>>> en : rawConstantParameters.entrySet()) {
-			MethodNode m = en.getKey();
-
-			List<Set<Object>> objParams = en.getValue();
-			boolean[] tainted = chainedNonConstant.get(m);
+		for(MethodSummary summary : constAnalysis.getSummaries()) {
+			MethodNode m = summary.getMethod();
+			ParameterValue[] values = summary.getValues();
 			
 			if(filteredConstantParameters.containsKey(m)) {
 				/* note: if this method is contained in the
@@ -190,7 +81,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 				 * we need to now merge the current dead map
 				 * with the one specifically for this method.*/
 				
-				boolean[] thisDeadMap = makeDeadMap(objParams, tainted);
+				boolean[] thisDeadMap = makeDeadMap(values);
 				boolean[] prevDeadMap = filteredConstantParameters.get(m);
 				
 				if(thisDeadMap.length != prevDeadMap.length) {
@@ -203,7 +94,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 					prevDeadMap[i] &= thisDeadMap[i];
 				}
 			} else {
-				boolean[] deadParams = makeDeadMap(objParams, tainted);
+				boolean[] deadParams = makeDeadMap(values);
 				
 				for(MethodNode chm : chainMap.get(m)) {
 					filteredConstantParameters.put(chm, deadParams);
@@ -212,28 +103,25 @@ public class ConstantParameterPass implements IPass, Opcode {
 			
 			ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
 			
-			// boolean b = false;
-			
-			boolean[] specificTaint = specificNonConstant.get(m);
-			
-			for(int i=0; i < objParams.size(); i++) {
-				Set<Object> set = objParams.get(i);
-				
+			for(int i=0; i < values.length; i++) {
 				/* since these are callsite specific
 				 * constant parameters, we can inline
 				 * them even if we can't eliminate the
-				 * parameter for the whole chain later.
-				 * 
-				 * doing this here also means that when
-				 * we rebuild descriptors later, if the
-				 * parameter */
-				
-				if(!specificTaint[i] && set.size() == 1) {
-					inlineConstant(cfg, constAnalysis.getLocalIndex(m, i), set.iterator().next());
+				 * parameter for the whole chain later. */
+				if(values[i].isConstant()) {
+					inlineConstant(cfg, summary.getLocalIndex(i), values[i].getConstant());
 				}
 			}
 		}
 		
+		/* chain members that were never summarised (e.g. library
+		 * methods) keep the descriptor of the whole chain fixed. */
+		for(Entry<MethodNode, boolean[]> en : filteredConstantParameters.entrySet()) {
+			if(constAnalysis.getSummary(en.getKey()) == null) {
+				Arrays.fill(en.getValue(), false);
+			}
+		}
+		
 		Map<MethodNode, String> remap = new HashMap<>();
 		Set<MethodNode> toRemove = new HashSet<>();
 		
@@ -276,7 +164,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 						if(chm.getName().equals("<init>")) {
 							conflicts.addAll(resolver.resolveVirtualCalls(chm.owner.getName(), "<init>", desc, false));
 						} else {
-							conflicts.addAll(resolver.getHierarchyMethodChain(m.owner, m.getName(), desc, true));
+							conflicts.addAll(chains.getChain(m.owner, m.getName(), desc));
 						}
 					}
 				}
@@ -304,7 +192,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 			// String newName = "rename_" + first.getName();
 			String newName = RenamingUtil.createName(k++);
 			System.out.printf(" renaming %s to %s%n", set, newName);
-			System.out.println("   recom " + computeChain(cxt, set.iterator().next()));
+			System.out.println("   recom " + computeChain(chains, set.iterator().next()));
 			Set<MethodNode> s2 = new HashSet<>();
 			for(MethodNode m : set) {
 				s2.addAll(chainMap.get(m));
@@ -349,6 +237,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 					
 					for(MethodNode n : chain) {
 						n.node.desc = newDesc;
+						n.markDirty();
 						
 						/* boolean[] dead = filteredConstantParameters.get(n);
 						boolean[] deadM = filteredConstantParameters.get(key);
@@ -456,7 +345,7 @@ public class ConstantParameterPass implements IPass, Opcode {
 		}
 	}
 	
-	private void demoteDeadParamters(IPAnalysis constAnalysis, ControlFlowGraph cfg, MethodNode n, boolean[] dead) {
+	private void demoteDeadParamters(ParameterSummaryAnalysis constAnalysis, ControlFlowGraph cfg, MethodNode n, boolean[] dead) {
 		LocalsPool pool = cfg.getLocals();
 		BasicBlock entry = cfg.getEntries().iterator().next();
 		
@@ -535,13 +424,11 @@ public class ConstantParameterPass implements IPass, Opcode {
 		return newArgs.toArray(new Expr[0]);
 	}
 	
-	private static boolean[] makeDeadMap(List<Set<Object>> objParams, boolean[] tainted) {
-		boolean[] removable = new boolean[objParams.size()];
+	private static boolean[] makeDeadMap(ParameterValue[] values) {
+		boolean[] removable = new boolean[values.length];
 		
-		for(int i=0; i < objParams.size(); i++) {
-			Set<Object> s = objParams.get(i);
-			
-			removable[i] = s.size() <= 1 && !tainted[i];
+		for(int i=0; i < values.length; i++) {
+			removable[i] = values[i].isConstant();
 		}
 		
 		return removable;
@@ -560,28 +447,46 @@ public class ConstantParameterPass implements IPass, Opcode {
 		return sb.toString();
 	}
 	
-	private Set<MethodNode> computeChain(AnalysisContext cxt, MethodNode m) {
+	/* methods in a chain with a library method can be
+	 * called with any arguments by the library. */
+	private static Set<MethodNode> findExternalEntries(AnalysisContext cxt, Map<MethodNode, Set<MethodNode>> chainMap) {
+		Set<MethodNode> entries = new HashSet<>();
+		for(Set<MethodNode> chain : chainMap.values()) {
+			if(entries.containsAll(chain)) {
+				continue;
+			}
+			for(MethodNode m : chain) {
+				if(cxt.getApplication().isLibraryClass(m.getOwner())) {
+					entries.addAll(chain);
+					break;
+				}
+			}
+		}
+		return entries;
+	}
+	
+	private Set<MethodNode> computeChain(MethodChainIndex chains, MethodNode m) {
 		Set<MethodNode> chain = new HashSet<>();
 		chain.add(m);
 		
 		if(!Modifier.isStatic(m.node.access)) {
 			if(!m.getName().equals("<init>")) {
-				chain.addAll(cxt.getInvocationResolver().getHierarchyMethodChain(m.owner, m.getName(), m.getDesc(), true));
+				chain.addAll(chains.getChain(m));
 			}
 		}
 		
 		return chain;
 	}
 		
-	private void makeUpChain(AnalysisContext cxt, MethodNode m, Map<MethodNode, Set<MethodNode>> chainMap) {
+	private void makeUpChain(MethodChainIndex chains, MethodNode m, Map<MethodNode, Set<MethodNode>> chainMap) {
 		if(chainMap.containsKey(m)) {
 			/*Set<MethodNode> chain = chainMap.get(m);
-			Set<MethodNode> comp = computeChain(cxt, m);
+			Set<MethodNode> comp = computeChain(chains, m);
 			if(!chain.equals(comp)) {
 				throw new IllegalStateException(m + "\n chain: " + chain +"\n comp: " + comp);
 			}*/
 		} else {
-			Set<MethodNode> chain = computeChain(cxt, m);
+			Set<MethodNode> chain = computeChain(chains, m);
 			for(MethodNode chm : chain) {
 				chainMap.put(chm, chain);
 			}
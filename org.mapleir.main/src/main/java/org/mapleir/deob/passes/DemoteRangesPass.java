@@ -31,7 +31,7 @@ public class DemoteRangesPass implements IPass {
 		for(ClassNode cn : cxt.getApplication().iterate()) {
 			for(MethodNode m : cn.getMethods()) {
 				ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
-				if(cfg.getRanges().size() > 0) {
+				if(cfg.hasRanges()) {
 					process(cxt.getApplication(), cfg, cxt.getExceptionAnalysis(cfg));
 				}
 			}
@@ -58,6 +58,10 @@ public class DemoteRangesPass implements IPass {
 			}
 		}
 		
+		/* what the component of each block can throw, which is the same for
+		 * every range that covers the block. */
+		Map<BasicBlock, Set<Type>> throwables = new HashMap<>();
+		
 		for(ExceptionRange<BasicBlock> er : cfg.getRanges()) {
 			/* go through the blocks in code order and
 			 * try to promote them one at a time. if we
@@ -67,19 +71,21 @@ public class DemoteRangesPass implements IPass {
 			
 			/* if the handler catches */
 			for(BasicBlock b : er.getNodes()) {
-				Set<Type> canThrow = new HashSet<>();
-				
 				List<BasicBlock> comp = new ArrayList<>();
 				if(sccs.containsKey(b)) {
 					comp.addAll(sccs.get(b));
 				} else {
 					comp.add(b);
 				}
-				for(BasicBlock e : comp) {
-					for(Stmt stmt : e) {
-						canThrow.addAll(analysis.getPossibleUserThrowables(stmt));
+				Set<Type> canThrow = throwables.computeIfAbsent(b, k -> {
+					Set<Type> set = new HashSet<>();
+					for(BasicBlock e : comp) {
+						for(Stmt stmt : e) {
+							set.addAll(analysis.getPossibleUserThrowables(stmt));
+						}
 					}
-				}
+					return set;
+				});
 				
 				
 				if(!catchesAny(app, er.getTypes(), canThrow)) {
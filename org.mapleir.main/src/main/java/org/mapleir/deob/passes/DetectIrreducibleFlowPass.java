@@ -1,8 +1,7 @@
 package org.mapleir.deob.passes;
 
-import java.util.Map.Entry;
-
 import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.IRCache;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassResult;
@@ -20,9 +19,9 @@ public class DetectIrreducibleFlowPass implements IPass {
 	@Override
 	public PassResult accept(PassContext pcxt) {
 		AnalysisContext cxt = pcxt.getAnalysis();
-		for(Entry<MethodNode, ControlFlowGraph> e : cxt.getIRCache().entrySet()) {
-			MethodNode mn = e.getKey();
-			ControlFlowGraph cfg = e.getValue();
+		IRCache cache = cxt.getIRCache();
+		for(MethodNode mn : cache.getActiveMethods()) {
+			ControlFlowGraph cfg = cache.getFor(mn);
 			
 			if(!GraphUtils.isReducibleGraph(cfg, cfg.getEntries().iterator().next())) {
 				return PassResult.with(pcxt, this).fatal(new IllegalStateException(String.format("%s contains irreducible loop", mn))).make();
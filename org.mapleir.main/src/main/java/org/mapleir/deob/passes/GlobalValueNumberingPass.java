@@ -0,0 +1,366 @@
+package org.mapleir.deob.passes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.deob.IPass;
+import org.mapleir.deob.PassContext;
+import org.mapleir.deob.PassResult;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.FlowEdges;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ssaopt.ArrayConstraint;
+import org.mapleir.ir.cfg.builder.ssaopt.Constraint;
+import org.mapleir.ir.cfg.builder.ssaopt.ConstraintUtil;
+import org.mapleir.ir.cfg.builder.ssaopt.FieldConstraint;
+import org.mapleir.ir.cfg.builder.ssaopt.InvokeConstraint;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.FieldLoadExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
+import org.mapleir.ir.locals.LocalsPool;
+import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.mapleir.stdlib.collections.graph.FastGraphEdge;
+import org.mapleir.stdlib.collections.graph.algorithms.DominatorTree;
+import org.mapleir.stdlib.collections.graph.algorithms.LT79Dom;
+
+/**
+ * Dominator tree based global value numbering over the SSA form.
+ *
+ * The blocks are visited in dominator tree order while keeping a table of the
+ * copies whose values are available, keyed by the structural hash of the
+ * copied expression. An expression which is equivalent to one that is
+ * available is replaced with a load of the local holding its value. A copy
+ * whose whole expression is redundant is removed and its uses are renamed.
+ * The shape of the graph isn't changed: branches are left to
+ * {@link SparseConditionalConstantPropagationPass}.
+ *
+ * Expressions which can't be copied (see {@link ConstraintUtil}) are never
+ * merged. Field and array loads are only merged if no statement between the
+ * two could change the loaded value, using the same constraints that the SSA
+ * builder uses for propagation. Nothing is carried into exception handlers,
+ * as a value defined in a protected block may not have been computed when the
+ * handler is entered.
+ */
+public class GlobalValueNumberingPass implements IPass, Opcode {
+
+	private int replaced;
+	private int removed;
+
+	public void process(ControlFlowGraph cfg) {
+		new Numbering(cfg).run();
+	}
+
+	@Override
+	public PassResult accept(PassContext pcxt) {
+		AnalysisContext cxt = pcxt.getAnalysis();
+		replaced = 0;
+		removed = 0;
+
+		for (ClassNode cn : cxt.getApplication().iterate()) {
+			for (MethodNode m : cn.getMethods()) {
+				ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
+				process(cfg);
+			}
+		}
+
+		System.out.printf("  replaced %d redundant expressions.%n", replaced);
+		System.out.printf("  removed %d redundant copies.%n", removed);
+
+		return PassResult.with(pcxt, this).finished(replaced + removed).make();
+	}
+
+	private static boolean isCandidate(Expr e) {
+		switch(e.getOpcode()) {
+			case LOCAL_LOAD:
+			case CONST_LOAD:
+			case CATCH:
+			case PHI:
+			case EPHI:
+				/* already as cheap as a load. */
+				return false;
+		}
+		return !ConstraintUtil.isUncopyable(e);
+	}
+
+	private static List<Constraint> makeConstraints(Expr e) {
+		List<Constraint> constraints = new ArrayList<>();
+		for(Expr s : e.enumerateWithSelf()) {
+			int op = s.getOpcode();
+			if(op == FIELD_LOAD) {
+				constraints.add(new FieldConstraint((FieldLoadExpr) s));
+			} else if(ConstraintUtil.isInvoke(op)) {
+				constraints.add(new InvokeConstraint());
+			} else if(op == ARRAY_LOAD) {
+				constraints.add(new ArrayConstraint());
+			}
+		}
+		return constraints;
+	}
+
+	private class Numbering {
+		private final ControlFlowGraph cfg;
+		private final LocalsPool pool;
+		private final Map<Integer, List<AbstractCopyStmt>> available;
+		/* depth in the dominator tree of each available copy. */
+		private final Map<AbstractCopyStmt, Integer> depths;
+		/* copies below this depth can't be used, i.e. in handlers. */
+		private int barrier;
+
+		Numbering(ControlFlowGraph cfg) {
+			this.cfg = cfg;
+			pool = cfg.getLocals();
+			available = new HashMap<>();
+			depths = new HashMap<>();
+		}
+
+		void run() {
+			BasicBlock entry = cfg.getEntries().iterator().next();
+			LT79Dom<BasicBlock, FlowEdge<BasicBlock>> doms = new LT79Dom<>(cfg, entry, false);
+			DominatorTree<BasicBlock> tree = doms.getDominatorTree();
+
+			/* explicit stack as dominator trees of big methods get deep:
+			 * a block is pushed twice, once to visit and once (negative
+			 * depth) to retract what it made available. */
+			Deque<BasicBlock> blocks = new ArrayDeque<>();
+			Deque<Integer> levels = new ArrayDeque<>();
+			Deque<Integer> barriers = new ArrayDeque<>();
+			Map<BasicBlock, List<AbstractCopyStmt>> added = new HashMap<>();
+
+			blocks.push(entry);
+			levels.push(0);
+
+			while(!blocks.isEmpty()) {
+				BasicBlock b = blocks.pop();
+				int depth = levels.pop();
+
+				if(depth < 0) {
+					for(AbstractCopyStmt copy : added.remove(b)) {
+						List<AbstractCopyStmt> list = available.get(copy.getExpression().structuralHash());
+						list.remove(list.size() - 1);
+						depths.remove(copy);
+					}
+					barrier = barriers.pop();
+					continue;
+				}
+
+				barriers.push(barrier);
+				if(isHandler(b)) {
+					barrier = depth;
+				}
+				added.put(b, visit(b, depth));
+
+				blocks.push(b);
+				levels.push(-1);
+
+				if(tree.containsVertex(b)) {
+					for(FastGraphEdge<BasicBlock> e : tree.getEdges(b)) {
+						blocks.push(e.dst());
+						levels.push(depth + 1);
+					}
+				}
+			}
+		}
+
+		private boolean isHandler(BasicBlock b) {
+			for(FlowEdge<BasicBlock> e : cfg.getReverseEdges(b)) {
+				if(e.getType() == FlowEdges.TRYCATCH) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private List<AbstractCopyStmt> visit(BasicBlock b, int depth) {
+			List<AbstractCopyStmt> added = new ArrayList<>();
+
+			for(Stmt stmt : new ArrayList<>(b)) {
+				if(stmt.getOpcode() == LOCAL_STORE) {
+					AbstractCopyStmt copy = (AbstractCopyStmt) stmt;
+					if(copy.isSynthetic()) {
+						continue;
+					}
+
+					Expr rhs = copy.getExpression();
+					numberChildren(stmt, rhs);
+					if(isCandidate(rhs)) {
+						AbstractCopyStmt prev = lookup(stmt, rhs);
+						if(prev != null) {
+							removeCopy(copy, prev);
+						} else if(copy.getVariable().getLocal() instanceof VersionedLocal) {
+							available.computeIfAbsent(rhs.structuralHash(), k -> new ArrayList<>()).add(copy);
+							depths.put(copy, depth);
+							added.add(copy);
+						}
+					}
+				} else if(stmt.getOpcode() != PHI_STORE) {
+					numberChildren(stmt, stmt);
+				}
+			}
+
+			return added;
+		}
+
+		private void numberChildren(Stmt stmt, CodeUnit u) {
+			for(Expr c : u.getChildren()) {
+				number(stmt, c);
+			}
+		}
+
+		/* bottom up so that the available copies and the expressions
+		 * being looked up have both had their operands replaced. */
+		private void number(Stmt stmt, Expr e) {
+			numberChildren(stmt, e);
+			if(isCandidate(e)) {
+				AbstractCopyStmt prev = lookup(stmt, e);
+				if(prev != null) {
+					replace(e, prev);
+				}
+			}
+		}
+
+		private AbstractCopyStmt lookup(Stmt stmt, Expr e) {
+			List<AbstractCopyStmt> list = available.get(e.structuralHash());
+			if(list == null) {
+				return null;
+			}
+
+			List<Constraint> constraints = null;
+			/* innermost first. */
+			for(int i=list.size() - 1; i >= 0; i--) {
+				AbstractCopyStmt copy = list.get(i);
+				if(depths.get(copy) < barrier) {
+					break;
+				}
+				if(!copy.getExpression().equivalent(e)) {
+					continue;
+				}
+				if(constraints == null) {
+					constraints = makeConstraints(e);
+				}
+				if(constraints.isEmpty() || isUnchanged(constraints, copy, stmt, e)) {
+					return copy;
+				}
+			}
+			return null;
+		}
+
+		private boolean isUnchanged(List<Constraint> constraints, Stmt def, Stmt use, Expr e) {
+			BasicBlock from = def.getBlock();
+			BasicBlock to = use.getBlock();
+
+			/* every block on a path from the def to the use, which are
+			 * the blocks that reach the use without passing the def. */
+			Set<BasicBlock> path = new HashSet<>();
+			Deque<BasicBlock> stack = new ArrayDeque<>();
+			stack.push(to);
+			while(!stack.isEmpty()) {
+				BasicBlock b = stack.pop();
+				if(b == from) {
+					continue;
+				}
+				for(FlowEdge<BasicBlock> pe : cfg.getReverseEdges(b)) {
+					BasicBlock p = pe.src();
+					if(p != from && path.add(p)) {
+						stack.push(p);
+					}
+				}
+			}
+
+			/* the use block is on a cycle so all of it can run in between. */
+			boolean cycle = path.remove(to);
+			if(from == to && !cycle) {
+				return check(constraints, from, from.indexOf(def) + 1, from.indexOf(use)) && check(constraints, use, e);
+			}
+
+			if(!check(constraints, from, from.indexOf(def) + 1, from.size())) {
+				return false;
+			}
+			for(BasicBlock b : path) {
+				if(!check(constraints, b, 0, b.size())) {
+					return false;
+				}
+			}
+			if(cycle) {
+				return check(constraints, to, 0, to.size());
+			} else {
+				return check(constraints, to, 0, to.indexOf(use)) && check(constraints, use, e);
+			}
+		}
+
+		private boolean check(List<Constraint> constraints, BasicBlock b, int start, int end) {
+			for(int i=start; i < end; i++) {
+				for(CodeUnit u : b.get(i).enumerateWithSelf()) {
+					if(fails(constraints, u)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/* the parts of the use statement that are executed before e. */
+		private boolean check(List<Constraint> constraints, Stmt use, Expr e) {
+			Set<Expr> tail = new HashSet<>();
+			for(Expr s : e.enumerateWithSelf()) {
+				tail.add(s);
+			}
+			for(CodeUnit u : use.enumerateExecutionOrder()) {
+				if(u instanceof Expr && tail.contains(u)) {
+					break;
+				}
+				if(fails(constraints, u)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean fails(List<Constraint> constraints, CodeUnit u) {
+			for(Constraint c : constraints) {
+				if(c.fails(u)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void replace(Expr e, AbstractCopyStmt prev) {
+			VarExpr v = prev.getVariable();
+			cfg.writeAt(e.getParent(), e, new VarExpr(v.getLocal(), v.getType()));
+
+			replaced++;
+		}
+
+		private void removeCopy(AbstractCopyStmt copy, AbstractCopyStmt prev) {
+			VersionedLocal from = (VersionedLocal) copy.getVariable().getLocal();
+			VersionedLocal to = (VersionedLocal) prev.getVariable().getLocal();
+
+			Set<VarExpr> uses = pool.uses.get(from);
+			if(uses != null) {
+				for(VarExpr use : uses) {
+					use.setLocal(to);
+				}
+				pool.uses.getNonNull(to).addAll(uses);
+			}
+			pool.uses.remove(from);
+			pool.defs.remove(from);
+			cfg.exciseStmt(copy);
+
+			removed++;
+		}
+	}
+}
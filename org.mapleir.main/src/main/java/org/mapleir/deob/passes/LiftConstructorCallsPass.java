@@ -94,11 +94,6 @@ public class LiftConstructorCallsPass implements Opcode, IPass {
 		
 		System.out.println(CFGUtils.printBlock(b));
 		System.out.println("  to " + at);
-		int index = b.indexOf(at) + 1;
-		int size = b.size();
-		for(int i=index; i < size; i++) {
-			Stmt stmt = b.remove(index);
-			newBlock.add(stmt);
-		}
+		b.transferFrom(newBlock, b.indexOf(at) + 1);
 	}
 }
@@ -0,0 +1,593 @@
+package org.mapleir.deob.passes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.deob.IPass;
+import org.mapleir.deob.PassContext;
+import org.mapleir.deob.PassResult;
+import org.mapleir.deob.intraproc.eval.EvaluationFactory;
+import org.mapleir.deob.intraproc.eval.impl.ReflectiveFunctorFactory;
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.FlowEdges;
+import org.mapleir.flowgraph.edges.UnconditionalJumpEdge;
+import org.mapleir.ir.TypeUtils;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.CastExpr;
+import org.mapleir.ir.code.expr.ComparisonExpr;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.NegationExpr;
+import org.mapleir.ir.code.expr.PhiExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
+import org.mapleir.ir.code.stmt.SwitchStmt;
+import org.mapleir.ir.code.stmt.UnconditionalJumpStmt;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.ir.locals.LocalsPool;
+import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
+import org.objectweb.asm.Type;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over the SSA
+ * form.
+ *
+ * Every local starts out undefined and is lowered to a constant or to
+ * overdefined as its definition is evaluated, with statements only evaluated
+ * once their block is reached through an executable edge. Two worklists are
+ * kept: the flow edges which have become executable, and the statements which
+ * use a local whose value has changed, found through the def/use chains of
+ * the {@link LocalsPool}. Phis only meet the arguments of executable incoming
+ * edges and conditional jumps and switches with a constant operand only mark
+ * the edge that is taken, so constants are found through branches which can
+ * never be taken. Values are folded with an {@link EvaluationFactory}.
+ *
+ * Once nothing changes, constant expressions are replaced with their value,
+ * jumps with a constant outcome are turned into unconditional jumps and the
+ * blocks which can no longer be reached are removed, all in one pass over
+ * each method. When any block is removed the rest are renumbered in order,
+ * so the ids of a changed graph don't survive the pass. The analysis is
+ * intraprocedural, so the methods are processed in parallel.
+ */
+public class SparseConditionalConstantPropagationPass implements IPass, Opcode {
+
+	/* lattice value of overdefined locals, undefined ones aren't mapped. */
+	private static final Object BOTTOM = new Object() {
+		@Override
+		public String toString() {
+			return "bottom";
+		}
+	};
+
+	private final int threads;
+	/* the factories keep an unsynchronised cache of generated functors. */
+	private final ThreadLocal<EvaluationFactory> factories = ThreadLocal.withInitial(ReflectiveFunctorFactory::new);
+
+	private final AtomicInteger replaced = new AtomicInteger();
+	private final AtomicInteger folded = new AtomicInteger();
+	private final AtomicInteger removed = new AtomicInteger();
+
+	public SparseConditionalConstantPropagationPass() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public SparseConditionalConstantPropagationPass(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("threads: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public void process(ControlFlowGraph cfg) {
+		new Propagation(cfg, factories.get()).run();
+	}
+
+	@Override
+	public PassResult accept(PassContext pcxt) {
+		AnalysisContext cxt = pcxt.getAnalysis();
+		replaced.set(0);
+		folded.set(0);
+		removed.set(0);
+
+		/* the cache isn't thread safe, so all of the methods are lifted first. */
+		List<ControlFlowGraph> cfgs = new ArrayList<>();
+		for (ClassNode cn : cxt.getApplication().iterate()) {
+			for (MethodNode m : cn.getMethods()) {
+				cfgs.add(cxt.getIRCache().getFor(m));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(ControlFlowGraph cfg : cfgs) {
+				futures.add(executor.submit(() -> process(cfg)));
+			}
+			for(Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return PassResult.with(pcxt, this).fatal(e).make();
+		} catch (ExecutionException e) {
+			return PassResult.with(pcxt, this).fatal(e.getCause()).make();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		System.out.printf("  replaced %d constant expressions.%n", replaced.get());
+		System.out.printf("  folded %d constant branches.%n", folded.get());
+		System.out.printf("  removed %d unreachable blocks.%n", removed.get());
+
+		return PassResult.with(pcxt, this).finished(replaced.get() + folded.get() + removed.get()).make();
+	}
+
+	/* the type of a primitive value on the operand stack, or null. */
+	private static Type stackType(Type t) {
+		return TypeUtils.isPrimitive(t) ? TypeUtils.resolveUnaryOpType(t) : null;
+	}
+
+	/* boxes values as their stack type, so equal values are equal objects. */
+	private static Object normalise(Object cst) {
+		if(cst instanceof Integer || cst instanceof Long || cst instanceof Float || cst instanceof Double) {
+			return cst;
+		} else if(cst instanceof Byte || cst instanceof Short) {
+			return ((Number) cst).intValue();
+		} else if(cst instanceof Character) {
+			return (int) (Character) cst;
+		} else if(cst instanceof Boolean) {
+			return (Boolean) cst ? 1 : 0;
+		} else {
+			return BOTTOM;
+		}
+	}
+
+	private static boolean isConstant(Object v) {
+		return v != null && v != BOTTOM;
+	}
+
+	private static Object meet(Object a, Object b) {
+		if(a == null) {
+			return b;
+		} else if(b == null) {
+			return a;
+		} else if(a == BOTTOM || b == BOTTOM || !a.equals(b)) {
+			return BOTTOM;
+		} else {
+			return a;
+		}
+	}
+
+	private static boolean isBranchEdge(FlowEdge<BasicBlock> e) {
+		switch(e.getType()) {
+			case FlowEdges.COND:
+			case FlowEdges.IMMEDIATE:
+			case FlowEdges.SWITCH:
+			case FlowEdges.DEFAULT_SWITCH:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private class Propagation {
+		private final ControlFlowGraph cfg;
+		private final LocalsPool pool;
+		private final EvaluationFactory factory;
+		private final Map<Local, Object> values;
+		private final Set<BasicBlock> executable;
+		private final Set<FlowEdge<BasicBlock>> executableEdges;
+		/* phi arguments have no parent to find the phi with. */
+		private final Map<VarExpr, CopyPhiStmt> phiUses;
+		private final Deque<FlowEdge<BasicBlock>> flowWorklist;
+		private final Deque<Stmt> ssaWorklist;
+
+		Propagation(ControlFlowGraph cfg, EvaluationFactory factory) {
+			this.cfg = cfg;
+			this.factory = factory;
+			pool = cfg.getLocals();
+			values = new HashMap<>();
+			executable = new HashSet<>();
+			executableEdges = new HashSet<>();
+			phiUses = new HashMap<>();
+			flowWorklist = new ArrayDeque<>();
+			ssaWorklist = new ArrayDeque<>();
+		}
+
+		void run() {
+			for(Stmt stmt : cfg.stmts()) {
+				if(stmt.getOpcode() == PHI_STORE && stmt instanceof CopyPhiStmt) {
+					for(Expr arg : ((CopyPhiStmt) stmt).getExpression().getArguments().values()) {
+						if(arg.getOpcode() == LOCAL_LOAD) {
+							phiUses.put((VarExpr) arg, (CopyPhiStmt) stmt);
+						}
+					}
+				}
+			}
+
+			for(BasicBlock entry : cfg.getEntries()) {
+				if(executable.add(entry)) {
+					visitBlock(entry);
+				}
+			}
+
+			while(!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+				while(!flowWorklist.isEmpty()) {
+					BasicBlock b = flowWorklist.pop().dst();
+					if(executable.add(b)) {
+						visitBlock(b);
+					} else {
+						/* only the phis can see the new edge. */
+						for(Stmt stmt : b) {
+							if(stmt.getOpcode() != PHI_STORE) {
+								break;
+							}
+							visit(stmt);
+						}
+					}
+				}
+				while(!ssaWorklist.isEmpty()) {
+					Stmt stmt = ssaWorklist.pop();
+					BasicBlock b = stmt.getBlock();
+					if(b != null && executable.contains(b)) {
+						visit(stmt);
+					}
+				}
+			}
+
+			rewrite();
+		}
+
+		private void visitBlock(BasicBlock b) {
+			for(Stmt stmt : b) {
+				visit(stmt);
+			}
+			visitEdges(b);
+		}
+
+		private void visit(Stmt stmt) {
+			switch(stmt.getOpcode()) {
+				case PHI_STORE: {
+					CopyPhiStmt copy = (CopyPhiStmt) stmt;
+					update(copy.getVariable().getLocal(), evalPhi(copy));
+					break;
+				}
+				case LOCAL_STORE: {
+					AbstractCopyStmt copy = (AbstractCopyStmt) stmt;
+					update(copy.getVariable().getLocal(), copy.isSynthetic() ? BOTTOM : eval(copy.getExpression()));
+					break;
+				}
+				case COND_JUMP:
+				case SWITCH_JUMP:
+					visitEdges(stmt.getBlock());
+					break;
+			}
+		}
+
+		private Object evalPhi(CopyPhiStmt copy) {
+			PhiExpr phi = copy.getExpression();
+			BasicBlock b = copy.getBlock();
+			/* values defined in a protected block may not have been computed. */
+			if(phi.getOpcode() != PHI || cfg.isHandler(b)) {
+				return BOTTOM;
+			}
+			Object v = null;
+			for(Map.Entry<BasicBlock, Expr> e : phi.getArguments().entrySet()) {
+				if(isExecutable(e.getKey(), b)) {
+					v = meet(v, eval(e.getValue()));
+				}
+			}
+			return v;
+		}
+
+		private boolean isExecutable(BasicBlock src, BasicBlock dst) {
+			for(FlowEdge<BasicBlock> e : cfg.getReverseEdges(dst)) {
+				if(e.src() == src && executableEdges.contains(e)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void update(Local l, Object v) {
+			Object old = values.get(l);
+			/* values only ever move down the lattice. */
+			Object nv = meet(old, v);
+			if(nv == null || nv.equals(old)) {
+				return;
+			}
+			values.put(l, nv);
+
+			Set<VarExpr> uses = pool.uses.get(l);
+			if(uses != null) {
+				for(VarExpr use : uses) {
+					Stmt stmt = phiUses.containsKey(use) ? phiUses.get(use) : use.getRootParent();
+					if(stmt != null) {
+						ssaWorklist.add(stmt);
+					}
+				}
+			}
+		}
+
+		private void markExecutable(FlowEdge<BasicBlock> e) {
+			if(executableEdges.add(e)) {
+				flowWorklist.add(e);
+			}
+		}
+
+		private void visitEdges(BasicBlock b) {
+			Stmt last = b.isEmpty() ? null : b.get(b.size() - 1);
+			BasicBlock target = null;
+			boolean decided = false;
+			if(last != null && (last.getOpcode() == COND_JUMP || last.getOpcode() == SWITCH_JUMP)) {
+				Object v = last.getOpcode() == COND_JUMP ? evalBranch((ConditionalJumpStmt) last) : evalSwitch((SwitchStmt) last);
+				if(v == null) {
+					/* the operands aren't known yet, nothing is taken. */
+					decided = true;
+				} else if(v != BOTTOM) {
+					target = (BasicBlock) v;
+					decided = true;
+				}
+			}
+
+			for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+				if(!decided || !isBranchEdge(e) || e.dst() == target) {
+					markExecutable(e);
+				}
+			}
+		}
+
+		/* the target that is taken, BOTTOM if it isn't constant or null if undefined. */
+		private Object evalBranch(ConditionalJumpStmt jump) {
+			Expr l = jump.getLeft(), r = jump.getRight();
+			Type lt = stackType(l.getType()), rt = stackType(r.getType());
+			if(lt == null || rt == null) {
+				return BOTTOM;
+			}
+			Object lv = eval(l), rv = eval(r);
+			if(lv == BOTTOM || rv == BOTTOM) {
+				return BOTTOM;
+			} else if(lv == null || rv == null) {
+				return null;
+			}
+			try {
+				boolean taken = factory.branch(lt, rt, jump.getComparisonType()).eval(lv, rv);
+				return taken ? jump.getTrueSuccessor() : cfg.getImmediate(jump.getBlock());
+			} catch(RuntimeException e) {
+				return BOTTOM;
+			}
+		}
+
+		private Object evalSwitch(SwitchStmt sw) {
+			Object v = eval(sw.getExpression());
+			if(!isConstant(v)) {
+				return v;
+			}
+			BasicBlock target = sw.getTargets().get(((Number) v).intValue());
+			return target != null ? target : sw.getDefaultTarget();
+		}
+
+		private Object eval(Expr e) {
+			switch(e.getOpcode()) {
+				case CONST_LOAD: {
+					ConstantExpr c = (ConstantExpr) e;
+					return stackType(c.getType()) != null ? normalise(c.getConstant()) : BOTTOM;
+				}
+				case LOCAL_LOAD: {
+					Local l = ((VarExpr) e).getLocal();
+					/* parameters and other locals without a definition. */
+					if(!pool.defs.containsKey(l)) {
+						return BOTTOM;
+					}
+					return values.get(l);
+				}
+				case ARITHMETIC: {
+					ArithmeticExpr ae = (ArithmeticExpr) e;
+					Type lt = stackType(ae.getLeft().getType()), rt = stackType(ae.getRight().getType());
+					Type t = stackType(ae.getType());
+					if(lt == null || rt == null || t == null) {
+						return BOTTOM;
+					}
+					Object lv = eval(ae.getLeft()), rv = eval(ae.getRight());
+					if(lv == BOTTOM || rv == BOTTOM) {
+						return BOTTOM;
+					} else if(lv == null || rv == null) {
+						return null;
+					}
+					return apply(() -> factory.arithmetic(lt, rt, t, ae.getOperator()).eval(lv, rv));
+				}
+				case NEGATE: {
+					Expr operand = ((NegationExpr) e).getExpression();
+					Type t = stackType(operand.getType());
+					Object v = eval(operand);
+					if(t == null) {
+						return BOTTOM;
+					} else if(!isConstant(v)) {
+						return v;
+					}
+					return apply(() -> factory.negate(t).eval(v));
+				}
+				case CAST: {
+					CastExpr cast = (CastExpr) e;
+					Type from = stackType(cast.getExpression().getType());
+					Type to = cast.getType();
+					Object v = eval(cast.getExpression());
+					if(from == null || !TypeUtils.isPrimitive(to)) {
+						return BOTTOM;
+					} else if(!isConstant(v)) {
+						return v;
+					}
+					/* narrowing of ints, which have no functor of their own. */
+					switch(to.getSort()) {
+						case Type.BYTE:
+							return from == Type.INT_TYPE ? (int) (byte) (int) v : BOTTOM;
+						case Type.SHORT:
+							return from == Type.INT_TYPE ? (int) (short) (int) v : BOTTOM;
+						case Type.CHAR:
+							return from == Type.INT_TYPE ? (int) (char) (int) v : BOTTOM;
+						case Type.BOOLEAN:
+							return BOTTOM;
+					}
+					return apply(() -> factory.cast(from, to).eval(v));
+				}
+				case COMPARE: {
+					ComparisonExpr comp = (ComparisonExpr) e;
+					Type lt = stackType(comp.getLeft().getType()), rt = stackType(comp.getRight().getType());
+					if(lt == null || rt == null) {
+						return BOTTOM;
+					}
+					Object lv = eval(comp.getLeft()), rv = eval(comp.getRight());
+					if(lv == BOTTOM || rv == BOTTOM) {
+						return BOTTOM;
+					} else if(lv == null || rv == null) {
+						return null;
+					}
+					return apply(() -> factory.compare(lt, rt, comp.getComparisonType()).eval(lv, rv));
+				}
+				default:
+					return BOTTOM;
+			}
+		}
+
+		private Object apply(Evaluation f) {
+			try {
+				return normalise(f.eval());
+			} catch(RuntimeException e) {
+				/* e.g. division by zero, which has to throw at runtime. */
+				return BOTTOM;
+			}
+		}
+
+		private void rewrite() {
+			boolean foldedJump = false;
+			for(BasicBlock b : new ArrayList<>(cfg.verticesInOrder())) {
+				if(!executable.contains(b)) {
+					continue;
+				}
+				for(Stmt stmt : new ArrayList<>(b)) {
+					int op = stmt.getOpcode();
+					if(op == PHI_STORE || (op == LOCAL_STORE && ((AbstractCopyStmt) stmt).isSynthetic())) {
+						continue;
+					}
+					substitute(stmt);
+
+					if(op == COND_JUMP || op == SWITCH_JUMP) {
+						Object target = op == COND_JUMP ? evalBranch((ConditionalJumpStmt) stmt) : evalSwitch((SwitchStmt) stmt);
+						if(isConstant(target)) {
+							fold(stmt, (BasicBlock) target);
+							foldedJump = true;
+						}
+					}
+				}
+			}
+
+			if(foldedJump) {
+				removeUnreachable();
+			}
+		}
+
+		private void substitute(CodeUnit u) {
+			for(Expr e : new ArrayList<>(u.getChildren())) {
+				Object v = e.getOpcode() == CONST_LOAD ? null : eval(e);
+				Type t = e.getType();
+				/* the constants need to keep the type of the expression on the stack. */
+				if(isConstant(v) && t.getSort() != Type.BOOLEAN && TypeUtils.unboxType(v).equals(stackType(t))) {
+					cfg.writeAt(u, e, new ConstantExpr(v));
+					replaced.incrementAndGet();
+				} else {
+					substitute(e);
+				}
+			}
+		}
+
+		private void fold(Stmt jump, BasicBlock target) {
+			BasicBlock b = jump.getBlock();
+			/* a jump that isn't taken falls through to the immediate. */
+			boolean fallthrough = jump.getOpcode() == COND_JUMP && target != ((ConditionalJumpStmt) jump).getTrueSuccessor();
+			Set<BasicBlock> excised = new HashSet<>();
+
+			for(FlowEdge<BasicBlock> e : new ArrayList<>(cfg.getEdges(b))) {
+				if(!isBranchEdge(e) || (fallthrough && e.getType() == FlowEdges.IMMEDIATE)) {
+					continue;
+				}
+				/* the phi arguments of a successor only go once it can't be reached from b. */
+				if(e.dst() == target || !excised.add(e.dst())) {
+					cfg.removeEdge(e);
+				} else {
+					cfg.exciseEdge(e);
+				}
+			}
+
+			cfg.exciseStmt(jump);
+			if(!fallthrough) {
+				cfg.addEdge(new UnconditionalJumpEdge<>(b, target));
+				b.add(new UnconditionalJumpStmt(target));
+			}
+			folded.incrementAndGet();
+		}
+
+		private void removeUnreachable() {
+			BasicBlock entry = cfg.getEntries().iterator().next();
+			Set<BasicBlock> reachable = new HashSet<>(new SimpleDfs<>(cfg, entry, SimpleDfs.PRE).getPreOrder());
+			List<BasicBlock> unreachable = new ArrayList<>();
+			for(BasicBlock b : cfg.vertices()) {
+				if(!reachable.contains(b)) {
+					unreachable.add(b);
+				}
+			}
+			/* every edge out of the dead blocks goes first, so that the phi
+			 * arguments they carry are dropped from the pool by exciseEdge
+			 * whichever order the blocks come in. */
+			for(BasicBlock b : unreachable) {
+				for(FlowEdge<BasicBlock> e : new ArrayList<>(cfg.getEdges(b))) {
+					cfg.exciseEdge(e);
+				}
+			}
+			Set<Local> dead = new HashSet<>();
+			for(BasicBlock b : unreachable) {
+				for(Stmt stmt : new ArrayList<>(b)) {
+					if(stmt instanceof AbstractCopyStmt) {
+						dead.add(((AbstractCopyStmt) stmt).getVariable().getLocal());
+					}
+					cfg.exciseStmt(stmt);
+				}
+				cfg.removeVertex(b);
+				removed.incrementAndGet();
+			}
+			/* only once all of the dead uses are gone. */
+			for(Local l : dead) {
+				pool.defs.remove(l);
+				pool.uses.remove(l);
+			}
+			/* ControlFlowGraph.verify() expects the ids to be 1..n, so the blocks
+			 * after a removed one are renumbered. Nothing keeps block ids across
+			 * passes, but ids printed before this pass won't match afterwards. */
+			cfg.relabel(new ArrayList<>(cfg.verticesInOrder()));
+		}
+	}
+
+	private interface Evaluation {
+		Object eval();
+	}
+}
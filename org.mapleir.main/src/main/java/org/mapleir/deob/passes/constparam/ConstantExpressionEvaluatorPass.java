@@ -42,6 +42,7 @@ import org.mapleir.asm.MethodNode;
 
 public class ConstantExpressionEvaluatorPass implements IPass, Opcode {
 	private ExpressionEvaluator evaluator;
+	private LocalValueResolver resolver;
 	private int branchesEvaluated, exprsEvaluated;
 	
 	public ConstantExpressionEvaluatorPass() {
@@ -56,6 +57,9 @@ public class ConstantExpressionEvaluatorPass implements IPass, Opcode {
 		
 		IPConstAnalysisVisitor vis = new IPConstAnalysisVisitor(cxt);
 		IPAnalysis.create(cxt, vis);
+		// shared by every query so the evaluator can reuse the values of
+		// locals in methods that haven't changed between rounds
+		resolver = new SemiConstantLocalValueResolver(vis);
 		
 		for(;;) {
 			int prevExprsEval = exprsEvaluated;
@@ -74,6 +78,8 @@ public class ConstantExpressionEvaluatorPass implements IPass, Opcode {
 		
 		System.out.printf("  evaluated %d constant expressions.%n", exprsEvaluated);
 		System.out.printf("  eliminated %d constant branches.%n", branchesEvaluated);
+		evaluator.clearCache();
+		resolver = null;
 
 		return PassResult.with(pcxt, this).finished(exprsEvaluated).make();
 	}
@@ -186,8 +192,6 @@ public class ConstantExpressionEvaluatorPass implements IPass, Opcode {
 			return null;
 		}
 		
-		LocalValueResolver resolver = new SemiConstantLocalValueResolver(vis);
-		
 		TaintableSet<ConstantExpr> lSet = evaluator.evalPossibleValues(resolver, l);
 		TaintableSet<ConstantExpr> rSet = evaluator.evalPossibleValues(resolver, r);
 
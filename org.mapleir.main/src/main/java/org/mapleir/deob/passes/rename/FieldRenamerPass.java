@@ -1,30 +1,35 @@
 package org.mapleir.deob.passes.rename;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.mapleir.app.service.ApplicationClassSource;
-import org.mapleir.app.service.InvocationResolver;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassResult;
 import org.mapleir.deob.util.RenamingUtil;
-import org.mapleir.ir.cfg.BasicBlock;
-import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.code.Expr;
-import org.mapleir.ir.code.Opcode;
-import org.mapleir.ir.code.Stmt;
-import org.mapleir.ir.code.expr.FieldLoadExpr;
-import org.mapleir.ir.code.stmt.FieldStoreStmt;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.FieldNode;
-import org.mapleir.asm.MethodNode;
 
 public class FieldRenamerPass implements IPass {
 	
+	private final MappingTable shared;
+	
+	public FieldRenamerPass() {
+		this(null);
+	}
+	
+	/**
+	 * @param shared the table to add the new names to, which are then only
+	 * applied by a {@link RemappingPass} over the table, or null to apply
+	 * them straight away
+	 */
+	public FieldRenamerPass(MappingTable shared) {
+		this.shared = shared;
+	}
+	
 	@Override
 	public PassResult accept(PassContext pcxt) {		
 		AnalysisContext cxt = pcxt.getAnalysis();
@@ -45,68 +50,16 @@ public class FieldRenamerPass implements IPass {
 			}
 		}
 		
-		InvocationResolver resolver = cxt.getInvocationResolver();
-		
-		for(ClassNode cn : source.iterate()) {
-			for(MethodNode m : cn.getMethods()) {
-				ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
-				
-				for(BasicBlock b : cfg.vertices()) {
-					for(Stmt stmt : b) {
-						
-						if(stmt.getOpcode() == Opcode.FIELD_STORE) {
-							FieldStoreStmt fs = (FieldStoreStmt) stmt;
-							
-							FieldNode f = resolver.findField(fs.getOwner(), fs.getName(), fs.getDesc(), fs.getInstanceExpression() == null);
-							
-							if(f != null) {
-								if(remapped.containsKey(f)) {
-									fs.setName(remapped.get(f));
-								} else if(mustMark(source, f.getOwner())) {
-									System.err.println("  no remap for " + f + ", owner: " + f.getOwner());
-								}
-							} else {
-								if(mustMark(source, fs.getOwner())) {
-									System.err.println("  can't resolve field(set): " + fs.getOwner() + "." + fs.getName() + " " + fs.getDesc() + ", " + (fs.getInstanceExpression() == null));
-								}
-							}
-						}
-						
-						for(Expr e : stmt.enumerateOnlyChildren()) {
-							if(e.getOpcode() == Opcode.FIELD_LOAD) {
-								FieldLoadExpr fl = (FieldLoadExpr) e;
-								
-								FieldNode f = resolver.findField(fl.getOwner(), fl.getName(), fl.getDesc(), fl.getInstanceExpression() == null);
-								
-								if(f != null) {
-									if(remapped.containsKey(f)) {
-										fl.setName(remapped.get(f));
-									} else if(mustMark(source, f.getOwner())) {
-										System.err.println("  no remap for " + f + ", owner: " + f.getOwner());
-									}
-								} else {
-									if(mustMark(source, fl.getOwner())) {
-										System.err.println("  can't resolve field(get): " + fl.getOwner() + "." + fl.getName() + " " + fl.getDesc() + ", " + (fl.getInstanceExpression() == null));
-									}
-								}
-							}
-						}
-					}
-				}
-			}
-		}
+		System.out.printf("  Renamed %d fields.%n", remapped.size());
 		
+		MappingTable table = shared != null ? shared : new MappingTable();
 		for(Entry<FieldNode, String> e : remapped.entrySet()) {
-			e.getKey().node.name = e.getValue();
+			table.mapField(e.getKey(), e.getValue());
 		}
 		
-		System.out.printf("  Renamed %d fields.%n", remapped.size());
-
+		if(shared == null) {
+			return new RemappingPass(table).apply(pcxt, this);
+		}
 		return PassResult.with(pcxt, this).finished().make();
 	}
-	
-	private boolean mustMark(ApplicationClassSource source, String owner) {
-		ClassNode cn = source.findClassNode(owner);
-		return cn == null || !source.isLibraryClass(owner);
-	}
 }
@@ -0,0 +1,418 @@
+package org.mapleir.deob.passes.rename;
+
+import java.io.*;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.LocateableClassNode;
+import org.mapleir.app.service.MethodChainIndex;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.Type;
+
+/**
+ * Reads and writes the contents of a {@link MappingTable}, so that the names
+ * chosen by the renaming passes can be kept and applied again to another
+ * build of the same application.
+ *
+ * Two formats are supported. The text format is the one used by ProGuard:
+ * <pre>
+ * com.example.Foo -> a.b:
+ *     int count -> a
+ *     void run(int,java.lang.String) -> b
+ * </pre>
+ * where member lines use the original names of classes. The binary format
+ * holds the same records with JVM descriptors, and each distinct string is
+ * only written once, later occurrences refer back to it by index.
+ *
+ * Both are read and written a class at a time. When reading, the mappings
+ * are resolved against the classes of the application, entries for classes
+ * or members that don't exist are skipped, and method names are extended to
+ * the whole of each method's chain. The table is then applied with a
+ * {@link RemappingPass}, with warnings off if the mappings are partial.
+ */
+public class MappingFile {
+	private static final Logger LOGGER = Logger.getLogger(MappingFile.class);
+
+	private static final int MAGIC = 0x4D49524D; // MIRM
+	private static final int VERSION = 1;
+
+	private static final int END = 0;
+	private static final int CLASS = 1;
+	private static final int FIELD = 2;
+	private static final int METHOD = 3;
+
+	private MappingFile() {
+	}
+
+	/**
+	 * Reads a mapping file in either format.
+	 */
+	public static MappingTable read(File file, ApplicationClassSource source) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+			in.mark(4);
+			int magic = 0;
+			for(int i = 0; i < 4; i++) {
+				magic = (magic << 8) | (in.read() & 0xFF);
+			}
+			in.reset();
+			if(magic == MAGIC) {
+				return readBinary(in, source);
+			} else {
+				return readText(new InputStreamReader(in, StandardCharsets.UTF_8), source);
+			}
+		}
+	}
+
+	public static void write(MappingTable table, File file, boolean binary) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+			if(binary) {
+				writeBinary(table, out);
+			} else {
+				Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+				writeText(table, w);
+				w.flush();
+			}
+		}
+	}
+
+	public static MappingTable readText(Reader reader, ApplicationClassSource source) throws IOException {
+		Resolver resolver = new Resolver(source);
+		BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+		int lineNumber = 0;
+		String line;
+		while((line = br.readLine()) != null) {
+			lineNumber++;
+			boolean member = !line.isEmpty() && Character.isWhitespace(line.charAt(0));
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int arrow = line.indexOf(" -> ");
+			if(arrow == -1) {
+				throw new IOException(String.format("line %d: expected ' -> ' in %s", lineNumber, line));
+			}
+			String left = line.substring(0, arrow).trim();
+			String right = line.substring(arrow + 4).trim();
+
+			if(!member) {
+				if(!right.endsWith(":")) {
+					throw new IOException(String.format("line %d: expected ':' after %s", lineNumber, right));
+				}
+				right = right.substring(0, right.length() - 1);
+				resolver.startClass(left.replace('.', '/'), right.replace('.', '/'));
+				continue;
+			}
+
+			int paren = left.indexOf('(');
+			if(paren == -1) {
+				int space = left.lastIndexOf(' ');
+				if(space == -1) {
+					throw new IOException(String.format("line %d: malformed field %s", lineNumber, left));
+				}
+				resolver.field(left.substring(space + 1), toDesc(left.substring(0, space).trim()), right);
+			} else {
+				/* the line numbers in 1:5:void m() -> a */
+				int start = 0;
+				while(start < paren && (Character.isDigit(left.charAt(start)) || left.charAt(start) == ':')) {
+					start++;
+				}
+				int space = left.lastIndexOf(' ', paren);
+				int close = left.indexOf(')', paren);
+				if(space < start || close == -1) {
+					throw new IOException(String.format("line %d: malformed method %s", lineNumber, left));
+				}
+				String name = left.substring(space + 1, paren);
+				if(name.indexOf('.') != -1) {
+					/* inlined from another class */
+					continue;
+				}
+				StringBuilder desc = new StringBuilder("(");
+				String params = left.substring(paren + 1, close);
+				if(!params.isEmpty()) {
+					for(String p : params.split(",")) {
+						desc.append(toDesc(p.trim()));
+					}
+				}
+				desc.append(')').append(toDesc(left.substring(start, space).trim()));
+				resolver.method(name, desc.toString(), right);
+			}
+		}
+		return resolver.finish();
+	}
+
+	public static void writeText(MappingTable table, Writer w) throws IOException {
+		for(Entry<String, ClassEntry> e : group(table).entrySet()) {
+			ClassEntry ce = e.getValue();
+			w.write(e.getKey().replace('/', '.'));
+			w.write(" -> ");
+			w.write(table.mapClassName(e.getKey()).replace('/', '.'));
+			w.write(":\n");
+			for(String[] f : ce.fields) {
+				w.write("    ");
+				w.write(Type.getType(f[1]).getClassName());
+				w.write(' ');
+				w.write(f[0]);
+				w.write(" -> ");
+				w.write(f[2]);
+				w.write('\n');
+			}
+			for(String[] m : ce.methods) {
+				w.write("    ");
+				w.write(Type.getReturnType(m[1]).getClassName());
+				w.write(' ');
+				w.write(m[0]);
+				w.write('(');
+				Type[] args = Type.getArgumentTypes(m[1]);
+				for(int i = 0; i < args.length; i++) {
+					if(i > 0) {
+						w.write(',');
+					}
+					w.write(args[i].getClassName());
+				}
+				w.write(") -> ");
+				w.write(m[2]);
+				w.write('\n');
+			}
+		}
+	}
+
+	public static MappingTable readBinary(InputStream in, ApplicationClassSource source) throws IOException {
+		DataInputStream dis = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16));
+		if(dis.readInt() != MAGIC) {
+			throw new IOException("not a binary mapping file");
+		}
+		int version = dis.readUnsignedByte();
+		if(version != VERSION) {
+			throw new IOException("unsupported mapping file version " + version);
+		}
+		Resolver resolver = new Resolver(source);
+		List<String> strings = new ArrayList<>();
+		for(;;) {
+			int tag = dis.readUnsignedByte();
+			switch(tag) {
+				case END:
+					return resolver.finish();
+				case CLASS:
+					resolver.startClass(readString(dis, strings), readString(dis, strings));
+					break;
+				case FIELD:
+					resolver.field(readString(dis, strings), readString(dis, strings), readString(dis, strings));
+					break;
+				case METHOD:
+					resolver.method(readString(dis, strings), readString(dis, strings), readString(dis, strings));
+					break;
+				default:
+					throw new IOException("bad record " + tag);
+			}
+		}
+	}
+
+	public static void writeBinary(MappingTable table, OutputStream out) throws IOException {
+		DataOutputStream dos = new DataOutputStream(out);
+		Map<String, Integer> strings = new HashMap<>();
+		dos.writeInt(MAGIC);
+		dos.writeByte(VERSION);
+		for(Entry<String, ClassEntry> e : group(table).entrySet()) {
+			ClassEntry ce = e.getValue();
+			dos.writeByte(CLASS);
+			writeString(dos, strings, e.getKey());
+			writeString(dos, strings, table.mapClassName(e.getKey()));
+			for(String[] f : ce.fields) {
+				dos.writeByte(FIELD);
+				for(String s : f) {
+					writeString(dos, strings, s);
+				}
+			}
+			for(String[] m : ce.methods) {
+				dos.writeByte(METHOD);
+				for(String s : m) {
+					writeString(dos, strings, s);
+				}
+			}
+		}
+		dos.writeByte(END);
+		dos.flush();
+	}
+
+	/* strings are written as a varint, 0 followed by the string if it's new
+	 * or otherwise 1 + the index of the string in the order it was first
+	 * written. */
+	private static void writeString(DataOutputStream dos, Map<String, Integer> strings, String s) throws IOException {
+		Integer index = strings.get(s);
+		if(index == null) {
+			strings.put(s, strings.size());
+			dos.writeByte(0);
+			dos.writeUTF(s);
+		} else {
+			int v = index + 1;
+			while((v & ~0x7F) != 0) {
+				dos.writeByte((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			dos.writeByte(v);
+		}
+	}
+
+	private static String readString(DataInputStream dis, List<String> strings) throws IOException {
+		int v = 0;
+		for(int shift = 0;; shift += 7) {
+			int b = dis.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if(v == 0) {
+			String s = dis.readUTF();
+			strings.add(s);
+			return s;
+		} else if(v > strings.size()) {
+			throw new IOException("bad string index " + v);
+		} else {
+			return strings.get(v - 1);
+		}
+	}
+
+	private static String toDesc(String javaType) {
+		int dims = 0;
+		while(javaType.endsWith("[]")) {
+			javaType = javaType.substring(0, javaType.length() - 2);
+			dims++;
+		}
+		StringBuilder sb = new StringBuilder(javaType.length() + dims + 2);
+		for(int i = 0; i < dims; i++) {
+			sb.append('[');
+		}
+		switch(javaType) {
+			case "void": return sb.append('V').toString();
+			case "boolean": return sb.append('Z').toString();
+			case "char": return sb.append('C').toString();
+			case "byte": return sb.append('B').toString();
+			case "short": return sb.append('S').toString();
+			case "int": return sb.append('I').toString();
+			case "float": return sb.append('F').toString();
+			case "long": return sb.append('J').toString();
+			case "double": return sb.append('D').toString();
+			default:
+				return sb.append('L').append(javaType.replace('.', '/')).append(';').toString();
+		}
+	}
+
+	/* the mappings of the table by original class name, in name order so
+	 * the output is stable. */
+	private static Map<String, ClassEntry> group(MappingTable table) {
+		Map<String, ClassEntry> classes = new TreeMap<>();
+		for(String name : table.getClasses().keySet()) {
+			classes.computeIfAbsent(name, k -> new ClassEntry());
+		}
+		for(Entry<FieldNode, String> e : table.getFields().entrySet()) {
+			String[] origin = table.getOrigin(e.getKey());
+			classes.computeIfAbsent(origin[0], k -> new ClassEntry()).fields.add(new String[] { origin[1], origin[2], e.getValue() });
+		}
+		for(Entry<MethodNode, String> e : table.getMethods().entrySet()) {
+			String[] origin = table.getOrigin(e.getKey());
+			classes.computeIfAbsent(origin[0], k -> new ClassEntry()).methods.add(new String[] { origin[1], origin[2], e.getValue() });
+		}
+		Comparator<String[]> order = Comparator.<String[], String>comparing(a -> a[0]).thenComparing(a -> a[1]);
+		for(ClassEntry ce : classes.values()) {
+			ce.fields.sort(order);
+			ce.methods.sort(order);
+		}
+		return classes;
+	}
+
+	private static class ClassEntry {
+		final List<String[]> fields = new ArrayList<>();
+		final List<String[]> methods = new ArrayList<>();
+	}
+
+	/* builds the table from the records as they are read. */
+	private static class Resolver {
+		private final ApplicationClassSource source;
+		private final MappingTable table = new MappingTable();
+		private ClassNode current;
+		private int skipped;
+
+		Resolver(ApplicationClassSource source) {
+			this.source = source;
+		}
+
+		void startClass(String name, String newName) {
+			LocateableClassNode n = source.findIfLoaded(name);
+			if(n == null) {
+				LOGGER.debug("no class " + name);
+				skipped++;
+				current = null;
+				return;
+			}
+			current = n.node;
+			if(!name.equals(newName)) {
+				table.mapClass(name, newName);
+			}
+		}
+
+		void field(String name, String desc, String newName) {
+			if(current == null || name.equals(newName)) {
+				return;
+			}
+			for(FieldNode f : current.getFields()) {
+				if(f.getName().equals(name) && f.getDesc().equals(desc)) {
+					table.mapField(f, newName);
+					return;
+				}
+			}
+			LOGGER.debug("no field " + current.getName() + "." + name + " " + desc);
+			skipped++;
+		}
+
+		void method(String name, String desc, String newName) {
+			if(current == null || name.equals(newName) || name.equals("<init>") || name.equals("<clinit>")) {
+				return;
+			}
+			for(MethodNode m : current.getMethods()) {
+				if(m.getName().equals(name) && m.getDesc().equals(desc)) {
+					table.mapMethod(m, newName);
+					return;
+				}
+			}
+			LOGGER.debug("no method " + current.getName() + "." + name + desc);
+			skipped++;
+		}
+
+		MappingTable finish() {
+			int extended = 0;
+			if(table.hasMethods()) {
+				/* methods added since the mappings were made must be renamed
+				 * with the rest of their chain. */
+				MethodChainIndex chains = new MethodChainIndex(source.getClassTree());
+				for(Entry<MethodNode, String> e : new ArrayList<>(table.getMethods().entrySet())) {
+					MethodNode m = e.getKey();
+					if(Modifier.isStatic(m.node.access)) {
+						continue;
+					}
+					for(MethodNode o : chains.getChain(m)) {
+						String name = table.getMethodName(o);
+						if(name == null) {
+							if(source.isLibraryClass(o.getOwner())) {
+								LOGGER.warn(String.format("%s renamed to %s but overrides %s", m, e.getValue(), o));
+							} else {
+								table.mapMethod(o, e.getValue());
+								extended++;
+							}
+						} else if(!name.equals(e.getValue())) {
+							LOGGER.warn(String.format("%s renamed to %s but %s to %s", m, e.getValue(), o, name));
+						}
+					}
+				}
+			}
+			LOGGER.info(String.format("read %d class, %d method (%d from chains), %d field mappings, skipped %d", table.getClasses().size(), table.getMethods().size(), extended, table.getFields().size(), skipped));
+			return table;
+		}
+	}
+}
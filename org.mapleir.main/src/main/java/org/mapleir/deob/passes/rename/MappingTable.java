@@ -0,0 +1,180 @@
+package org.mapleir.deob.passes.rename;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.Type;
+
+/**
+ * The new names of classes, methods and fields, collected by the renaming
+ * passes and applied together by a {@link RemappingPass}.
+ *
+ * Descriptors and types are rewritten through this table, which memoises
+ * the result for every distinct descriptor so that the many occurrences of
+ * the same descriptor across the IR are only parsed once. Mappings should
+ * all be added before the table is used concurrently.
+ */
+public class MappingTable {
+	private final Map<String, String> classes = new HashMap<>();
+	private final Map<MethodNode, String> methods = new HashMap<>();
+	private final Map<FieldNode, String> fields = new HashMap<>();
+	/* the owner, name and descriptor of each member when it was mapped, as
+	 * applying the table changes them. */
+	private final Map<Object, String[]> origins = new HashMap<>();
+
+	private final Map<String, String> descs = new ConcurrentHashMap<>();
+	private final Map<Type, Type> types = new ConcurrentHashMap<>();
+
+	public void mapClass(String name, String newName) {
+		String prev = classes.put(name, newName);
+		if(prev != null && !prev.equals(newName)) {
+			throw new IllegalStateException(String.format("%s mapped to %s and %s", name, prev, newName));
+		}
+		/* the memoised descriptors may contain the class. */
+		descs.clear();
+		types.clear();
+	}
+
+	public void mapMethod(MethodNode m, String newName) {
+		methods.put(m, newName);
+		origins.putIfAbsent(m, new String[] { m.getOwner(), m.getName(), m.getDesc() });
+	}
+
+	public void mapField(FieldNode f, String newName) {
+		fields.put(f, newName);
+		origins.putIfAbsent(f, new String[] { f.getOwner(), f.getName(), f.getDesc() });
+	}
+
+	public boolean hasClasses() {
+		return !classes.isEmpty();
+	}
+
+	public boolean hasMethods() {
+		return !methods.isEmpty();
+	}
+
+	public boolean hasFields() {
+		return !fields.isEmpty();
+	}
+
+	public boolean isEmpty() {
+		return classes.isEmpty() && methods.isEmpty() && fields.isEmpty();
+	}
+
+	public Map<String, String> getClasses() {
+		return Collections.unmodifiableMap(classes);
+	}
+
+	public Map<MethodNode, String> getMethods() {
+		return Collections.unmodifiableMap(methods);
+	}
+
+	public Map<FieldNode, String> getFields() {
+		return Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * @param member a mapped method or field
+	 * @return the owner, name and descriptor of the member before the table
+	 * was applied
+	 */
+	String[] getOrigin(Object member) {
+		return origins.get(member);
+	}
+
+	/**
+	 * @param name the internal name of a class
+	 * @return the new internal name of the class, or the name if it isn't
+	 * mapped
+	 */
+	public String mapClassName(String name) {
+		return name == null ? null : classes.getOrDefault(name, name);
+	}
+
+	/**
+	 * @return the new name of the method, or null if it isn't mapped
+	 */
+	public String getMethodName(MethodNode m) {
+		return methods.get(m);
+	}
+
+	/**
+	 * @return the new name of the field, or null if it isn't mapped
+	 */
+	public String getFieldName(FieldNode f) {
+		return fields.get(f);
+	}
+
+	/**
+	 * Maps the owner of a member reference, which is an array descriptor
+	 * rather than an internal name for methods invoked on arrays.
+	 */
+	public String mapOwner(String owner) {
+		if(owner != null && owner.startsWith("[")) {
+			return mapDesc(owner);
+		} else {
+			return mapClassName(owner);
+		}
+	}
+
+	/**
+	 * @param desc a field or method descriptor
+	 * @return the descriptor with the class names in it mapped
+	 */
+	public String mapDesc(String desc) {
+		if(desc == null || classes.isEmpty()) {
+			return desc;
+		}
+		return descs.computeIfAbsent(desc, this::mapDesc0);
+	}
+
+	public Type mapType(Type t) {
+		if(classes.isEmpty()) {
+			return t;
+		}
+		switch(t.getSort()) {
+			case Type.OBJECT:
+			case Type.ARRAY:
+			case Type.METHOD:
+				return types.computeIfAbsent(t, k -> {
+					String desc = k.getDescriptor();
+					String newDesc = mapDesc(desc);
+					return newDesc.equals(desc) ? k : Type.getType(newDesc);
+				});
+			default:
+				return t;
+		}
+	}
+
+	private String mapDesc0(String desc) {
+		StringBuilder sb = null;
+		int last = 0;
+		for(int i = 0; i < desc.length(); i++) {
+			if(desc.charAt(i) != 'L') {
+				continue;
+			}
+			int end = desc.indexOf(';', i);
+			if(end == -1) {
+				throw new IllegalArgumentException(desc);
+			}
+			String name = desc.substring(i + 1, end);
+			String newName = classes.get(name);
+			if(newName != null) {
+				if(sb == null) {
+					sb = new StringBuilder(desc.length() + 16);
+				}
+				sb.append(desc, last, i + 1).append(newName);
+				last = end;
+			}
+			i = end;
+		}
+		if(sb == null) {
+			return desc;
+		}
+		return sb.append(desc, last, desc.length()).toString();
+	}
+}
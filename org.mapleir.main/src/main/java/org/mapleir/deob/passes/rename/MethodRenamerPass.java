@@ -2,42 +2,47 @@ package org.mapleir.deob.passes.rename;
 
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import org.mapleir.app.client.SimpleApplicationContext;
 import org.mapleir.app.service.ApplicationClassSource;
-import org.mapleir.app.service.InvocationResolver;
+import org.mapleir.app.service.MethodChainIndex;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassResult;
 import org.mapleir.deob.util.RenamingHeuristic;
 import org.mapleir.deob.util.RenamingUtil;
-import org.mapleir.ir.cfg.BasicBlock;
-import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.code.Expr;
-import org.mapleir.ir.code.Opcode;
-import org.mapleir.ir.code.Stmt;
-import org.mapleir.ir.code.expr.invoke.InvocationExpr;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
 
 public class MethodRenamerPass implements IPass {
 
 	private final RenamingHeuristic heuristic;
+	private final MappingTable shared;
 	
 	public MethodRenamerPass(RenamingHeuristic heuristic) {
+		this(heuristic, null);
+	}
+	
+	/**
+	 * @param shared the table to add the new names to, which are then only
+	 * applied by a {@link RemappingPass} over the table, or null to apply
+	 * them straight away
+	 */
+	public MethodRenamerPass(RenamingHeuristic heuristic, MappingTable shared) {
 		this.heuristic = heuristic;
+		this.shared = shared;
 	}
 	
 	@Override
 	public PassResult accept(PassContext pcxt) {
 		AnalysisContext cxt = pcxt.getAnalysis();
 		ApplicationClassSource source = cxt.getApplication();
-		InvocationResolver resolver = cxt.getInvocationResolver();
+		MethodChainIndex chains = new MethodChainIndex(source.getClassTree());
 		
 		Map<MethodNode, String> remapped = new HashMap<>();
 
@@ -70,7 +75,7 @@ public class MethodRenamerPass implements IPass {
 					if(!m.getName().equals("<init>")) {
 						// Set<ClassNode> classes = source.getStructures().dfsTree(m.owner, true, true, true);
 						// Set<MethodNode> methods = getVirtualMethods(cxt, classes, m.name, m.desc);
-						Set<MethodNode> methods = resolver.getHierarchyMethodChain(m.owner, m.getName(), m.node.desc, true);
+						Set<MethodNode> methods = chains.getChain(m);
 						if(canRename(cxt, methods)) {
 							String newName = RenamingUtil.createName(i++);
 							
@@ -124,150 +129,35 @@ public class MethodRenamerPass implements IPass {
 			}
 		}
 		
-		rename(cxt, remapped, true);
 		System.out.printf("  Remapped %d/%d methods.%n", remapped.size(), totalMethods);
-
+		
+		MappingTable table = shared != null ? shared : new MappingTable();
+		for(Entry<MethodNode, String> e : remapped.entrySet()) {
+			table.mapMethod(e.getKey(), e.getValue());
+		}
+		
+		if(shared == null) {
+			return new RemappingPass(table).apply(pcxt, this);
+		}
 		return PassResult.with(pcxt, this).finished().make();
 	}
 	
 	public static void rename(AnalysisContext cxt, Map<MethodNode, String> remapped, boolean warn) {
-		ApplicationClassSource source = cxt.getApplication();
-		InvocationResolver resolver = cxt.getInvocationResolver();
-		
-		for(ClassNode cn : source.iterate()) {
-			{
-				if(cn.node.outerMethod != null) {
-//					ClassNode owner = tree.getClass(cn.node.outerClass);
-					System.out.println("Outer: " + cn.node.outerClass + "." + cn.node.outerMethod + " " + cn.node.outerMethodDesc);
-					cn.node.outerClass = null;
-					cn.node.outerMethod = null;
-					cn.node.outerMethodDesc = null;
-					//					System.out.println(owner.name);
-//					do {
-//						for(MethodNode m : owner.methods) {
-//							System.out.println(m);
-//							if(m.name.equals(cn.outerMethod) && m.desc.equals(cn.outerMethodDesc)) {
-//								System.out.println("m: " + m);
-//							}
-//						}
-//						owner = tree.getClass(owner.superName);
-//						System.out.println(cn.superName);
-//						System.out.println(owner);
-//					} while(owner != null);
-				}
-			}
-			
-			Set<Expr> visited = new HashSet<>();
-			
-			for(MethodNode m : cn.getMethods()) {
-				ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
-				
-				for(BasicBlock b : cfg.vertices()) {
-					for(Stmt stmt : b) {
-						for(Expr e : stmt.enumerateOnlyChildren()) {
-							
-							if(e.getOpcode() == Opcode.INVOKE) {
-								InvocationExpr invoke = (InvocationExpr) e;
-								if (invoke.isDynamic())
-									throw new UnsupportedOperationException();
-								
-								if(visited.contains(invoke)) {
-									throw new RuntimeException(invoke.toString());
-								}
-								visited.add(invoke);
-								
-								if(invoke.getOwner().startsWith("[")) {
-									System.err.println("  ignore array object invoke: " + invoke + ", owner: " + invoke.getOwner());
-									continue;
-								}
-								
-								if(invoke.isStatic()) {
-									MethodNode site = resolver.resolveStaticCall(invoke.getOwner(), invoke.getName(), invoke.getDesc());
-									
-									if(site != null) {
-										if(remapped.containsKey(site)) {
-											invoke.setName(remapped.get(site));
-										} else {
-											if(warn && mustMark(source, invoke.getOwner())) {
-												System.err.println("  invalid site(s): " + invoke);
-											}
-										}
-									} else {
-										if(mustMark(source, invoke.getOwner())) {
-											System.err.printf("  can't resolve(s) %s ; %s.%s %s%n", invoke, invoke.getOwner(), invoke.getName(), invoke.getDesc());
-
-											/*if(m.toString().equals("hey.IIiIiiIiII()Lime;")) {
-												System.out.println("MethodRenamerPass.accept() " + newName);
-												throw new UnsupportedOperationException();
-											}*/
-											
-											if(invoke.getOwner().equals("hey")) {
-												for(MethodNode mm : cxt.getApplication().findClassNode(invoke.getOwner()).getMethods()) {
-													System.out.println(mm);
-												}
-												throw new UnsupportedOperationException();
-											}
-										}
-									}
-								} else {
-//									 Set<MethodNode> sites = resolver.resolveVirtualCalls(invoke.getOwner(), invoke.getName(), invoke.getDesc());
-									// Set<ClassNode> classes = source.getStructures().dfsTree(cn, true, true, true);
-									// Set<MethodNode> sites = getVirtualMethods(cxt, classes, invoke.getName(), invoke.getDesc());
-									Set<MethodNode> sites = resolver.getHierarchyMethodChain(source.findClassNode(invoke.getOwner()), invoke.getName(), invoke.getDesc(), true);
-									if(sites.size() > 0) {
-										/* all of the sites must be linked by the same name,
-										 * so we can use any to find the new name. */
-										
-										boolean anyContains = false;
-										boolean allContains = true;
-										for(MethodNode s : sites) {
-											anyContains |= remapped.containsKey(s);
-											allContains &= remapped.containsKey(s);
-										}
-										
-										if(anyContains && !allContains) {
-											System.err.println("mismatch: ");
-											// System.err.println(classes);
-											System.err.println(sites);
-											throw new RuntimeException();
-										}
-										
-										MethodNode site = sites.iterator().next();
-										if(remapped.containsKey(site)) {
-											invoke.setName(remapped.get(site));
-										} else {
-											if(warn && !site.getName().equals("<init>") && canRename(cxt, sites)) {
-												System.err.println("  invalid site(v): " + invoke + ", " + sites);
-											}
-										}
-									} else {
-										if(mustMark(source, invoke.getOwner())) {
-											System.err.println("  can't resolve(v) " + invoke + ", owner: " + invoke.getOwner() + " desc " + invoke.getDesc());
-											// System.err.println("  classes: " + classes);
-										}
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+		MappingTable table = new MappingTable();
+		for(Entry<MethodNode, String> e : remapped.entrySet()) {
+			table.mapMethod(e.getKey(), e.getValue());
 		}
 		
-		/* Rename the methods after as we need to resolve
-		 * them using the old names during the invocation 
-		 * analysis above. */
-		for(Entry<MethodNode, String> e : remapped.entrySet()) {
-			// System.out.printf("%s -> %s%n", e.getKey(), e.getValue());
-			e.getKey().node.name = e.getValue();
+		try {
+			new RemappingPass(table).setWarn(warn).apply(cxt);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
 	}
 	
-	private static boolean mustMark(ApplicationClassSource tree, String owner) {
-		ClassNode cn = tree.findClassNode(owner);
-		return cn == null || !tree.isLibraryClass(owner);
-	}
-	
 	private static boolean canRename(AnalysisContext cxt, Set<MethodNode> methods) {
 		for(MethodNode m : methods) {
 			if(cxt.getApplication().isLibraryClass(m.getOwner())) {
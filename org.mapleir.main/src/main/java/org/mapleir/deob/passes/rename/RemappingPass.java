@@ -0,0 +1,765 @@
+package org.mapleir.deob.passes.rename;
+
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InvocationResolver;
+import org.mapleir.app.service.MethodChainIndex;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.deob.IPass;
+import org.mapleir.deob.PassContext;
+import org.mapleir.deob.PassResult;
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.*;
+import org.mapleir.ir.code.expr.invoke.InitialisedObjectExpr;
+import org.mapleir.ir.code.expr.invoke.InvocationExpr;
+import org.mapleir.ir.code.stmt.FieldStoreStmt;
+import org.mapleir.ir.code.stmt.ReturnStmt;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
+import org.mapleir.stdlib.collections.CollectionUtils;
+import org.objectweb.asm.Type;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+/**
+ * Applies the class, method and field mappings of a {@link MappingTable} in
+ * one sweep over the IR of the application, rather than one sweep per kind
+ * of mapping.
+ *
+ * Member references are resolved against the hierarchy before anything is
+ * renamed, so the code of the classes is rewritten in parallel first and the
+ * classes themselves afterwards. Resolution may load runtime classes, so it
+ * is serialised and memoised per distinct reference.
+ */
+public class RemappingPass implements IPass, Opcode {
+
+	/* cached for references which don't resolve to a renamed member. */
+	private static final String UNMAPPED = new String();
+
+	private final MappingTable table;
+	private final int threads;
+	private boolean warn = true;
+
+	public RemappingPass(MappingTable table) {
+		this(table, Runtime.getRuntime().availableProcessors());
+	}
+
+	public RemappingPass(MappingTable table, int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("threads: " + threads);
+		}
+		this.table = table;
+		this.threads = threads;
+	}
+
+	/**
+	 * @param warn whether to report method references whose target should
+	 * have been renamed but wasn't
+	 */
+	public RemappingPass setWarn(boolean warn) {
+		this.warn = warn;
+		return this;
+	}
+
+	public MappingTable getTable() {
+		return table;
+	}
+
+	@Override
+	public PassResult accept(PassContext pcxt) {
+		return apply(pcxt, this);
+	}
+
+	/* also used by the renaming passes when they aren't sharing a table. */
+	PassResult apply(PassContext pcxt, IPass pass) {
+		try {
+			apply(pcxt.getAnalysis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return PassResult.with(pcxt, pass).fatal(e).make();
+		} catch (ExecutionException e) {
+			return PassResult.with(pcxt, pass).fatal(e.getCause()).make();
+		}
+		return PassResult.with(pcxt, pass).finished().make();
+	}
+
+	/**
+	 * Rewrites the IR and the classes of the application.
+	 *
+	 * @return the number of IR nodes that were changed
+	 */
+	public int apply(AnalysisContext cxt) throws InterruptedException, ExecutionException {
+		if(table.isEmpty()) {
+			return 0;
+		}
+		ApplicationClassSource source = cxt.getApplication();
+		List<ClassNode> classes = new ArrayList<>(CollectionUtils.collate(source.iterator()));
+
+		/* classes which have been lifted have their IR rewritten, the rest
+		 * are rewritten in their instruction lists which is much cheaper and
+		 * leaves those which don't refer to anything in the table untouched.
+		 * a class is either entirely lifted or not at all, since the graphs
+		 * of the cache may be stored under a hash of the original class. */
+		IRCache cache = cxt.getIRCache();
+		Map<MethodNode, ControlFlowGraph> cfgs = new HashMap<>();
+		for(ClassNode cn : classes) {
+			boolean lifted = false;
+			for(MethodNode m : cn.getMethods()) {
+				lifted |= cache.containsKey(m);
+			}
+			if(lifted) {
+				/* the cache isn't thread safe, so these are lifted first. the
+				 * names can be remapped before the graphs are in SSA form. */
+				for(MethodNode m : cn.getMethods()) {
+					cfgs.put(m, cache.getFlowGraph(m));
+				}
+			}
+		}
+
+		Sweep sweep = new Sweep(cxt);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(ClassNode cn : classes) {
+				futures.add(executor.submit(() -> {
+					for(MethodNode m : cn.getMethods()) {
+						ControlFlowGraph cfg = cfgs.get(m);
+						if(cfg != null) {
+							sweep.remapCode(m, cfg);
+						} else if(sweep.remapInstructions(m)) {
+							m.markDirty();
+						}
+					}
+				}));
+			}
+			for(Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if(table.hasMethods()) {
+			/* before the descriptors of the outer classes are changed. */
+			for(ClassNode cn : classes) {
+				if(cn.node.outerMethod != null) {
+					String outerMethod = findOuterMethodName(source, cn);
+					if(!outerMethod.equals(cn.node.outerMethod)) {
+						cn.node.outerMethod = outerMethod;
+						cn.markDirty();
+					}
+				}
+			}
+		}
+
+		for(ClassNode cn : classes) {
+			remapClass(cn, cfgs);
+		}
+
+		/* only now, as the members were resolved using the old names above. */
+		for(Entry<MethodNode, String> e : table.getMethods().entrySet()) {
+			e.getKey().node.name = e.getValue();
+			e.getKey().markDirty();
+		}
+		for(Entry<FieldNode, String> e : table.getFields().entrySet()) {
+			e.getKey().node.name = e.getValue();
+			e.getKey().owner.markDirty();
+		}
+
+		if(table.hasClasses()) {
+			source.rebuildTable();
+		}
+
+		System.out.printf("  Remapped %d classes, %d methods, %d fields (%d references).%n", table.getClasses().size(), table.getMethods().size(), table.getFields().size(), sweep.changed.get());
+		return sweep.changed.get();
+	}
+
+	private void remapClass(ClassNode cn, Map<MethodNode, ControlFlowGraph> cfgs) {
+		if(!table.hasClasses()) {
+			return;
+		}
+
+		unsupported(cn.node.signature);
+		unsupported(cn.node.visibleAnnotations);
+		unsupported(cn.node.invisibleAnnotations);
+		unsupported(cn.node.visibleTypeAnnotations);
+		unsupported(cn.node.invisibleTypeAnnotations);
+		unsupported(cn.node.attrs);
+		unsupported(cn.node.innerClasses);
+
+		/* classes are only marked when something in them changes, so that
+		 * the others can be copied as they are. */
+		boolean changed = false;
+		String name = table.mapClassName(cn.node.name);
+		String outerMethodDesc = table.mapDesc(cn.node.outerMethodDesc);
+		changed |= !Objects.equals(outerMethodDesc, cn.node.outerMethodDesc);
+		cn.node.outerMethodDesc = outerMethodDesc;
+		String superName = table.mapClassName(cn.node.superName);
+		String outerClass = table.mapClassName(cn.node.outerClass);
+		changed |= !name.equals(cn.node.name) || !Objects.equals(superName, cn.node.superName) || !Objects.equals(outerClass, cn.node.outerClass);
+		cn.node.name = name;
+		cn.node.superName = superName;
+		cn.node.outerClass = outerClass;
+		changed |= mapNames(cn.node.interfaces);
+
+		for(FieldNode f : cn.getFields()) {
+			String desc = table.mapDesc(f.node.desc);
+			changed |= !desc.equals(f.node.desc);
+			f.node.desc = desc;
+
+			unsupported(f.node.visibleAnnotations);
+			unsupported(f.node.invisibleAnnotations);
+			unsupported(f.node.visibleTypeAnnotations);
+			unsupported(f.node.invisibleTypeAnnotations);
+			unsupported(f.node.attrs);
+		}
+
+		for(MethodNode m : cn.getMethods()) {
+			String desc = table.mapDesc(m.node.desc);
+			changed |= !desc.equals(m.node.desc);
+			m.node.desc = desc;
+
+			unsupported(m.node.signature);
+			unsupported(m.node.parameters);
+			unsupported(m.node.visibleAnnotations);
+			unsupported(m.node.invisibleAnnotations);
+			unsupported(m.node.visibleTypeAnnotations);
+			unsupported(m.node.invisibleTypeAnnotations);
+			unsupported(m.node.attrs);
+			unsupported(m.node.annotationDefault);
+			unsupported(m.node.visibleParameterAnnotations);
+			unsupported(m.node.invisibleParameterAnnotations);
+			unsupported(m.node.visibleLocalVariableAnnotations);
+			unsupported(m.node.invisibleLocalVariableAnnotations);
+
+			changed |= mapNames(m.node.exceptions);
+
+			for(TryCatchBlockNode tcbn : m.node.tryCatchBlocks) {
+				String type = table.mapClassName(tcbn.type);
+				changed |= !Objects.equals(type, tcbn.type);
+				tcbn.type = type;
+			}
+
+			if(m.node.localVariables != null) {
+				if(cfgs.containsKey(m)) {
+					/* stale debug info, dropped rather than remapped. */
+					m.node.localVariables.clear();
+				} else {
+					for(LocalVariableNode lvn : m.node.localVariables) {
+						String lvDesc = table.mapDesc(lvn.desc);
+						if(!lvDesc.equals(lvn.desc)) {
+							lvn.desc = lvDesc;
+							lvn.signature = null;
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+
+		if(changed) {
+			cn.markDirty();
+		}
+	}
+
+	/* the enclosing method is declared in the outer class itself. */
+	private String findOuterMethodName(ApplicationClassSource source, ClassNode cn) {
+		ClassNode outer = source.findClassNode(cn.node.outerClass);
+		if(outer != null) {
+			for(MethodNode m : outer.getMethods()) {
+				if(m.getName().equals(cn.node.outerMethod) && m.getDesc().equals(cn.node.outerMethodDesc)) {
+					String newName = table.getMethodName(m);
+					return newName != null ? newName : m.getName();
+				}
+			}
+		}
+		return cn.node.outerMethod;
+	}
+
+	private boolean mapNames(List<String> names) {
+		boolean changed = false;
+		for(ListIterator<String> it = names.listIterator(); it.hasNext();) {
+			String s = it.next();
+			String newName = table.mapClassName(s);
+			if(!newName.equals(s)) {
+				it.set(newName);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private static void unsupported(Object o) {
+		boolean col = o instanceof Collection;
+		boolean array = (o != null && o.getClass().isArray());
+
+		if((col && ((Collection<?>) o).size() > 0) || (array && ((Object[]) o).length > 0) || (!col && !array && o != null)) {
+			throw new UnsupportedOperationException(array ? Arrays.toString((Object[]) o) : o.toString());
+		}
+	}
+
+	private static boolean mustMark(ApplicationClassSource source, String owner) {
+		ClassNode cn = source.findClassNode(owner);
+		return cn == null || !source.isLibraryClass(owner);
+	}
+
+	private class Sweep {
+		private final ApplicationClassSource source;
+		private final InvocationResolver resolver;
+		private final MethodChainIndex chains;
+		/* new member names by reference, UNMAPPED if they keep their name. */
+		private final Map<String, String> methodRefs = new ConcurrentHashMap<>();
+		private final Map<String, String> fieldRefs = new ConcurrentHashMap<>();
+		private final AtomicInteger changed = new AtomicInteger();
+
+		Sweep(AnalysisContext cxt) {
+			source = cxt.getApplication();
+			resolver = cxt.getInvocationResolver();
+			chains = table.hasMethods() ? new MethodChainIndex(source.getClassTree()) : null;
+		}
+
+		void remapCode(MethodNode m, ControlFlowGraph cfg) {
+			boolean classes = table.hasClasses();
+
+			if(classes) {
+				for(ExceptionRange<BasicBlock> er : cfg.getRanges()) {
+					Set<Type> newTypeSet = new HashSet<>();
+					for(Type t : er.getTypes()) {
+						newTypeSet.add(table.mapType(t));
+					}
+					er.setTypes(newTypeSet);
+				}
+			}
+
+			int count = 0;
+			for(BasicBlock b : cfg.vertices()) {
+				for(Stmt stmt : b) {
+					int op = stmt.getOpcode();
+					if(op == FIELD_STORE) {
+						FieldStoreStmt fs = (FieldStoreStmt) stmt;
+						if(table.hasFields()) {
+							String name = resolveField(fs.getOwner(), fs.getName(), fs.getDesc(), fs.getInstanceExpression() == null);
+							if(name != null) {
+								fs.setName(name);
+							}
+						}
+						if(classes) {
+							fs.setOwner(table.mapClassName(fs.getOwner()));
+							fs.setDesc(table.mapDesc(fs.getDesc()));
+						}
+						count++;
+					} else if(classes && op == RETURN) {
+						ReturnStmt ret = (ReturnStmt) stmt;
+						ret.setType(table.mapType(ret.getType()));
+					} else if(classes && stmt instanceof AbstractCopyStmt) {
+						VarExpr v = ((AbstractCopyStmt) stmt).getVariable();
+						v.setType(table.mapType(v.getType()));
+					}
+
+					for(Expr e : stmt.enumerateOnlyChildren()) {
+						if(remapExpr(e, classes)) {
+							count++;
+						}
+					}
+				}
+			}
+			changed.addAndGet(count);
+		}
+
+		/**
+		 * Rewrites the references in the instruction list of a method which
+		 * hasn't been lifted.
+		 *
+		 * @return whether any instruction was changed
+		 */
+		boolean remapInstructions(MethodNode m) {
+			boolean classes = table.hasClasses();
+			int count = 0;
+			for(AbstractInsnNode insn = m.node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+				switch(insn.getType()) {
+					case AbstractInsnNode.FIELD_INSN: {
+						FieldInsnNode fin = (FieldInsnNode) insn;
+						String name = fin.name, owner = fin.owner, desc = fin.desc;
+						if(table.hasFields()) {
+							String newName = resolveField(owner, name, desc, fin.getOpcode() == Opcodes.GETSTATIC || fin.getOpcode() == Opcodes.PUTSTATIC);
+							if(newName != null) {
+								name = newName;
+							}
+						}
+						if(classes) {
+							owner = table.mapClassName(owner);
+							desc = table.mapDesc(desc);
+						}
+						if(!name.equals(fin.name) || !owner.equals(fin.owner) || !desc.equals(fin.desc)) {
+							fin.name = name;
+							fin.owner = owner;
+							fin.desc = desc;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.METHOD_INSN: {
+						MethodInsnNode min = (MethodInsnNode) insn;
+						String name = min.name, owner = min.owner, desc = min.desc;
+						if(table.hasMethods()) {
+							String newName = resolveMethod(owner, name, desc, min.getOpcode() == Opcodes.INVOKESTATIC);
+							if(newName != null) {
+								name = newName;
+							}
+						}
+						if(classes) {
+							owner = table.mapOwner(owner);
+							desc = table.mapDesc(desc);
+						}
+						if(!name.equals(min.name) || !owner.equals(min.owner) || !desc.equals(min.desc)) {
+							min.name = name;
+							min.owner = owner;
+							min.desc = desc;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+						InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+						String name = indy.name;
+						if(table.hasMethods() && indy.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory") && indy.bsmArgs.length > 0 && indy.bsmArgs[0] instanceof Type) {
+							/* the name of the implemented interface method. */
+							String itf = Type.getReturnType(indy.desc).getInternalName();
+							String newName = resolveMethod(itf, name, ((Type) indy.bsmArgs[0]).getDescriptor(), false);
+							if(newName != null) {
+								name = newName;
+							}
+						}
+						String desc = classes ? table.mapDesc(indy.desc) : indy.desc;
+						Handle bsm = remapHandle(indy.bsm);
+						boolean argsChanged = false;
+						for(int i = 0; i < indy.bsmArgs.length; i++) {
+							Object arg = remapConstant(indy.bsmArgs[i]);
+							argsChanged |= arg != indy.bsmArgs[i];
+							indy.bsmArgs[i] = arg;
+						}
+						if(argsChanged || !name.equals(indy.name) || !desc.equals(indy.desc) || bsm != indy.bsm) {
+							indy.name = name;
+							indy.desc = desc;
+							indy.bsm = bsm;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.TYPE_INSN: {
+						TypeInsnNode tin = (TypeInsnNode) insn;
+						String desc = table.mapOwner(tin.desc);
+						if(!desc.equals(tin.desc)) {
+							tin.desc = desc;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+						MultiANewArrayInsnNode main = (MultiANewArrayInsnNode) insn;
+						String desc = table.mapDesc(main.desc);
+						if(!desc.equals(main.desc)) {
+							main.desc = desc;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.LDC_INSN: {
+						LdcInsnNode ldc = (LdcInsnNode) insn;
+						Object cst = remapConstant(ldc.cst);
+						if(cst != ldc.cst) {
+							ldc.cst = cst;
+							count++;
+						}
+						break;
+					}
+					case AbstractInsnNode.FRAME: {
+						FrameNode frame = (FrameNode) insn;
+						count += mapFrameTypes(frame.local) + mapFrameTypes(frame.stack);
+						break;
+					}
+				}
+			}
+			changed.addAndGet(count);
+			return count > 0;
+		}
+
+		/* returns the same object if the constant is unchanged. */
+		private Object remapConstant(Object cst) {
+			if(cst instanceof Type) {
+				Type t = table.mapType((Type) cst);
+				return t.equals(cst) ? cst : t;
+			} else if(cst instanceof Handle) {
+				return remapHandle((Handle) cst);
+			} else if(cst instanceof ConstantDynamic && !table.isEmpty()) {
+				throw new UnsupportedOperationException(cst.toString());
+			} else {
+				return cst;
+			}
+		}
+
+		private Handle remapHandle(Handle h) {
+			String name = h.getName();
+			switch(h.getTag()) {
+				case Opcodes.H_GETFIELD:
+				case Opcodes.H_GETSTATIC:
+				case Opcodes.H_PUTFIELD:
+				case Opcodes.H_PUTSTATIC:
+					if(table.hasFields()) {
+						String newName = resolveField(h.getOwner(), name, h.getDesc(), h.getTag() == Opcodes.H_GETSTATIC || h.getTag() == Opcodes.H_PUTSTATIC);
+						if(newName != null) {
+							name = newName;
+						}
+					}
+					break;
+				case Opcodes.H_NEWINVOKESPECIAL:
+					break;
+				default:
+					if(table.hasMethods()) {
+						String newName = resolveMethod(h.getOwner(), name, h.getDesc(), h.getTag() == Opcodes.H_INVOKESTATIC);
+						if(newName != null) {
+							name = newName;
+						}
+					}
+					break;
+			}
+			String owner = table.mapClassName(h.getOwner());
+			String desc = table.mapDesc(h.getDesc());
+			if(name.equals(h.getName()) && owner.equals(h.getOwner()) && desc.equals(h.getDesc())) {
+				return h;
+			}
+			return new Handle(h.getTag(), owner, name, desc, h.isInterface());
+		}
+
+		private int mapFrameTypes(List<Object> types) {
+			int count = 0;
+			if(types != null) {
+				for(ListIterator<Object> it = types.listIterator(); it.hasNext();) {
+					Object o = it.next();
+					if(o instanceof String) {
+						String newName = table.mapOwner((String) o);
+						if(!newName.equals(o)) {
+							it.set(newName);
+							count++;
+						}
+					}
+				}
+			}
+			return count;
+		}
+
+		private boolean remapExpr(Expr e, boolean classes) {
+			switch(e.getOpcode()) {
+				case INVOKE: {
+					InvocationExpr invoke = (InvocationExpr) e;
+					if(!classes && !table.hasMethods()) {
+						return false;
+					}
+					if (invoke.isDynamic())
+						throw new UnsupportedOperationException();
+
+					if(table.hasMethods()) {
+						String name = resolveMethod(invoke);
+						if(name != null) {
+							invoke.setName(name);
+						}
+					}
+					if(classes) {
+						invoke.setOwner(table.mapOwner(invoke.getOwner()));
+						invoke.setDesc(table.mapDesc(invoke.getDesc()));
+					}
+					return true;
+				}
+				case FIELD_LOAD: {
+					FieldLoadExpr fl = (FieldLoadExpr) e;
+					if(table.hasFields()) {
+						String name = resolveField(fl.getOwner(), fl.getName(), fl.getDesc(), fl.getInstanceExpression() == null);
+						if(name != null) {
+							fl.setName(name);
+						}
+					}
+					if(classes) {
+						fl.setOwner(table.mapClassName(fl.getOwner()));
+						fl.setDesc(table.mapDesc(fl.getDesc()));
+					}
+					return true;
+				}
+			}
+
+			if(!classes) {
+				return false;
+			}
+
+			switch(e.getOpcode()) {
+				case INIT_OBJ: {
+					InitialisedObjectExpr init = (InitialisedObjectExpr) e;
+					init.setOwner(table.mapClassName(init.getOwner()));
+					init.setDesc(table.mapDesc(init.getDesc()));
+					return true;
+				}
+				case CAST: {
+					CastExpr cast = (CastExpr) e;
+					cast.setType(table.mapType(cast.getType()));
+					return true;
+				}
+				case CATCH: {
+					CaughtExceptionExpr caught = (CaughtExceptionExpr) e;
+					caught.setType(table.mapType(caught.getType()));
+					return true;
+				}
+				case INSTANCEOF: {
+					InstanceofExpr inst = (InstanceofExpr) e;
+					inst.setCheckType(table.mapType(inst.getCheckType()));
+					return true;
+				}
+				case NEW_ARRAY: {
+					NewArrayExpr na = (NewArrayExpr) e;
+					na.setType(table.mapType(na.getType()));
+					return true;
+				}
+				case ALLOC_OBJ: {
+					AllocObjectExpr alloc = (AllocObjectExpr) e;
+					alloc.setType(table.mapType(alloc.getType()));
+					return true;
+				}
+				case LOCAL_LOAD: {
+					VarExpr v = (VarExpr) e;
+					v.setType(table.mapType(v.getType()));
+					return true;
+				}
+				case CONST_LOAD: {
+					ConstantExpr c = (ConstantExpr) e;
+					if(c.getConstant() instanceof Type) {
+						c.setConstant(table.mapType((Type) c.getConstant()));
+						return true;
+					}
+					return false;
+				}
+				default:
+					return false;
+			}
+		}
+
+		private String resolveMethod(InvocationExpr invoke) {
+			return resolveMethod(invoke.getOwner(), invoke.getName(), invoke.getDesc(), invoke.isStatic());
+		}
+
+		private String resolveMethod(String owner, String name, String desc, boolean isStatic) {
+			String key = (isStatic ? "s " : "v ") + owner + "." + name + desc;
+			String newName = methodRefs.get(key);
+			if(newName == null) {
+				synchronized (this) {
+					newName = methodRefs.computeIfAbsent(key, k -> resolveMethod0(owner, name, desc, isStatic));
+				}
+			}
+			return newName == UNMAPPED ? null : newName;
+		}
+
+		private String resolveMethod0(String owner, String name, String desc, boolean isStatic) {
+			if(owner.startsWith("[")) {
+				System.err.println("  ignore array object invoke: " + owner + "." + name + desc);
+				return UNMAPPED;
+			}
+
+			if(isStatic) {
+				MethodNode site = resolver.resolveStaticCall(owner, name, desc);
+
+				if(site != null) {
+					String newName = table.getMethodName(site);
+					if(newName != null) {
+						return newName;
+					} else if(warn && mustMark(source, owner)) {
+						System.err.println("  invalid site(s): " + owner + "." + name + desc);
+					}
+				} else if(mustMark(source, owner)) {
+					System.err.printf("  can't resolve(s) %s.%s %s%n", owner, name, desc);
+				}
+				return UNMAPPED;
+			}
+
+			Set<MethodNode> sites = chains.getChain(source.findClassNode(owner), name, desc);
+			if(sites.size() > 0) {
+				/* all of the sites must be linked by the same name,
+				 * so we can use any to find the new name. */
+				boolean anyContains = false;
+				boolean allContains = true;
+				for(MethodNode s : sites) {
+					anyContains |= table.getMethodName(s) != null;
+					allContains &= table.getMethodName(s) != null;
+				}
+
+				if(anyContains && !allContains) {
+					System.err.println("mismatch: ");
+					System.err.println(sites);
+					throw new RuntimeException();
+				}
+
+				MethodNode site = sites.iterator().next();
+				String newName = table.getMethodName(site);
+				if(newName != null) {
+					return newName;
+				} else if(warn && !site.getName().equals("<init>") && canRename(sites)) {
+					System.err.println("  invalid site(v): " + owner + "." + name + desc + ", " + sites);
+				}
+			} else if(mustMark(source, owner)) {
+				System.err.println("  can't resolve(v) " + owner + "." + name + desc);
+			}
+			return UNMAPPED;
+		}
+
+		private boolean canRename(Set<MethodNode> methods) {
+			for(MethodNode m : methods) {
+				if(source.isLibraryClass(m.getOwner())) {
+					/* inherited from runtime class */
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String resolveField(String owner, String name, String desc, boolean isStatic) {
+			String key = (isStatic ? "s " : "v ") + owner + "." + name + " " + desc;
+			String newName = fieldRefs.get(key);
+			if(newName == null) {
+				synchronized (this) {
+					newName = fieldRefs.computeIfAbsent(key, k -> resolveField0(owner, name, desc, isStatic));
+				}
+			}
+			return newName == UNMAPPED ? null : newName;
+		}
+
+		private String resolveField0(String owner, String name, String desc, boolean isStatic) {
+			FieldNode f = resolver.findField(owner, name, desc, isStatic);
+
+			if(f != null) {
+				String newName = table.getFieldName(f);
+				if(newName != null) {
+					return newName;
+				} else if(mustMark(source, f.getOwner())) {
+					System.err.println("  no remap for " + f + ", owner: " + f.getOwner());
+				}
+			} else if(mustMark(source, owner)) {
+				System.err.println("  can't resolve field: " + owner + "." + name + " " + desc + ", " + isStatic);
+			}
+			return UNMAPPED;
+		}
+	}
+}
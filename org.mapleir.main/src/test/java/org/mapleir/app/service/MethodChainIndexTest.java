@@ -0,0 +1,163 @@
+package org.mapleir.app.service;
+
+import java.lang.reflect.Modifier;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mapleir.DefaultInvocationResolver;
+import org.mapleir.FixtureTestBase;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+public class MethodChainIndexTest extends FixtureTestBase {
+
+	public interface Shape {
+		double area();
+
+		String name();
+	}
+
+	public interface Named {
+		String name();
+	}
+
+	public static abstract class AbstractShape implements Shape {
+		@Override
+		public String name() {
+			return getClass().getSimpleName();
+		}
+
+		@Override
+		public String toString() {
+			return name() + " " + area();
+		}
+	}
+
+	public static class Square extends AbstractShape {
+		double side;
+
+		@Override
+		public double area() {
+			return side * side;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) side;
+		}
+	}
+
+	public static class Circle implements Shape, Named {
+		double r;
+
+		@Override
+		public double area() {
+			return Math.PI * r * r;
+		}
+
+		@Override
+		public String name() {
+			return "circle";
+		}
+	}
+
+	public static class Loner {
+		@Override
+		public String toString() {
+			return "loner";
+		}
+
+		public double area() {
+			return 0;
+		}
+
+		static String name() {
+			return "loner";
+		}
+	}
+
+	public static class Items extends AbstractList<String> {
+		@Override
+		public String get(int index) {
+			return "";
+		}
+
+		@Override
+		public int size() {
+			return 0;
+		}
+	}
+
+	private static final Class<?>[] FIXTURES = { Shape.class, Named.class, AbstractShape.class, Square.class, Circle.class, Loner.class, Items.class };
+
+	private ApplicationClassSource app;
+	private List<ClassNode> classes;
+
+	@Override
+	protected void setUp() throws Exception {
+		classes = new ArrayList<>();
+		for(Class<?> c : FIXTURES) {
+			classes.add(load(c));
+		}
+		app = new ApplicationClassSource("test", classes);
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+	}
+
+	private ClassNode node(Class<?> c) {
+		return app.findClassNode(c.getName().replace('.', '/'));
+	}
+
+	public void testSameAsResolver() {
+		DefaultInvocationResolver resolver = new DefaultInvocationResolver(app);
+		MethodChainIndex index = new MethodChainIndex(app.getClassTree());
+		int checked = 0;
+		for(ClassNode cn : classes) {
+			for(MethodNode m : cn.getMethods()) {
+				if(Modifier.isStatic(m.node.access) || m.getName().equals("<init>")) {
+					continue;
+				}
+				Set<MethodNode> expected = resolver.getHierarchyMethodChain(cn, m.getName(), m.getDesc(), true);
+				assertEquals(m.toString(), expected, index.getChain(m));
+				assertTrue(m.toString(), index.getChain(m).contains(m));
+				checked++;
+			}
+		}
+		// including the bridge get which javac adds to Items
+		assertEquals(14, checked);
+	}
+
+	public void testChains() {
+		MethodChainIndex index = new MethodChainIndex(app.getClassTree());
+		ClassNode object = app.findClassNode("java/lang/Object");
+
+		// Named is only connected to AbstractShape through Circle and Shape
+		Set<MethodNode> name = index.getChain(find(node(Circle.class), "name"));
+		Set<MethodNode> expected = new HashSet<>();
+		expected.add(find(node(Shape.class), "name"));
+		expected.add(find(node(Named.class), "name"));
+		expected.add(find(node(AbstractShape.class), "name"));
+		expected.add(find(node(Circle.class), "name"));
+		assertEquals(expected, name);
+
+		// the override of an Object method is chained with it, and not with
+		// the overrides in classes only connected through Object
+		Set<MethodNode> toString = index.getChain(find(node(Loner.class), "toString"));
+		expected = new HashSet<>();
+		expected.add(find(node(Loner.class), "toString"));
+		expected.add(find(object, "toString"));
+		assertEquals(expected, toString);
+		assertTrue(index.getChain(find(node(AbstractShape.class), "toString")).contains(find(object, "toString")));
+		assertFalse(index.getChain(find(node(AbstractShape.class), "toString")).contains(find(node(Loner.class), "toString")));
+
+		// a method of Object which isn't overridden is still found
+		assertEquals(index.getChain(object, "equals", "(Ljava/lang/Object;)Z"), index.getChain(node(Square.class), "equals", "(Ljava/lang/Object;)Z"));
+		assertTrue(index.getChain(node(Square.class), "equals", "(Ljava/lang/Object;)Z").contains(find(object, "equals")));
+
+		// the same name in an unconnected class
+		assertFalse(index.getChain(find(node(Loner.class), "area")).contains(find(node(Square.class), "area")));
+		assertTrue(index.getChain(node(Loner.class), "missing", "()V").isEmpty());
+	}
+}
@@ -0,0 +1,205 @@
+package org.mapleir.context;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.mapleir.FixtureTestBase;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+
+public class IRCacheTest extends FixtureTestBase {
+
+	public static class Fixture {
+		/* k has two definitions which meet in a phi. */
+		public static int merge(int i) {
+			int k;
+			if(i > 0) {
+				k = i * 3;
+			} else {
+				k = -i;
+			}
+			return k * 2;
+		}
+
+		public static int loop(int n) {
+			int s = 0;
+			for(int i=0; i < n; i++) {
+				s += i;
+			}
+			return s;
+		}
+	}
+
+	private static List<MethodNode> methods(ClassNode cn) {
+		List<MethodNode> methods = new ArrayList<>();
+		for(MethodNode m : cn.getMethods()) {
+			if(!m.getName().equals("<init>")) {
+				methods.add(m);
+			}
+		}
+		return methods;
+	}
+
+	private static int phis(ControlFlowGraph cfg) {
+		int n = 0;
+		for(Stmt stmt : cfg.stmts()) {
+			if(stmt.getOpcode() == Opcode.PHI_STORE) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	public void testTiers() throws Exception {
+		MethodNode m = find(load(Fixture.class), "merge");
+		IRCache cache = new IRCache(true);
+		assertTrue(cache.isTiered());
+		assertFalse(cache.isSSA(m));
+
+		ControlFlowGraph cfg = cache.getFlowGraph(m);
+		assertTrue(cache.containsKey(m));
+		assertFalse(cache.isSSA(m));
+		assertEquals(0, phis(cfg));
+		assertSame(cfg, cache.getFlowGraph(m));
+
+		// promoted in place
+		assertSame(cfg, cache.getFor(m));
+		assertTrue(cache.isSSA(m));
+		assertEquals(1, phis(cfg));
+		cfg.verify();
+		assertSame(cfg, cache.getFlowGraph(m));
+		assertSame(cfg, cache.getFor(m));
+	}
+
+	public void testEager() throws Exception {
+		MethodNode m = find(load(Fixture.class), "merge");
+		IRCache cache = new IRCache();
+		assertFalse(cache.isTiered());
+		ControlFlowGraph cfg = cache.getFlowGraph(m);
+		assertTrue(cache.isSSA(m));
+		assertEquals(1, phis(cfg));
+	}
+
+	public void testInheritedAccessors() throws Exception {
+		ClassNode cn = load(Fixture.class);
+		List<MethodNode> methods = methods(cn);
+		MethodNode merge = find(cn, "merge");
+		IRCache cache = new IRCache(true);
+		for(MethodNode m : methods) {
+			cache.getFlowGraph(m);
+		}
+
+		assertNull(cache.get(new Object()));
+		assertEquals(1, phis(cache.get(merge)));
+		assertTrue(cache.isSSA(merge));
+		assertFalse(cache.isSSA(find(cn, "loop")));
+
+		for(ControlFlowGraph cfg : cache.values()) {
+			assertTrue(phis(cfg) > 0);
+		}
+		for(MethodNode m : methods) {
+			assertTrue(cache.isSSA(m));
+		}
+	}
+
+	public void testDump() throws Exception {
+		List<MethodNode> methods = methods(load(Fixture.class));
+		IRCache cache = new IRCache(true);
+		for(MethodNode m : methods) {
+			cache.getFlowGraph(m);
+		}
+		File dir = Files.createTempDirectory("irdump").toFile();
+		try {
+			assertEquals(1, new IRDumper(cache).setThreads(4).dumpToDirectory(dir));
+		} finally {
+			for(File f : Files.walk(dir.toPath()).map(Path::toFile).sorted(Comparator.reverseOrder()).toArray(File[]::new)) {
+				f.delete();
+			}
+		}
+		// promoted before the graphs were handed to the threads
+		for(MethodNode m : methods) {
+			assertTrue(cache.isSSA(m));
+		}
+	}
+
+	public void testLiftAll() throws Exception {
+		List<MethodNode> methods = methods(load(Fixture.class));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			IRCache tiered = new IRCache(true);
+			tiered.liftAll(methods, executor);
+			assertEquals(methods.size(), tiered.size());
+			for(MethodNode m : methods) {
+				assertFalse(tiered.isSSA(m));
+			}
+			ControlFlowGraph cfg = tiered.getFlowGraph(methods.get(0));
+			// lifting again leaves the graphs as they are
+			tiered.liftAll(methods, executor);
+			assertSame(cfg, tiered.getFlowGraph(methods.get(0)));
+
+			tiered.buildSSA();
+			for(MethodNode m : methods) {
+				assertTrue(tiered.isSSA(m));
+				tiered.getFor(m).verify();
+			}
+
+			IRCache eager = new IRCache();
+			eager.liftAll(methods, executor);
+			for(MethodNode m : methods) {
+				assertTrue(eager.isSSA(m));
+				assertEquals(phis(tiered.getFor(m)), phis(eager.getFor(m)));
+			}
+
+			// a cache with its own creator builds them itself
+			List<MethodNode> created = new ArrayList<>();
+			IRCache custom = new IRCache(m -> {
+				created.add(m);
+				return ControlFlowGraphBuilder.build(m);
+			});
+			custom.liftAll(methods, executor);
+			assertEquals(methods, created);
+			for(MethodNode m : methods) {
+				assertTrue(custom.isSSA(m));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testPutRemove() throws Exception {
+		MethodNode m = find(load(Fixture.class), "merge");
+		IRCache cache = new IRCache(true);
+
+		ControlFlowGraph lifted = cache.getFlowGraph(m);
+		ControlFlowGraph other = ControlFlowGraphBuilder.build(m);
+		// the waiting builder is dropped along with its graph
+		cache.put(m, other);
+		assertTrue(cache.isSSA(m));
+		assertSame(other, cache.getFor(m));
+		assertEquals(0, phis(lifted));
+
+		cache.remove(m);
+		assertFalse(cache.containsKey(m));
+		assertFalse(cache.isSSA(m));
+		lifted = cache.getFlowGraph(m);
+		assertNotSame(other, lifted);
+		assertFalse(cache.isSSA(m));
+
+		cache.clear();
+		assertFalse(cache.isSSA(m));
+		// nothing is left waiting
+		cache.put(m, other);
+		assertSame(other, cache.get(m));
+		assertEquals(0, phis(lifted));
+	}
+}
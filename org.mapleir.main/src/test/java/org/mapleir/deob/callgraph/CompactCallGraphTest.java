@@ -0,0 +1,146 @@
+package org.mapleir.deob.callgraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.deob.callgraph.CallGraphNode.CallReceiverNode;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.expr.invoke.Invocation;
+import org.mapleir.ir.code.expr.invoke.StaticInvocationExpr;
+import org.objectweb.asm.Opcodes;
+
+import junit.framework.TestCase;
+
+public class CompactCallGraphTest extends TestCase {
+
+	private MethodNode[] methods;
+	private Invocation[] sites;
+	private CompactCallGraph graph;
+
+	/* m0 has sites s0 -> {m1, m2} and s1 -> {m2}, m1 has s2 -> {m3}, m2 has
+	 * no sites and m3 has s3 -> {m0} and s4, which resolves to nothing. */
+	@Override
+	protected void setUp() {
+		ClassNode cn = new ClassNode();
+		cn.node.name = "Owner";
+		methods = new MethodNode[4];
+		Map<MethodNode, Integer> ids = new HashMap<>();
+		for(int i=0; i < methods.length; i++) {
+			methods[i] = new MethodNode(new org.objectweb.asm.tree.MethodNode(Opcodes.ACC_STATIC, "m" + i, "()V", null, null), cn);
+			ids.put(methods[i], i);
+		}
+		sites = new Invocation[5];
+		for(int i=0; i < sites.length; i++) {
+			sites[i] = new StaticInvocationExpr(new Expr[0], "Owner", "s" + i, "()V");
+		}
+		graph = new CompactCallGraph(methods, ids, new int[] { 0, 2, 3, 3, 5 }, sites,
+				new int[] { 0, 2, 3, 4, 5, 5 }, new int[] { 1, 2, 2, 3, 0 });
+	}
+
+	public void testCounts() {
+		assertEquals(4, graph.size());
+		assertEquals(5, graph.siteCount());
+		assertEquals(5, graph.edgeCount());
+	}
+
+	public void testIds() {
+		for(int i=0; i < methods.length; i++) {
+			assertTrue(graph.containsMethod(methods[i]));
+			assertEquals(i, graph.getId(methods[i]));
+			assertSame(methods[i], graph.getMethod(i));
+		}
+		MethodNode other = new MethodNode(new org.objectweb.asm.tree.MethodNode(Opcodes.ACC_STATIC, "other", "()V", null, null), methods[0].owner);
+		assertFalse(graph.containsMethod(other));
+		assertEquals(-1, graph.getId(other));
+	}
+
+	public void testSites() {
+		assertEquals(0, graph.getSiteStart(0));
+		assertEquals(2, graph.getSiteEnd(0));
+		assertEquals(2, graph.getSiteStart(1));
+		assertEquals(3, graph.getSiteEnd(1));
+		assertEquals(graph.getSiteStart(2), graph.getSiteEnd(2));
+		assertEquals(3, graph.getSiteStart(3));
+		assertEquals(5, graph.getSiteEnd(3));
+		for(int s=0; s < sites.length; s++) {
+			assertSame(sites[s], graph.getSite(s));
+		}
+
+		List<Invocation> m3 = graph.getCallSites(methods[3]);
+		assertEquals(Arrays.asList(sites[3], sites[4]), m3);
+		try {
+			m3.get(2);
+			fail();
+		} catch(IndexOutOfBoundsException e) {
+		}
+		assertTrue(graph.getCallSites(methods[2]).isEmpty());
+	}
+
+	public void testTargets() {
+		int[][] expected = { { 1, 2 }, { 2 }, { 3 }, { 0 }, {} };
+		for(int s=0; s < expected.length; s++) {
+			int[] targets = new int[graph.getTargetEnd(s) - graph.getTargetStart(s)];
+			for(int i=graph.getTargetStart(s); i < graph.getTargetEnd(s); i++) {
+				targets[i - graph.getTargetStart(s)] = graph.getTarget(i);
+			}
+			assertTrue(Arrays.equals(expected[s], targets));
+		}
+
+		assertEquals(new LinkedHashSet<>(Arrays.asList(methods[1], methods[2])), graph.getCallees(methods[0]));
+		assertEquals(new LinkedHashSet<>(Arrays.asList(methods[0])), graph.getCallees(methods[3]));
+		assertTrue(graph.getCallees(methods[2]).isEmpty());
+	}
+
+	public void testCallers() {
+		int[] owners = { 0, 0, 1, 3, 3 };
+		for(int s=0; s < owners.length; s++) {
+			assertEquals(owners[s], graph.getSiteOwner(s));
+		}
+
+		assertTrue(Arrays.equals(new int[] { 3 }, graph.getCallerSites(0)));
+		assertTrue(Arrays.equals(new int[] { 0 }, graph.getCallerSites(1)));
+		assertTrue(Arrays.equals(new int[] { 0, 1 }, graph.getCallerSites(2)));
+		assertTrue(Arrays.equals(new int[] { 2 }, graph.getCallerSites(3)));
+
+		// both of m0's sites call m2, but m0 is only counted once
+		assertEquals(new LinkedHashSet<>(Arrays.asList(methods[0])), graph.getCallers(methods[2]));
+		assertEquals(new LinkedHashSet<>(Arrays.asList(methods[3])), graph.getCallers(methods[0]));
+	}
+
+	public void testMissing() {
+		MethodNode other = new MethodNode(new org.objectweb.asm.tree.MethodNode(Opcodes.ACC_STATIC, "other", "()V", null, null), methods[0].owner);
+		assertTrue(graph.getCallees(other).isEmpty());
+		assertTrue(graph.getCallers(other).isEmpty());
+		try {
+			graph.getCallSites(other);
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+	}
+
+	public void testToGraph() {
+		CallSiteSensitiveCallGraph g = graph.toGraph();
+		// a node for each method and each site
+		assertEquals(methods.length + sites.length, g.size());
+		int edges = 0;
+		for(CallGraphNode n : g.vertices()) {
+			edges += g.getEdges(n).size();
+		}
+		// the ownership edge of each site and its targets
+		assertEquals(sites.length + graph.edgeCount(), edges);
+		Map<String, Integer> owned = new HashMap<>();
+		for(CallGraphNode n : g.vertices()) {
+			if(n instanceof CallReceiverNode) {
+				owned.put(n.toString(), g.getEdges(n).size());
+			}
+		}
+		for(int m=0; m < methods.length; m++) {
+			assertEquals(graph.getSiteEnd(m) - graph.getSiteStart(m), (int) owned.get(methods[m].toString()));
+		}
+	}
+}
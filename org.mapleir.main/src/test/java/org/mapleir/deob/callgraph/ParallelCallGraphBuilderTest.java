@@ -0,0 +1,198 @@
+package org.mapleir.deob.callgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.mapleir.DefaultInvocationResolver;
+import org.mapleir.FixtureTestBase;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.BasicAnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.deob.callgraph.CallGraphNode.CallReceiverNode;
+
+public class ParallelCallGraphBuilderTest extends FixtureTestBase {
+
+	public static class Base {
+		public int f(int i) {
+			return i + 1;
+		}
+	}
+
+	public static class Left extends Base {
+		@Override
+		public int f(int i) {
+			return g(i) * 2;
+		}
+
+		int g(int i) {
+			return i - 1;
+		}
+	}
+
+	public static class Right extends Base {
+		@Override
+		public int f(int i) {
+			return helper(i);
+		}
+
+		static int helper(int i) {
+			return Math.abs(i) + Fixture.twice(i);
+		}
+	}
+
+	public static class Fixture {
+		public static int main(int i) {
+			Base b = i > 0 ? new Left() : new Right();
+			return b.f(i) + loop(i);
+		}
+
+		static int loop(int n) {
+			int s = 0;
+			for(int i=0; i < n; i++) {
+				s += twice(i);
+			}
+			return s;
+		}
+
+		static int twice(int i) {
+			return i * 2;
+		}
+
+		static int dead() {
+			return twice(3);
+		}
+	}
+
+	private AnalysisContext context() throws Exception {
+		List<ClassNode> classes = new ArrayList<>();
+		for(Class<?> c : new Class<?>[] { Base.class, Left.class, Right.class, Fixture.class }) {
+			classes.add(load(c));
+		}
+		ApplicationClassSource app = new ApplicationClassSource("test", classes);
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+		return new BasicAnalysisContext.BasicContextBuilder()
+				.setApplication(app)
+				.setInvocationResolver(new DefaultInvocationResolver(app))
+				.setCache(new IRCache(true))
+				.build();
+	}
+
+	private static MethodNode find(AnalysisContext cxt, Class<?> owner, String name) {
+		return find(cxt.getApplication().findClassNode(owner.getName().replace('.', '/')), name);
+	}
+
+	/* the arrays of the graph, with the methods and sites by name as each
+	 * context has its own nodes. */
+	private static List<String> arrays(CompactCallGraph cg) {
+		List<String> methods = new ArrayList<>();
+		List<Integer> siteStart = new ArrayList<>();
+		List<String> sites = new ArrayList<>();
+		List<Integer> targetStart = new ArrayList<>();
+		List<Integer> targets = new ArrayList<>();
+		for(int m=0; m < cg.size(); m++) {
+			methods.add(cg.getMethod(m).toString());
+			siteStart.add(cg.getSiteStart(m));
+		}
+		siteStart.add(cg.getSiteEnd(cg.size() - 1));
+		for(int s=0; s < cg.siteCount(); s++) {
+			sites.add(cg.getSite(s).getOwner() + "." + cg.getSite(s).getName() + cg.getSite(s).getDesc());
+			targetStart.add(cg.getTargetStart(s));
+		}
+		targetStart.add(cg.siteCount() == 0 ? 0 : cg.getTargetEnd(cg.siteCount() - 1));
+		for(int i=0; i < cg.edgeCount(); i++) {
+			targets.add(cg.getTarget(i));
+		}
+		List<String> res = new ArrayList<>();
+		Collections.addAll(res, methods.toString(), siteStart.toString(), sites.toString(), targetStart.toString(), targets.toString());
+		return res;
+	}
+
+	/* the graphs are built from the same context, as the sites are numbered in
+	 * the order of the blocks they're in, which the graph builder doesn't lay
+	 * out the same way every time a method is lifted. The first build lifts
+	 * the methods on the threads and the others reuse the graphs. */
+	public void testThreads() throws Exception {
+		AnalysisContext cxt = context();
+		Set<MethodNode> entries = Collections.singleton(find(cxt, Fixture.class, "main"));
+		List<String> expected = null;
+		for(int threads : new int[] { 4, 1, 4 }) {
+			CompactCallGraph cg = new ParallelCallGraphBuilder(cxt, threads).build(entries);
+			List<String> arrays = arrays(cg);
+			if(expected == null) {
+				expected = arrays;
+			} else {
+				assertEquals(expected, arrays);
+			}
+		}
+	}
+
+	public void testReachable() throws Exception {
+		AnalysisContext cxt = context();
+		MethodNode main = find(cxt, Fixture.class, "main");
+		CompactCallGraph cg = new ParallelCallGraphBuilder(cxt, 4).build(Collections.singleton(main));
+		assertEquals(0, cg.getId(main));
+
+		Set<String> reached = new HashSet<>();
+		for(int m=0; m < cg.size(); m++) {
+			reached.add(cg.getMethod(m).getOwner().replaceAll(".*\\$", "") + "." + cg.getMethod(m).getName());
+		}
+		// b.f(i) resolves to every override
+		for(String name : new String[] { "Base.f", "Left.f", "Right.f", "Left.g", "Right.helper", "Fixture.loop", "Fixture.twice", "Left.<init>", "Right.<init>", "Base.<init>" }) {
+			assertTrue(name, reached.contains(name));
+		}
+		assertFalse(reached.contains("Fixture.dead"));
+
+		// only the application methods which were reached are lifted
+		IRCache cache = cxt.getIRCache();
+		assertFalse(cache.containsKey(find(cxt, Fixture.class, "dead")));
+		for(int m=0; m < cg.size(); m++) {
+			MethodNode method = cg.getMethod(m);
+			assertEquals(cxt.getApplication().isApplicationClass(method.getOwner()), cache.containsKey(method));
+		}
+
+		MethodNode twice = find(cxt, Fixture.class, "twice");
+		Set<MethodNode> callers = new HashSet<>();
+		callers.add(find(cxt, Fixture.class, "loop"));
+		callers.add(find(cxt, Right.class, "helper"));
+		assertEquals(callers, cg.getCallers(twice));
+	}
+
+	public void testSameAsSensitive() throws Exception {
+		AnalysisContext cxt = context();
+		Set<MethodNode> entries = Collections.singleton(find(cxt, Fixture.class, "main"));
+		CompactCallGraph cg = new ParallelCallGraphBuilder(cxt, 4).build(entries);
+		CallSiteSensitiveCallGraph graph = new SensitiveCallGraphBuilder(cxt).build(entries);
+
+		Map<String, Set<String>> expected = new TreeMap<>();
+		for(CallGraphNode n : graph.vertices()) {
+			if(n instanceof CallReceiverNode) {
+				Set<String> callees = new TreeSet<>();
+				for(CallGraphEdge own : graph.getEdges(n)) {
+					for(CallGraphEdge call : graph.getEdges(own.dst())) {
+						callees.add(call.dst().toString());
+					}
+				}
+				expected.put(n.toString(), callees);
+			}
+		}
+		Map<String, Set<String>> actual = new TreeMap<>();
+		for(int m=0; m < cg.size(); m++) {
+			Set<String> callees = new TreeSet<>();
+			for(MethodNode callee : cg.getCallees(cg.getMethod(m))) {
+				callees.add(callee.toString());
+			}
+			actual.put(cg.getMethod(m).toString(), callees);
+		}
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,160 @@
+package org.mapleir.deob.passes;
+
+import java.lang.reflect.Method;
+
+import org.mapleir.FixtureTestBase;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+public class GlobalValueNumberingPassTest extends FixtureTestBase {
+
+	public static class Fixture {
+		public int x;
+
+		/* b repeats a, each is used twice so neither is propagated. */
+		public static int products(int i, int j) {
+			int a = i * j;
+			int b = i * j;
+			return a + b + a * b;
+		}
+
+		/* the second load of x isn't redundant, x is stored in between. */
+		public static int stored(Fixture o, int i) {
+			int a = o.x + i;
+			o.x = a;
+			int b = o.x + i;
+			return a * b + a - b;
+		}
+
+		/* a dominates both arms, so each of their i - j is redundant. */
+		public static int arms(int i, int j) {
+			int a = i - j;
+			int r;
+			if(a > 0) {
+				int b = i - j;
+				r = b * b + b;
+			} else {
+				int b = i - j;
+				r = b - b * a;
+			}
+			return r + a;
+		}
+
+		/* nothing computed in the protected code is carried into the handler. */
+		public static int handler(String s, int i) {
+			int a = i * 3;
+			int r = a + a;
+			try {
+				r += Integer.parseInt(s) * 3;
+			} catch(NumberFormatException e) {
+				int b = i * 3;
+				r -= b + b;
+			}
+			return r;
+		}
+	}
+
+	private static ControlFlowGraph number(MethodNode m) {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+		new GlobalValueNumberingPass().process(cfg);
+		cfg.verify();
+		return cfg;
+	}
+
+	public void testProducts() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "products"));
+		long before = count(cfg, Opcode.ARITHMETIC);
+		new GlobalValueNumberingPass().process(cfg);
+		cfg.verify();
+		// the second i * j is gone
+		assertEquals(before - 1, count(cfg, Opcode.ARITHMETIC));
+	}
+
+	public void testStored() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "stored"));
+		long before = count(cfg, Opcode.FIELD_LOAD);
+		new GlobalValueNumberingPass().process(cfg);
+		cfg.verify();
+		assertEquals(before, count(cfg, Opcode.FIELD_LOAD));
+	}
+
+	public void testArms() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "arms"));
+		long before = count(cfg, Opcode.ARITHMETIC);
+		new GlobalValueNumberingPass().process(cfg);
+		cfg.verify();
+		// i - j in each arm
+		assertEquals(before - 2, count(cfg, Opcode.ARITHMETIC));
+	}
+
+	public void testHandler() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "handler"));
+		long before = count(cfg, Opcode.ARITHMETIC);
+		new GlobalValueNumberingPass().process(cfg);
+		cfg.verify();
+		assertEquals(before, count(cfg, Opcode.ARITHMETIC));
+	}
+
+	public void testSemantics() throws Exception {
+		ClassNode cn = load(Fixture.class);
+		for(MethodNode m : cn.getMethods()) {
+			if(m.getName().equals("<init>")) {
+				continue;
+			}
+			ControlFlowGraph cfg = number(m);
+			BoissinotDestructor.leaveSSA(cfg);
+			LocalsReallocator.realloc(cfg);
+			cfg.verify();
+			new ControlFlowGraphDumper(cfg, m).dump();
+		}
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		cn.node.accept(cw);
+		byte[] bytes = cw.toByteArray();
+		org.objectweb.asm.tree.ClassNode out = new org.objectweb.asm.tree.ClassNode();
+		new ClassReader(bytes).accept(out, 0);
+		for(org.objectweb.asm.tree.MethodNode mn : out.methods) {
+			new Analyzer<BasicValue>(new BasicVerifier()).analyze(out.name, mn);
+		}
+
+		Class<?> numbered = new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass(out.name.replace('/', '.'), bytes, 0, bytes.length);
+			}
+		}.define();
+		for(int i=-3; i <= 3; i++) {
+			for(int j=-3; j <= 3; j++) {
+				assertEquals(Fixture.products(i, j), call(numbered, "products", i, j));
+				assertEquals(Fixture.arms(i, j), call(numbered, "arms", i, j));
+			}
+			assertEquals(Fixture.handler("7", i), call(numbered, "handler", "7", i));
+			assertEquals(Fixture.handler("x", i), call(numbered, "handler", "x", i));
+
+			Fixture o = new Fixture();
+			o.x = i;
+			Object no = numbered.newInstance();
+			numbered.getField("x").setInt(no, i);
+			assertEquals(Fixture.stored(o, 2), call(numbered, "stored", no, 2));
+		}
+	}
+
+	private static int call(Class<?> c, String name, Object... args) throws Exception {
+		for(Method m : c.getMethods()) {
+			if(m.getName().equals(name)) {
+				return (Integer) m.invoke(null, args);
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
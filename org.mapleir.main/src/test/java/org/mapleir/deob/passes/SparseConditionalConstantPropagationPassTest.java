@@ -0,0 +1,333 @@
+package org.mapleir.deob.passes;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mapleir.FixtureTestBase;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.BasicAnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.deob.PassContext;
+import org.mapleir.deob.PassResult;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.ReturnStmt;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+public class SparseConditionalConstantPropagationPassTest extends FixtureTestBase {
+
+	public static class Fixture {
+		/* the else arm is never taken, so the phi of x only meets 5. */
+		public static int phi(int i) {
+			int a = 3;
+			int x;
+			if(a > 2) {
+				x = 5;
+			} else {
+				x = i;
+			}
+			return x * 2;
+		}
+
+		/* k is 4 on both arms, so only i + k can be returned. */
+		public static int merge(int i) {
+			int k;
+			if(i > 0) {
+				k = 4;
+			} else {
+				k = 1;
+				k <<= 2;
+			}
+			if(k == 4) {
+				return i + k;
+			}
+			return -i;
+		}
+
+		public static int choose(int i) {
+			int k = 2;
+			switch(k) {
+				case 1:
+					return i;
+				case 2:
+					return i + 1;
+				case 3:
+					return i * i;
+				default:
+					return -i;
+			}
+		}
+
+		/* r is 1 in the handler if the first parse throws, 5 otherwise. */
+		public static int handler(String s) {
+			int r = 1;
+			try {
+				Integer.parseInt(s);
+				r = 5;
+				Integer.parseInt(s.trim());
+			} catch(NumberFormatException e) {
+				return r;
+			}
+			return r;
+		}
+
+		/* the join of the dead arm has a phi of k, which is defined in live code. */
+		public static int deadJoin(int i) {
+			int k = i * 3;
+			int a = 0;
+			if(a != 0) {
+				if(i > 0) {
+					k = i - 1;
+				}
+				return k * k;
+			}
+			return k + 1;
+		}
+	}
+
+	private static long stmts(Iterable<Stmt> stmts, int opcode) {
+		long n = 0;
+		for(Stmt stmt : stmts) {
+			if(stmt.getOpcode() == opcode) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private static ControlFlowGraph propagate(MethodNode m) {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+		new SparseConditionalConstantPropagationPass(1).process(cfg);
+		cfg.verify();
+		return cfg;
+	}
+
+	/* the int returned from the handlers or the other blocks, null if any isn't constant. */
+	private static Object returned(ControlFlowGraph cfg, boolean handlers) {
+		Object v = null;
+		for(BasicBlock b : cfg.vertices()) {
+			if(cfg.isHandler(b) != handlers) {
+				continue;
+			}
+			for(Stmt stmt : b) {
+				if(stmt.getOpcode() == Opcode.RETURN) {
+					Expr e = ((ReturnStmt) stmt).getExpression();
+					if(e.getOpcode() != Opcode.CONST_LOAD) {
+						return null;
+					}
+					v = ((Number) ((ConstantExpr) e).getConstant()).intValue();
+				}
+			}
+		}
+		return v;
+	}
+
+	public void testPhi() throws Exception {
+		ControlFlowGraph cfg = propagate(find(load(Fixture.class), "phi"));
+		assertEquals(10, returned(cfg, false));
+		assertEquals(0, count(cfg, Opcode.ARITHMETIC));
+	}
+
+	public void testBranch() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "merge"));
+		int blocks = cfg.size();
+		long jumps = stmts(cfg.stmts(), Opcode.COND_JUMP);
+		new SparseConditionalConstantPropagationPass(1).process(cfg);
+		cfg.verify();
+		// i > 0 stays, k == 4 becomes a goto and the -i block goes
+		assertEquals(jumps - 1, stmts(cfg.stmts(), Opcode.COND_JUMP));
+		assertEquals(blocks - 1, cfg.size());
+		assertEquals(0, count(cfg, Opcode.NEGATE));
+	}
+
+	public void testSwitch() throws Exception {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(load(Fixture.class), "choose"));
+		int blocks = cfg.size();
+		new SparseConditionalConstantPropagationPass(1).process(cfg);
+		cfg.verify();
+		assertEquals(0, stmts(cfg.stmts(), Opcode.SWITCH_JUMP));
+		// only the case 2 arm is left
+		assertEquals(blocks - 3, cfg.size());
+		assertEquals(0, count(cfg, Opcode.NEGATE));
+	}
+
+	public void testHandler() throws Exception {
+		ControlFlowGraph cfg = propagate(find(load(Fixture.class), "handler"));
+		assertEquals(5, returned(cfg, false));
+		// r is 1 or 5 in the handler, so its phi is kept
+		assertNull(returned(cfg, true));
+		boolean phi = false;
+		for(BasicBlock b : cfg.vertices()) {
+			if(cfg.isHandler(b)) {
+				phi |= stmts(b, Opcode.PHI_STORE) > 0;
+			}
+		}
+		assertTrue(phi);
+	}
+
+	/* the loads still in the graph, which include the phi arguments. */
+	private static Set<VarExpr> loads(ControlFlowGraph cfg) {
+		Set<VarExpr> loads = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Stmt stmt : cfg.stmts()) {
+			for(Expr e : stmt.enumerateOnlyChildren()) {
+				if(e.getOpcode() == Opcode.LOCAL_LOAD) {
+					loads.add((VarExpr) e);
+				}
+			}
+		}
+		return loads;
+	}
+
+	/* every use left in the pool is still in the graph, including the live
+	 * locals which were arguments of a phi in a removed block. */
+	public void testUses() throws Exception {
+		ClassNode cn = load(Fixture.class);
+		for(MethodNode m : cn.getMethods()) {
+			if(!m.getName().equals("<init>")) {
+				checkUses(m, propagate(m));
+			}
+		}
+
+		/* the blocks are removed in no particular order, so the dead join is
+		 * lifted enough times to come both before and after its predecessors. */
+		for(int i=0; i < 20; i++) {
+			ControlFlowGraph cfg = propagate(find(cn, "deadJoin"));
+			checkUses(find(cn, "deadJoin"), cfg);
+			assertEquals(0, stmts(cfg.stmts(), Opcode.PHI_STORE));
+			assertEquals(0, stmts(cfg.stmts(), Opcode.COND_JUMP));
+		}
+	}
+
+	private static void checkUses(MethodNode m, ControlFlowGraph cfg) {
+		Set<VarExpr> loads = loads(cfg);
+		for(Set<VarExpr> uses : cfg.getLocals().uses.values()) {
+			for(VarExpr v : uses) {
+				assertTrue(m.getName() + " " + v, loads.contains(v));
+			}
+		}
+	}
+
+	public void testThreads() throws Exception {
+		Map<String, String> serial = run(1);
+		Map<String, String> parallel = run(4);
+		assertEquals(serial, parallel);
+	}
+
+	/* the shapes of the graph of each method, which unlike the printed graph
+	 * don't depend on the order the builder numbered the blocks and locals in. */
+	private Map<String, String> run(int threads) throws Exception {
+		/* enough methods for every thread to have some. */
+		Map<String, ClassNode> classes = new LinkedHashMap<>();
+		for(int i=0; i < 8; i++) {
+			ClassNode cn = load(Fixture.class);
+			cn.node.name += i;
+			classes.put(cn.getName(), cn);
+		}
+		ApplicationClassSource app = new ApplicationClassSource("test", classes);
+		AnalysisContext cxt = new BasicAnalysisContext.BasicContextBuilder()
+				.setApplication(app)
+				.setCache(new IRCache(ControlFlowGraphBuilder::build))
+				.build();
+
+		PassResult res = new SparseConditionalConstantPropagationPass(threads).accept(new PassContext(cxt, null, new ArrayList<>()));
+		assertNull(res.getError());
+
+		Map<String, String> printed = new LinkedHashMap<>();
+		for(ClassNode cn : classes.values()) {
+			for(MethodNode m : cn.getMethods()) {
+				ControlFlowGraph cfg = cxt.getIRCache().getFor(m);
+				cfg.verify();
+				List<String> shapes = new ArrayList<>();
+				for(Stmt stmt : cfg.stmts()) {
+					shapes.add(shape(stmt));
+				}
+				Collections.sort(shapes);
+				printed.put(cn.getName() + "." + m.getName(), cfg.size() + " " + shapes);
+			}
+		}
+		return printed;
+	}
+
+	private static String shape(CodeUnit u) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(u.getOpcode());
+		if(u.getOpcode() == Opcode.CONST_LOAD) {
+			sb.append('=').append(((ConstantExpr) u).getConstant());
+		}
+		sb.append('(');
+		for(Expr e : u.getChildren()) {
+			sb.append(shape(e)).append(',');
+		}
+		return sb.append(')').toString();
+	}
+
+	public void testSemantics() throws Exception {
+		ClassNode cn = load(Fixture.class);
+		for(MethodNode m : cn.getMethods()) {
+			if(m.getName().equals("<init>")) {
+				continue;
+			}
+			ControlFlowGraph cfg = propagate(m);
+			BoissinotDestructor.leaveSSA(cfg);
+			LocalsReallocator.realloc(cfg);
+			cfg.verify();
+			new ControlFlowGraphDumper(cfg, m).dump();
+		}
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		cn.node.accept(cw);
+		byte[] bytes = cw.toByteArray();
+		org.objectweb.asm.tree.ClassNode out = new org.objectweb.asm.tree.ClassNode();
+		new ClassReader(bytes).accept(out, 0);
+		for(org.objectweb.asm.tree.MethodNode mn : out.methods) {
+			new Analyzer<BasicValue>(new BasicVerifier()).analyze(out.name, mn);
+		}
+
+		Class<?> propagated = new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass(out.name.replace('/', '.'), bytes, 0, bytes.length);
+			}
+		}.define();
+		for(int i=-3; i <= 3; i++) {
+			assertEquals(Fixture.phi(i), call(propagated, "phi", i));
+			assertEquals(Fixture.merge(i), call(propagated, "merge", i));
+			assertEquals(Fixture.choose(i), call(propagated, "choose", i));
+			assertEquals(Fixture.deadJoin(i), call(propagated, "deadJoin", i));
+		}
+		for(String s : new String[] {"7", " 7", "x"}) {
+			assertEquals(Fixture.handler(s), call(propagated, "handler", s));
+		}
+	}
+
+	private static int call(Class<?> c, String name, Object... args) throws Exception {
+		for(Method m : c.getMethods()) {
+			if(m.getName().equals(name)) {
+				return (Integer) m.invoke(null, args);
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
@@ -0,0 +1,194 @@
+package org.mapleir.deob.passes.rename;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.FixtureTestBase;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+
+public class MappingFileTest extends FixtureTestBase {
+
+	public static class Base {
+		int count;
+		String[] names;
+		static long[][] grid;
+
+		public void run(int i, String s) {
+		}
+
+		public int[] all(boolean z, char c, byte b, short s, int i, float f, long j, double d, Object[][] o) {
+			return null;
+		}
+	}
+
+	public static class Sub extends Base {
+		@Override
+		public void run(int i, String s) {
+		}
+	}
+
+	private static final String BASE = Base.class.getName();
+
+	private ApplicationClassSource source;
+	private ClassNode base;
+	private ClassNode sub;
+
+	@Override
+	protected void setUp() throws Exception {
+		List<ClassNode> classes = new ArrayList<>();
+		classes.add(base = load(Base.class));
+		classes.add(sub = load(Sub.class));
+		source = new ApplicationClassSource("test", classes);
+		source.addLibraries(new InstalledRuntimeClassSource(source));
+	}
+
+	private static FieldNode field(ClassNode cn, String name) {
+		for(FieldNode f : cn.getFields()) {
+			if(f.getName().equals(name)) {
+				return f;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	private MappingTable table() {
+		MappingTable table = new MappingTable();
+		table.mapClass(base.getName(), "a/A");
+		table.mapField(field(base, "count"), "c");
+		table.mapField(field(base, "names"), "n");
+		table.mapField(field(base, "grid"), "g");
+		table.mapMethod(find(base, "run"), "r");
+		table.mapMethod(find(sub, "run"), "r");
+		table.mapMethod(find(base, "all"), "a");
+		return table;
+	}
+
+	private static void assertSameMappings(MappingTable expected, MappingTable actual) {
+		assertEquals(expected.getClasses(), actual.getClasses());
+		assertEquals(expected.getMethods(), actual.getMethods());
+		assertEquals(expected.getFields(), actual.getFields());
+	}
+
+	public void testTextRoundTrip() throws Exception {
+		MappingTable table = table();
+		StringWriter w = new StringWriter();
+		MappingFile.writeText(table, w);
+		String text = w.toString();
+		assertTrue(text, text.startsWith(BASE + " -> a.A:\n"));
+		assertTrue(text, text.contains("\n    java.lang.String[] names -> n\n"));
+		assertTrue(text, text.contains("\n    long[][] grid -> g\n"));
+		assertTrue(text, text.contains("\n    void run(int,java.lang.String) -> r\n"));
+		assertTrue(text, text.contains("\n    int[] all(boolean,char,byte,short,int,float,long,double,java.lang.Object[][]) -> a\n"));
+
+		assertSameMappings(table, MappingFile.readText(new StringReader(text), source));
+
+		File file = File.createTempFile("mappings", ".txt");
+		try {
+			MappingFile.write(table, file, false);
+			assertSameMappings(table, MappingFile.read(file, source));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testBinaryRoundTrip() throws Exception {
+		MappingTable table = table();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MappingFile.writeBinary(table, out);
+		byte[] bytes = out.toByteArray();
+		assertSameMappings(table, MappingFile.readBinary(new ByteArrayInputStream(bytes), source));
+
+		// both runs are written with the same descriptor, which is only stored once
+		String s = new String(bytes, StandardCharsets.ISO_8859_1);
+		String desc = "(ILjava/lang/String;)V";
+		assertEquals(s.indexOf(desc), s.lastIndexOf(desc));
+		assertTrue(s.indexOf(desc) != -1);
+
+		File file = File.createTempFile("mappings", ".bin");
+		try {
+			MappingFile.write(table, file, true);
+			assertSameMappings(table, MappingFile.read(file, source));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testProGuard() throws Exception {
+		String text = "# compiler: R8\n"
+				+ BASE + " -> a:\n"
+				+ "    int count -> c\n"
+				+ "    java.lang.String[] names -> n\n"
+				+ "    long[][] grid -> g\n"
+				+ "    1:5:void run(int,java.lang.String) -> r\n"
+				+ "    6:6:void com.example.Other.inlined():12:12 -> r\n"
+				+ "    7:9:int[] all(boolean,char,byte,short,int,float,long,double,java.lang.Object[][]) -> b\n"
+				+ "    long missing() -> m\n"
+				+ "    int missing -> m\n"
+				+ "com.example.Missing -> b:\n"
+				+ "    void gone() -> g\n";
+		MappingTable table = MappingFile.readText(new StringReader(text), source);
+
+		assertEquals(1, table.getClasses().size());
+		assertEquals("a", table.mapClassName(base.getName()));
+		assertEquals("c", table.getFieldName(field(base, "count")));
+		assertEquals("n", table.getFieldName(field(base, "names")));
+		assertEquals("g", table.getFieldName(field(base, "grid")));
+		assertEquals(3, table.getFields().size());
+		assertEquals("r", table.getMethodName(find(base, "run")));
+		assertEquals("b", table.getMethodName(find(base, "all")));
+		// the override isn't in the file but is renamed with the rest of its chain
+		assertEquals("r", table.getMethodName(find(sub, "run")));
+		assertEquals(3, table.getMethods().size());
+	}
+
+	public void testMalformed() throws Exception {
+		try {
+			MappingFile.readText(new StringReader(BASE + " -> a\n"), source);
+			fail();
+		} catch(IOException e) {
+		}
+		try {
+			MappingFile.readText(new StringReader(BASE + " -> a:\n    run -> r\n"), source);
+			fail();
+		} catch(IOException e) {
+		}
+	}
+
+	public void testBadMagic() throws Exception {
+		try {
+			MappingFile.readBinary(new ByteArrayInputStream(new byte[] { 'M', 'I', 'R', 'X', 1, 0 }), source);
+			fail();
+		} catch(IOException e) {
+			assertEquals("not a binary mapping file", e.getMessage());
+		}
+	}
+
+	public void testBadStringIndex() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MappingFile.writeBinary(new MappingTable(), out);
+		byte[] empty = out.toByteArray();
+		// the header, then a class record whose name refers to the 5th string
+		byte[] bytes = new byte[empty.length + 2];
+		System.arraycopy(empty, 0, bytes, 0, empty.length - 1);
+		bytes[empty.length - 1] = 1;
+		bytes[empty.length] = 5;
+		bytes[empty.length + 1] = 0;
+		try {
+			MappingFile.readBinary(new ByteArrayInputStream(bytes), source);
+			fail();
+		} catch(IOException e) {
+			assertEquals("bad string index 5", e.getMessage());
+		}
+	}
+}
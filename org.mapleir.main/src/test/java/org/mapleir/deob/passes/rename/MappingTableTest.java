@@ -0,0 +1,78 @@
+package org.mapleir.deob.passes.rename;
+
+import org.objectweb.asm.Type;
+
+import junit.framework.TestCase;
+
+public class MappingTableTest extends TestCase {
+
+	private MappingTable table;
+
+	@Override
+	protected void setUp() {
+		table = new MappingTable();
+		table.mapClass("a/Foo", "x/F");
+		table.mapClass("a/Bar", "y");
+	}
+
+	public void testMethodDesc() {
+		assertEquals("(Lx/F;I[Ly;J)Lx/F;", table.mapDesc("(La/Foo;I[La/Bar;J)La/Foo;"));
+		assertEquals("()V", table.mapDesc("()V"));
+		// only whole names are mapped
+		assertEquals("(La/FooBar;La/Fo;)V", table.mapDesc("(La/FooBar;La/Fo;)V"));
+		String desc = "(Ljava/lang/String;)Ljava/lang/Object;";
+		assertSame(desc, table.mapDesc(desc));
+		assertNull(table.mapDesc(null));
+	}
+
+	public void testArrayDesc() {
+		assertEquals("[[Lx/F;", table.mapDesc("[[La/Foo;"));
+		assertEquals("[I", table.mapDesc("[I"));
+		assertEquals(Type.getType("[Ly;"), table.mapType(Type.getType("[La/Bar;")));
+		assertEquals(Type.getType("(Lx/F;)[Ly;"), table.mapType(Type.getMethodType("(La/Foo;)[La/Bar;")));
+		assertSame(Type.INT_TYPE, table.mapType(Type.INT_TYPE));
+	}
+
+	public void testOwner() {
+		assertEquals("x/F", table.mapOwner("a/Foo"));
+		assertEquals("java/lang/Object", table.mapOwner("java/lang/Object"));
+		// methods invoked on arrays, such as clone
+		assertEquals("[Lx/F;", table.mapOwner("[La/Foo;"));
+		assertEquals("[[J", table.mapOwner("[[J"));
+		assertNull(table.mapOwner(null));
+	}
+
+	public void testMappedLater() {
+		assertEquals("La/Baz;", table.mapDesc("La/Baz;"));
+		assertEquals(Type.getType("La/Baz;"), table.mapType(Type.getType("La/Baz;")));
+		// the memoised descriptors are dropped
+		table.mapClass("a/Baz", "z");
+		assertEquals("Lz;", table.mapDesc("La/Baz;"));
+		assertEquals(Type.getType("Lz;"), table.mapType(Type.getType("La/Baz;")));
+	}
+
+	public void testConflict() {
+		table.mapClass("a/Foo", "x/F");
+		try {
+			table.mapClass("a/Foo", "x/G");
+			fail();
+		} catch(IllegalStateException e) {
+		}
+	}
+
+	public void testMalformed() {
+		try {
+			table.mapDesc("(La/Foo)V");
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+	}
+
+	public void testEmpty() {
+		MappingTable empty = new MappingTable();
+		assertTrue(empty.isEmpty());
+		String desc = "(La/Foo;)V";
+		assertSame(desc, empty.mapDesc(desc));
+		assertEquals("a/Foo", empty.mapClassName("a/Foo"));
+	}
+}
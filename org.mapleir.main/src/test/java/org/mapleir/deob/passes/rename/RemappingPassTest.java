@@ -0,0 +1,148 @@
+package org.mapleir.deob.passes.rename;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mapleir.DefaultInvocationResolver;
+import org.mapleir.FixtureTestBase;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.FieldNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.AnalysisContext;
+import org.mapleir.context.BasicAnalysisContext;
+import org.mapleir.context.IRCache;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.expr.FieldLoadExpr;
+import org.mapleir.ir.code.expr.invoke.InvocationExpr;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+public class RemappingPassTest extends FixtureTestBase {
+
+	public static class Target {
+		int value;
+
+		public int get() {
+			return value;
+		}
+	}
+
+	public static class Lifted {
+		public int use(Target t) {
+			return t.get() + t.value;
+		}
+	}
+
+	public static class Unlifted {
+		public int use(Target t) {
+			return t.get() + t.value;
+		}
+	}
+
+	public static class Untouched {
+		public int use(int i) {
+			return i * 2;
+		}
+	}
+
+	private static FieldNode field(ClassNode cn, String name) {
+		for(FieldNode f : cn.getFields()) {
+			if(f.getName().equals(name)) {
+				return f;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	private static List<String> names(MethodNode m) {
+		List<String> names = new ArrayList<>();
+		for(AbstractInsnNode insn = m.node.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if(insn instanceof MethodInsnNode) {
+				names.add(((MethodInsnNode) insn).name);
+			} else if(insn instanceof FieldInsnNode) {
+				names.add(((FieldInsnNode) insn).name);
+			}
+		}
+		return names;
+	}
+
+	private static List<String> names(ControlFlowGraph cfg) {
+		List<String> names = new ArrayList<>();
+		cfg.allExprStream().forEach(e -> {
+			if(e instanceof InvocationExpr) {
+				names.add(((InvocationExpr) e).getName());
+			} else if(e instanceof FieldLoadExpr) {
+				names.add(((FieldLoadExpr) e).getName());
+			}
+		});
+		return names;
+	}
+
+	public void testDirty() throws Exception {
+		ClassNode target = load(Target.class);
+		ClassNode lifted = load(Lifted.class);
+		ClassNode unlifted = load(Unlifted.class);
+		ClassNode untouched = load(Untouched.class);
+		List<ClassNode> classes = new ArrayList<>();
+		classes.add(target);
+		classes.add(lifted);
+		classes.add(unlifted);
+		classes.add(untouched);
+		ApplicationClassSource app = new ApplicationClassSource("test", classes);
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+		AnalysisContext cxt = new BasicAnalysisContext.BasicContextBuilder()
+				.setApplication(app)
+				.setInvocationResolver(new DefaultInvocationResolver(app))
+				.setCache(new IRCache(true))
+				.build();
+
+		ControlFlowGraph cfg = cxt.getIRCache().getFlowGraph(find(lifted, "use"));
+		List<String> before = names(find(lifted, "use"));
+		assertEquals(2, before.size());
+		assertTrue(before.contains("get"));
+		assertTrue(before.contains("value"));
+		for(ClassNode cn : classes) {
+			assertFalse(cn.getName(), cn.isDirty());
+		}
+
+		MappingTable table = new MappingTable();
+		table.mapMethod(find(target, "get"), "g");
+		table.mapField(field(target, "value"), "v");
+		/* the field read in Target.get, both references in Unlifted.use, and
+		 * every member reference of Lifted, including the super constructor
+		 * call, as the IR is swept whether or not anything changes. */
+		assertEquals(6, new RemappingPass(table).apply(cxt));
+
+		// the declarations
+		assertTrue(target.isDirty());
+		assertEquals("g", find(target, "g").getName());
+		assertEquals("v", field(target, "v").getName());
+		assertEquals(Collections.singletonList("v"), names(find(target, "g")));
+
+		// rewritten in its instructions
+		assertTrue(unlifted.isDirty());
+		assertTrue(find(unlifted, "use").isDirty());
+		List<String> after = names(find(unlifted, "use"));
+		assertTrue(after.contains("g"));
+		assertTrue(after.contains("v"));
+		assertEquals(2, after.size());
+
+		// rewritten in its IR, which is what is emitted for it
+		assertFalse(lifted.isDirty());
+		assertSame(cfg, cxt.getIRCache().getFlowGraph(find(lifted, "use")));
+		after = names(cfg);
+		assertTrue(after.contains("g"));
+		assertTrue(after.contains("v"));
+		assertEquals(2, after.size());
+		assertEquals(before, names(find(lifted, "use")));
+
+		assertFalse(untouched.isDirty());
+		for(MethodNode m : untouched.getMethods()) {
+			assertFalse(m.getName(), m.isDirty());
+		}
+	}
+}
@@ -11,6 +11,7 @@ public class ClassNode implements FastGraphVertex {
     public final org.objectweb.asm.tree.ClassNode node;
     private final List<MethodNode> methods;
     private final List<FieldNode> fields;
+    private boolean dirty;
 
     public ClassNode() {
         this.node = new org.objectweb.asm.tree.ClassNode();
@@ -39,12 +40,29 @@ public class ClassNode implements FastGraphVertex {
     public void addMethod(MethodNode mn) {
         methods.add(mn);
         node.methods.add(mn.node);
+        markDirty();
     }
 
     public List<FieldNode> getFields() {
         return fields;
     }
 
+    /**
+     * @return whether the class has been changed since it was read, in which
+     *         case it has to be written out again rather than copied
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Records that the class, or one of its members, has been changed. This
+     * must be called by anything that edits the underlying tree directly.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
     @Override
     public String getDisplayName() {
         return node.name.replace("/", "_");
@@ -10,6 +10,7 @@ public class MethodNode implements FastGraphVertex, IHasJavaDesc {
 
    	public final ClassNode owner;
     public final org.objectweb.asm.tree.MethodNode node;
+    private boolean dirty;
 
     public MethodNode(org.objectweb.asm.tree.MethodNode node, ClassNode owner) {
         this.node = node;
@@ -21,6 +22,20 @@ public class MethodNode implements FastGraphVertex, IHasJavaDesc {
    		return (owner != null ? getOwner() : "null") + "." + getName() + getDesc();
    	}
 
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Records that the method has been changed, which also makes its owner
+     * dirty.
+     */
+    public void markDirty() {
+        dirty = true;
+        if (owner != null)
+            owner.markDirty();
+    }
+
     @Override
     public String getDisplayName() {
         return node.name;
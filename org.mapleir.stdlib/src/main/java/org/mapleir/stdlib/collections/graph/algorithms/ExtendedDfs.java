@@ -93,32 +93,54 @@ public class ExtendedDfs<N extends FastGraphVertex> implements DepthFirstSearch<
 	}
 
 	protected void dfs(N par, N b) {
-		boolean cvisit = opt(COLOUR_VISITOR);
+		/* the search is driven by an explicit stack of the vertices on the
+		 * current path and their remaining edges, rather than by recursion,
+		 * so that deep graphs don't overflow the thread's stack. */
+		Deque<Iterator<? extends FastGraphEdge<N>>> edgeStack = new ArrayDeque<>();
+		Deque<N> path = new ArrayDeque<>();
+		enter(b, edgeStack, path);
+
 		boolean reverse = opt(REVERSE);
-		
-		if(opt(PRE)) preorder.add(b);
-		
-		colours.put(b, GREY);
-		if(cvisit) coloured(b, GREY);
-		
-		for(FastGraphEdge<N> sE : order(reverse ? graph.getReverseEdges(b) : graph.getEdges(b)))  {
-			N s = reverse ? sE.src() : sE.dst();
-			if (mask == null || mask.contains(s)) {
-				if (opt(EDGES))
-					edges.get(colours.getNonNull(s)).add(sE);
-				
-				if (colours.getNonNull(s) == WHITE) {
-					if (opt(PARENTS))
-						parents.put(s, b);
-					dfs(b, s);
+		while(!path.isEmpty()) {
+			N v = path.peek();
+			Iterator<? extends FastGraphEdge<N>> it = edgeStack.peek();
+			
+			if(it.hasNext()) {
+				FastGraphEdge<N> sE = it.next();
+				N s = reverse ? sE.src() : sE.dst();
+				if (mask == null || mask.contains(s)) {
+					if (opt(EDGES))
+						edges.get(colours.getNonNull(s)).add(sE);
+					
+					if (colours.getNonNull(s) == WHITE) {
+						if (opt(PARENTS))
+							parents.put(s, v);
+						enter(s, edgeStack, path);
+					}
 				}
+			} else {
+				edgeStack.pop();
+				path.pop();
+				exit(v);
 			}
 		}
+	}
+	
+	private void enter(N b, Deque<Iterator<? extends FastGraphEdge<N>>> edgeStack, Deque<N> path) {
+		if(opt(PRE)) preorder.add(b);
+		
+		colours.put(b, GREY);
+		if(opt(COLOUR_VISITOR)) coloured(b, GREY);
 		
+		edgeStack.push(order(opt(REVERSE) ? graph.getReverseEdges(b) : graph.getEdges(b)).iterator());
+		path.push(b);
+	}
+	
+	private void exit(N b) {
 		if(opt(POST) || opt(TOPO)) postorder.add(b);
 
 		colours.put(b, BLACK);
-		if(cvisit) coloured(b, BLACK);
+		if(opt(COLOUR_VISITOR)) coloured(b, BLACK);
 	}
 	
 	protected void coloured(N n, int c) {
@@ -1,8 +1,11 @@
 package org.mapleir.stdlib.collections.graph.algorithms;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -108,21 +111,37 @@ public class LT79Dom<N extends FastGraphVertex, E extends FastGraphEdge<N>> {
 	}
 	
 	private void dfs(N v) {
+		/* iterative, as the spanning tree of a large method can be far
+		 * deeper than the thread's stack. */
+		Deque<N> path = new ArrayDeque<>();
+		Deque<Iterator<E>> succs = new ArrayDeque<>();
+		number(v);
+		path.push(v);
+		succs.push(graph.getEdges(v).iterator());
+		
+		while(!path.isEmpty()) {
+			Iterator<E> it = succs.peek();
+			if(it.hasNext()) {
+				N w = it.next().dst();
+				if(!semi.containsKey(w)) {
+					parent.put(w, path.peek());
+					number(w);
+					path.push(w);
+					succs.push(graph.getEdges(w).iterator());
+				}
+			} else {
+				succs.pop();
+				postOrder.add(path.pop());
+			}
+		}
+	}
+	
+	private void number(N v) {
 		int n = semi.size();
 		semi.put(v, n);
 		vertex.put(n, v);
 		ancestor.put(v, null);
 		label.put(v, v);
-		
-		for(E succ : graph.getEdges(v)) {
-			N w = succ.dst();
-			if(!semi.containsKey(w)) {
-				parent.put(w, v);
-				dfs(w);
-			}
-		}
-		
-		postOrder.add(v);
 	}
 	
 	private void step2and3() {
@@ -201,8 +220,16 @@ public class LT79Dom<N extends FastGraphVertex, E extends FastGraphEdge<N>> {
 	}
 	
 	private void compress(N v) {
-		if (ancestor.get(ancestor.get(v)) != null) {
-			compress(ancestor.get(v));
+		/* compress the path from the top down, as the recursive definition
+		 * would, but without recursing along paths which can be as long as
+		 * the graph. */
+		Deque<N> stack = new ArrayDeque<>();
+		while (ancestor.get(ancestor.get(v)) != null) {
+			stack.push(v);
+			v = ancestor.get(v);
+		}
+		while (!stack.isEmpty()) {
+			v = stack.pop();
 			if (semi.get(label.get(ancestor.get(v))) < semi.get(label.get(v))) {
 				label.put(v, label.get(ancestor.get(v)));
 			}
@@ -273,25 +300,37 @@ public class LT79Dom<N extends FastGraphVertex, E extends FastGraphEdge<N>> {
 		for(N v : postOrder) {
 			N idom = idoms.get(v);
 			if(idom != null) {
-				Set<N> decs = treeDescendants.getNonNull(idom);
-				decs.add(v);
-				decs.addAll(treeDescendants.getNonNull(v));
-				
 				Set<N> succs = treeSuccessors.getNonNull(idom);
 				succs.add(v);
 				
 				tree.addEdge(new FastGraphEdgeImpl<>(idom, v));
 			}
-			treeDescendants.getNonNull(v).add(v);
 		}
 		return tree;
 	}
 	
+	/* the descendants are only computed when they're asked for, as they take
+	 * quadratic space for deep dominator trees. */
+	private void computeDescendants() {
+		for(N v : postOrder) {
+			N idom = idoms.get(v);
+			if(idom != null) {
+				Set<N> decs = treeDescendants.getNonNull(idom);
+				decs.add(v);
+				decs.addAll(treeDescendants.getNonNull(v));
+			}
+			treeDescendants.getNonNull(v).add(v);
+		}
+	}
+	
 	public DominatorTree<N> getDominatorTree() {
 		return dominatorTree;
 	}
 	
 	public Set<N> getDominates(N v) {
+		if(treeDescendants.isEmpty()) {
+			computeDescendants();
+		}
 		return new HashSet<>(treeDescendants.getNonNull(v));
 	}
 	
@@ -69,8 +69,9 @@ public class NotifiedList<E> extends ArrayList<E> implements Serializable {
 		return oldElem;
 	}
 
+	// widened so that owners can drop a run of elements with a single shift
 	@Override
-	protected void removeRange(int fromIndex, int toIndex) {
+	public void removeRange(int fromIndex, int toIndex) {
 		for (int i = fromIndex; i < toIndex; i++) {
 			E elem = get(i);
 			if (elem != null)
@@ -1,32 +1,67 @@
 package org.mapleir.stdlib.util;
 
-import java.io.StringWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Indenting text writer. By default the text is collected in memory and read
+ * back with {@link #toString()}, but it can instead be written through to any
+ * {@link Appendable}, such as a file {@link java.io.Writer}, in which case only
+ * a small buffer is held and {@link #flush()} must be called once done.
+ */
 public class TabbedStringWriter {
 
 	private static final String NEWLINE = System.lineSeparator();
-	
-	private StringWriter buff;
+	private static final int FLUSH_THRESHOLD = 8192;
+
+	private final Appendable out;
+	private StringBuilder buff;
 	private int tabCount;
 	private int lineNumber;
 	private int charPointer;
 	private String tabString;
-	
+	// tabs.get(n) is the indent for n tabs, built as deeper levels are reached
+	private final List<String> tabs;
+
 	public TabbedStringWriter() {
-		buff = new StringWriter();
+		this(null);
+	}
+
+	/**
+	 * @param out where to write the text, or null to keep it in memory
+	 */
+	public TabbedStringWriter(Appendable out) {
+		this.out = out;
+		buff = new StringBuilder();
 		tabCount = 0;
 		lineNumber = 0;
 		charPointer = 0;
-		tabString = "   ";
+		tabs = new ArrayList<>();
+		setTabString("   ");
 	}
 
 	public TabbedStringWriter print(CharSequence str) {
-		for (int i = 0; i < str.length(); i++) {
-			print(str.charAt(i));
+		// copy whole runs up to each line break rather than char by char
+		int start = 0, len = str.length();
+		for (int i = 0; i < len; i++) {
+			if (str.charAt(i) == '\n') {
+				buff.append(str, start, i);
+				charPointer += i - start;
+				print('\n', true);
+				start = i + 1;
+			}
+		}
+		if (start < len) {
+			buff.append(str, start, len);
+			charPointer += len - start;
 		}
+		checkFlush();
 		return this;
 	}
-	
+
 	public TabbedStringWriter print(char c, boolean indent) {
 		buff.append(c);
 		if (c == '\n') {
@@ -36,64 +71,66 @@ public class TabbedStringWriter {
 				String tabs = getTabs();
 				/* reset char pointer */
 				charPointer = tabs.length();
-				
+
 				buff.append(tabs);
 			} else {
 				charPointer = 0;
 			}
+			checkFlush();
 		} else {
 			charPointer++;
 		}
 		return this;
 	}
-	
+
 	public TabbedStringWriter print(char c) {
 		print(c, true);
 		return this;
 	}
-	
+
 	public TabbedStringWriter newline() {
 		return print(NEWLINE);
 	}
 
 	public void setTabString(String tabString) {
 		this.tabString = tabString;
+		tabs.clear();
+		tabs.add("");
 	}
-	
+
 	protected String getTabString() {
 		return tabString;
 	}
-	
+
 	private String getTabs() {
-		StringBuilder tabs = new StringBuilder();
-		for (int i = 0; i < tabCount; i++) {
-			tabs.append(tabString);
+		while (tabs.size() <= tabCount) {
+			tabs.add(tabs.get(tabs.size() - 1) + tabString);
 		}
-		return tabs.toString();
+		return tabs.get(tabCount);
 	}
 
 	public int getTabCount() {
 		return tabCount;
 	}
-	
+
 	public int getLineCount() {
 		return lineNumber;
 	}
-	
+
 	public int getColumnOffset() {
 		return charPointer;
 	}
-	
+
 	public int getTextColumnOffset() {
 		int tabOffset = tabCount * tabString.length();
 		return charPointer - tabOffset;
 	}
-	
+
 	public TabbedStringWriter tab() {
 		tabCount++;
 		return this;
 	}
-	
+
 	public TabbedStringWriter forceIndent() {
 		buff.append(getTabs());
 		return this;
@@ -106,15 +143,48 @@ public class TabbedStringWriter {
 		tabCount--;
 		return this;
 	}
-	
+
 	public void clear() {
-		buff = new StringWriter();
+		buff = new StringBuilder();
 		tabCount = 0;
 	}
 
+	private void checkFlush() {
+		if (out != null && buff.length() >= FLUSH_THRESHOLD) {
+			writeOut();
+		}
+	}
+
+	private void writeOut() {
+		try {
+			out.append(buff);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buff.setLength(0);
+	}
+
+	/**
+	 * Writes any buffered text through to the output, and flushes the output
+	 * if it can be flushed. Does nothing for in memory writers.
+	 */
+	public void flush() {
+		if (out == null)
+			return;
+		writeOut();
+		if (out instanceof Flushable) {
+			try {
+				((Flushable) out).flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
-		buff.flush();
+		if (out != null)
+			throw new UnsupportedOperationException("Text is written through to " + out.getClass().getName());
 		return buff.toString();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package org.mapleir.stdlib.util;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class TabbedStringWriterTest extends TestCase {
+
+	private static void write(TabbedStringWriter sw, int lines) {
+		sw.print("begin {").tab();
+		for(int i=0; i < lines; i++) {
+			sw.newline().print("line ").print(Integer.toString(i));
+			if(i % 7 == 0) {
+				sw.print(" {").tab().print("\nnested\nnested").untab().print("\n}");
+			}
+		}
+		sw.untab().newline().print('}');
+	}
+
+	public void testIndent() {
+		TabbedStringWriter sw = new TabbedStringWriter();
+		sw.print("a {").tab().print("\nb {").tab().print("\nc").untab().print("\n}").untab().print("\n}");
+		assertEquals("a {\n   b {\n      c\n   }\n}", sw.toString().replace(System.lineSeparator(), "\n"));
+		assertEquals(4, sw.getLineCount());
+		assertEquals(1, sw.getColumnOffset());
+	}
+
+	public void testStreaming() {
+		TabbedStringWriter mem = new TabbedStringWriter();
+		write(mem, 5000);
+
+		StringWriter out = new StringWriter();
+		TabbedStringWriter streamed = new TabbedStringWriter(out);
+		write(streamed, 5000);
+		// more than the buffer has been written before the flush
+		assertTrue(out.getBuffer().length() > 0);
+		streamed.flush();
+
+		assertEquals(mem.toString(), out.toString());
+		assertEquals(mem.getLineCount(), streamed.getLineCount());
+		assertEquals(mem.getColumnOffset(), streamed.getColumnOffset());
+
+		try {
+			streamed.toString();
+			fail();
+		} catch(UnsupportedOperationException e) {
+		}
+	}
+}
@@ -13,6 +13,7 @@ public class JarContents<C extends ClassNode> {
 
 	private final DataContainer<C> classContents;
 	private final DataContainer<JarResource> resourceContents;
+	private final Map<ClassNode, byte[]> originalBytes = new HashMap<ClassNode, byte[]>();
 
 	public JarContents() {
 		classContents = new ClassNodeContainer<C>();
@@ -32,9 +33,29 @@ public class JarContents<C extends ClassNode> {
 		return resourceContents;
 	}
 
+	/**
+	 * Records the bytes the class was read from, so that it can be copied out
+	 * as is if it is never changed.
+	 *
+	 * @param cn The class.
+	 * @param bytes The class file.
+	 */
+	public void putOriginalBytes(C cn, byte[] bytes) {
+		originalBytes.put(cn, bytes);
+	}
+
+	/**
+	 * @param cn The class.
+	 * @return The bytes the class was read from, or null if they weren't kept.
+	 */
+	public byte[] getOriginalBytes(ClassNode cn) {
+		return originalBytes.get(cn);
+	}
+
 	public void merge(JarContents<C> contents) {
 		classContents.addAll(contents.classContents);
 		resourceContents.addAll(contents.resourceContents);
+		originalBytes.putAll(contents.originalBytes);
 	}
 
 	public JarContents<C> add(JarContents<C> contents) {
@@ -52,7 +73,10 @@ public class JarContents<C extends ClassNode> {
 		r3.addAll(r1);
 		r3.addAll(r2);
 
-		return new JarContents<C>(new ClassNodeContainer<>(c3), new ResourceContainer(r3));
+		JarContents<C> result = new JarContents<C>(new ClassNodeContainer<>(c3), new ResourceContainer(r3));
+		result.originalBytes.putAll(originalBytes);
+		result.originalBytes.putAll(contents.originalBytes);
+		return result;
 	}
 
 	public static class ClassNodeContainer<C extends ClassNode> extends DataContainer<C> {
@@ -11,6 +11,7 @@ public abstract class AbstractJarDownloader<C extends ClassNode> {
 
 	protected final ASMFactory<C> factory;
 	protected LocateableJarContents<C> contents;
+	protected boolean retainClassBytes = true;
 
 	@SuppressWarnings("unchecked")
 	public AbstractJarDownloader() {
@@ -23,6 +24,16 @@ public abstract class AbstractJarDownloader<C extends ClassNode> {
 
 	public abstract void download() throws IOException;
 
+	/**
+	 * Sets whether the bytes of each class are kept alongside it, which lets
+	 * classes that are never changed be copied out verbatim when dumping.
+	 *
+	 * @param retainClassBytes Whether to keep the bytes, true by default.
+	 */
+	public void setRetainClassBytes(boolean retainClassBytes) {
+		this.retainClassBytes = retainClassBytes;
+	}
+
 	public LocateableJarContents<C> getJarContents() {
 		return contents;
 	}
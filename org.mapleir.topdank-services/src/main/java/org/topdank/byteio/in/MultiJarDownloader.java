@@ -45,6 +45,9 @@ public class MultiJarDownloader<C extends ClassNode> extends AbstractJarDownload
 				if (entry.getName().endsWith(".class")) {
 					C cn = factory.create(bytes, entry.getName());
 					contents.getClassContents().add(cn);
+					if (retainClassBytes) {
+						contents.putOriginalBytes(cn, bytes);
+					}
 				} else {
 					JarResource resource = new JarResource(entry.getName(), bytes);
 					contents.getResourceContents().add(resource);
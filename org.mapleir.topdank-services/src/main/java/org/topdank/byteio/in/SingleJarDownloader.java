@@ -49,6 +49,9 @@ public class SingleJarDownloader<C extends ClassNode> extends AbstractJarDownloa
 				C cn = factory.create(bytes, entry.getName());
 				if(!map.containsKey(cn.getName())) {
 					contents.getClassContents().add(cn);
+					if(retainClassBytes) {
+						contents.putOriginalBytes(cn, bytes);
+					}
 				} else {
 					throw new IllegalStateException("duplicate: " + cn.getName());
 				}